@@ -477,6 +477,29 @@ public abstract class Graph2DRenderer<T extends Graph2DRendererUpdate> {
         return scaledData;
     }
 
+    private ScaledData scaleSelectedPoints(ListNumber xValues, ListNumber yValues, int dataStart, int dataEnd, ReductionScheme reduction) {
+        // M4 buckets are the pixel columns; LTTB keeps two points per column
+        int firstPixel = (int) xPlotCoordStart + 1;
+        double[] pixelLimits = new double[Math.max(0, (int) xPlotCoordEnd + 2 - firstPixel)];
+        for (int i = 0; i < pixelLimits.length; i++) {
+            pixelLimits[i] = xValueScale.invScaleValue(firstPixel + i, xPlotValueStart, xPlotValueEnd, xPlotCoordStart, xPlotCoordEnd);
+        }
+        int[] selected = LineReduction.reduce(xValues, yValues, dataStart, dataEnd, reduction, pixelLimits, 2 * (int) xPlotCoordWidth);
+        
+        ScaledData scaledData = new ScaledData();
+        scaledData.scaledX = new double[selected.length];
+        scaledData.scaledY = new double[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            double x = xValues.getDouble(selected[i]);
+            double y = yValues.getDouble(selected[i]);
+            scaledData.scaledX[i] = scaledX(x);
+            scaledData.scaledY[i] = scaledY(y);
+            processScaledValue(selected[i], x, y, scaledData.scaledX[i], scaledData.scaledY[i]);
+        }
+        scaledData.end = selected.length;
+        return scaledData;
+    }
+
     private ScaledData scaleFirstMaxMinLastReduction(ListNumber xValues, ListNumber yValues, int dataStart) {
         // The number of points generated by this is about 4 times the 
         // number of points on the x axis. If the number of points is less
@@ -616,17 +639,18 @@ public abstract class Graph2DRenderer<T extends Graph2DRendererUpdate> {
         int start = org.diirt.util.array.ListNumbers.binarySearchValueOrLower(xValues, xPlotValueStart);
         int end = org.diirt.util.array.ListNumbers.binarySearchValueOrHigher(xValues, xPlotValueEnd);
         
-        xValues = ListMath.limit(xValues, start, end + 1);
-        yValues = ListMath.limit(yValues, start, end + 1);
-        
         switch (reduction) {
             default:
                 throw new IllegalArgumentException("Reduction scheme " + reduction + " not supported");
             case NONE:
-                scaledData = scaleNoReduction(xValues, yValues, start);
+                scaledData = scaleNoReduction(ListMath.limit(xValues, start, end + 1), ListMath.limit(yValues, start, end + 1), start);
                 break;
             case FIRST_MAX_MIN_LAST:
-                scaledData = scaleFirstMaxMinLastReduction(xValues, yValues, start);
+                scaledData = scaleFirstMaxMinLastReduction(ListMath.limit(xValues, start, end + 1), ListMath.limit(yValues, start, end + 1), start);
+                break;
+            case M4:
+            case LARGEST_TRIANGLE_THREE_BUCKETS:
+                scaledData = scaleSelectedPoints(xValues, yValues, start, end + 1, reduction);
                 break;
         }
         
@@ -50,10 +50,12 @@ public class GraphBuffer {
     
     /**
      * Creates a GraphBuffer with the given image on which to draw a graph.
+     * This allows to reuse the same image for multiple renderings.
+     * Currently, only TYPE_3BYTE_BGR and TYPE_4BYTE_ABGR are supported.
      * 
      * @param image an image on which we can draw a graph
      */
-    private GraphBuffer(BufferedImage image){
+    public GraphBuffer(BufferedImage image){
         this.image = image;
         width = image.getWidth();
         height = image.getHeight();
@@ -567,17 +569,18 @@ public class GraphBuffer {
         int start = ListNumbers.binarySearchValueOrLower(xValues, xLeftValue);
         int end = ListNumbers.binarySearchValueOrHigher(xValues, xRightValue);
         
-        xValues = ListMath.limit(xValues, start, end + 1);
-        yValues = ListMath.limit(yValues, start, end + 1);
-        
         switch (reduction) {
             default:
                 throw new IllegalArgumentException("Reduction scheme " + reduction + " not supported");
             case NONE:
-                scaledData = scaleNoReduction(xValues, yValues, start,pv);
+                scaledData = scaleNoReduction(ListMath.limit(xValues, start, end + 1), ListMath.limit(yValues, start, end + 1), start,pv);
                 break;
             case FIRST_MAX_MIN_LAST:
-                scaledData = scaleFirstMaxMinLastReduction(xValues, yValues, start,pv);
+                scaledData = scaleFirstMaxMinLastReduction(ListMath.limit(xValues, start, end + 1), ListMath.limit(yValues, start, end + 1), start,pv);
+                break;
+            case M4:
+            case LARGEST_TRIANGLE_THREE_BUCKETS:
+                scaledData = scaleSelectedPoints(xValues, yValues, start, end + 1, reduction, pv);
                 break;
         }
         
@@ -618,6 +621,29 @@ public class GraphBuffer {
         return scaledData;
     }
     
+    private ScaledData scaleSelectedPoints(ListNumber xValues, ListNumber yValues, int dataStart, int dataEnd, ReductionScheme reduction, ProcessValue pv) {
+        // M4 buckets are the pixel columns; LTTB keeps two points per column
+        int firstPixel = (int) xLeftPixel + 1;
+        double[] pixelLimits = new double[Math.max(0, (int) xRightPixel + 1 - firstPixel)];
+        for (int i = 0; i < pixelLimits.length; i++) {
+            pixelLimits[i] = xPixelLeftToValue(firstPixel + i);
+        }
+        int[] selected = LineReduction.reduce(xValues, yValues, dataStart, dataEnd, reduction, pixelLimits, 2 * (int) (xRightPixel - xLeftPixel));
+        
+        ScaledData scaledData = new ScaledData();
+        scaledData.scaledX = new double[selected.length];
+        scaledData.scaledY = new double[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            double x = xValues.getDouble(selected[i]);
+            double y = yValues.getDouble(selected[i]);
+            scaledData.scaledX[i] = xValueToPixel(x);
+            scaledData.scaledY[i] = yValueToPixel(y);
+            pv.processScaledValue(selected[i], x, y, scaledData.scaledX[i], scaledData.scaledY[i]);
+        }
+        scaledData.end = selected.length;
+        return scaledData;
+    }
+
     private ScaledData scaleFirstMaxMinLastReduction(ListNumber xValues, ListNumber yValues, int dataStart, ProcessValue pv) {
         // The number of points generated by this is about 4 times the 
         // number of points on the x axis. If the number of points is less
@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.graphene;
+
+import java.util.Arrays;
+import org.diirt.util.array.CollectionNumbers;
+import org.diirt.util.array.ListMath;
+import org.diirt.util.array.ListNumber;
+
+/**
+ * Data reduction algorithms for lines, working on primitive arrays.
+ * <p>
+ * The algorithms select which points of the line should be drawn, and
+ * return their indexes. The x values must be sorted in ascending order.
+ * The work is proportional to the number of points in the range, with no
+ * per point allocation, scaling or callback.
+ *
+ * @author carcassi
+ */
+public class LineReduction {
+
+    private LineReduction() {
+    }
+
+    /**
+     * M4 reduction: for each bucket, selects the first and the last point,
+     * and the points with the minimum and maximum y. When buckets are
+     * pixel columns, the line drawn with the selected points is the same
+     * as the one drawn with all the points.
+     * <p>
+     * The buckets are defined by the limits: bucket i contains the points
+     * with limits[i] &lt;= x &lt; limits[i+1]. The points before the first
+     * limit and after the last are reduced as two more buckets.
+     * NaN values are ignored for the minimum and the maximum.
+     *
+     * @param x the sorted x values
+     * @param y the y values
+     * @param from the index of the first point
+     * @param to the index after the last point
+     * @param limits the ascending bucket limits
+     * @param selected the indexes of the selected points, in ascending order;
+     * at least 4 * (limits.length + 1) long
+     * @return the number of selected points
+     */
+    public static int m4(double[] x, double[] y, int from, int to, double[] limits, int[] selected) {
+        int count = 0;
+        int bucketStart = from;
+        for (int i = 0; i <= limits.length; i++) {
+            int bucketEnd = i < limits.length ? lowerBound(x, bucketStart, to, limits[i]) : to;
+            if (bucketEnd > bucketStart) {
+                count = m4Bucket(y, bucketStart, bucketEnd, selected, count);
+            }
+            bucketStart = bucketEnd;
+        }
+        return count;
+    }
+
+    private static int m4Bucket(double[] y, int start, int end, int[] selected, int count) {
+        int minIndex = -1;
+        int maxIndex = -1;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = start; i < end; i++) {
+            double value = y[i];
+            if (value < min) {
+                min = value;
+                minIndex = i;
+            }
+            if (value > max) {
+                max = value;
+                maxIndex = i;
+            }
+        }
+        count = addIndex(selected, count, start);
+        if (minIndex != -1) {
+            count = addIndex(selected, count, Math.min(minIndex, maxIndex));
+            count = addIndex(selected, count, Math.max(minIndex, maxIndex));
+        }
+        return addIndex(selected, count, end - 1);
+    }
+
+    private static int addIndex(int[] selected, int count, int index) {
+        if (count == 0 || selected[count - 1] != index) {
+            selected[count] = index;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the first index in the range with a value greater or equal
+     * to the limit, or the end of the range.
+     */
+    private static int lowerBound(double[] x, int from, int to, double limit) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (x[middle] < limit) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets reduction: keeps the first and the last
+     * point, and from each of the threshold - 2 buckets of equal size in between
+     * the point that forms the largest triangle with the point selected in
+     * the previous bucket and the average of the next bucket. This preserves
+     * the visual shape of the line with a fixed number of points.
+     * NaN values are selected only if a bucket has no other value.
+     *
+     * @param x the sorted x values
+     * @param y the y values
+     * @param from the index of the first point
+     * @param to the index after the last point
+     * @param threshold the number of points to select; at least 3
+     * @param selected the indexes of the selected points, in ascending order;
+     * at least min(threshold, to - from) long, or to - from if the threshold
+     * is less than 3
+     * @return the number of selected points
+     */
+    public static int largestTriangleThreeBuckets(double[] x, double[] y, int from, int to, int threshold, int[] selected) {
+        int size = to - from;
+        if (threshold >= size || threshold < 3) {
+            for (int i = 0; i < size; i++) {
+                selected[i] = from + i;
+            }
+            return size;
+        }
+
+        double bucketSize = (double) (size - 2) / (threshold - 2);
+        int count = 0;
+        int previous = from;
+        selected[count++] = previous;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket (the last point for the last bucket)
+            int nextStart = from + (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min(Math.max(from + (int) ((bucket + 2) * bucketSize) + 1, nextStart + 1), to);
+            double averageX = 0;
+            double averageY = 0;
+            int averageCount = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                if (!Double.isNaN(y[i])) {
+                    averageX += x[i];
+                    averageY += y[i];
+                    averageCount++;
+                }
+            }
+            if (averageCount != 0) {
+                averageX /= averageCount;
+                averageY /= averageCount;
+            } else {
+                averageX = x[nextEnd - 1];
+                averageY = y[nextEnd - 1];
+            }
+
+            // Point of the current bucket with the largest triangle
+            int start = from + (int) (bucket * bucketSize) + 1;
+            int end = from + (int) ((bucket + 1) * bucketSize) + 1;
+            double previousX = x[previous];
+            double previousY = y[previous];
+            double maxArea = -1;
+            int maxIndex = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((previousX - averageX) * (y[i] - previousY)
+                        - (previousX - x[i]) * (averageY - previousY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+            previous = maxIndex;
+            selected[count++] = previous;
+        }
+        selected[count++] = to - 1;
+        return count;
+    }
+
+    /**
+     * Selects the points of the given range with the reduction scheme.
+     * The lists are accessed directly if they wrap an array, and copied
+     * otherwise.
+     *
+     * @param xValues the sorted x values
+     * @param yValues the y values
+     * @param from the index of the first point
+     * @param to the index after the last point
+     * @param reduction M4 or LARGEST_TRIANGLE_THREE_BUCKETS
+     * @param limits the bucket limits for M4
+     * @param threshold the number of points for LARGEST_TRIANGLE_THREE_BUCKETS
+     * @return the indexes of the selected points in the lists
+     */
+    static int[] reduce(ListNumber xValues, ListNumber yValues, int from, int to, ReductionScheme reduction, double[] limits, int threshold) {
+        double[] x = CollectionNumbers.wrappedDoubleArray(xValues);
+        double[] y = CollectionNumbers.wrappedDoubleArray(yValues);
+        int offset = 0;
+        if (x == null || y == null) {
+            x = CollectionNumbers.doubleArrayCopyOf(ListMath.limit(xValues, from, to));
+            y = CollectionNumbers.doubleArrayCopyOf(ListMath.limit(yValues, from, to));
+            offset = from;
+        }
+        int[] selected;
+        int count;
+        switch (reduction) {
+            case M4:
+                selected = new int[4 * (limits.length + 1)];
+                count = m4(x, y, from - offset, to - offset, limits, selected);
+                break;
+            case LARGEST_TRIANGLE_THREE_BUCKETS:
+                selected = new int[Math.max(0, threshold < 3 ? to - from : Math.min(threshold, to - from))];
+                count = largestTriangleThreeBuckets(x, y, from - offset, to - offset, threshold, selected);
+                break;
+            default:
+                throw new IllegalArgumentException("Reduction scheme " + reduction + " not supported");
+        }
+        selected = Arrays.copyOf(selected, count);
+        if (offset != 0) {
+            for (int i = 0; i < count; i++) {
+                selected[i] += offset;
+            }
+        }
+        return selected;
+    }
+}
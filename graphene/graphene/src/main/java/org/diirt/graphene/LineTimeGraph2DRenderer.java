@@ -22,6 +22,10 @@ public class LineTimeGraph2DRenderer extends TemporalGraph2DRenderer<LineTimeGra
             InterpolationScheme.PREVIOUS_VALUE,
             InterpolationScheme.LINEAR,
             InterpolationScheme.CUBIC);
+    public static java.util.List<ReductionScheme> supportedReductionScheme = Arrays.asList(
+            ReductionScheme.NONE,
+            ReductionScheme.M4,
+            ReductionScheme.LARGEST_TRIANGLE_THREE_BUCKETS);
     
     @Override
     public LineTimeGraph2DRendererUpdate newUpdate() {
@@ -29,6 +33,7 @@ public class LineTimeGraph2DRenderer extends TemporalGraph2DRenderer<LineTimeGra
     }
 
     private InterpolationScheme interpolation = InterpolationScheme.NEAREST_NEIGHBOR;
+    private ReductionScheme reduction = ReductionScheme.NONE;
 
     /**
      * Creates a new line graph renderer.
@@ -49,12 +54,24 @@ public class LineTimeGraph2DRenderer extends TemporalGraph2DRenderer<LineTimeGra
         return interpolation;
     }
     
+    /**
+     * The current reduction used for the line.
+     * 
+     * @return the current reduction
+     */
+    public ReductionScheme getDataReduction() {
+        return reduction;
+    }
+    
     @Override
     public void update(LineTimeGraph2DRendererUpdate update) {
         super.update(update);
         if (update.getInterpolation() != null) {
             interpolation = update.getInterpolation();
         }
+        if (update.getDataReduction() != null) {
+            reduction = update.getDataReduction();
+        }
     }
 
     /**
@@ -76,6 +93,6 @@ public class LineTimeGraph2DRenderer extends TemporalGraph2DRenderer<LineTimeGra
 
         setClip(g);
         g.setColor(Color.BLACK);
-        drawValueLine(xValues, yValues, interpolation);
+        drawValueLine(xValues, yValues, interpolation, reduction);
     }
 }
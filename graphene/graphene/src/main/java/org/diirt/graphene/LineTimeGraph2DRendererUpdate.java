@@ -11,6 +11,7 @@ package org.diirt.graphene;
 public class LineTimeGraph2DRendererUpdate extends TemporalGraph2DRendererUpdate<LineTimeGraph2DRendererUpdate> {
 
     private InterpolationScheme interpolation;
+    private ReductionScheme reduction;
     
     public LineTimeGraph2DRendererUpdate interpolation(InterpolationScheme scheme) {
         if (scheme == null) {
@@ -23,8 +24,23 @@ public class LineTimeGraph2DRendererUpdate extends TemporalGraph2DRendererUpdate
         return this;
     }
     
+    public LineTimeGraph2DRendererUpdate dataReduction(ReductionScheme scheme) {
+        if (scheme == null) {
+            throw new NullPointerException("Data reduction scheme can't be null");
+        }
+        if (!LineTimeGraph2DRenderer.supportedReductionScheme.contains(scheme)) {
+            throw new IllegalArgumentException("Data reduction " + scheme + " is not supported");
+        }
+        this.reduction = scheme;
+        return this;
+    }
+    
     public InterpolationScheme getInterpolation() {
         return interpolation;
     }
     
+    public ReductionScheme getDataReduction() {
+        return reduction;
+    }
+    
 }
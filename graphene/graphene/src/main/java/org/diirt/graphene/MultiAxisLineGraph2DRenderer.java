@@ -44,7 +44,8 @@ public class MultiAxisLineGraph2DRenderer extends Graph2DRenderer<MultiAxisLineG
     /**
      * List of supported data reduction schemes for this renderer.
      */
-    public static java.util.List<ReductionScheme> supportedReductionScheme = Arrays.asList(ReductionScheme.FIRST_MAX_MIN_LAST, ReductionScheme.NONE);
+    public static java.util.List<ReductionScheme> supportedReductionScheme = Arrays.asList(ReductionScheme.FIRST_MAX_MIN_LAST, ReductionScheme.NONE,
+            ReductionScheme.M4, ReductionScheme.LARGEST_TRIANGLE_THREE_BUCKETS);
 
     /**
      * Default interpolation scheme: nearest neighbor.
@@ -981,17 +982,18 @@ public class MultiAxisLineGraph2DRenderer extends Graph2DRenderer<MultiAxisLineG
         int start = org.diirt.util.array.ListNumbers.binarySearchValueOrLower(xValues, xPlotValueStart);
         int end = org.diirt.util.array.ListNumbers.binarySearchValueOrHigher(xValues, xPlotValueEnd);
         
-        xValues = ListMath.limit(xValues, start, end + 1);
-        yValues = ListMath.limit(yValues, start, end + 1);
-        
         switch (reduction) {
             default:
                 throw new IllegalArgumentException("Reduction scheme " + reduction + " not supported");
             case NONE:
-                scaledData = scaleNoReduction(xValues, yValues, start,index);
+                scaledData = scaleNoReduction(ListMath.limit(xValues, start, end + 1), ListMath.limit(yValues, start, end + 1), start,index);
                 break;
             case FIRST_MAX_MIN_LAST:
-                scaledData = scaleFirstMaxMinLastReduction(xValues, yValues, start, index);
+                scaledData = scaleFirstMaxMinLastReduction(ListMath.limit(xValues, start, end + 1), ListMath.limit(yValues, start, end + 1), start, index);
+                break;
+            case M4:
+            case LARGEST_TRIANGLE_THREE_BUCKETS:
+                scaledData = scaleSelectedPoints(xValues, yValues, start, end + 1, reduction, index);
                 break;
         }
         
@@ -1039,6 +1041,33 @@ public class MultiAxisLineGraph2DRenderer extends Graph2DRenderer<MultiAxisLineG
         return scaledData;
     }
     
+    private MultiAxisLineGraph2DRenderer.ScaledData scaleSelectedPoints(ListNumber xValues, ListNumber yValues, int dataStart, int dataEnd, ReductionScheme reduction, int index) {
+        // M4 buckets are the pixel columns; LTTB keeps two points per column
+        int firstPixel = (int) xPlotCoordStart + 1;
+        double[] pixelLimits = new double[Math.max(0, (int) xPlotCoordEnd + 2 - firstPixel)];
+        for (int i = 0; i < pixelLimits.length; i++) {
+            pixelLimits[i] = xValueScale.invScaleValue(firstPixel + i, xPlotValueStart, xPlotValueEnd, xPlotCoordStart, xPlotCoordEnd);
+        }
+        int[] selected = LineReduction.reduce(xValues, yValues, dataStart, dataEnd, reduction, pixelLimits, 2 * (int) xPlotCoordWidth);
+        
+        MultiAxisLineGraph2DRenderer.ScaledData scaledData = new MultiAxisLineGraph2DRenderer.ScaledData();
+        scaledData.scaledX = new double[selected.length];
+        scaledData.scaledY = new double[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            double x = xValues.getDouble(selected[i]);
+            double y = yValues.getDouble(selected[i]);
+            scaledData.scaledX[i] = scaledX1(x);
+            if(separateAreas){
+                scaledData.scaledY[i] = scaledYSplit(y, index);
+            }else{
+                scaledData.scaledY[i] = scaledY(y, index);
+            }
+            processScaledValue(selected[i], x, y, scaledData.scaledX[i], scaledData.scaledY[i]);
+        }
+        scaledData.end = selected.length;
+        return scaledData;
+    }
+    
     private MultiAxisLineGraph2DRenderer.ScaledData scaleFirstMaxMinLastReduction(ListNumber xValues, ListNumber yValues, int dataStart, int index) {
         // The number of points generated by this is about 4 times the 
         // number of points on the x axis. If the number of points is less
@@ -9,5 +9,17 @@ package org.diirt.graphene;
  * @author carcassi
  */
 public enum ReductionScheme {
-    NONE, FIRST_MAX_MIN_LAST;
+    NONE, FIRST_MAX_MIN_LAST,
+    
+    /**
+     * Keeps the first, last, minimum and maximum point of each pixel column:
+     * the line drawn is the same as without reduction.
+     */
+    M4,
+    
+    /**
+     * Largest-Triangle-Three-Buckets: keeps a fixed number of points
+     * (two per pixel column) that preserve the visual shape of the line.
+     */
+    LARGEST_TRIANGLE_THREE_BUCKETS;
 }
@@ -359,6 +359,50 @@ public abstract class TemporalGraph2DRenderer<T extends TemporalGraph2DRendererU
             scaledY[i] = scaledY(yValues.getDouble(i));;
         }
         
+        drawScaledLine(scaledX, scaledY, interpolation);
+    }
+    
+    /**
+     * Draws the line with the given interpolation, after selecting the
+     * points to draw with the given reduction.
+     * 
+     * @param xValues the normalized time values
+     * @param yValues the y values
+     * @param interpolation the interpolation
+     * @param reduction NONE, M4 or LARGEST_TRIANGLE_THREE_BUCKETS
+     */
+    protected void drawValueLine(ListNumber xValues, ListNumber yValues, InterpolationScheme interpolation, ReductionScheme reduction) {
+        switch (reduction) {
+            default:
+                throw new IllegalArgumentException("Reduction scheme " + reduction + " not supported");
+            case NONE:
+                drawValueLine(xValues, yValues, interpolation);
+                return;
+            case M4:
+            case LARGEST_TRIANGLE_THREE_BUCKETS:
+                break;
+        }
+        
+        // M4 buckets are the pixel columns: the normalized time
+        // is scaled linearly on the plot width
+        int firstPixel = (int) xPlotCoordStart + 1;
+        double[] pixelLimits = new double[Math.max(0, (int) xPlotCoordEnd + 2 - firstPixel)];
+        for (int i = 0; i < pixelLimits.length; i++) {
+            pixelLimits[i] = (firstPixel + i - xPlotCoordStart) / (xPlotCoordEnd - xPlotCoordStart);
+        }
+        int[] selected = LineReduction.reduce(xValues, yValues, 0, xValues.size(), reduction, pixelLimits, 2 * (int) (xPlotCoordEnd - xPlotCoordStart));
+        
+        double[] scaledX = new double[selected.length];
+        double[] scaledY = new double[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            scaledX[i] = scaledX(xValues.getDouble(selected[i]));
+            scaledY[i] = scaledY(yValues.getDouble(selected[i]));
+        }
+        
+        drawScaledLine(scaledX, scaledY, interpolation);
+    }
+    
+    private void drawScaledLine(double[] scaledX, double[] scaledY, InterpolationScheme interpolation) {
         Path2D path;
         switch (interpolation) {
             default:
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.graphene;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+import org.diirt.util.array.ArrayDouble;
+import org.diirt.util.array.ListNumber;
+import org.diirt.util.array.ListNumbers;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class LineReductionTest {
+
+    public LineReductionTest() {
+    }
+
+    private static double[] randomWalk(int size, long seed) {
+        Random random = new Random(seed);
+        double[] y = new double[size];
+        for (int i = 1; i < size; i++) {
+            y[i] = y[i - 1] + random.nextGaussian();
+        }
+        return y;
+    }
+
+    private static double[] ramp(int size) {
+        double[] x = new double[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = i;
+        }
+        return x;
+    }
+
+    private static int[] bruteForceM4(double[] x, double[] y, double[] limits) {
+        TreeSet<Integer> selected = new TreeSet<>();
+        for (int bucket = 0; bucket <= limits.length; bucket++) {
+            int first = -1;
+            int last = -1;
+            int minIndex = -1;
+            int maxIndex = -1;
+            for (int i = 0; i < x.length; i++) {
+                boolean inBucket = (bucket == 0 || x[i] >= limits[bucket - 1])
+                        && (bucket == limits.length || x[i] < limits[bucket]);
+                if (inBucket) {
+                    if (first == -1) {
+                        first = i;
+                    }
+                    last = i;
+                    if (minIndex == -1 || y[i] < y[minIndex]) {
+                        minIndex = i;
+                    }
+                    if (maxIndex == -1 || y[i] > y[maxIndex]) {
+                        maxIndex = i;
+                    }
+                }
+            }
+            if (first != -1) {
+                selected.addAll(Arrays.asList(first, last, minIndex, maxIndex));
+            }
+        }
+        int[] result = new int[selected.size()];
+        int i = 0;
+        for (Integer index : selected) {
+            result[i++] = index;
+        }
+        return result;
+    }
+
+    @Test
+    public void m4_1() {
+        double[] x = ramp(1000);
+        double[] y = randomWalk(1000, 1);
+        double[] limits = new double[]{100.5, 200, 200.5, 350.25, 999};
+        int[] selected = new int[4 * (limits.length + 1)];
+        int count = LineReduction.m4(x, y, 0, x.length, limits, selected);
+        assertThat(Arrays.copyOf(selected, count), equalTo(bruteForceM4(x, y, limits)));
+    }
+
+    @Test
+    public void m4_2() {
+        // Limits outside the data and empty buckets
+        double[] x = new double[]{1, 2, 2, 2, 5, 8};
+        double[] y = new double[]{0, 3, -1, 2, 4, 1};
+        double[] limits = new double[]{-1, 0, 2, 3, 4, 10, 11};
+        int[] selected = new int[4 * (limits.length + 1)];
+        int count = LineReduction.m4(x, y, 0, x.length, limits, selected);
+        assertThat(Arrays.copyOf(selected, count), equalTo(new int[]{0, 1, 2, 3, 4, 5}));
+    }
+
+    @Test
+    public void m4_3() {
+        // Range of the arrays
+        double[] x = ramp(100);
+        double[] y = randomWalk(100, 2);
+        double[] limits = new double[]{20, 40, 60};
+        int[] selected = new int[4 * (limits.length + 1)];
+        int count = LineReduction.m4(x, y, 10, 50, limits, selected);
+        int[] expected = bruteForceM4(Arrays.copyOfRange(x, 10, 50), Arrays.copyOfRange(y, 10, 50), limits);
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] += 10;
+        }
+        assertThat(Arrays.copyOf(selected, count), equalTo(expected));
+    }
+
+    @Test
+    public void largestTriangleThreeBuckets1() {
+        double[] x = ramp(10000);
+        double[] y = randomWalk(10000, 3);
+        int[] selected = new int[100];
+        int count = LineReduction.largestTriangleThreeBuckets(x, y, 0, x.length, 100, selected);
+        assertThat(count, equalTo(100));
+        assertThat(selected[0], equalTo(0));
+        assertThat(selected[99], equalTo(9999));
+        for (int i = 1; i < count; i++) {
+            assertThat(selected[i] > selected[i - 1], equalTo(true));
+        }
+    }
+
+    @Test
+    public void largestTriangleThreeBuckets2() {
+        // A spike is always kept
+        double[] x = ramp(1000);
+        double[] y = new double[1000];
+        y[567] = 100;
+        int[] selected = new int[10];
+        int count = LineReduction.largestTriangleThreeBuckets(x, y, 0, x.length, 10, selected);
+        assertThat(count, equalTo(10));
+        assertThat(Arrays.binarySearch(selected, 567) >= 0, equalTo(true));
+    }
+
+    @Test
+    public void largestTriangleThreeBuckets3() {
+        // Fewer points than the threshold
+        double[] x = ramp(5);
+        double[] y = randomWalk(5, 4);
+        int[] selected = new int[5];
+        int count = LineReduction.largestTriangleThreeBuckets(x, y, 0, x.length, 10, selected);
+        assertThat(Arrays.copyOf(selected, count), equalTo(new int[]{0, 1, 2, 3, 4}));
+    }
+
+    @Test
+    public void reduce1() {
+        // Lists that do not wrap an array are copied
+        ListNumber x = ListNumbers.linearList(0, 0.5, 1000);
+        ArrayDouble y = new ArrayDouble(randomWalk(1000, 5));
+        double[] limits = new double[]{100, 200, 300};
+        int[] selected = LineReduction.reduce(x, y, 100, 700, ReductionScheme.M4, limits, 0);
+        double[] xArray = new double[1000];
+        for (int i = 0; i < xArray.length; i++) {
+            xArray[i] = x.getDouble(i);
+        }
+        int[] expected = new int[4 * (limits.length + 1)];
+        int count = LineReduction.m4(xArray, randomWalk(1000, 5), 100, 700, limits, expected);
+        assertThat(selected, equalTo(Arrays.copyOf(expected, count)));
+    }
+}
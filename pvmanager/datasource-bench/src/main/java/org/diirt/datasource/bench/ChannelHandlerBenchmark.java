@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.ChannelHandlerReadSubscription;
+import org.diirt.datasource.ChannelWriteCallback;
+import org.diirt.datasource.ForwardCache;
+import org.diirt.datasource.LatestValueCollector;
+import org.diirt.datasource.MultiplexedChannelHandler;
+import org.diirt.datasource.QueueCollector;
+import org.diirt.datasource.ValueCache;
+import org.diirt.datasource.ValueCacheImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the fan-out of a message from a {@link MultiplexedChannelHandler}
+ * to all its readers, with and without the snapshot dispatch.
+ * <p>
+ * Each reader subscribes the way a channel read expression does: a
+ * {@link ForwardCache} that forwards the value to a collector.
+ *
+ * @author carcassi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChannelHandlerBenchmark {
+
+    private static class BenchmarkChannelHandler extends MultiplexedChannelHandler<Object, Object> {
+
+        public BenchmarkChannelHandler(boolean snapshotDispatch) {
+            super("bench");
+            setSnapshotDispatch(snapshotDispatch);
+        }
+
+        @Override
+        protected void connect() {
+            processConnection(new Object());
+        }
+
+        @Override
+        protected void disconnect() {
+        }
+
+        @Override
+        protected void write(Object newValue, ChannelWriteCallback callback) {
+            throw new UnsupportedOperationException("Not supported.");
+        }
+
+        public void reader(ChannelHandlerReadSubscription subscription) {
+            addReader(subscription);
+        }
+
+        public void message(Object payload) {
+            processMessage(payload);
+        }
+    }
+
+    @Param({"1", "10", "100"})
+    private int nReaders;
+
+    @Param({"false", "true"})
+    private boolean snapshotDispatch;
+
+    private BenchmarkChannelHandler handler;
+    private final Double[] payloads = new Double[] {1.0, 2.0};
+    private int counter;
+
+    @Setup
+    public void setup() {
+        handler = new BenchmarkChannelHandler(snapshotDispatch);
+        for (int i = 0; i < nReaders; i++) {
+            ValueCache<Object> valueCache = new ValueCacheImpl<>(Object.class);
+            ForwardCache<Object, Object> cache = new ForwardCache<>(valueCache, valueCache, new LatestValueCollector<Object>());
+            handler.reader(new ChannelHandlerReadSubscription(cache,
+                    new QueueCollector<Exception>(10), new LatestValueCollector<Boolean>()));
+        }
+    }
+
+    @Benchmark
+    public void processMessage() {
+        // Alternate payloads so that every message changes the caches
+        counter++;
+        handler.message(payloads[counter & 1]);
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.LatestValueCollector;
+import org.diirt.datasource.LockFreeQueueCollector;
+import org.diirt.datasource.QueueCollector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the collectors that receive the values from the
+ * data source threads and hand them to the scanner.
+ * <p>
+ * The burst benchmarks write a burst of values and read them back on a
+ * single thread, as a scan would do. The contended benchmarks have three
+ * writers and one reader working on the same collector. All the
+ * benchmarks are grouped, since the collectors are shared by the group.
+ *
+ * @author carcassi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class CollectorBenchmark {
+
+    private static final int burstSize = 10;
+
+    private final QueueCollector<Object> queueCollector = new QueueCollector<>(100);
+    private final LockFreeQueueCollector<Object> lockFreeQueueCollector = new LockFreeQueueCollector<>(100);
+    private final LatestValueCollector<Object> latestValueCollector = new LatestValueCollector<>();
+    private final Object value = new Object();
+
+    @Benchmark
+    @Group("queueCollectorBurst")
+    public List<Object> queueCollectorBurst() {
+        for (int i = 0; i < burstSize; i++) {
+            queueCollector.writeValue(value);
+        }
+        return queueCollector.readValue();
+    }
+
+    @Benchmark
+    @Group("lockFreeQueueCollectorBurst")
+    public List<Object> lockFreeQueueCollectorBurst() {
+        for (int i = 0; i < burstSize; i++) {
+            lockFreeQueueCollector.writeValue(value);
+        }
+        return lockFreeQueueCollector.readValue();
+    }
+
+    @Benchmark
+    @Group("latestValueCollectorBurst")
+    public Object latestValueCollectorBurst() {
+        for (int i = 0; i < burstSize; i++) {
+            latestValueCollector.writeValue(value);
+        }
+        return latestValueCollector.readValue();
+    }
+
+    @Benchmark
+    @Group("queueCollectorContended")
+    @GroupThreads(3)
+    public void queueCollectorWrite() {
+        queueCollector.writeValue(value);
+    }
+
+    @Benchmark
+    @Group("queueCollectorContended")
+    @GroupThreads(1)
+    public List<Object> queueCollectorRead() {
+        return queueCollector.readValue();
+    }
+
+    @Benchmark
+    @Group("lockFreeQueueCollectorContended")
+    @GroupThreads(3)
+    public void lockFreeQueueCollectorWrite() {
+        lockFreeQueueCollector.writeValue(value);
+    }
+
+    @Benchmark
+    @Group("lockFreeQueueCollectorContended")
+    @GroupThreads(1)
+    public List<Object> lockFreeQueueCollectorRead() {
+        return lockFreeQueueCollector.readValue();
+    }
+
+    @Benchmark
+    @Group("latestValueCollectorContended")
+    @GroupThreads(3)
+    public void latestValueCollectorWrite() {
+        latestValueCollector.writeValue(value);
+    }
+
+    @Benchmark
+    @Group("latestValueCollectorContended")
+    @GroupThreads(1)
+    public Object latestValueCollectorRead() {
+        return latestValueCollector.readValue();
+    }
+}
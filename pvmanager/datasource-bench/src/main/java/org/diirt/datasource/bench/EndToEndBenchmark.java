@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.DataSource;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.PVReaderEvent;
+import org.diirt.datasource.PVReaderListener;
+import org.diirt.datasource.PVWriter;
+import org.diirt.datasource.loc.LocalDataSource;
+import org.diirt.datasource.sim.SimulationDataSource;
+import org.diirt.util.time.TimeDuration;
+import org.diirt.vtype.VNumber;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the full read pipeline: from the data source, through the
+ * collector, the scanner and the read function, to the notification of
+ * the reader.
+ * <p>
+ * The local benchmark measures the time between a write and the
+ * notification of the written value. The simulated benchmark measures
+ * the time between the creation of a reader and its first value.
+ *
+ * @author carcassi
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EndToEndBenchmark {
+
+    private static final TimeDuration maxRate = TimeDuration.ofMillis(1);
+
+    private DataSource localDataSource;
+    private DataSource simulationDataSource;
+    private PVReader<Object> reader;
+    private PVWriter<Object> writer;
+    private volatile double lastValue;
+    private double counter;
+
+    @Setup
+    public void setup() throws Exception {
+        localDataSource = new LocalDataSource();
+        simulationDataSource = SimulationDataSource.simulatedData();
+        reader = PVManager.read(channel("bench")).from(localDataSource)
+                .readListener(new PVReaderListener<Object>() {
+
+                    @Override
+                    public void pvChanged(PVReaderEvent<Object> event) {
+                        Object value = event.getPvReader().getValue();
+                        if (value instanceof VNumber) {
+                            lastValue = ((VNumber) value).getValue().doubleValue();
+                        }
+                    }
+                })
+                .maxRate(maxRate);
+        writer = PVManager.write(channel("bench")).from(localDataSource).sync();
+    }
+
+    @TearDown
+    public void tearDown() {
+        reader.close();
+        writer.close();
+        localDataSource.close();
+        simulationDataSource.close();
+    }
+
+    @Benchmark
+    public double localWriteToNotification() {
+        counter++;
+        writer.write(counter);
+        while (lastValue != counter) {
+            Thread.yield();
+        }
+        return lastValue;
+    }
+
+    @Benchmark
+    public Object simulationFirstValue() {
+        PVReader<Object> pv = PVManager.read(channel("ramp(0, 100, 1, 0.001)")).from(simulationDataSource)
+                .maxRate(maxRate);
+        try {
+            while (pv.getValue() == null) {
+                Thread.yield();
+            }
+            return pv.getValue();
+        } finally {
+            pv.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.ReadExpressionTester;
+import static org.diirt.datasource.formula.ExpressionLanguage.*;
+import org.diirt.vtype.VDouble;
+import org.diirt.vtype.ValueFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the evaluation of the read function of a formula, both when
+ * the inputs change at every scan and when they stay the same.
+ *
+ * @author carcassi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FormulaBenchmark {
+
+    private static final String formula = "=2*'x' + sin('y') / 'x'";
+
+    private ReadExpressionTester changingInputs;
+    private ReadExpressionTester constantInputs;
+    private final VDouble[] values = new VDouble[] {ValueFactory.newVDouble(1.0), ValueFactory.newVDouble(2.0)};
+    private int counter;
+
+    @Setup
+    public void setup() {
+        changingInputs = new ReadExpressionTester(formula(formula));
+        constantInputs = new ReadExpressionTester(formula(formula));
+        constantInputs.writeValue("x", values[0]);
+        constantInputs.writeValue("y", values[1]);
+    }
+
+    @Benchmark
+    public Object readValueChangingInputs() {
+        counter++;
+        changingInputs.writeValue("x", values[counter & 1]);
+        changingInputs.writeValue("y", values[(counter + 1) & 1]);
+        return changingInputs.getValue();
+    }
+
+    @Benchmark
+    public Object readValueConstantInputs() {
+        return constantInputs.getValue();
+    }
+}
@@ -52,15 +52,19 @@ public class ExpressionLanguage {
      * @return an expression for the formula
      */
     public static DesiredRateReadWriteExpression<?, Object> formula(String formula) {
-        DesiredRateExpression<?> exp = parseFormula(formula);
-            
-        if (exp instanceof LastOfChannelExpression) {
-            return new DesiredRateReadWriteExpressionImpl<>(exp, org.diirt.datasource.vtype.ExpressionLanguage.vType(exp.getName()));
-        } else if (exp instanceof ErrorDesiredRateExpression) {
-            return new DesiredRateReadWriteExpressionImpl<>(exp, readOnlyWriteExpression("Parsing error")); 
-        } else {
-            return new DesiredRateReadWriteExpressionImpl<>(exp, readOnlyWriteExpression("Read-only formula"));
+        DesiredRateExpression<?> exp;
+        try {
+            FormulaAst ast = FormulaAst.formula(formula);
+            if (ast.getType() == FormulaAst.Type.OP) {
+                // The pure functions are shared by the readers of the same data source
+                exp = new SharedFormulaExpression(ast, expressionName(ast));
+            } else {
+                exp = ast.toExpression();
+            }
+        } catch(RuntimeException ex) {
+            exp = errorDesiredRateExpression(ex);
         }
+        return readWriteFormula(exp);
     }
     
     /**
@@ -71,8 +75,10 @@ public class ExpressionLanguage {
      * @return an expression for the formula
      */
     public static DesiredRateReadWriteExpression<?, Object> formula(FormulaAst ast) {
-        DesiredRateExpression<?> exp = ast.toExpression();
-            
+        return readWriteFormula(ast.toExpression());
+    }
+    
+    static DesiredRateReadWriteExpression<?, Object> readWriteFormula(DesiredRateExpression<?> exp) {
         if (exp instanceof LastOfChannelExpression) {
             return new DesiredRateReadWriteExpressionImpl<>(exp, org.diirt.datasource.vtype.ExpressionLanguage.vType(exp.getName()));
         } else if (exp instanceof ErrorDesiredRateExpression) {
@@ -181,9 +187,27 @@ public class ExpressionLanguage {
         return function(opName, new DesiredRateExpressionListImpl<Object>().and(arg));
     }
     
+    /**
+     * The name of the expression created by {@link FormulaAst#toExpression()}.
+     */
+    static String expressionName(FormulaAst ast) {
+        if (ast.getType() != FormulaAst.Type.OP) {
+            return ast.toExpression().getName();
+        }
+        List<String> argNames = new ArrayList<>(ast.getChildren().size());
+        for (FormulaAst child : ast.getChildren()) {
+            argNames.add(expressionName(child));
+        }
+        return FormulaFunctions.format((String) ast.getValue(), argNames);
+    }
+    
     static DesiredRateExpression<?> function(String function, DesiredRateExpressionList<?> args) {
+        return function(function, args, false);
+    }
+    
+    static DesiredRateExpression<?> function(String function, DesiredRateExpressionList<?> args, boolean shared) {
         Collection<FormulaFunction> matchedFunctions = FormulaRegistry.getDefault().findFunctions(function, args.getDesiredRateExpressions().size());
-        FormulaReadFunction readFunction = new FormulaReadFunction(Expressions.functionsOf(args), matchedFunctions, function);
+        FormulaReadFunction readFunction = new FormulaReadFunction(Expressions.functionsOf(args), matchedFunctions, function, shared, FormulaRegistry.getDefault());
         List<String> argNames = new ArrayList<>(args.getDesiredRateExpressions().size());
         for (DesiredRateExpression<? extends Object> arg : args.getDesiredRateExpressions()) {
             argNames.add(arg.getName());
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.diirt.datasource.DataSource;
+import org.diirt.datasource.expression.DesiredRateExpression;
+import org.diirt.datasource.expression.DesiredRateExpressionImpl;
+import org.diirt.datasource.expression.DesiredRateExpressionList;
+import org.diirt.datasource.expression.DesiredRateExpressionListImpl;
+import org.diirt.datasource.expression.DesiredRateReadWriteExpression;
+import static org.diirt.datasource.formula.ExpressionLanguage.*;
+
+/**
+ * Creates formula expressions that share the identical subexpressions.
+ * <p>
+ * All the formulas created by the same compiler share the channels
+ * and the pure functions that are structurally identical in their
+ * {@link FormulaAst}. For example, if many formulas use "mean('a', 'b')",
+ * the mean is calculated only once when 'a' or 'b' change, regardless
+ * of how many readers are open. Functions that are not pure, and
+ * all functions that depend on them, are not shared.
+ * <p>
+ * All the formulas of a compiler should be read from the same data source.
+ * The shared expressions are released when no longer used by any reader.
+ * <p>
+ * The formulas created with {@link ExpressionLanguage#formula(java.lang.String)}
+ * are compiled, when connected, by the compiler of the data source of the reader.
+ *
+ * @author carcassi
+ */
+public class FormulaCompiler {
+
+    private static class SharedReference extends WeakReference<DesiredRateExpression<?>> {
+        private final FormulaAst ast;
+
+        SharedReference(FormulaAst ast, DesiredRateExpression<?> expression, ReferenceQueue<DesiredRateExpression<?>> queue) {
+            super(expression, queue);
+            this.ast = ast;
+        }
+    }
+
+    // Guarded by itself
+    private static final Map<DataSource, FormulaCompiler> dataSourceCompilers = new WeakHashMap<>();
+
+    // Guarded by this
+    private final Map<FormulaAst, SharedReference> sharedExpressions = new HashMap<>();
+    private final ReferenceQueue<DesiredRateExpression<?>> releasedExpressions = new ReferenceQueue<>();
+
+    /**
+     * Returns the expression that will return the live value of the
+     * given formula, sharing the subexpressions with the other formulas
+     * of this compiler.
+     *
+     * @param formula the formula to parse
+     * @return an expression for the formula
+     */
+    public DesiredRateReadWriteExpression<?, Object> formula(String formula) {
+        FormulaAst ast;
+        try {
+            ast = FormulaAst.formula(formula);
+        } catch (RuntimeException ex) {
+            return readWriteFormula(errorDesiredRateExpression(ex));
+        }
+        return formula(ast);
+    }
+
+    /**
+     * Returns the expression corresponding to the formula represented by the
+     * given Abstract Syntax Tree, sharing the subexpressions with
+     * the other formulas of this compiler.
+     *
+     * @param ast a formula abstract syntax tree
+     * @return an expression for the formula
+     */
+    public DesiredRateReadWriteExpression<?, Object> formula(FormulaAst ast) {
+        if (ast.getType() != FormulaAst.Type.OP) {
+            // Nothing to share: also keeps single channels writable
+            return ExpressionLanguage.formula(ast);
+        }
+
+        // Each formula gets its own top expression, so that it can be
+        // renamed independently
+        return readWriteFormula(topExpression(sharedExpression(ast)));
+    }
+
+    /**
+     * The compiler for the formulas read from the given data source.
+     *
+     * @param dataSource a data source
+     * @return the compiler of the data source
+     */
+    static FormulaCompiler forDataSource(DataSource dataSource) {
+        synchronized (dataSourceCompilers) {
+            FormulaCompiler compiler = dataSourceCompilers.get(dataSource);
+            if (compiler == null) {
+                compiler = new FormulaCompiler();
+                dataSourceCompilers.put(dataSource, compiler);
+            }
+            return compiler;
+        }
+    }
+
+    /**
+     * The expression for the given formula, shared with the other formulas
+     * of this compiler where possible.
+     *
+     * @param ast a formula abstract syntax tree
+     * @return the shared expression
+     */
+    synchronized DesiredRateExpression<?> sharedExpression(FormulaAst ast) {
+        purgeReleased();
+        return compile(ast);
+    }
+
+    private static <T> DesiredRateExpression<T> topExpression(DesiredRateExpression<T> shared) {
+        return new DesiredRateExpressionImpl<>(shared, shared.getFunction(), shared.getName());
+    }
+
+    /**
+     * The number of shared expressions currently in use.
+     *
+     * @return the number of shared channels and functions
+     */
+    synchronized int getSharedExpressionCount() {
+        purgeReleased();
+        return sharedExpressions.size();
+    }
+
+    // Must be called with the lock held
+    private DesiredRateExpression<?> compile(FormulaAst ast) {
+        if (ast.getType() != FormulaAst.Type.OP && ast.getType() != FormulaAst.Type.CHANNEL) {
+            // Constants are cheap and immutable
+            return ast.toExpression();
+        }
+
+        DesiredRateExpression<?> expression = findShared(ast);
+        if (expression != null) {
+            return expression;
+        }
+
+        if (ast.getType() == FormulaAst.Type.CHANNEL) {
+            expression = new SharedChannelExpression((String) ast.getValue());
+        } else {
+            String functionName = (String) ast.getValue();
+            DesiredRateExpressionList<Object> args = new DesiredRateExpressionListImpl<>();
+            boolean shareable = isPure(functionName, ast.getChildren().size());
+            for (FormulaAst child : ast.getChildren()) {
+                args.and(compile(child));
+                shareable = shareable && (child.getType() != FormulaAst.Type.OP || findShared(child) != null);
+            }
+            if (!shareable) {
+                return function(functionName, args, false);
+            }
+            expression = function(functionName, args, true);
+        }
+        sharedExpressions.put(ast, new SharedReference(ast, expression, releasedExpressions));
+        return expression;
+    }
+
+    private DesiredRateExpression<?> findShared(FormulaAst ast) {
+        SharedReference reference = sharedExpressions.get(ast);
+        if (reference == null) {
+            return null;
+        }
+        return reference.get();
+    }
+
+    private static boolean isPure(String functionName, int nArguments) {
+        Collection<FormulaFunction> functions = FormulaRegistry.getDefault().findFunctions(functionName, nArguments);
+        if (functions.isEmpty()) {
+            return false;
+        }
+        for (FormulaFunction function : functions) {
+            if (!function.isPure() || function instanceof StatefulFormulaFunction) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void purgeReleased() {
+        Reference<? extends DesiredRateExpression<?>> released;
+        while ((released = releasedExpressions.poll()) != null) {
+            SharedReference reference = (SharedReference) released;
+            if (sharedExpressions.get(reference.ast) == reference) {
+                sharedExpressions.remove(reference.ast);
+            }
+        }
+    }
+}
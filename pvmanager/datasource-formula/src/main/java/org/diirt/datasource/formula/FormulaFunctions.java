@@ -95,6 +95,74 @@ public class FormulaFunctions {
         return null;
     }
 
+    /**
+     * Checks whether the function will accept arguments of the given classes.
+     * A null class stands for a null argument, which is accepted by
+     * any type.
+     *
+     * @param argumentClasses the classes of the arguments
+     * @param function a function
+     * @return true if the function can accept arguments of the given classes
+     */
+    public static boolean matchArgumentClasses(List<Class<?>> argumentClasses, FormulaFunction function) {
+        List<Class<?>> types = function.getArgumentTypes();
+
+        if (!matchArgumentCount(argumentClasses.size(), function)) {
+            return false;
+        }
+
+        for (int i = 0; i < argumentClasses.size(); i++) {
+            int j = Math.min(i, types.size() - 1);
+            Class<?> argumentClass = argumentClasses.get(i);
+            if (argumentClass != null && !types.get(j).isAssignableFrom(argumentClass)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the most specific function that can accept arguments of the
+     * given classes. A function is more specific than another if each of
+     * its argument types is a subtype of the corresponding one
+     * in the other (e.g. VInt is more specific than VNumber). If no function
+     * is more specific than all the others, the first one found is returned.
+     *
+     * @param argumentClasses the classes of the arguments; null for null arguments
+     * @param formulaFunctions a collection of functions
+     * @return the most specific match or null
+     */
+    public static FormulaFunction findMostSpecificMatch(List<Class<?>> argumentClasses, Collection<FormulaFunction> formulaFunctions) {
+        FormulaFunction bestMatch = null;
+        for (FormulaFunction formulaFunction : formulaFunctions) {
+            if (matchArgumentClasses(argumentClasses, formulaFunction)) {
+                if (bestMatch == null || isMoreSpecific(formulaFunction, bestMatch, argumentClasses.size())) {
+                    bestMatch = formulaFunction;
+                }
+            }
+        }
+
+        return bestMatch;
+    }
+
+    private static boolean isMoreSpecific(FormulaFunction function, FormulaFunction other, int nArguments) {
+        List<Class<?>> types = function.getArgumentTypes();
+        List<Class<?>> otherTypes = other.getArgumentTypes();
+        boolean strictlyMore = false;
+        for (int i = 0; i < nArguments; i++) {
+            Class<?> type = types.get(Math.min(i, types.size() - 1));
+            Class<?> otherType = otherTypes.get(Math.min(i, otherTypes.size() - 1));
+            if (!otherType.isAssignableFrom(type)) {
+                return false;
+            }
+            if (!type.equals(otherType)) {
+                strictlyMore = true;
+            }
+        }
+        // At equal types, prefer fixed arguments to varargs
+        return strictlyMore || (other.isVarArgs() && !function.isVarArgs());
+    }
+
     /**
      * Finds the functions that match the given types as arguments.
      * 
@@ -5,13 +5,32 @@
 package org.diirt.datasource.formula;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import org.diirt.datasource.PVDirector;
 import org.diirt.datasource.ReadFunction;
 import org.diirt.vtype.ValueUtil;
 
 /**
+ * The read function that evaluates a {@link FormulaFunction} on the
+ * values of its arguments.
+ * <p>
+ * The evaluation does not allocate when the arguments do not change type:
+ * the arguments are compared in place with the previous ones, and the function
+ * is resolved again only when the type of an argument changes. The resolved
+ * functions are cached by the types of the arguments. If the arguments
+ * did not change, a pure function returns the same value instance, so that
+ * the enclosing functions can also skip the calculation. When created by
+ * the {@link FormulaRegistry}, the function is resolved through the registry
+ * dispatch index, which is shared by all the formulas.
+ * <p>
+ * A shared function can be evaluated by the scanners of multiple readers
+ * (see {@link FormulaCompiler}): the evaluation is synchronized, and
+ * the readers that scan after the first get the value already calculated.
  *
  * @author carcassi
  */
@@ -24,8 +43,22 @@ class FormulaReadFunction implements ReadFunction<Object> {
     public FormulaFunction lastFormula;
     public Object lastValue;
     public volatile PVDirector<?> director;
+    private final boolean shared;
+    private final FormulaRegistry registry;
+    // The registered function lastFormula was created from
+    private FormulaFunction lastMatch;
+    // The classes of the arguments used to resolve lastFormula
+    private final Class<?>[] argumentTypes;
+    // The stateless functions already resolved, by argument types
+    private final Map<List<Class<?>>, FormulaFunction> resolvedFormulas = new HashMap<>();
 
     FormulaReadFunction(List<ReadFunction<?>> argumentFunctions, Collection<FormulaFunction> formulaMatches, String functionName) {
+        this(argumentFunctions, formulaMatches, functionName, false, null);
+    }
+
+    FormulaReadFunction(List<ReadFunction<?>> argumentFunctions, Collection<FormulaFunction> formulaMatches, String functionName, boolean shared, FormulaRegistry registry) {
+        this.shared = shared;
+        this.registry = registry;
         this.argumentFunctions = argumentFunctions;
         this.formulaMatches = formulaMatches;
         this.argumentValues = new ArrayList<>(argumentFunctions.size());
@@ -33,41 +66,62 @@ class FormulaReadFunction implements ReadFunction<Object> {
             argumentValues.add(null);
         }
         this.functionName = functionName;
+        this.argumentTypes = new Class<?>[argumentFunctions.size()];
     }
 
     void setDirector(PVDirector<?> director) {
         this.director = director;
     }
+
+    boolean isShared() {
+        return shared;
+    }
     
    @Override
     public Object readValue() {
+        if (shared) {
+            synchronized (this) {
+                return calculateValue();
+            }
+        }
+        return calculateValue();
+    }
+    
+    private Object calculateValue() {
         if (formulaMatches.isEmpty()) {
             throw new RuntimeException("No function named '" + functionName + "'  is defined");
         }
         
-        List<Object> previousValues = new ArrayList<>(argumentValues);
+        // Update the arguments in place, keeping track of what changed
+        boolean argumentsChanged = false;
+        boolean typesChanged = false;
         for (int i = 0; i < argumentFunctions.size(); i++) {
-            argumentValues.set(i, argumentFunctions.get(i).readValue());
+            Object previousValue = argumentValues.get(i);
+            Object newValue = argumentFunctions.get(i).readValue();
+            if (newValue != previousValue && !Objects.equals(newValue, previousValue)) {
+                argumentsChanged = true;
+                argumentValues.set(i, newValue);
+                Class<?> newType = newValue == null ? null : newValue.getClass();
+                if (newType != argumentTypes[i]) {
+                    typesChanged = true;
+                    argumentTypes[i] = newType;
+                }
+            }
         }
-        if (previousValues.equals(argumentValues) && lastFormula != null && lastFormula.isPure()) {
+        if (!argumentsChanged && lastFormula != null && lastFormula.isPure()) {
             return lastValue;
         }
         
-        if (lastFormula == null || !FormulaFunctions.matchArgumentTypes(argumentValues, lastFormula)) {
-            if (lastFormula instanceof StatefulFormulaFunction) {
-                ((StatefulFormulaFunction) lastFormula).dispose();
-            }
-            
-            lastFormula = FormulaFunctions.findFirstMatch(argumentValues, formulaMatches);
-            // If the function is stateful, create a new copy
-            // The copy will be kept until the same match works:
-            // is that the right behavior?
-            if (lastFormula instanceof StatefulFormulaFunction) {
-                lastFormula = FormulaFunctions.createInstance((StatefulFormulaFunction) lastFormula);
-            }
-            
-            if (lastFormula instanceof DynamicFormulaFunction) {
-                ((DynamicFormulaFunction) lastFormula).setDirector(director);
+        // The types of the arguments are the only thing that determines
+        // which function matches
+        if (lastFormula == null || typesChanged) {
+            FormulaFunction match = resolveFormula();
+            if (match != lastMatch || lastFormula == null) {
+                if (lastFormula instanceof StatefulFormulaFunction) {
+                    ((StatefulFormulaFunction) lastFormula).dispose();
+                }
+                lastMatch = match;
+                lastFormula = createFormula(match);
             }
         }
         
@@ -91,4 +145,36 @@ class FormulaReadFunction implements ReadFunction<Object> {
         return lastValue;
     }
     
+    private FormulaFunction resolveFormula() {
+        List<Class<?>> types = Arrays.<Class<?>>asList(argumentTypes.clone());
+        FormulaFunction formula = resolvedFormulas.get(types);
+        if (formula != null) {
+            return formula;
+        }
+        
+        if (registry != null) {
+            formula = registry.findFunction(functionName, types);
+        } else {
+            formula = FormulaFunctions.findMostSpecificMatch(types, formulaMatches);
+        }
+        if (formula != null) {
+            resolvedFormulas.put(types, formula);
+        }
+        return formula;
+    }
+    
+    private FormulaFunction createFormula(FormulaFunction match) {
+        // If the function is stateful, create a new copy
+        // The copy will be kept until the same match works:
+        // is that the right behavior?
+        if (match instanceof StatefulFormulaFunction) {
+            FormulaFunction formula = FormulaFunctions.createInstance((StatefulFormulaFunction) match);
+            if (formula instanceof DynamicFormulaFunction) {
+                ((DynamicFormulaFunction) formula).setDirector(director);
+            }
+            return formula;
+        }
+        return match;
+    }
+    
 }
@@ -6,10 +6,13 @@ package org.diirt.datasource.formula;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -51,11 +54,46 @@ public class FormulaRegistry {
         for (FormulaFunction formulaFunction : functionSet.getFunctions()) {
             registerFormulaFunction(formulaFunction);
         }
+        // The new functions may be better matches: start a new index
+        dispatchIndex = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * The key of the dispatch index: function name and classes of the arguments.
+     */
+    private static final class DispatchKey {
+        private final String functionName;
+        private final List<Class<?>> argumentClasses;
+        private final int hash;
+
+        DispatchKey(String functionName, List<Class<?>> argumentClasses) {
+            this.functionName = functionName;
+            this.argumentClasses = argumentClasses;
+            this.hash = 31 * functionName.hashCode() + argumentClasses.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof DispatchKey)) {
+                return false;
+            }
+            DispatchKey other = (DispatchKey) obj;
+            return hash == other.hash && functionName.equals(other.functionName)
+                    && argumentClasses.equals(other.argumentClasses);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
     
     private final Map<String, FormulaFunctionSet> functionSets = new ConcurrentHashMap<>();
     private final Map<String, Map<Integer, Collection<FormulaFunction>>> formulaFunctions = new ConcurrentHashMap<>();
     private final Map<String, Object> constants = new ConcurrentHashMap<>();
+    // Most specific match by name and argument classes, filled lazily.
+    // Replaced when a set is registered, so that stale lookups are discarded.
+    private volatile Map<DispatchKey, Optional<FormulaFunction>> dispatchIndex = new ConcurrentHashMap<>();
     
     {
         constants.put("TRUE", ValueFactory.toVType(true));
@@ -144,6 +182,33 @@ public class FormulaRegistry {
         return functions;
     }
     
+    /**
+     * Finds the most specific registered function with the given name
+     * that accepts arguments of the given classes.
+     * <p>
+     * The result is cached, so that resolving the same name and classes again
+     * does not scan the registered functions. The cache is cleared
+     * when a new function set is registered.
+     * 
+     * @param functionName the name of the function
+     * @param argumentClasses the classes of the arguments; null for null arguments
+     * @return the most specific match or null
+     * @see FormulaFunctions#findMostSpecificMatch(java.util.List, java.util.Collection) 
+     */
+    public FormulaFunction findFunction(String functionName, List<Class<?>> argumentClasses) {
+        Map<DispatchKey, Optional<FormulaFunction>> index = dispatchIndex;
+        DispatchKey key = new DispatchKey(functionName, argumentClasses);
+        Optional<FormulaFunction> match = index.get(key);
+        if (match == null) {
+            // Copy the classes, as the key outlives the caller's list
+            key = new DispatchKey(functionName, Collections.unmodifiableList(new ArrayList<>(argumentClasses)));
+            match = Optional.ofNullable(FormulaFunctions.findMostSpecificMatch(argumentClasses,
+                    findFunctions(functionName, argumentClasses.size())));
+            index.put(key, match);
+        }
+        return match.orElse(null);
+    }
+    
     /**
      * Returns the value of the constant with the given name
      * 
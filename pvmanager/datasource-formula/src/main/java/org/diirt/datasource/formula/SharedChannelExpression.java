@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import org.diirt.datasource.LatestValueCollector;
+import org.diirt.datasource.PVDirector;
+import org.diirt.datasource.ReadFunction;
+import org.diirt.datasource.ReadRecipeBuilder;
+import org.diirt.datasource.expression.DesiredRateExpressionImpl;
+import org.diirt.datasource.expression.DesiredRateExpressionListImpl;
+import static org.diirt.datasource.ExpressionLanguage.*;
+
+/**
+ * The latest value of a channel, shared by the formulas of multiple readers.
+ * <p>
+ * Each reader connects the channel with its own collector, so that its
+ * scanner is notified of the new values. All the collectors also write
+ * into the same slot, which is what the shared functions read.
+ *
+ * @author carcassi
+ */
+class SharedChannelExpression extends DesiredRateExpressionImpl<Object> {
+
+    private static class SharedValue implements ReadFunction<Object> {
+        private volatile Object value;
+
+        @Override
+        public Object readValue() {
+            return value;
+        }
+    }
+
+    SharedChannelExpression(String channelName) {
+        super(new DesiredRateExpressionListImpl<Object>(), new SharedValue(), channelName);
+    }
+
+    @Override
+    public void fillReadRecipe(PVDirector director, ReadRecipeBuilder builder) {
+        final SharedValue sharedValue = (SharedValue) getFunction();
+        LatestValueCollector<Object> collector = new LatestValueCollector<Object>() {
+
+            @Override
+            public void writeValue(Object newValue) {
+                // Update the shared value before notifying the scanner
+                sharedValue.value = newValue;
+                super.writeValue(newValue);
+            }
+        };
+        new DesiredRateExpressionImpl<>(channel(getName(), Object.class, Object.class), collector, getName())
+                .fillReadRecipe(director, builder);
+    }
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import org.diirt.datasource.DataSource;
+import org.diirt.datasource.PVDirector;
+import org.diirt.datasource.ReadFunction;
+import org.diirt.datasource.ReadRecipeBuilder;
+import org.diirt.datasource.expression.DesiredRateExpression;
+import org.diirt.datasource.expression.DesiredRateExpressionImpl;
+import org.diirt.datasource.expression.DesiredRateExpressionListImpl;
+
+/**
+ * A formula that shares its subexpressions with the formulas of the other
+ * readers of the same data source.
+ * <p>
+ * The data source is known only when the reader connects: the formula
+ * is compiled at that point by the {@link FormulaCompiler} of the data
+ * source. Readers without a data source get expressions of their own.
+ *
+ * @author carcassi
+ */
+class SharedFormulaExpression extends DesiredRateExpressionImpl<Object> {
+
+    private static class CompiledValue implements ReadFunction<Object> {
+        private volatile ReadFunction<?> function;
+
+        @Override
+        public Object readValue() {
+            ReadFunction<?> compiledFunction = function;
+            if (compiledFunction == null) {
+                return null;
+            }
+            return compiledFunction.readValue();
+        }
+    }
+
+    private final FormulaAst ast;
+    // Keeps the shared expressions in use while the formula is
+    private volatile DesiredRateExpression<?> compiledExpression;
+
+    SharedFormulaExpression(FormulaAst ast, String name) {
+        super(new DesiredRateExpressionListImpl<Object>(), new CompiledValue(), name);
+        this.ast = ast;
+    }
+
+    /**
+     * The expression the formula was compiled to when connected.
+     *
+     * @return the compiled expression; null if not connected
+     */
+    DesiredRateExpression<?> getCompiledExpression() {
+        return compiledExpression;
+    }
+
+    @Override
+    public void fillReadRecipe(PVDirector director, ReadRecipeBuilder builder) {
+        DataSource dataSource = director.getDataSource();
+        DesiredRateExpression<?> expression;
+        if (dataSource == null) {
+            expression = ast.toExpression();
+        } else {
+            expression = FormulaCompiler.forDataSource(dataSource).sharedExpression(ast);
+        }
+        compiledExpression = expression;
+        ((CompiledValue) getFunction()).function = expression.getFunction();
+        expression.fillReadRecipe(director, builder);
+    }
+
+}
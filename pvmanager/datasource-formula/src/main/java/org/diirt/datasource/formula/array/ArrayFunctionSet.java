@@ -162,6 +162,7 @@ public class ArrayFunctionSet extends FormulaFunctionSet {
                             }
                         })
                 .addFormulaFunction(new DftFormulaFunction())
+                .addFormulaFunction(new PowerSpectrumFormulaFunction())
                 .addFormulaFunction(new ArrayRangeOfFormulaFunction())
                 .addFormulaFunction(new DimDisplayFormulaFunction())
                 .addFormulaFunction(new NdArrayFormulaFunction())
@@ -7,7 +7,6 @@ package org.diirt.datasource.formula.array;
 import java.util.Arrays;
 import java.util.List;
 import org.diirt.datasource.formula.FormulaFunction;
-import org.diirt.util.array.ArrayDouble;
 import org.diirt.util.array.ListDouble;
 
 import org.diirt.util.array.ListMath;
@@ -66,8 +65,7 @@ class DftFormulaFunction implements FormulaFunction {
             throw new IllegalArgumentException("Only 1D array supported for DFT");
         }
         
-        // TODO: no need to allocate empty array
-        List<ListNumber> fft = ListMath.dft(array.getData(), new ArrayDouble(new double[array.getData().size()]));
+        List<ListNumber> fft = ListMath.dft(array.getData());
         final ListNumber real = fft.get(0);
         final ListNumber imaginary = fft.get(1);
         ListNumber modulus = new ListDouble() {
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula.array;
+
+import static org.diirt.vtype.ValueFactory.displayNone;
+import static org.diirt.vtype.ValueFactory.newVNumberArray;
+
+import java.util.Arrays;
+import java.util.List;
+import org.diirt.datasource.formula.FormulaFunction;
+import org.diirt.datasource.util.NullUtils;
+
+import org.diirt.util.array.FourierTransform;
+import org.diirt.util.array.ListMath;
+import org.diirt.vtype.VNumberArray;
+import org.diirt.vtype.VString;
+import org.diirt.vtype.ValueUtil;
+
+/**
+ * Power spectrum of a 1D array, after applying a window
+ * (rectangular, hann, hamming or blackman).
+ *
+ * @author carcassi
+ */
+class PowerSpectrumFormulaFunction implements FormulaFunction {
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+    @Override
+    public boolean isVarArgs() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return "powerSpectrum";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Power spectrum of the array, up to the Nyquist frequency, using the given window";
+    }
+
+    @Override
+    public List<Class<?>> getArgumentTypes() {
+        return Arrays.<Class<?>>asList(VNumberArray.class, VString.class);
+    }
+
+    @Override
+    public List<String> getArgumentNames() {
+        return Arrays.asList("array1D", "window");
+    }
+
+    @Override
+    public Class<?> getReturnType() {
+        return VNumberArray.class;
+    }
+
+    @Override
+    public Object calculate(final List<Object> args) {
+        if (NullUtils.containsNull(args)) {
+            return null;
+        }
+
+        VNumberArray array = (VNumberArray) args.get(0);
+        VString windowName = (VString) args.get(1);
+        if (array.getSizes().size() != 1) {
+            throw new IllegalArgumentException("Only 1D array supported for power spectrum");
+        }
+        FourierTransform.Window window;
+        try {
+            window = FourierTransform.Window.valueOf(windowName.getValue().trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown window '" + windowName.getValue()
+                    + "' (supported: " + Arrays.toString(FourierTransform.Window.values()) + ")");
+        }
+
+        return newVNumberArray(ListMath.powerSpectrum(array.getData(), window),
+                ValueUtil.highestSeverityOf(args, false),
+                ValueUtil.latestValidTimeOrNowOf(args),
+                displayNone());
+    }
+}
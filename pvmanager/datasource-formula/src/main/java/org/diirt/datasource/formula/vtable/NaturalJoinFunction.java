@@ -15,7 +15,7 @@ import org.diirt.util.array.ListInt;
 import org.diirt.vtype.VString;
 import org.diirt.vtype.VTable;
 import org.diirt.vtype.VType;
-import org.diirt.vtype.table.VTableFactory;
+import org.diirt.vtype.table.VTableIndexCache;
 
 /**
  * Natural join of a set of tables.
@@ -23,6 +23,12 @@ import org.diirt.vtype.table.VTableFactory;
  * @author carcassi
  */
 class NaturalJoinFunction implements FormulaFunction {
+    
+    private final VTableIndexCache indexCache;
+
+    NaturalJoinFunction(VTableIndexCache indexCache) {
+        this.indexCache = indexCache;
+    }
 
     @Override
     public boolean isPure() {
@@ -68,7 +74,7 @@ class NaturalJoinFunction implements FormulaFunction {
             }
         }
         
-        return VTableFactory.join(tables);
+        return indexCache.join(tables);
     }
     
 }
@@ -17,6 +17,7 @@ import org.diirt.vtype.VString;
 import org.diirt.vtype.VTable;
 import org.diirt.vtype.VType;
 import org.diirt.vtype.table.VTableFactory;
+import org.diirt.vtype.table.VTableIndexCache;
 
 /**
  * Selects the rows of the table for which the column value is within the range.
@@ -24,6 +25,12 @@ import org.diirt.vtype.table.VTableFactory;
  * @author carcassi
  */
 class TableRangeArrayFilterFunction implements FormulaFunction {
+    
+    private final VTableIndexCache indexCache;
+
+    TableRangeArrayFilterFunction(VTableIndexCache indexCache) {
+        this.indexCache = indexCache;
+    }
 
     @Override
     public boolean isPure() {
@@ -74,7 +81,7 @@ class TableRangeArrayFilterFunction implements FormulaFunction {
             throw new IllegalArgumentException("Range array must be of 2 elements");
         }
         
-        VTable result = VTableFactory.tableRangeFilter(table, columnName.getValue(), ValueFactory.newVDouble(range.getData().getDouble(0)), ValueFactory.newVDouble(range.getData().getDouble(1)));
+        VTable result = VTableFactory.select(table, indexCache.rangeSelection(table, columnName.getValue(), ValueFactory.newVDouble(range.getData().getDouble(0)), ValueFactory.newVDouble(range.getData().getDouble(1))));
         
         return result;
     }
@@ -15,6 +15,7 @@ import org.diirt.vtype.VString;
 import org.diirt.vtype.VTable;
 import org.diirt.vtype.VType;
 import org.diirt.vtype.table.VTableFactory;
+import org.diirt.vtype.table.VTableIndexCache;
 
 /**
  * Extracts a columns from a VTable.
@@ -22,6 +23,12 @@ import org.diirt.vtype.table.VTableFactory;
  * @author carcassi
  */
 class TableRangeFilterFunction implements FormulaFunction {
+    
+    private final VTableIndexCache indexCache;
+
+    TableRangeFilterFunction(VTableIndexCache indexCache) {
+        this.indexCache = indexCache;
+    }
 
     @Override
     public boolean isPure() {
@@ -69,7 +76,7 @@ class TableRangeFilterFunction implements FormulaFunction {
             return null;
         }
         
-        VTable result = VTableFactory.tableRangeFilter(table, columnName.getValue(), min, max);
+        VTable result = VTableFactory.select(table, indexCache.rangeSelection(table, columnName.getValue(), min, max));
         
         return result;
     }
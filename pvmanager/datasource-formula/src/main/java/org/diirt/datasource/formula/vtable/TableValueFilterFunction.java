@@ -15,6 +15,7 @@ import org.diirt.vtype.VString;
 import org.diirt.vtype.VTable;
 import org.diirt.vtype.VType;
 import org.diirt.vtype.table.VTableFactory;
+import org.diirt.vtype.table.VTableIndexCache;
 
 /**
  * Extracts a columns from a VTable.
@@ -22,6 +23,12 @@ import org.diirt.vtype.table.VTableFactory;
  * @author carcassi
  */
 class TableValueFilterFunction implements FormulaFunction {
+    
+    private final VTableIndexCache indexCache;
+
+    TableValueFilterFunction(VTableIndexCache indexCache) {
+        this.indexCache = indexCache;
+    }
 
     @Override
     public boolean isPure() {
@@ -68,7 +75,7 @@ class TableValueFilterFunction implements FormulaFunction {
             return null;
         }
         
-        VTable result = VTableFactory.tableValueFilter(table, columnName.getValue(), value);
+        VTable result = VTableFactory.select(table, indexCache.valueSelection(table, columnName.getValue(), value));
         
         return result;
     }
@@ -6,6 +6,7 @@ package org.diirt.datasource.formula.vtable;
 
 import org.diirt.datasource.formula.FormulaFunctionSet;
 import org.diirt.datasource.formula.FormulaFunctionSetDescription;
+import org.diirt.vtype.table.VTableIndexCache;
 
 /**
  Formula functions that operate on {@link org.diirt.vtype.VTable}s.
@@ -18,6 +19,11 @@ public class VTableFunctionSet extends FormulaFunctionSet {
      * Creates a new set.
      */
     public VTableFunctionSet() {
+        this(new VTableIndexCache());
+    }
+    
+    // The index cache is shared by filters and joins
+    private VTableFunctionSet(VTableIndexCache indexCache) {
         super(new FormulaFunctionSetDescription("vtable", "Function to aggregate and manipulate tables")
                 .addFormulaFunction(new ColumnOfVTableFunction())
                 .addFormulaFunction(new ColumnFromVNumberArrayFunction())
@@ -26,12 +32,12 @@ public class VTableFunctionSet extends FormulaFunctionSet {
                 .addFormulaFunction(new RangeFormulaFunction())
                 .addFormulaFunction(new StepFormulaFunction())
                 .addFormulaFunction(new ColumnFromListNumberGeneratorFunction())
-                .addFormulaFunction(new NaturalJoinFunction())
+                .addFormulaFunction(new NaturalJoinFunction(indexCache))
                 .addFormulaFunction(new TableUnionFunction())
-                .addFormulaFunction(new TableRangeFilterFunction())
-                .addFormulaFunction(new TableRangeArrayFilterFunction())
+                .addFormulaFunction(new TableRangeFilterFunction(indexCache))
+                .addFormulaFunction(new TableRangeArrayFilterFunction(indexCache))
                 .addFormulaFunction(new TableStringMatchFilterFunction())
-                .addFormulaFunction(new TableValueFilterFunction())
+                .addFormulaFunction(new TableValueFilterFunction(indexCache))
                 );
     }
 
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import org.diirt.datasource.ChannelReadRecipe;
+import org.diirt.datasource.DataSource;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.ReadExpressionTester;
+import org.diirt.datasource.ValueCache;
+import org.diirt.datasource.expression.DesiredRateExpression;
+import org.diirt.datasource.expression.DesiredRateReadWriteExpression;
+import org.diirt.datasource.test.MockDataSource;
+import org.diirt.util.time.TimeDuration;
+import org.diirt.vtype.VDouble;
+import org.diirt.vtype.ValueFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+import static org.diirt.datasource.formula.FormulaAst.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class FormulaCompilerTest {
+
+    @Test
+    public void formula1() {
+        FormulaCompiler compiler = new FormulaCompiler();
+        FormulaAst sum = op("+", channel("x"), channel("y"));
+        ReadExpressionTester exp1 = new ReadExpressionTester(compiler.formula(op("*", sum, integer(2))));
+        ReadExpressionTester exp2 = new ReadExpressionTester(compiler.formula(op("-", sum, integer(1))));
+
+        // x, y, x + y, (x + y) * 2 and (x + y) - 1
+        assertThat(compiler.getSharedExpressionCount(), equalTo(5));
+        // The top functions are different, but x + y is the same
+        FormulaReadFunction function1 = (FormulaReadFunction) exp1.getFunction();
+        FormulaReadFunction function2 = (FormulaReadFunction) exp2.getFunction();
+        assertThat(function1, not(sameInstance(function2)));
+        assertThat(function1.argumentFunctions.get(0), sameInstance((Object) function2.argumentFunctions.get(0)));
+
+        exp1.writeValue("x", ValueFactory.newVDouble(3.0));
+        exp1.writeValue("y", ValueFactory.newVDouble(2.0));
+        assertThat(((VDouble) exp1.getValue()).getValue(), equalTo(10.0));
+        assertThat(((VDouble) exp2.getValue()).getValue(), equalTo(4.0));
+    }
+
+    @Test
+    public void formula2() {
+        // The same formula gets the same function, but a different top expression
+        FormulaCompiler compiler = new FormulaCompiler();
+        ReadExpressionTester exp1 = new ReadExpressionTester(compiler.formula("='x' + 'y'"));
+        ReadExpressionTester exp2 = new ReadExpressionTester(compiler.formula("='x' + 'y'"));
+        assertThat(exp1.getExpression(), not(sameInstance(exp2.getExpression())));
+        assertThat(exp1.getFunction(), sameInstance((Object) exp2.getFunction()));
+        assertThat(compiler.getSharedExpressionCount(), equalTo(3));
+    }
+
+    @Test
+    public void formula3() {
+        // Stateful functions, and what depends on them, are not shared
+        FormulaCompiler compiler = new FormulaCompiler();
+        ReadExpressionTester exp1 = new ReadExpressionTester(compiler.formula("=integrate('x') + 1"));
+        ReadExpressionTester exp2 = new ReadExpressionTester(compiler.formula("=integrate('x') + 1"));
+        assertThat(exp1.getFunction(), not(sameInstance((Object) exp2.getFunction())));
+        assertThat(compiler.getSharedExpressionCount(), equalTo(1));
+    }
+
+    @Test
+    public void formula4() {
+        // Single channels are not wrapped, so that they can be written
+        FormulaCompiler compiler = new FormulaCompiler();
+        ReadExpressionTester exp = new ReadExpressionTester(compiler.formula("x"));
+        assertThat(exp.getExpression().getName(), equalTo("x"));
+        assertThat(compiler.getSharedExpressionCount(), equalTo(0));
+    }
+
+    private static void writeValue(MockDataSource dataSource, String channelName, Object value) {
+        for (ChannelReadRecipe channelRecipe : dataSource.getConnectedReadRecipes()) {
+            if (channelRecipe.getChannelName().equals(channelName)) {
+                @SuppressWarnings("unchecked")
+                ValueCache<Object> cache = (ValueCache<Object>) channelRecipe.getReadSubscription().getValueCache();
+                cache.writeValue(value);
+            }
+        }
+    }
+
+    private static SharedFormulaExpression sharedFormula(DesiredRateExpression<?> expression) {
+        return (SharedFormulaExpression) expression.getDesiredRateExpressionImpl();
+    }
+
+    @Test
+    public void dataSourceFormula1() {
+        // Readers of the same data source share the functions
+        MockDataSource dataSource = new MockDataSource();
+        DesiredRateReadWriteExpression<?, Object> exp1 = ExpressionLanguage.formula("=('x' + 'y') * 2");
+        DesiredRateReadWriteExpression<?, Object> exp2 = ExpressionLanguage.formula("=('x' + 'y') - 1");
+        PVReader<?> pv1 = PVManager.read(exp1).from(dataSource).maxRate(TimeDuration.ofHertz(10));
+        PVReader<?> pv2 = PVManager.read(exp2).from(dataSource).maxRate(TimeDuration.ofHertz(10));
+        try {
+            assertThat(exp1.getName(), equalTo(ExpressionLanguage.formula(FormulaAst.formula("=('x' + 'y') * 2")).getName()));
+            FormulaReadFunction function1 = (FormulaReadFunction) sharedFormula(exp1).getCompiledExpression().getFunction();
+            FormulaReadFunction function2 = (FormulaReadFunction) sharedFormula(exp2).getCompiledExpression().getFunction();
+            assertThat(function1.argumentFunctions.get(0), sameInstance((Object) function2.argumentFunctions.get(0)));
+            assertThat(FormulaCompiler.forDataSource(dataSource).getSharedExpressionCount(), equalTo(5));
+
+            // Each reader connects its own channels
+            assertThat(dataSource.getConnectedReadRecipes().size(), equalTo(4));
+            writeValue(dataSource, "x", ValueFactory.newVDouble(3.0));
+            writeValue(dataSource, "y", ValueFactory.newVDouble(2.0));
+            assertThat(((VDouble) exp1.getFunction().readValue()).getValue(), equalTo(10.0));
+            assertThat(((VDouble) exp2.getFunction().readValue()).getValue(), equalTo(4.0));
+        } finally {
+            pv1.close();
+            pv2.close();
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void dataSourceFormula2() {
+        // Readers of different data sources do not share
+        MockDataSource dataSource1 = new MockDataSource();
+        MockDataSource dataSource2 = new MockDataSource();
+        DesiredRateReadWriteExpression<?, Object> exp1 = ExpressionLanguage.formula("='x' + 'y'");
+        DesiredRateReadWriteExpression<?, Object> exp2 = ExpressionLanguage.formula("='x' + 'y'");
+        PVReader<?> pv1 = PVManager.read(exp1).from(dataSource1).maxRate(TimeDuration.ofHertz(10));
+        PVReader<?> pv2 = PVManager.read(exp2).from(dataSource2).maxRate(TimeDuration.ofHertz(10));
+        try {
+            assertThat(sharedFormula(exp1).getCompiledExpression().getFunction(),
+                    not(sameInstance((Object) sharedFormula(exp2).getCompiledExpression().getFunction())));
+            writeValue(dataSource1, "x", ValueFactory.newVDouble(3.0));
+            writeValue(dataSource1, "y", ValueFactory.newVDouble(2.0));
+            writeValue(dataSource2, "x", ValueFactory.newVDouble(1.0));
+            writeValue(dataSource2, "y", ValueFactory.newVDouble(1.0));
+            assertThat(((VDouble) exp1.getFunction().readValue()).getValue(), equalTo(5.0));
+            assertThat(((VDouble) exp2.getFunction().readValue()).getValue(), equalTo(2.0));
+        } finally {
+            pv1.close();
+            pv2.close();
+            dataSource1.close();
+            dataSource2.close();
+        }
+    }
+
+    @Test
+    public void dataSourceFormula3() {
+        // Without a data source, the formula is not shared
+        ReadExpressionTester exp = new ReadExpressionTester(ExpressionLanguage.formula("='x' + 'y'"));
+        FormulaReadFunction function = (FormulaReadFunction) sharedFormula(exp.getExpression()).getCompiledExpression().getFunction();
+        assertThat(function.isShared(), equalTo(false));
+        exp.writeValue("x", ValueFactory.newVDouble(3.0));
+        exp.writeValue("y", ValueFactory.newVDouble(2.0));
+        assertThat(((VDouble) exp.getValue()).getValue(), equalTo(5.0));
+    }
+
+}
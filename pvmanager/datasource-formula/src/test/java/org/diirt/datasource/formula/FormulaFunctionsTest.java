@@ -64,6 +64,27 @@ public class FormulaFunctionsTest {
         assertThat(FormulaFunctions.findFirstMatch(Arrays.<Object>asList("test"), functions), sameInstance(function1));
     }
     
+    @Test
+    public void findMostSpecificMatch1() {
+        FormulaFunction function1 = mock(FormulaFunction.class);
+        when(function1.isVarArgs()).thenReturn(false);
+        when(function1.getArgumentTypes()).thenReturn(Arrays.<Class<?>>asList(Number.class, Number.class));
+        FormulaFunction function2 = mock(FormulaFunction.class);
+        when(function2.isVarArgs()).thenReturn(false);
+        when(function2.getArgumentTypes()).thenReturn(Arrays.<Class<?>>asList(Double.class, Number.class));
+        FormulaFunction function3 = mock(FormulaFunction.class);
+        when(function3.isVarArgs()).thenReturn(true);
+        when(function3.getArgumentTypes()).thenReturn(Arrays.<Class<?>>asList(Double.class));
+        List<FormulaFunction> functions = Arrays.asList(function3, function1, function2);
+        
+        assertThat(FormulaFunctions.findMostSpecificMatch(Arrays.<Class<?>>asList(Integer.class, Double.class), functions), sameInstance(function1));
+        assertThat(FormulaFunctions.findMostSpecificMatch(Arrays.<Class<?>>asList(Double.class, Integer.class), functions), sameInstance(function2));
+        assertThat(FormulaFunctions.findMostSpecificMatch(Arrays.<Class<?>>asList(Double.class, Double.class), functions), sameInstance(function3));
+        assertThat(FormulaFunctions.findMostSpecificMatch(Arrays.<Class<?>>asList(Double.class, null), functions), sameInstance(function3));
+        assertThat(FormulaFunctions.findMostSpecificMatch(Arrays.<Class<?>>asList(Double.class, Double.class, Double.class), functions), sameInstance(function3));
+        assertThat(FormulaFunctions.findMostSpecificMatch(Arrays.<Class<?>>asList(String.class, Double.class), functions), nullValue());
+    }
+    
     @Test
     public void matchArgumentCount1() {
         FormulaFunction function = mock(FormulaFunction.class);
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import java.util.Arrays;
+import java.util.List;
+import org.diirt.datasource.ReadFunction;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class FormulaReadFunctionTest {
+
+    private static class Argument implements ReadFunction<Object> {
+        private Object value;
+
+        @Override
+        public Object readValue() {
+            return value;
+        }
+    }
+
+    private static class CountingFunction implements FormulaFunction {
+        private final Class<?> argumentType;
+        private final boolean pure;
+        private int calculations;
+
+        public CountingFunction(Class<?> argumentType, boolean pure) {
+            this.argumentType = argumentType;
+            this.pure = pure;
+        }
+
+        @Override
+        public boolean isPure() {
+            return pure;
+        }
+
+        @Override
+        public boolean isVarArgs() {
+            return false;
+        }
+
+        @Override
+        public String getName() {
+            return "count";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Counts the calculations";
+        }
+
+        @Override
+        public List<Class<?>> getArgumentTypes() {
+            return Arrays.<Class<?>>asList(argumentType, argumentType);
+        }
+
+        @Override
+        public List<String> getArgumentNames() {
+            return Arrays.asList("arg1", "arg2");
+        }
+
+        @Override
+        public Class<?> getReturnType() {
+            return String.class;
+        }
+
+        @Override
+        public Object calculate(List<Object> args) {
+            calculations++;
+            return getName() + args;
+        }
+    }
+
+    @Test
+    public void readValue1() {
+        Argument arg1 = new Argument();
+        Argument arg2 = new Argument();
+        CountingFunction function = new CountingFunction(Number.class, true);
+        FormulaReadFunction readFunction = new FormulaReadFunction(Arrays.<ReadFunction<?>>asList(arg1, arg2),
+                Arrays.<FormulaFunction>asList(function), "count");
+        arg1.value = 1.0;
+        arg2.value = 2.0;
+        Object value = readFunction.readValue();
+        assertThat(value, equalTo((Object) "count[1.0, 2.0]"));
+        assertThat(function.calculations, equalTo(1));
+
+        // Same arguments: the same value is returned without calculation
+        assertThat(readFunction.readValue(), sameInstance(value));
+        arg2.value = new Double(2.0);
+        assertThat(readFunction.readValue(), sameInstance(value));
+        assertThat(function.calculations, equalTo(1));
+
+        arg2.value = 3.0;
+        assertThat(readFunction.readValue(), equalTo((Object) "count[1.0, 3.0]"));
+        assertThat(function.calculations, equalTo(2));
+    }
+
+    @Test
+    public void readValue2() {
+        // Functions that are not pure are calculated every time
+        Argument arg1 = new Argument();
+        Argument arg2 = new Argument();
+        CountingFunction function = new CountingFunction(Number.class, false);
+        FormulaReadFunction readFunction = new FormulaReadFunction(Arrays.<ReadFunction<?>>asList(arg1, arg2),
+                Arrays.<FormulaFunction>asList(function), "count");
+        arg1.value = 1.0;
+        arg2.value = 2.0;
+        readFunction.readValue();
+        readFunction.readValue();
+        assertThat(function.calculations, equalTo(2));
+    }
+
+    @Test
+    public void readValue3() {
+        // The function is resolved again when the types change
+        Argument arg1 = new Argument();
+        Argument arg2 = new Argument();
+        CountingFunction numberFunction = new CountingFunction(Number.class, true);
+        CountingFunction stringFunction = new CountingFunction(String.class, true);
+        FormulaReadFunction readFunction = new FormulaReadFunction(Arrays.<ReadFunction<?>>asList(arg1, arg2),
+                Arrays.<FormulaFunction>asList(numberFunction, stringFunction), "count");
+        arg1.value = 1.0;
+        arg2.value = 2;
+        readFunction.readValue();
+        assertThat(readFunction.lastFormula, sameInstance((FormulaFunction) numberFunction));
+
+        arg1.value = "A";
+        arg2.value = "B";
+        readFunction.readValue();
+        assertThat(readFunction.lastFormula, sameInstance((FormulaFunction) stringFunction));
+
+        arg1.value = 3.0;
+        arg2.value = 4;
+        readFunction.readValue();
+        assertThat(readFunction.lastFormula, sameInstance((FormulaFunction) numberFunction));
+        assertThat(numberFunction.calculations, equalTo(2));
+        assertThat(stringFunction.calculations, equalTo(1));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void readValue4() {
+        Argument arg1 = new Argument();
+        Argument arg2 = new Argument();
+        FormulaReadFunction readFunction = new FormulaReadFunction(Arrays.<ReadFunction<?>>asList(arg1, arg2),
+                Arrays.<FormulaFunction>asList(new CountingFunction(Number.class, true)), "count");
+        arg1.value = "A";
+        arg2.value = 1.0;
+        readFunction.readValue();
+    }
+
+}
@@ -4,11 +4,13 @@
  */
 package org.diirt.datasource.formula;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.diirt.vtype.ValueFactory;
 import org.diirt.vtype.VInt;
 import org.diirt.vtype.VDouble;
+import org.diirt.vtype.VNumber;
 import org.antlr.runtime.*;
 import org.diirt.datasource.ReadExpressionTester;
 import org.diirt.datasource.expression.DesiredRateExpression;
@@ -115,4 +117,77 @@ public class FormulaRegistryTest {
     public void validateFunction2() {
         FormulaRegistry.validateFormulaFunction(new Function2());
     }
+    
+    private static class TypedFunction implements FormulaFunction {
+        private final Class<?> argumentType;
+
+        public TypedFunction(Class<?> argumentType) {
+            this.argumentType = argumentType;
+        }
+
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+
+        @Override
+        public boolean isVarArgs() {
+            return false;
+        }
+
+        @Override
+        public String getName() {
+            return "typed";
+        }
+
+        @Override
+        public String getDescription() {
+            return "";
+        }
+
+        @Override
+        public List<Class<?>> getArgumentTypes() {
+            return Arrays.<Class<?>>asList(argumentType);
+        }
+
+        @Override
+        public List<String> getArgumentNames() {
+            return Arrays.asList("arg");
+        }
+
+        @Override
+        public Class<?> getReturnType() {
+            return String.class;
+        }
+
+        @Override
+        public Object calculate(List<Object> args) {
+            return argumentType.getSimpleName();
+        }
+    }
+    
+    private static class TypedFunctionSet extends FormulaFunctionSet {
+
+        public TypedFunctionSet(String name, FormulaFunction function) {
+            super(new FormulaFunctionSetDescription(name, "").addFormulaFunction(function));
+        }
+    }
+
+    @Test
+    public void findFunction1() {
+        FormulaRegistry registry = new FormulaRegistry();
+        TypedFunction numberFunction = new TypedFunction(VNumber.class);
+        registry.registerFormulaFunctionSet(new TypedFunctionSet("number", numberFunction));
+        List<Class<?>> doubleArgument = Arrays.<Class<?>>asList(ValueFactory.newVDouble(1.0).getClass());
+        assertThat(registry.findFunction("typed", doubleArgument), sameInstance((FormulaFunction) numberFunction));
+        assertThat(registry.findFunction("typed", Arrays.<Class<?>>asList(String.class)), nullValue());
+        assertThat(registry.findFunction("typed", Arrays.<Class<?>>asList((Class<?>) null)), sameInstance((FormulaFunction) numberFunction));
+
+        // Registering a more specific function invalidates the index
+        TypedFunction doubleFunction = new TypedFunction(VDouble.class);
+        registry.registerFormulaFunctionSet(new TypedFunctionSet("double", doubleFunction));
+        assertThat(registry.findFunction("typed", doubleArgument), sameInstance((FormulaFunction) doubleFunction));
+        List<Class<?>> intArgument = Arrays.<Class<?>>asList(ValueFactory.newVInt(1, ValueFactory.alarmNone(), ValueFactory.timeNow(), ValueFactory.displayNone()).getClass());
+        assertThat(registry.findFunction("typed", intArgument), sameInstance((FormulaFunction) numberFunction));
+    }
 }
@@ -378,4 +378,22 @@ public class ArrayFunctionSetTest {
                 .compareReturnValue(null, null, ValueFactory.newDisplay(20))
                 .compareReturnValue(null, new ArrayDouble(1,2,3), null);
     }
+
+    @Test
+    public void powerSpectrum() {
+        VNumberArray array = newVDoubleArray(new ArrayDouble(0, 1, 0, -1), alarmNone(), timeNow(), displayNone());
+        VNumberArray expected = newVDoubleArray(new ArrayDouble(0, 0.25, 0), alarmNone(), timeNow(), displayNone());
+        VString window = newVString("rectangular", alarmNone(), newTime(Timestamp.of(1000, 0)));
+        // The window is an enum name: alarm and time are checked with a valid one
+        Alarm alarm = newAlarm(AlarmSeverity.MINOR, "HIGH");
+        Time time = newTime(Timestamp.of(2000, 0));
+        VNumberArray array2 = newVDoubleArray(new ArrayDouble(0, 1, 0, -1), alarm, time, displayNone());
+        FunctionTester.findBySignature(set, "powerSpectrum", VNumberArray.class, VString.class)
+                .compareReturnValue(expected, array, window)
+                .compareReturnValue(null, null, window)
+                .compareReturnValue(null, array, null)
+                .compareReturnAlarm(alarmNone(), array, window)
+                .compareReturnAlarm(alarm, array2, window)
+                .compareReturnTime(time, array2, window);
+    }
 }
@@ -4,6 +4,7 @@
  */
 package org.diirt.datasource.graphene;
 
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.util.List;
 import org.diirt.graphene.BubbleGraph2DRenderer;
@@ -13,7 +14,6 @@ import org.diirt.datasource.QueueCollector;
 import org.diirt.datasource.ReadFunction;
 import org.diirt.vtype.VImage;
 import org.diirt.vtype.VTable;
-import org.diirt.vtype.ValueUtil;
 
 import static org.diirt.datasource.graphene.ArgumentExpressions.*;
 
@@ -30,7 +30,9 @@ public class BubbleGraph2DFunction implements ReadFunction<Graph2DResult> {
     private ReadFunctionArgument<String> colorColumnName;
     private BubbleGraph2DRenderer renderer = new BubbleGraph2DRenderer(300,
             200);
-    private VImage previousImage;
+    private final ImagePool imagePool = new ImagePool();
+    private VTable oldData;
+    private Graph2DResult previousResult;
     private final QueueCollector<BubbleGraph2DRendererUpdate> rendererUpdateQueue = new QueueCollector<>(
             100);
 
@@ -63,11 +65,17 @@ public class BubbleGraph2DFunction implements ReadFunction<Graph2DResult> {
             return null;
         }
 
+        List<BubbleGraph2DRendererUpdate> updates = rendererUpdateQueue.readValue();
+        
+        // If data is old and no updates, return the previous result
+        if (vTable == oldData && updates.isEmpty() && previousResult != null
+                && !xColumnName.isChanged() && !yColumnName.isChanged() && !sizeColumnName.isChanged() && !colorColumnName.isChanged()) {
+            return previousResult;
+        }
+
         // Prepare new dataset
         Point3DWithLabelDataset dataset = DatasetConversions.point3DDatasetFromVTable(vTable, xColumnName.getValue(), yColumnName.getValue(), sizeColumnName.getValue(), colorColumnName.getValue());
 
-        List<BubbleGraph2DRendererUpdate> updates = rendererUpdateQueue
-                .readValue();
         for (BubbleGraph2DRendererUpdate scatterGraph2DRendererUpdate : updates) {
             renderer.update(scatterGraph2DRendererUpdate);
         }
@@ -76,19 +84,22 @@ public class BubbleGraph2DFunction implements ReadFunction<Graph2DResult> {
             return null;
         }
 
-        BufferedImage image = new BufferedImage(renderer.getImageWidth(),
-                renderer.getImageHeight(), BufferedImage.TYPE_3BYTE_BGR);
-        renderer.draw(image.createGraphics(), dataset);
+        BufferedImage image = imagePool.acquire(renderer.getImageWidth(), renderer.getImageHeight());
+        Graphics2D g = image.createGraphics();
+        renderer.draw(g, dataset);
+        g.dispose();
 
-        previousImage = ValueUtil.toVImage(image);
+        VImage vImage = imagePool.toVImage(image);
         int focusValueIndex = -1;
         if (renderer.getFocusValueIndex() != null) {
             focusValueIndex = renderer.getFocusValueIndex();
         }
-        return new Graph2DResult(vTable, previousImage,
+        oldData = vTable;
+        previousResult = new Graph2DResult(vTable, vImage,
                 new GraphDataRange(renderer.getXPlotRange(), renderer.getXPlotRange(), renderer.getXAggregatedRange()), new GraphDataRange(
                 renderer.getYPlotRange(), renderer.getYPlotRange(), renderer.getYAggregatedRange()),
                 focusValueIndex);
+        return previousResult;
 
     }
 }
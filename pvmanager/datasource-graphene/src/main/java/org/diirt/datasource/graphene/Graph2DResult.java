@@ -40,6 +40,14 @@ public class Graph2DResult {
         return focusDataIndex;
     }
 
+    /**
+     * The rendered graph. The buffer of the image is reused by the read
+     * function for a later graph once the image is not referenced anymore:
+     * the buffer returned by {@link VImage#getData() } must not be kept
+     * longer than the image.
+     *
+     * @return the rendered graph
+     */
     public VImage getImage() {
         return image;
     }
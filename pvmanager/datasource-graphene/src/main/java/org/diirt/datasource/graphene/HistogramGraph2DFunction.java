@@ -4,6 +4,7 @@
  */
 package org.diirt.datasource.graphene;
 
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -28,7 +29,9 @@ class HistogramGraph2DFunction implements ReadFunction<Graph2DResult> {
     
     private AreaGraph2DRenderer renderer = new AreaGraph2DRenderer(300, 200);
     
-    private Graph2DResult previousImage;
+    private final ImagePool imagePool = new ImagePool();
+    private VNumberArray oldData;
+    private Graph2DResult previousResult;
     private final QueueCollector<AreaGraph2DRendererUpdate> rendererUpdateQueue = new QueueCollector<>(100);
 
     public HistogramGraph2DFunction(ReadFunction<?> arrayData) {
@@ -48,13 +51,20 @@ class HistogramGraph2DFunction implements ReadFunction<Graph2DResult> {
             return null;
         }
         
+        List<AreaGraph2DRendererUpdate> updates = getUpdateQueue().readValue();
+        
+        // If data is old and no updates, return the previous result
+        if (data == oldData && updates.isEmpty() && previousResult != null) {
+            return previousResult;
+        }
+        
         // TODO: check array is one dimensional
 
         Cell1DDataset dataset = null;
         dataset = DatasetConversions.cell1DDatasetsFromVNumberArray(data);
         
         // Process all renderer updates
-        for (AreaGraph2DRendererUpdate rendererUpdate : getUpdateQueue().readValue()) {
+        for (AreaGraph2DRendererUpdate rendererUpdate : updates) {
             renderer.update(rendererUpdate);
         }
         
@@ -62,17 +72,21 @@ class HistogramGraph2DFunction implements ReadFunction<Graph2DResult> {
         if (renderer.getImageHeight() == 0 && renderer.getImageWidth() == 0)
             return null;
         
-        BufferedImage image = new BufferedImage(renderer.getImageWidth(), renderer.getImageHeight(), BufferedImage.TYPE_3BYTE_BGR);
-        renderer.draw(image.createGraphics(), dataset);
+        BufferedImage image = imagePool.acquire(renderer.getImageWidth(), renderer.getImageHeight());
+        Graphics2D g = image.createGraphics();
+        renderer.draw(g, dataset);
+        g.dispose();
         int index = -1;
         if (renderer.getFocusValueIndex() != null) {
             index = renderer.getFocusValueIndex();
         }
         
-        return new Graph2DResult(data, ValueUtil.toVImage(image),
+        oldData = data;
+        previousResult = new Graph2DResult(data, imagePool.toVImage(image),
                 new GraphDataRange(renderer.getXPlotRange(), dataset.getXRange(), dataset.getXRange()),
                 new GraphDataRange(renderer.getYPlotRange(), dataset.getStatistics().getRange(), renderer.getYAggregatedRange()),
                 index);
+        return previousResult;
     }
     
 }
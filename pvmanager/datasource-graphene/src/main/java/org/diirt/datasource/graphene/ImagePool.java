@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.graphene;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import org.diirt.vtype.VImage;
+import org.diirt.vtype.ValueUtil;
+
+/**
+ * The images used by a read function to render a graph, so that the
+ * rasters are reused instead of allocated at each scan.
+ * <p>
+ * The {@link VImage} returned to the client shares the raster of the image,
+ * so an image is given out again only when its VImage is not referenced
+ * anymore: while a client is holding the last result, the next one is
+ * rendered in a different image (double buffering). Only images of the
+ * last requested size are kept. The buffer is not copied, so clients must
+ * not keep the buffer of {@link VImage#getData() } longer than its VImage
+ * (see {@link Graph2DResult#getImage() }).
+ * <p>
+ * The pool is meant to be used by a single read function, and is not
+ * thread-safe.
+ *
+ * @author carcassi
+ */
+class ImagePool {
+
+    private static final int MAX_AVAILABLE = 2;
+
+    private static class ImageReference extends WeakReference<VImage> {
+
+        private final BufferedImage image;
+
+        ImageReference(VImage vImage, BufferedImage image, ReferenceQueue<VImage> queue) {
+            super(vImage, queue);
+            this.image = image;
+        }
+    }
+
+    private final ReferenceQueue<VImage> releasedImages = new ReferenceQueue<>();
+    // Keeps the references reachable until they are enqueued
+    private final Set<ImageReference> usedImages = new HashSet<>();
+    private final Deque<BufferedImage> availableImages = new ArrayDeque<>();
+    private int width;
+    private int height;
+
+    /**
+     * Returns a black image of the given size, reusing the raster
+     * of a released image if available.
+     *
+     * @param width the image width
+     * @param height the image height
+     * @return an image to draw on
+     */
+    BufferedImage acquire(int width, int height) {
+        if (this.width != width || this.height != height) {
+            this.width = width;
+            this.height = height;
+            availableImages.clear();
+        }
+
+        Reference<? extends VImage> reference;
+        while ((reference = releasedImages.poll()) != null) {
+            usedImages.remove((ImageReference) reference);
+            BufferedImage image = ((ImageReference) reference).image;
+            if (image.getWidth() == width && image.getHeight() == height && availableImages.size() < MAX_AVAILABLE) {
+                availableImages.push(image);
+            }
+        }
+
+        BufferedImage image = availableImages.poll();
+        if (image == null) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        }
+        Arrays.fill(((DataBufferByte) image.getRaster().getDataBuffer()).getData(), (byte) 0);
+        return image;
+    }
+
+    /**
+     * Wraps the image, acquired from this pool, in a VImage. The image
+     * will be reused after the VImage is garbage collected.
+     *
+     * @param image an image acquired from this pool
+     * @return a VImage that shares the raster of the image
+     */
+    VImage toVImage(BufferedImage image) {
+        VImage vImage = ValueUtil.toVImage(image);
+        usedImages.add(new ImageReference(vImage, image, releasedImages));
+        return vImage;
+    }
+}
@@ -37,6 +37,7 @@ class IntensityGraph2DFunction implements ReadFunction<Graph2DResult> {
     
     private VNumberArray oldData;
     private Graph2DResult previousResult;
+    private final ImagePool imagePool = new ImagePool();
     private final QueueCollector<IntensityGraph2DRendererUpdate> rendererUpdateQueue = new QueueCollector<>(100);
 
     public IntensityGraph2DFunction(ReadFunction<?> arrayData) {
@@ -78,13 +79,15 @@ class IntensityGraph2DFunction implements ReadFunction<Graph2DResult> {
         if (renderer.getImageHeight() == 0 && renderer.getImageWidth() == 0)
             return null;
         
-        GraphBuffer buffer = new GraphBuffer(renderer);
+        GraphBuffer buffer = new GraphBuffer(imagePool.acquire(renderer.getImageWidth(), renderer.getImageHeight()));
         renderer.draw(buffer, dataset);
+        buffer.getGraphicsContext().dispose();
         
-        return new Graph2DResult(data, ValueUtil.toVImage(buffer.getImage()),
+        previousResult = new Graph2DResult(data, imagePool.toVImage(buffer.getImage()),
                 new GraphDataRange(renderer.getXPlotRange(), dataset.getXRange(), dataset.getXRange()),
                 new GraphDataRange(renderer.getYPlotRange(), dataset.getYRange(), dataset.getYRange()),
                 -1, selectionData(data, renderer));
+        return previousResult;
     }
     
     private VNumberArray selectionData(VNumberArray data, IntensityGraph2DRenderer renderer) {
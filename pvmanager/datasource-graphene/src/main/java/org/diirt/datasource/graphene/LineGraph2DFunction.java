@@ -5,8 +5,7 @@
 package org.diirt.datasource.graphene;
 
 import org.diirt.vtype.VNumberArray;
-import org.diirt.vtype.VImage;
-import org.diirt.vtype.ValueUtil;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.util.List;
 import org.diirt.graphene.*;
@@ -29,7 +28,9 @@ class LineGraph2DFunction implements ReadFunction<Graph2DResult> {
     
     private LineGraph2DRenderer renderer = new LineGraph2DRenderer(300, 200);
     
-    private VImage previousImage;
+    private final ImagePool imagePool = new ImagePool();
+    private VType oldData;
+    private Graph2DResult previousResult;
     private final QueueCollector<LineGraph2DRendererUpdate> rendererUpdateQueue = new QueueCollector<>(100);
 
     LineGraph2DFunction(ReadFunction<?> tableData,
@@ -58,6 +59,14 @@ class LineGraph2DFunction implements ReadFunction<Graph2DResult> {
             return null;
         }
 
+        List<LineGraph2DRendererUpdate> updates = rendererUpdateQueue.readValue();
+        
+        // If data is old and no updates, return the previous result
+        if (vType == oldData && updates.isEmpty() && previousResult != null
+                && !xColumnName.isChanged() && !yColumnName.isChanged() && !tooltipColumnName.isChanged()) {
+            return previousResult;
+        }
+
         // Prepare new dataset
         Point2DDataset dataset;
         if (vType instanceof VNumberArray) {
@@ -67,7 +76,6 @@ class LineGraph2DFunction implements ReadFunction<Graph2DResult> {
         }
         
         // Process all renderer updates
-        List<LineGraph2DRendererUpdate> updates = rendererUpdateQueue.readValue();
         for (LineGraph2DRendererUpdate rendererUpdate : updates) {
             renderer.update(rendererUpdate);
         }
@@ -76,14 +84,17 @@ class LineGraph2DFunction implements ReadFunction<Graph2DResult> {
         if (renderer.getImageHeight() == 0 && renderer.getImageWidth() == 0)
             return null;
         
-        BufferedImage image = new BufferedImage(renderer.getImageWidth(), renderer.getImageHeight(), BufferedImage.TYPE_3BYTE_BGR);
-        renderer.draw(image.createGraphics(), dataset);
+        BufferedImage image = imagePool.acquire(renderer.getImageWidth(), renderer.getImageHeight());
+        Graphics2D g = image.createGraphics();
+        renderer.draw(g, dataset);
+        g.dispose();
         
-        previousImage = ValueUtil.toVImage(image);
-        return new Graph2DResult(vType, previousImage,
+        oldData = vType;
+        previousResult = new Graph2DResult(vType, imagePool.toVImage(image),
                 new GraphDataRange(renderer.getXPlotRange(), dataset.getXStatistics().getRange(), renderer.getXAggregatedRange()),
                 new GraphDataRange(renderer.getYPlotRange(), dataset.getYStatistics().getRange(), renderer.getYAggregatedRange()),
                 renderer.getFocusValueIndex());
+        return previousResult;
     }
     
 }
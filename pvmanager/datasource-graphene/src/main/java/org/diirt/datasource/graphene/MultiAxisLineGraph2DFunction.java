@@ -6,7 +6,7 @@ package org.diirt.datasource.graphene;
 
 import org.diirt.vtype.VNumberArray;
 import org.diirt.vtype.VImage;
-import org.diirt.vtype.ValueUtil;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.util.AbstractList;
 import java.util.Collections;
@@ -32,7 +32,9 @@ class MultiAxisLineGraph2DFunction implements ReadFunction<Graph2DResult> {
     
     private MultiAxisLineGraph2DRenderer renderer = new MultiAxisLineGraph2DRenderer(300, 200);
     
-    private VImage previousImage;
+    private final ImagePool imagePool = new ImagePool();
+    private VType oldData;
+    private Graph2DResult previousResult;
     private final QueueCollector<MultiAxisLineGraph2DRendererUpdate> rendererUpdateQueue = new QueueCollector<>(100);
 
     MultiAxisLineGraph2DFunction(ReadFunction<?> tableData,
@@ -58,6 +60,14 @@ class MultiAxisLineGraph2DFunction implements ReadFunction<Graph2DResult> {
             return null;
         }
 
+        List<MultiAxisLineGraph2DRendererUpdate> updates = rendererUpdateQueue.readValue();
+        
+        // If data is old and no updates, return the previous result
+        if (vType == oldData && updates.isEmpty() && previousResult != null
+                && !xColumnNames.isChanged() && !yColumnNames.isChanged()) {
+            return previousResult;
+        }
+
         // Prepare new dataset
         final List<Point2DDataset> dataset;
         if (vType instanceof VNumberArray) {
@@ -67,7 +77,6 @@ class MultiAxisLineGraph2DFunction implements ReadFunction<Graph2DResult> {
         }
         
         // Process all renderer updates
-        List<MultiAxisLineGraph2DRendererUpdate> updates = rendererUpdateQueue.readValue();
         for (MultiAxisLineGraph2DRendererUpdate rendererUpdate : updates) {
             renderer.update(rendererUpdate);
         }
@@ -76,10 +85,12 @@ class MultiAxisLineGraph2DFunction implements ReadFunction<Graph2DResult> {
         if (renderer.getImageHeight() == 0 && renderer.getImageWidth() == 0)
             return null;
         
-        BufferedImage image = new BufferedImage(renderer.getImageWidth(), renderer.getImageHeight(), BufferedImage.TYPE_3BYTE_BGR);
-        renderer.draw(image.createGraphics(), dataset);
+        BufferedImage image = imagePool.acquire(renderer.getImageWidth(), renderer.getImageHeight());
+        Graphics2D g = image.createGraphics();
+        renderer.draw(g, dataset);
+        g.dispose();
         
-        previousImage = ValueUtil.toVImage(image);
+        VImage vImage = imagePool.toVImage(image);
         Statistics xDataRange = StatisticsUtil.statisticsOf(new AbstractList<Statistics>() {
             
             @Override
@@ -106,10 +117,12 @@ class MultiAxisLineGraph2DFunction implements ReadFunction<Graph2DResult> {
             }
         });
         
-        return new Graph2DResult(vType, previousImage,
+        oldData = vType;
+        previousResult = new Graph2DResult(vType, vImage,
                 new GraphDataRange(renderer.getXPlotRange(), xDataRange.getRange(), renderer.getXAggregatedRange()),
                 new GraphDataRange(renderer.getYPlotRange(), yDataRange.getRange(), renderer.getYAggregatedRange()),
                 -1);
+        return previousResult;
     }
     
 }
@@ -4,6 +4,7 @@
  */
 package org.diirt.datasource.graphene;
 
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.util.List;
 
@@ -14,7 +15,6 @@ import org.diirt.datasource.QueueCollector;
 import org.diirt.datasource.ReadFunction;
 import org.diirt.vtype.VImage;
 import org.diirt.vtype.VTable;
-import org.diirt.vtype.ValueUtil;
 
 import static org.diirt.datasource.graphene.ArgumentExpressions.*;
 
@@ -30,7 +30,9 @@ public class ScatterGraph2DFunction implements ReadFunction<Graph2DResult> {
     private ReadFunctionArgument<String> tooltipColumnName;
     private ScatterGraph2DRenderer renderer = new ScatterGraph2DRenderer(300,
             200);
-    private VImage previousImage;
+    private final ImagePool imagePool = new ImagePool();
+    private VTable oldData;
+    private Graph2DResult previousResult;
     private final QueueCollector<ScatterGraph2DRendererUpdate> rendererUpdateQueue = new QueueCollector<>(
             100);
 
@@ -60,11 +62,17 @@ public class ScatterGraph2DFunction implements ReadFunction<Graph2DResult> {
             return null;
         }
 
+        List<ScatterGraph2DRendererUpdate> updates = rendererUpdateQueue.readValue();
+        
+        // If data is old and no updates, return the previous result
+        if (vTable == oldData && updates.isEmpty() && previousResult != null
+                && !xColumnName.isChanged() && !yColumnName.isChanged() && !tooltipColumnName.isChanged()) {
+            return previousResult;
+        }
+
         // Prepare new dataset
         Point2DDataset dataset = DatasetConversions.point2DDatasetFromVTable(vTable, xColumnName.getValue(), yColumnName.getValue());
 
-        List<ScatterGraph2DRendererUpdate> updates = rendererUpdateQueue
-                .readValue();
         for (ScatterGraph2DRendererUpdate scatterGraph2DRendererUpdate : updates) {
             renderer.update(scatterGraph2DRendererUpdate);
         }
@@ -73,15 +81,18 @@ public class ScatterGraph2DFunction implements ReadFunction<Graph2DResult> {
             return null;
         }
 
-        BufferedImage image = new BufferedImage(renderer.getImageWidth(),
-                renderer.getImageHeight(), BufferedImage.TYPE_3BYTE_BGR);
-        renderer.draw(image.createGraphics(), dataset);
+        BufferedImage image = imagePool.acquire(renderer.getImageWidth(), renderer.getImageHeight());
+        Graphics2D g = image.createGraphics();
+        renderer.draw(g, dataset);
+        g.dispose();
 
-        previousImage = ValueUtil.toVImage(image);
-        return new Graph2DResult(vTable, previousImage,
+        VImage vImage = imagePool.toVImage(image);
+        oldData = vTable;
+        previousResult = new Graph2DResult(vTable, vImage,
                 new GraphDataRange(renderer.getXPlotRange(), renderer.getXPlotRange(), renderer.getXAggregatedRange()), new GraphDataRange(
                 renderer.getYPlotRange(), renderer.getYPlotRange(), renderer.getYAggregatedRange()),
                 -1);
+        return previousResult;
 
     }
 }
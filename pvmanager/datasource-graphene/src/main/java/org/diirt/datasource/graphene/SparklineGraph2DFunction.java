@@ -6,7 +6,7 @@ package org.diirt.datasource.graphene;
 
 import org.diirt.vtype.VNumberArray;
 import org.diirt.vtype.VImage;
-import org.diirt.vtype.ValueUtil;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.util.List;
 import org.diirt.graphene.*;
@@ -28,7 +28,9 @@ class SparklineGraph2DFunction implements ReadFunction<Graph2DResult> {
     
     private SparklineGraph2DRenderer renderer = new SparklineGraph2DRenderer(300, 200);
     
-    private VImage previousImage;
+    private final ImagePool imagePool = new ImagePool();
+    private VType oldData;
+    private Graph2DResult previousResult;
     private final QueueCollector<SparklineGraph2DRendererUpdate> rendererUpdateQueue = new QueueCollector<>(100);
 
     SparklineGraph2DFunction(ReadFunction<?> tableData,
@@ -54,6 +56,14 @@ class SparklineGraph2DFunction implements ReadFunction<Graph2DResult> {
             return null;
         }
 
+        List<SparklineGraph2DRendererUpdate> updates = rendererUpdateQueue.readValue();
+        
+        // If data is old and no updates, return the previous result
+        if (vType == oldData && updates.isEmpty() && previousResult != null
+                && !xColumnName.isChanged() && !yColumnName.isChanged()) {
+            return previousResult;
+        }
+
         // Prepare new dataset
         Point2DDataset dataset;
         if (vType instanceof VNumberArray) {
@@ -63,7 +73,6 @@ class SparklineGraph2DFunction implements ReadFunction<Graph2DResult> {
         }
         
         // Process all renderer updates
-        List<SparklineGraph2DRendererUpdate> updates = rendererUpdateQueue.readValue();
         for (SparklineGraph2DRendererUpdate rendererUpdate : updates) {
             renderer.update(rendererUpdate);
         }
@@ -72,14 +81,18 @@ class SparklineGraph2DFunction implements ReadFunction<Graph2DResult> {
         if (renderer.getImageHeight() == 0 && renderer.getImageWidth() == 0)
             return null;
         
-        BufferedImage image = new BufferedImage(renderer.getImageWidth(), renderer.getImageHeight(), BufferedImage.TYPE_3BYTE_BGR);
-        renderer.draw(image.createGraphics(), dataset);
+        BufferedImage image = imagePool.acquire(renderer.getImageWidth(), renderer.getImageHeight());
+        Graphics2D g = image.createGraphics();
+        renderer.draw(g, dataset);
+        g.dispose();
         
-        previousImage = ValueUtil.toVImage(image);
-        return new Graph2DResult(vType, previousImage,
+        VImage vImage = imagePool.toVImage(image);
+        oldData = vType;
+        previousResult = new Graph2DResult(vType, vImage,
                 new GraphDataRange(renderer.getXPlotRange(), dataset.getXStatistics().getRange(), renderer.getXAggregatedRange()),
                 new GraphDataRange(renderer.getYPlotRange(), dataset.getYStatistics().getRange(), renderer.getYAggregatedRange()),
                 -1);
+        return previousResult;
     }
     
 }
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.graphene;
+
+import java.awt.image.BufferedImage;
+import org.diirt.vtype.VImage;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class ImagePoolTest {
+    
+    public ImagePoolTest() {
+    }
+
+    @Test
+    public void acquire1() {
+        ImagePool pool = new ImagePool();
+        BufferedImage image1 = pool.acquire(30, 20);
+        assertThat(image1.getWidth(), equalTo(30));
+        assertThat(image1.getHeight(), equalTo(20));
+        assertThat(image1.getType(), equalTo(BufferedImage.TYPE_3BYTE_BGR));
+        VImage vImage = pool.toVImage(image1);
+        
+        // Image still referenced by the VImage: can't be reused
+        BufferedImage image2 = pool.acquire(30, 20);
+        assertThat(image2, not(sameInstance(image1)));
+        assertThat(vImage.getWidth(), equalTo(30));
+    }
+
+    @Test
+    public void acquire2() {
+        ImagePool pool = new ImagePool();
+        BufferedImage image1 = pool.acquire(30, 20);
+        image1.setRGB(0, 0, 0xFFFFFF);
+        VImage vImage = pool.toVImage(image1);
+        vImage = null;
+        
+        // Once the VImage is collected, the image is reused and cleared
+        BufferedImage image2 = null;
+        for (int i = 0; i < 50 && image2 != image1; i++) {
+            System.gc();
+            image2 = pool.acquire(30, 20);
+        }
+        assertThat(image2, sameInstance(image1));
+        assertThat(image2.getRGB(0, 0) & 0xFFFFFF, equalTo(0));
+    }
+
+    @Test
+    public void acquire3() {
+        ImagePool pool = new ImagePool();
+        BufferedImage image1 = pool.acquire(30, 20);
+        pool.toVImage(image1);
+        System.gc();
+        
+        // Images of a different size are not reused
+        BufferedImage image2 = pool.acquire(40, 20);
+        assertThat(image2.getWidth(), equalTo(40));
+        assertThat(image2, not(sameInstance(image1)));
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.sample;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.diirt.datasource.ChannelHandler;
+import org.diirt.datasource.ChannelWriteCallback;
+import org.diirt.datasource.ConnectionCollector;
+import org.diirt.datasource.DataSource;
+import org.diirt.datasource.MultiplexedChannelHandler;
+import org.diirt.datasource.QueueCollector;
+import org.diirt.datasource.ReadRecipe;
+import org.diirt.datasource.ReadRecipeBuilder;
+import org.diirt.datasource.ValueCacheImpl;
+
+/**
+ * Load test to measure the time it takes for a data source to connect
+ * a large number of channels, with a different number of worker threads.
+ * <p>
+ * Each channel simulates a connection that blocks the worker thread for
+ * a small amount of time, as a network data source would do
+ * while waiting for the server. For each number of channels, it prints
+ * the time until all channels are connected.
+ *
+ * @author carcassi
+ */
+public class DataSourceStartupLoadTest {
+
+    private static final long connectNanos = 20000;
+
+    private static class BlockingDataSource extends DataSource {
+
+        private volatile CountDownLatch connected;
+
+        public BlockingDataSource(int workerThreads) {
+            super(false, workerThreads);
+        }
+
+        @Override
+        protected ChannelHandler createChannel(String channelName) {
+            return new MultiplexedChannelHandler<Object, Object>(channelName) {
+
+                @Override
+                protected void connect() {
+                    // Simulate the wait for the connection
+                    LockSupport.parkNanos(connectNanos);
+                    processConnection(new Object());
+                    connected.countDown();
+                }
+
+                @Override
+                protected void disconnect() {
+                }
+
+                @Override
+                protected void write(Object newValue, ChannelWriteCallback callback) {
+                    throw new UnsupportedOperationException("Not supported.");
+                }
+            };
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("nChannels workerThreads \"timeToConnect (ms)\"");
+        for (int nChannels : new int[] {10000, 50000, 100000}) {
+            profile(nChannels, 1);
+            profile(nChannels, 4);
+        }
+        System.exit(0);
+    }
+
+    public static void profile(int nChannels, int workerThreads) throws Exception {
+        BlockingDataSource dataSource = new BlockingDataSource(workerThreads);
+        ReadRecipeBuilder builder = new ReadRecipeBuilder();
+        for (int i = 0; i < nChannels; i++) {
+            builder.addChannel("channel" + i, new ValueCacheImpl<>(Object.class));
+        }
+        ReadRecipe recipe = builder.build(new QueueCollector<Exception>(10), new ConnectionCollector());
+
+        dataSource.connected = new CountDownLatch(nChannels);
+        long start = System.nanoTime();
+        dataSource.connectRead(recipe);
+        if (!dataSource.connected.await(5, TimeUnit.MINUTES)) {
+            System.out.println("Timeout");
+        }
+        long timeToConnect = (System.nanoTime() - start) / 1000000;
+        System.out.println(nChannels + " " + workerThreads + " " + timeToConnect);
+
+        dataSource.close();
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.sample;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.diirt.datasource.ExecutionProfile;
+import org.diirt.datasource.PVManager;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.PVReaderEvent;
+import org.diirt.datasource.PVReaderListener;
+import org.diirt.datasource.PVWriter;
+import org.diirt.datasource.loc.LocalDataSource;
+import org.diirt.util.time.TimeDuration;
+import org.diirt.vtype.VNumber;
+
+/**
+ * Load test to compare the notification latency under each
+ * {@link ExecutionProfile}.
+ * <p>
+ * The test opens a number of readers at 100 Hz on a set of local pvs that
+ * are all updated at the same time at 50 Hz. One reader every ten has a
+ * listener that blocks for 5 ms, simulating a callback that does I/O.
+ * For each profile, it prints the percentiles of the time between the write
+ * of a value and its notification, for the listeners that do not block,
+ * and the rate of those notifications.
+ *
+ * @author carcassi
+ */
+public class ExecutionProfileLatencyTest {
+
+    private static final int nChannels = 100;
+    private static final int nReaders = 1000;
+    private static final int maxSamples = 1000000;
+
+    // Write time for each value, indexed by the value itself
+    private static final AtomicLongArray writeNanos = new AtomicLongArray(4096);
+
+    public static void main(String[] args) throws Exception {
+        PVManager.setDefaultDataSource(new LocalDataSource());
+
+        System.out.println("profile \"p50 (ms)\" \"p90 (ms)\" \"p99 (ms)\" \"max (ms)\" \"notifications/s\"");
+        for (ExecutionProfile profile : ExecutionProfile.values()) {
+            profile(profile);
+        }
+        System.exit(0);
+    }
+
+    public static void profile(ExecutionProfile profile) throws Exception {
+        PVManager.setExecutionProfile(profile);
+        final long[] latencies = new long[maxSamples];
+        final int[] nSamples = new int[1];
+        PVReaderListener<Object> listener = new PVReaderListener<Object>() {
+
+            @Override
+            public void pvChanged(PVReaderEvent<Object> event) {
+                Object value = event.getPvReader().getValue();
+                if (!event.isValueChanged() || !(value instanceof VNumber)) {
+                    return;
+                }
+                int index = ((VNumber) value).getValue().intValue() % writeNanos.length();
+                long latency = System.nanoTime() - writeNanos.get(index);
+                synchronized (latencies) {
+                    if (nSamples[0] < latencies.length) {
+                        latencies[nSamples[0]] = latency;
+                        nSamples[0]++;
+                    }
+                }
+            }
+        };
+        PVReaderListener<Object> blockingListener = new PVReaderListener<Object>() {
+
+            @Override
+            public void pvChanged(PVReaderEvent<Object> event) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        List<PVWriter<Object>> writers = new ArrayList<>();
+        for (int i = 0; i < nChannels; i++) {
+            writers.add(PVManager.write(channel("latency" + i)).async());
+        }
+
+        List<PVReader<Object>> pvs = new ArrayList<>();
+        for (int i = 0; i < nReaders; i++) {
+            PVReader<Object> pv = PVManager.read(channel("latency" + (i % nChannels)))
+                    .readListener(i % 10 == 0 ? blockingListener : listener).maxRate(TimeDuration.ofHertz(100));
+            pvs.add(pv);
+        }
+
+        ScheduledExecutorService updater = Executors.newSingleThreadScheduledExecutor();
+        final List<PVWriter<Object>> finalWriters = writers;
+        updater.scheduleAtFixedRate(new Runnable() {
+            private int value = 0;
+
+            @Override
+            public void run() {
+                value++;
+                writeNanos.set(value % writeNanos.length(), System.nanoTime());
+                for (PVWriter<Object> writer : finalWriters) {
+                    writer.write((double) value);
+                }
+            }
+        }, 0, 20, TimeUnit.MILLISECONDS);
+
+        // Warm up and reset samples
+        Thread.sleep(1000);
+        synchronized (latencies) {
+            nSamples[0] = 0;
+        }
+        long measureStart = System.nanoTime();
+        Thread.sleep(5000);
+        long[] samples;
+        synchronized (latencies) {
+            samples = Arrays.copyOf(latencies, nSamples[0]);
+        }
+        double notificationRate = samples.length / ((System.nanoTime() - measureStart) / 1000000000.0);
+        Arrays.sort(samples);
+
+        System.out.println(profile + " " + percentile(samples, 0.5) + " " + percentile(samples, 0.9) + " "
+                + percentile(samples, 0.99) + " " + percentile(samples, 1.0) + " " + notificationRate);
+
+        updater.shutdownNow();
+        for (PVReader<Object> pv : pvs) {
+            pv.close();
+        }
+        for (PVWriter<Object> writer : writers) {
+            writer.close();
+        }
+
+        ScannerLoadTest.waitForZeroLoad(5);
+    }
+
+    private static double percentile(long[] sortedSamples, double fraction) {
+        if (sortedSamples.length == 0) {
+            return Double.NaN;
+        }
+        int index = Math.min(sortedSamples.length - 1, (int) (fraction * sortedSamples.length));
+        return sortedSamples[index] / 1000000.0;
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.diirt.datasource.PVManager;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.PVReaderEvent;
+import org.diirt.datasource.PVReaderListener;
+import org.diirt.datasource.PVWriter;
+import org.diirt.datasource.loc.LocalDataSource;
+import org.diirt.util.time.TimeDuration;
+
+/**
+ * Load test to compare the scheduling overhead of the scanning with and
+ * without the shared timer wheel.
+ * <p>
+ * The test opens a number of readers at 50 Hz on a set of local pvs that
+ * are updated at 100 Hz, so that each reader needs to be delayed at every
+ * notification. For each number of readers, it prints the cpu load,
+ * the notifications per second and the number of tasks waiting in the
+ * scanner executor, first with individually scheduled tasks and then
+ * with the timer wheel.
+ *
+ * @author carcassi
+ */
+public class ScannerTimerWheelLoadTest {
+
+    private static final int nChannels = 100;
+
+    public static void main(String[] args) throws Exception {
+        PVManager.setDefaultDataSource(new LocalDataSource());
+
+        System.out.println("nReaders timerWheel \"timeToStart (ms)\" \"avgLoad\" \"notifications/s\" \"scheduledTasks\"");
+        for (int i = 0; i < 8; i++) {
+            int nReaders = (int) Math.pow(4, i);
+            profile(nReaders, false);
+            profile(nReaders, true);
+        }
+        System.exit(0);
+    }
+
+    public static void profile(int nReaders, boolean timerWheel) throws Exception {
+        PVManager.setReadScannerTimerWheelEnabled(timerWheel);
+        final AtomicLong notifications = new AtomicLong();
+        PVReaderListener<Object> listener = new PVReaderListener<Object>() {
+
+            @Override
+            public void pvChanged(PVReaderEvent<Object> event) {
+                notifications.incrementAndGet();
+            }
+        };
+
+        List<PVWriter<Object>> writers = new ArrayList<>();
+        for (int i = 0; i < nChannels; i++) {
+            writers.add(PVManager.write(channel("bench" + i)).async());
+        }
+
+        List<PVReader<Object>> pvs = new ArrayList<>();
+        long timeStart = System.currentTimeMillis();
+        for (int i = 0; i < nReaders; i++) {
+            PVReader<Object> pv = PVManager.read(channel("bench" + (i % nChannels)))
+                    .readListener(listener).maxRate(TimeDuration.ofHertz(50));
+            pvs.add(pv);
+        }
+        long startTime = System.currentTimeMillis() - timeStart;
+
+        ScheduledExecutorService updater = Executors.newSingleThreadScheduledExecutor();
+        final List<PVWriter<Object>> finalWriters = writers;
+        updater.scheduleAtFixedRate(new Runnable() {
+            private double value = 0;
+
+            @Override
+            public void run() {
+                value++;
+                for (PVWriter<Object> writer : finalWriters) {
+                    writer.write(value);
+                }
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        // Warm up and reset counter
+        Thread.sleep(1000);
+        notifications.set(0);
+        long measureStart = System.nanoTime();
+        double avgLoad = ScannerLoadTest.measureLoad(5);
+        double notificationRate = notifications.get() / ((System.nanoTime() - measureStart) / 1000000000.0);
+        int scheduledTasks = -1;
+        if (PVManager.getReadScannerExecutorService() instanceof ScheduledThreadPoolExecutor) {
+            scheduledTasks = ((ScheduledThreadPoolExecutor) PVManager.getReadScannerExecutorService()).getQueue().size();
+        }
+
+        System.out.println(nReaders + " " + timerWheel + " " + startTime + " " + avgLoad + " " + notificationRate + " " + scheduledTasks);
+
+        updater.shutdownNow();
+        for (PVReader<Object> pv : pvs) {
+            pv.close();
+        }
+        for (PVWriter<Object> writer : writers) {
+            writer.close();
+        }
+
+        ScannerLoadTest.waitForZeroLoad(5);
+    }
+}
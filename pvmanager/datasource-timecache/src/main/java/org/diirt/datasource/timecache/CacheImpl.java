@@ -11,6 +11,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.diirt.datasource.timecache.query.Query;
 import org.diirt.datasource.timecache.query.QueryImpl;
 import org.diirt.datasource.timecache.query.QueryParameters;
+import org.diirt.datasource.timecache.storage.DataStorage;
+import org.diirt.datasource.timecache.storage.PartitionedDataStorage;
 import org.diirt.vtype.VType;
 
 /**
@@ -35,7 +37,11 @@ public class CacheImpl implements Cache {
 			config = configMap.get(Parameter.Default);
 		PVCache pvCache = (PVCache) cachedPVs.get(channelName);
 		if (pvCache == null) {
-			pvCache = new PVCacheImpl(channelName, config.getSources(), config.getStorage());
+			DataStorage storage = config.getStorage();
+			// Keeps the samples of each channel apart when supported
+			if (storage instanceof PartitionedDataStorage)
+				storage = ((PartitionedDataStorage) storage).getPartition(channelName);
+			pvCache = new PVCacheImpl(channelName, config.getSources(), storage);
 			// TODO: calculate retrieval gap from statistics
 			((PVCacheImpl) pvCache).setRetrievalGap(config.getRetrievalGap());
 			pvCache.setStatisticsEnabled(statisticsEnabled);
@@ -22,4 +22,12 @@ public interface DataRequestListener {
 	 */
 	public void intervalComplete(DataRequestThread thread);
 
+	/**
+	 * Informs that the specified {@link DataRequestThread} has been cancelled
+	 * before the end of its interval. Samples received until
+	 * {@link DataRequestThread#getLastReceived()} have been notified.
+	 */
+	public default void intervalCancelled(DataRequestThread thread) {
+	}
+
 }
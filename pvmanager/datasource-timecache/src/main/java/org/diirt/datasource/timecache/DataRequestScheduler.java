@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache;
+
+import static org.diirt.util.concurrent.Executors.namedPool;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes {@link DataRequestThread} to sources on a bounded pool of threads
+ * shared by all {@link PVCache}. Waiting requests are ordered by priority,
+ * then in submission order: urgent requests (which intersect a visible
+ * window) are executed before prefetching requests. Requests which are still
+ * waiting can be cancelled or promoted.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+public class DataRequestScheduler {
+
+	private static final int DEFAULT_NB_THREADS = 4;
+	private static DataRequestScheduler defaultScheduler;
+
+	private class ScheduledRequest implements Runnable, Comparable<ScheduledRequest> {
+
+		private final DataRequestThread request;
+		private final boolean urgent;
+		private final long sequence;
+
+		public ScheduledRequest(DataRequestThread request, boolean urgent, long sequence) {
+			this.request = request;
+			this.urgent = urgent;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public void run() {
+			waitingRequests.remove(request, this);
+			request.run();
+		}
+
+		@Override
+		public int compareTo(ScheduledRequest o) {
+			if (urgent != o.urgent)
+				return urgent ? -1 : 1;
+			return Long.compare(sequence, o.sequence);
+		}
+
+	}
+
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong sequenceCounter = new AtomicLong(0);
+	private final Map<DataRequestThread, ScheduledRequest> waitingRequests =
+			new ConcurrentHashMap<DataRequestThread, ScheduledRequest>();
+
+	/**
+	 * @param nbThreads maximum number of requests executed concurrently.
+	 */
+	public DataRequestScheduler(int nbThreads) {
+		if (nbThreads <= 0)
+			throw new IllegalArgumentException("nbThreads must be positive");
+		this.executor = new ThreadPoolExecutor(nbThreads, nbThreads, 60L,
+				TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+				namedPool("timecache retrieval "));
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @return the scheduler shared by all {@link PVCache} by default.
+	 */
+	public static synchronized DataRequestScheduler getDefault() {
+		if (defaultScheduler == null)
+			defaultScheduler = new DataRequestScheduler(DEFAULT_NB_THREADS);
+		return defaultScheduler;
+	}
+
+	/**
+	 * Queues the specified request.
+	 * @param urgent true if the request must be executed before prefetching
+	 *            requests.
+	 */
+	public void submit(DataRequestThread request, boolean urgent) {
+		request.markQueued();
+		schedule(new ScheduledRequest(request, urgent, sequenceCounter.getAndIncrement()));
+	}
+
+	private void schedule(ScheduledRequest scheduled) {
+		waitingRequests.put(scheduled.request, scheduled);
+		executor.execute(scheduled);
+	}
+
+	/**
+	 * Cancels the specified request. If it is still waiting, it is removed
+	 * from the queue and its listeners are notified in the calling thread;
+	 * otherwise it stops before requesting its next chunk.
+	 */
+	public void cancel(DataRequestThread request) {
+		request.cancel();
+		ScheduledRequest scheduled = waitingRequests.remove(request);
+		if (scheduled != null && executor.remove(scheduled))
+			request.run();
+	}
+
+	/**
+	 * Moves the specified request, if it is still waiting, before
+	 * prefetching requests.
+	 * @return true if the request has been promoted.
+	 */
+	public boolean promote(DataRequestThread request) {
+		ScheduledRequest scheduled = waitingRequests.get(request);
+		if (scheduled == null || scheduled.urgent)
+			return false;
+		if (!waitingRequests.remove(request, scheduled) || !executor.remove(scheduled))
+			return false;
+		schedule(new ScheduledRequest(request, true, scheduled.sequence));
+		return true;
+	}
+
+	/** @return the number of requests waiting for a thread. */
+	public int getWaitingCount() {
+		return executor.getQueue().size();
+	}
+
+	/** @return the number of requests being executed. */
+	public int getRunningCount() {
+		return executor.getActiveCount();
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+}
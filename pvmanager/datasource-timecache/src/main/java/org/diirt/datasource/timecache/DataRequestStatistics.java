@@ -20,6 +20,9 @@ public class DataRequestStatistics {
 	private final Timestamp start;
 	private TimeInterval interval;
 	private TimeDuration duration;
+	private TimeDuration queueWait;
+	private TimeDuration fetchLatency;
+	private boolean cancelled = false;
 
 	public DataRequestStatistics(final DataSource source) {
 		this.start = Timestamp.now();
@@ -30,6 +33,20 @@ public class DataRequestStatistics {
 		this.duration = Timestamp.now().durationBetween(start);
 	}
 
+	/**
+	 * @param queueWait time spent waiting for a thread.
+	 * @param fetchLatency time spent requesting the source.
+	 */
+	public void setLatencies(TimeDuration queueWait, TimeDuration fetchLatency) {
+		this.queueWait = queueWait;
+		this.fetchLatency = fetchLatency;
+	}
+
+	public void intervalCancelled() {
+		intervalCompleted();
+		this.cancelled = true;
+	}
+
 	public Timestamp getStart() {
 		return start;
 	}
@@ -38,6 +55,18 @@ public class DataRequestStatistics {
 		return duration;
 	}
 
+	public TimeDuration getQueueWait() {
+		return queueWait;
+	}
+
+	public TimeDuration getFetchLatency() {
+		return fetchLatency;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
 	public DataSource getSource() {
 		return source;
 	}
@@ -52,7 +81,9 @@ public class DataRequestStatistics {
 
 	public String toConsoleString() {
 		return CacheHelper.format(start) + " => "
-				+ CacheHelper.format(interval) + ": " + duration;
+				+ CacheHelper.format(interval) + ": " + duration
+				+ " (queue: " + queueWait + ", fetch: " + fetchLatency + ")"
+				+ (cancelled ? " CANCELLED" : "");
 	}
 
 }
@@ -11,6 +11,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.diirt.datasource.timecache.source.DataSource;
 import org.diirt.datasource.timecache.util.CacheHelper;
 import org.diirt.datasource.timecache.util.IntervalsList;
+import org.diirt.util.time.TimeDuration;
 import org.diirt.util.time.TimeInterval;
 import org.diirt.util.time.Timestamp;
 
@@ -18,7 +19,9 @@ import org.diirt.util.time.Timestamp;
  * Retrieves chunks from the specified {@link DataSource}, channel name and
  * {@link TimeInterval}. Polls chunks from the source until the
  * {@link Timestamp} of the last received {@link Data} is superior to the end of
- * the defined {@link TimeInterval}.
+ * the defined {@link TimeInterval}. A request can be cancelled: it then stops
+ * before the next chunk and notifies its listeners with
+ * {@link DataRequestListener#intervalCancelled(DataRequestThread)}.
  * @author Fred Arnaud (Sopra Group) - ITER
  */
 public class DataRequestThread extends Thread {
@@ -29,7 +32,13 @@ public class DataRequestThread extends Thread {
 	private final String channelName;
 	private final DataSource source;
 	private TimeInterval interval;
-	private Timestamp lastReceived;
+	private volatile Timestamp lastReceived;
+	private volatile boolean cancelled = false;
+
+	// Nanosecond times used to compute queue wait and fetch latency
+	private volatile long queuedTime = -1;
+	private volatile long startTime = -1;
+	private volatile long endTime = -1;
 
 	private List<DataRequestListener> listeners;
 
@@ -49,13 +58,25 @@ public class DataRequestThread extends Thread {
 	/** {@inheritDoc} */
 	@Override
 	public void run() {
+		startTime = System.nanoTime();
+		if (cancelled) {
+			endTime = startTime;
+			notifyCancelled();
+			return;
+		}
 		if (interval.getStart() == null) {
+			endTime = System.nanoTime();
 			notifyComplete();
 			return;
 		}
 		DataChunk currentChunk = source.getData(channelName, interval.getStart());
 		boolean process = true;
 		while (process) {
+			if (cancelled) {
+				endTime = System.nanoTime();
+				notifyCancelled();
+				return;
+			}
 			if (currentChunk == null || currentChunk.isEmpty()
 					|| !CacheHelper.intersects(interval, currentChunk.getInterval())) {
 				process = false;
@@ -70,6 +91,7 @@ public class DataRequestThread extends Thread {
 			}
 			currentChunk = source.getData(channelName, lastReceived.plus(IntervalsList.minDuration));
 		}
+		endTime = System.nanoTime();
 		notifyComplete();
 	}
 
@@ -85,6 +107,50 @@ public class DataRequestThread extends Thread {
 			l.intervalComplete(this);
 	}
 
+	// Notify the listeners that the request has been cancelled
+	private void notifyCancelled() {
+		for (DataRequestListener l : listeners)
+			l.intervalCancelled(this);
+	}
+
+	/**
+	 * Cancels the request: if it is running, it stops before requesting the
+	 * next chunk.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/** Marks the request as waiting to be executed by a scheduler. */
+	void markQueued() {
+		queuedTime = System.nanoTime();
+	}
+
+	/**
+	 * @return the time spent waiting in a scheduler queue before being
+	 *         executed, or null if the request has not been queued or has not
+	 *         started yet.
+	 */
+	public TimeDuration getQueueWait() {
+		if (queuedTime < 0 || startTime < 0)
+			return null;
+		return TimeDuration.ofNanos(Math.max(0, startTime - queuedTime));
+	}
+
+	/**
+	 * @return the time spent requesting the source, or null if the request
+	 *         has not finished yet.
+	 */
+	public TimeDuration getFetchDuration() {
+		if (startTime < 0 || endTime < 0)
+			return null;
+		return TimeDuration.ofNanos(endTime - startTime);
+	}
+
 	/** Add a {@link DataRequestListener}. */
 	public void addListener(DataRequestListener l) {
 		if (l != null)
@@ -9,7 +9,9 @@ import java.util.SortedSet;
 import org.diirt.datasource.timecache.source.DataSource;
 import org.diirt.datasource.timecache.storage.DataStorage;
 import org.diirt.datasource.timecache.util.IntervalsList;
+import org.diirt.util.time.TimeDuration;
 import org.diirt.util.time.TimeInterval;
+import org.diirt.vtype.VStatistics;
 
 /**
  * Cache interface for a single PV. Retrieves samples from sources via
@@ -52,6 +54,17 @@ public interface PVCache {
 	 */
 	public DataRequestThread retrieveDataAsync(TimeInterval interval);
 
+	/**
+	 * Same as {@link #retrieveDataAsync(TimeInterval)}, the interval being the
+	 * window currently displayed by the requester: it replaces its previous
+	 * window. Requests to sources which do not intersect any window anymore
+	 * are cancelled, and requests which intersect a window are executed
+	 * before prefetching requests.
+	 * @param interval {@link TimeInterval} to be retrieved.
+	 * @param requester the {@link PVCacheListener} which displays the interval.
+	 */
+	public DataRequestThread retrieveDataAsync(TimeInterval interval, PVCacheListener requester);
+
 	/**
 	 * Synchronously requests {@link DataStorage} for immediately available
 	 * samples.
@@ -59,6 +72,15 @@ public interface PVCache {
 	 */
 	public SortedSet<Data> retrieveDataSync(TimeInterval interval);
 
+	/**
+	 * Synchronously requests the aggregates (min, max, mean and count) of the
+	 * samples available in {@link DataStorage}, as {@link Data} with
+	 * {@link VStatistics} values, one per bucket.
+	 * @param interval {@link TimeInterval} to be retrieved.
+	 * @param resolution maximum duration of a bucket.
+	 */
+	public SortedSet<Data> retrieveAggregatesSync(TimeInterval interval, TimeDuration resolution);
+
 	/**
 	 * Get the completed intervals list. An {@link TimeInterval} is completed
 	 * when all {@link DataSource} have finished responding.
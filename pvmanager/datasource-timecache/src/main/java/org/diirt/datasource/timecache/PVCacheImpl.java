@@ -7,10 +7,13 @@ package org.diirt.datasource.timecache;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
@@ -21,6 +24,8 @@ import java.util.logging.Logger;
 import org.diirt.datasource.timecache.source.DataSource;
 import org.diirt.datasource.timecache.storage.DataStorage;
 import org.diirt.datasource.timecache.storage.DataStorageListener;
+import org.diirt.datasource.timecache.storage.PersistentDataStorage;
+import org.diirt.datasource.timecache.util.AggregatePyramid;
 import org.diirt.datasource.timecache.util.CacheHelper;
 import org.diirt.datasource.timecache.util.IntervalsList;
 import org.diirt.datasource.timecache.util.TimestampsSet;
@@ -52,9 +57,12 @@ public class PVCacheImpl implements PVCache, DataStorageListener {
 			Timestamp start = thread.getInterval().getStart();
 			Timestamp end = thread.getLastReceived();
 			final TimeInterval interval = TimeInterval.between(start, end);
+			// Merged in the retrieval thread: requests to different sources
+			// store their samples concurrently
+			final SortedSet<Data> storedDatas = storage.storeData(chunk);
+			aggregates.update(storage, chunk.getInterval());
 			updateService.execute(new Runnable() {
 				public void run() {
-					final SortedSet<Data> storedDatas = storage.storeData(chunk);
 					int index = dataSources.indexOf(thread.getSource());
 					IntervalsList ilist = completedIntervalsBySource.get(index);
 					ilist.addToSelf(interval);
@@ -85,20 +93,42 @@ public class PVCacheImpl implements PVCache, DataStorageListener {
 						for (final PVCacheListener l : listeners)
 							l.updatedCompletedIntervals(completedIntervalsSnaphsot);
 					}
-					if(isStatisticsEnabled()) {
+					if (isStatisticsEnabled()) {
+						stats.requestExecuted(thread.getRequestID(),
+								thread.getQueueWait(), thread.getFetchDuration());
 						stats.intervalsCompleted(thread.getRequestID(), interval);
 					}
-					synchronized (runningThreadsToSources) {
-						// Synchronized in order to keep cache 'processing sources'
-						runningThreadsToSources.remove(thread);
-						// Search for missing gaps in order to anticipate for future requests
-						if (runningThreadsToSources.isEmpty()) {
-							IntervalsList missingGaps = retrieveMissingGaps();
-							for (TimeInterval ti : missingGaps.getIntervals()) {
-								retrieveData(ti);
-							}
+					requestFinished(thread);
+				}
+			});
+		}
+
+		@Override
+		public void intervalCancelled(final DataRequestThread thread) {
+			if (thread == null)
+				return;
+			final TimeInterval interval = thread.getInterval();
+			updateService.execute(new Runnable() {
+				public void run() {
+					// The part which has not been received has to be
+					// requested again by the next requests
+					Timestamp lastReceived = thread.getLastReceived();
+					if (lastReceived == null) {
+						synchronized (requestedIntervals) {
+							requestedIntervals.subtractFromSelf(new IntervalsList(interval));
+						}
+					} else if (interval.getEnd() == null || lastReceived.compareTo(interval.getEnd()) < 0) {
+						synchronized (requestedIntervals) {
+							requestedIntervals.subtractFromSelf(new IntervalsList(
+									TimeInterval.between(lastReceived, interval.getEnd())));
 						}
 					}
+					if (isStatisticsEnabled()) {
+						stats.requestExecuted(thread.getRequestID(),
+								thread.getQueueWait(), thread.getFetchDuration());
+						stats.intervalCancelled(thread.getRequestID(), interval);
+					}
+					requestFinished(thread);
 				}
 			});
 		}
@@ -111,10 +141,16 @@ public class PVCacheImpl implements PVCache, DataStorageListener {
 	private final String channelName;
 	private final List<DataSource> dataSources;
 	private final DataStorage storage;
+	private final AggregatePyramid aggregates = new AggregatePyramid();
 
 	private List<PVCacheListener> listeners;
 	private ExecutorService updateService = Executors.newSingleThreadExecutor();
+	private final DataRequestScheduler scheduler;
 	private List<DataRequestThread> runningThreadsToSources;
+	// Requests launched without visible window, never cancelled
+	private Set<DataRequestThread> pinnedRequests;
+	// Interval currently displayed by each listener
+	private Map<PVCacheListener, TimeInterval> visibleWindows;
 
 	private Map<Integer, IntervalsList> completedIntervalsBySource;
 
@@ -124,8 +160,19 @@ public class PVCacheImpl implements PVCache, DataStorageListener {
 	private TimeDuration retrievalGap = TimeDuration.ofHours(168); // 1 week
 
 	public PVCacheImpl(String channelName, Collection<DataSource> dataSources, DataStorage storage) {
+		this(channelName, dataSources, storage, DataRequestScheduler.getDefault());
+	}
+
+	/**
+	 * @param scheduler executes the requests to sources.
+	 */
+	public PVCacheImpl(String channelName, Collection<DataSource> dataSources,
+			DataStorage storage, DataRequestScheduler scheduler) {
 		this.listeners = Collections.synchronizedList(new LinkedList<PVCacheListener>());
 		this.runningThreadsToSources = Collections.synchronizedList(new LinkedList<DataRequestThread>());
+		this.pinnedRequests = Collections.synchronizedSet(new HashSet<DataRequestThread>());
+		this.visibleWindows = new HashMap<PVCacheListener, TimeInterval>();
+		this.scheduler = scheduler;
 		this.channelName = channelName;
 		this.stats = new PVCacheStatistics(channelName);
 		this.storage = storage;
@@ -133,8 +180,16 @@ public class PVCacheImpl implements PVCache, DataStorageListener {
 		this.dataSources = Collections
 				.unmodifiableList(new ArrayList<DataSource>(dataSources));
 		this.completedIntervalsBySource = new TreeMap<Integer, IntervalsList>();
+		// Intervals completed before a restart are not requested again
+		IntervalsList restoredIntervals = new IntervalsList();
+		if (storage instanceof PersistentDataStorage)
+			restoredIntervals = ((PersistentDataStorage) storage).getCompletedIntervals();
 		for (int index = 0; index < this.dataSources.size(); index++)
-			this.completedIntervalsBySource.put(index, new IntervalsList());
+			this.completedIntervalsBySource.put(index, new IntervalsList(restoredIntervals));
+		for (TimeInterval interval : restoredIntervals.getIntervals())
+			aggregates.update(storage, interval);
+		this.completedIntervals = new IntervalsList(restoredIntervals);
+		this.requestedIntervals = new IntervalsList(restoredIntervals);
 	}
 
 	/** {@inheritDoc} */
@@ -159,21 +214,41 @@ public class PVCacheImpl implements PVCache, DataStorageListener {
 	/** {@inheritDoc} */
 	@Override
 	public void removeListener(PVCacheListener listener) {
-		if (listener != null)
+		if (listener != null) {
 			listeners.remove(listener);
+			boolean removed;
+			synchronized (visibleWindows) {
+				removed = visibleWindows.remove(listener) != null;
+			}
+			if (removed)
+				rescheduleRunningRequests();
+		}
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public DataRequestThread retrieveDataAsync(TimeInterval newIntervalToRetrieve) {
+		return retrieveDataAsync(newIntervalToRetrieve, null);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public DataRequestThread retrieveDataAsync(TimeInterval newIntervalToRetrieve, PVCacheListener requester) {
 		if (newIntervalToRetrieve == null)
 			return null;
 		newIntervalToRetrieve = CacheHelper.arrange(newIntervalToRetrieve);
+		if (requester != null) {
+			synchronized (visibleWindows) {
+				visibleWindows.put(requester, newIntervalToRetrieve);
+			}
+		}
 		IntervalsList missing_intervals = retrieveMissingIntervals(newIntervalToRetrieve);
 		for (TimeInterval ti : missing_intervals.getIntervals()) {
-			retrieveData(ti);
+			retrieveData(ti, requester == null);
 		}
 		optimizeRunningRequests(newIntervalToRetrieve);
+		if (requester != null)
+			rescheduleRunningRequests();
 		try {
 			return new DataRequestThread(channelName, storage, newIntervalToRetrieve);
 		} catch (Exception e) {
@@ -182,24 +257,75 @@ public class PVCacheImpl implements PVCache, DataStorageListener {
 		}
 	}
 
-	private void retrieveData(TimeInterval newIntervalToRetrieve) {
+	private void retrieveData(TimeInterval newIntervalToRetrieve, boolean pinned) {
 		log.log(Level.INFO,
 				"START requesting SOURCES: " + CacheHelper.format(newIntervalToRetrieve) + " for " + channelName);
+		synchronized (requestedIntervals) {
+			requestedIntervals.addToSelf(newIntervalToRetrieve);
+		}
 		for (DataSource s : dataSources) {
-			DataRequestThread thread = null;
 			try {
-				thread = new DataRequestThread(channelName, s, newIntervalToRetrieve);
+				DataRequestThread thread = new DataRequestThread(channelName, s, newIntervalToRetrieve);
 				thread.addListener(new DataFromSourceListener());
-				thread.start();
-				runningThreadsToSources.add(thread);
-				if (isStatisticsEnabled()) {
-					stats.intervalRequested(thread.getRequestID(), thread.getSource());
-				}
+				submit(thread, pinned);
 			} catch (Exception e) {
 				log.log(Level.SEVERE, e.getMessage());
 			}
 		}
-		requestedIntervals.addToSelf(newIntervalToRetrieve);
+	}
+
+	private void submit(DataRequestThread thread, boolean pinned) {
+		if (pinned)
+			pinnedRequests.add(thread);
+		runningThreadsToSources.add(thread);
+		if (isStatisticsEnabled()) {
+			stats.intervalRequested(thread.getRequestID(), thread.getSource());
+		}
+		scheduler.submit(thread, pinned || isVisible(thread.getInterval()));
+	}
+
+	// Called in the update thread when a request to a source is over
+	private void requestFinished(DataRequestThread thread) {
+		pinnedRequests.remove(thread);
+		synchronized (runningThreadsToSources) {
+			// Synchronized in order to keep cache 'processing sources'
+			runningThreadsToSources.remove(thread);
+			// Search for missing gaps in order to anticipate for future requests
+			if (runningThreadsToSources.isEmpty()) {
+				IntervalsList missingGaps = retrieveMissingGaps();
+				for (TimeInterval ti : missingGaps.getIntervals()) {
+					retrieveData(ti, false);
+				}
+			}
+		}
+	}
+
+	private boolean isVisible(TimeInterval interval) {
+		synchronized (visibleWindows) {
+			for (TimeInterval window : visibleWindows.values()) {
+				if (CacheHelper.intersects(window, interval))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	// Cancels the requests which do not intersect any visible window anymore
+	// and promotes the waiting ones which do
+	private void rescheduleRunningRequests() {
+		List<DataRequestThread> threads;
+		synchronized (runningThreadsToSources) {
+			threads = new ArrayList<DataRequestThread>(runningThreadsToSources);
+		}
+		for (DataRequestThread thread : threads) {
+			if (pinnedRequests.contains(thread) || thread.isCancelled())
+				continue;
+			if (isVisible(thread.getInterval())) {
+				scheduler.promote(thread);
+			} else {
+				scheduler.cancel(thread);
+			}
+		}
 	}
 
 	private void optimizeRunningRequests(TimeInterval newIntervalToRetrieve) {
@@ -210,7 +336,8 @@ public class PVCacheImpl implements PVCache, DataStorageListener {
 				DataRequestThread current_thread = it_threads.next();
 				TimeInterval current_thread_interval = current_thread.getInterval();
 
-				if (CacheHelper.intersects(current_thread_interval, newIntervalToRetrieve)
+				if (!current_thread.isCancelled()
+						&& CacheHelper.intersects(current_thread_interval, newIntervalToRetrieve)
 						&& newIntervalToRetrieve.getStart().compareTo(current_thread.getLastReceived()) > 0) {
 
 					TimeInterval first_part = TimeInterval.between(current_thread_interval.getStart(), newIntervalToRetrieve.getStart());
@@ -222,24 +349,26 @@ public class PVCacheImpl implements PVCache, DataStorageListener {
 								channelName, current_thread.getSource(), second_part);
 						new_thread.addListener(new DataFromSourceListener());
 						threads_to_launch.add(new_thread);
+						if (pinnedRequests.contains(current_thread))
+							pinnedRequests.add(new_thread);
 					} catch (Exception e) {
 						log.log(Level.SEVERE, e.getMessage());
 					}
 				}
 			}
 			for (DataRequestThread drt : threads_to_launch) {
-				drt.start();
-				runningThreadsToSources.add(drt);
-				if (isStatisticsEnabled()) {
-					stats.intervalRequested(drt.getRequestID(), drt.getSource());
-				}
+				submit(drt, pinnedRequests.contains(drt));
 			}
 		}
 	}
 
 	private IntervalsList retrieveMissingGaps() {
 		IntervalsList missingGaps = new IntervalsList();
-		Iterator<TimeInterval> iterator = this.requestedIntervals.getIntervals().iterator();
+		List<TimeInterval> requested;
+		synchronized (requestedIntervals) {
+			requested = new ArrayList<TimeInterval>(requestedIntervals.getIntervals());
+		}
+		Iterator<TimeInterval> iterator = requested.iterator();
 		TimeInterval previous = null;
 		TimeInterval current = null;
 		if (iterator.hasNext())
@@ -255,9 +384,9 @@ public class PVCacheImpl implements PVCache, DataStorageListener {
 	}
 
 	private IntervalsList retrieveMissingIntervals(TimeInterval interval) {
-		IntervalsList iList = new IntervalsList(interval);
-		iList.subtractFromSelf(requestedIntervals);
-		return iList;
+		synchronized (requestedIntervals) {
+			return requestedIntervals.complementIn(interval);
+		}
 	}
 
 	private synchronized void updateCompletedIntervals() {
@@ -267,6 +396,8 @@ public class PVCacheImpl implements PVCache, DataStorageListener {
 			else tmpList.intersectSelf(ilist);
 		}
 		this.completedIntervals = tmpList;
+		if (tmpList != null && storage instanceof PersistentDataStorage)
+			((PersistentDataStorage) storage).storeCompletedIntervals(tmpList);
 	}
 
 	/** {@inheritDoc} */
@@ -275,20 +406,35 @@ public class PVCacheImpl implements PVCache, DataStorageListener {
 		return storage.getAvailableData(interval);
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public SortedSet<Data> retrieveAggregatesSync(TimeInterval interval, TimeDuration resolution) {
+		return aggregates.getAggregates(interval, resolution);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void dataLoss(final TimestampsSet lostSet) {
-		IntervalsList deletedIntervals = lostSet.toIntervalsList();
-		requestedIntervals.subtractFromSelf(deletedIntervals);
-		for (IntervalsList ilist : completedIntervalsBySource.values())
-			ilist.subtractFromSelf(deletedIntervals);
-		updateCompletedIntervals();
-		log.log(Level.INFO, "dataLoss in " + deletedIntervals + " for " + channelName);
-		final IntervalsList completedIntervalsSnaphsot = new IntervalsList(completedIntervals);
-		synchronized (listeners) {
-			for (final PVCacheListener l : listeners)
-				l.updatedCompletedIntervals(completedIntervalsSnaphsot);
-		}
+		// Storage may be modified by any retrieval thread
+		updateService.execute(new Runnable() {
+			public void run() {
+				IntervalsList deletedIntervals = lostSet.toIntervalsList();
+				for (TimeInterval deleted : deletedIntervals.getIntervals())
+					aggregates.update(storage, deleted);
+				synchronized (requestedIntervals) {
+					requestedIntervals.subtractFromSelf(deletedIntervals);
+				}
+				for (IntervalsList ilist : completedIntervalsBySource.values())
+					ilist.subtractFromSelf(deletedIntervals);
+				updateCompletedIntervals();
+				log.log(Level.INFO, "dataLoss in " + deletedIntervals + " for " + channelName);
+				final IntervalsList completedIntervalsSnaphsot = getCompletedIntervalsList();
+				synchronized (listeners) {
+					for (final PVCacheListener l : listeners)
+						l.updatedCompletedIntervals(completedIntervalsSnaphsot);
+				}
+			}
+		});
 	}
 
 	/** {@inheritDoc} */
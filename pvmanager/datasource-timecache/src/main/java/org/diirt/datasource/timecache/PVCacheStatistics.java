@@ -12,6 +12,7 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 
 import org.diirt.datasource.timecache.source.DataSource;
+import org.diirt.util.time.TimeDuration;
 import org.diirt.util.time.TimeInterval;
 
 /**
@@ -42,6 +43,61 @@ public class PVCacheStatistics {
 		rs.setInterval(interval);
 	}
 
+	/**
+	 * Same as {@link #intervalsCompleted(int, TimeInterval)} for a request
+	 * which has been cancelled before the end of its interval.
+	 */
+	public void intervalCancelled(int requestID, TimeInterval interval) {
+		DataRequestStatistics rs = requestStatsByID.get(requestID);
+		rs.intervalCancelled();
+		rs.setInterval(interval);
+	}
+
+	/**
+	 * Records the time the request waited in the scheduler queue and the time
+	 * spent requesting its source.
+	 */
+	public void requestExecuted(int requestID, TimeDuration queueWait, TimeDuration fetchLatency) {
+		DataRequestStatistics rs = requestStatsByID.get(requestID);
+		rs.setLatencies(queueWait, fetchLatency);
+	}
+
+	/**
+	 * @return the average time requests waited in the scheduler queue, or
+	 *         null if no request has been executed.
+	 */
+	public TimeDuration getAverageQueueWait() {
+		long total = 0;
+		int count = 0;
+		synchronized (requestStatsByID) {
+			for (DataRequestStatistics rs : requestStatsByID.values()) {
+				if (rs.getQueueWait() != null) {
+					total += rs.getQueueWait().toNanosLong();
+					count++;
+				}
+			}
+		}
+		return count == 0 ? null : TimeDuration.ofNanos(total / count);
+	}
+
+	/**
+	 * @return the average time spent requesting sources, or null if no
+	 *         request has been executed.
+	 */
+	public TimeDuration getAverageFetchLatency() {
+		long total = 0;
+		int count = 0;
+		synchronized (requestStatsByID) {
+			for (DataRequestStatistics rs : requestStatsByID.values()) {
+				if (rs.getFetchLatency() != null) {
+					total += rs.getFetchLatency().toNanosLong();
+					count++;
+				}
+			}
+		}
+		return count == 0 ? null : TimeDuration.ofNanos(total / count);
+	}
+
 	public List<DataRequestStatistics> getRequestStatsIn(TimeInterval interval) {
 		List<DataRequestStatistics> stats_list = new LinkedList<DataRequestStatistics>();
 		Iterator<DataRequestStatistics> it_rs = requestStatsByID.values().iterator();
@@ -61,6 +117,8 @@ public class PVCacheStatistics {
 			sb.append(stats.toConsoleString());
 			sb.append("\n");
 		}
+		sb.append("Average queue wait: " + getAverageQueueWait()
+				+ ", average fetch latency: " + getAverageFetchLatency() + "\n");
 		return sb.toString();
 	}
 
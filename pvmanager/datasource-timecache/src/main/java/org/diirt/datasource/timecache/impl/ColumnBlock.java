@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.diirt.util.time.Timestamp;
+import org.diirt.vtype.Alarm;
+import org.diirt.vtype.Display;
+import org.diirt.vtype.Time;
+import org.diirt.vtype.VDouble;
+import org.diirt.vtype.VInt;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+
+/**
+ * Immutable block of consecutive samples stored in parallel primitive
+ * columns: epoch nanoseconds, value and alarm code. The alarm code indexes
+ * a small per-block dictionary of alarms. Scalar {@link VDouble} or
+ * {@link VInt} samples sharing the same {@link Display} are stored in the
+ * columns, any other sample is kept as is in a fallback column.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+class ColumnBlock {
+
+	/** Alarm code of the samples stored in the fallback column. */
+	static final byte FALLBACK = -1;
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	private final long[] epochNanos;
+	private final double[] values;
+	private final byte[] alarmCodes;
+	private final Alarm[] alarms;
+	private final VType[] others;
+	private final Display display;
+	private final boolean intValues;
+	private final int size;
+
+	/** Logical time of the last access, used for eviction. */
+	volatile long lastAccess;
+
+	private ColumnBlock(Builder builder) {
+		this.size = builder.size;
+		this.epochNanos = Arrays.copyOf(builder.epochNanos, size);
+		this.values = Arrays.copyOf(builder.values, size);
+		this.alarmCodes = Arrays.copyOf(builder.alarmCodes, size);
+		this.alarms = builder.alarms.toArray(new Alarm[builder.alarms.size()]);
+		this.others = builder.others == null ? null : Arrays.copyOf(builder.others, size);
+		this.display = builder.display;
+		this.intValues = Boolean.TRUE.equals(builder.intValues);
+	}
+
+	int size() {
+		return size;
+	}
+
+	long firstNanos() {
+		return epochNanos[0];
+	}
+
+	long lastNanos() {
+		return epochNanos[size - 1];
+	}
+
+	long getEpochNanos(int index) {
+		return epochNanos[index];
+	}
+
+	/**
+	 * Returns the index of the first sample at or after the given time, or
+	 * the size of the block if there is none.
+	 */
+	int ceilingIndex(long nanos) {
+		int index = Arrays.binarySearch(epochNanos, 0, size, nanos);
+		return index >= 0 ? index : -index - 1;
+	}
+
+	/**
+	 * Returns the index of the last sample at or before the given time, or
+	 * -1 if there is none.
+	 */
+	int floorIndex(long nanos) {
+		int index = Arrays.binarySearch(epochNanos, 0, size, nanos);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	Timestamp getTimestamp(int index) {
+		return toTimestamp(epochNanos[index]);
+	}
+
+	/** Rebuilds the value of the sample at the given index. */
+	VType getValue(int index) {
+		byte code = alarmCodes[index];
+		if (code == FALLBACK)
+			return others[index];
+		Time time = ValueFactory.newTime(getTimestamp(index));
+		if (intValues)
+			return ValueFactory.newVInt((int) values[index], alarms[code], time, display);
+		return ValueFactory.newVDouble(values[index], alarms[code], time, display);
+	}
+
+	/** Estimated memory footprint of the block, in bytes. */
+	long estimatedBytes() {
+		// 8 + 8 + 1 bytes per sample, and the references of the fallback column
+		long bytes = 64 + 17L * size + 32L * alarms.length;
+		if (others != null) {
+			bytes += 8L * size;
+			for (int i = 0; i < size; i++) {
+				if (others[i] != null)
+					bytes += 128;
+			}
+		}
+		return bytes;
+	}
+
+	static long toEpochNanos(Timestamp timestamp) {
+		return timestamp.getSec() * NANOS_PER_SECOND + timestamp.getNanoSec();
+	}
+
+	static Timestamp toTimestamp(long epochNanos) {
+		return Timestamp.of(Math.floorDiv(epochNanos, NANOS_PER_SECOND),
+				(int) Math.floorMod(epochNanos, NANOS_PER_SECOND));
+	}
+
+	// Displays do not implement equals
+	private static boolean sameDisplay(Display display, Display other) {
+		if (display == other)
+			return true;
+		return Objects.equals(display.getLowerDisplayLimit(), other.getLowerDisplayLimit())
+				&& Objects.equals(display.getLowerAlarmLimit(), other.getLowerAlarmLimit())
+				&& Objects.equals(display.getLowerWarningLimit(), other.getLowerWarningLimit())
+				&& Objects.equals(display.getUnits(), other.getUnits())
+				&& Objects.equals(display.getFormat(), other.getFormat())
+				&& Objects.equals(display.getUpperWarningLimit(), other.getUpperWarningLimit())
+				&& Objects.equals(display.getUpperAlarmLimit(), other.getUpperAlarmLimit())
+				&& Objects.equals(display.getUpperDisplayLimit(), other.getUpperDisplayLimit())
+				&& Objects.equals(display.getLowerCtrlLimit(), other.getLowerCtrlLimit())
+				&& Objects.equals(display.getUpperCtrlLimit(), other.getUpperCtrlLimit());
+	}
+
+	// Detach the display from the sample, so that the sample is not retained
+	private static Display copyOf(Display display) {
+		if (sameDisplay(display, ValueFactory.displayNone()))
+			return ValueFactory.displayNone();
+		return ValueFactory.newDisplay(display.getLowerDisplayLimit(), display.getLowerAlarmLimit(),
+				display.getLowerWarningLimit(), display.getUnits(), display.getFormat(),
+				display.getUpperWarningLimit(), display.getUpperAlarmLimit(),
+				display.getUpperDisplayLimit(), display.getLowerCtrlLimit(), display.getUpperCtrlLimit());
+	}
+
+	/**
+	 * Accumulates samples, in increasing time order, to create a block.
+	 */
+	static class Builder {
+
+		private final long[] epochNanos;
+		private final double[] values;
+		private final byte[] alarmCodes;
+		private final List<Alarm> alarms = new ArrayList<Alarm>();
+		private VType[] others;
+		private Display display;
+		private Boolean intValues;
+		private int size = 0;
+
+		Builder(int capacity) {
+			epochNanos = new long[capacity];
+			values = new double[capacity];
+			alarmCodes = new byte[capacity];
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		boolean isFull() {
+			return size == epochNanos.length;
+		}
+
+		/** Adds a sample, storing it in the columns if possible. */
+		void add(long nanos, VType value) {
+			epochNanos[size] = nanos;
+			if (!encode(nanos, value))
+				addFallback(value);
+			size++;
+		}
+
+		/** Copies the sample at the given index of another block. */
+		void add(ColumnBlock block, int index) {
+			byte code = block.alarmCodes[index];
+			if (code != FALLBACK && isCompatible(block.intValues, block.display)) {
+				byte newCode = alarmCode(block.alarms[code]);
+				if (newCode != FALLBACK) {
+					epochNanos[size] = block.epochNanos[index];
+					values[size] = block.values[index];
+					alarmCodes[size] = newCode;
+					intValues = block.intValues;
+					display = block.display;
+					size++;
+					return;
+				}
+			}
+			add(block.epochNanos[index], block.getValue(index));
+		}
+
+		ColumnBlock build() {
+			return new ColumnBlock(this);
+		}
+
+		private boolean encode(long nanos, VType value) {
+			if (!(value instanceof VDouble) && !(value instanceof VInt))
+				return false;
+			VNumber number = (VNumber) value;
+			boolean isInt = value instanceof VInt;
+			if (number.getValue() == null || !isCompatible(isInt, number))
+				return false;
+			if (number.getTimestamp() == null || number.getTimeUserTag() != null
+					|| !number.isTimeValid() || toEpochNanos(number.getTimestamp()) != nanos)
+				return false;
+			byte code = alarmCode(number);
+			if (code == FALLBACK)
+				return false;
+			values[size] = number.getValue().doubleValue();
+			alarmCodes[size] = code;
+			intValues = isInt;
+			if (display == null)
+				display = copyOf(number);
+			return true;
+		}
+
+		private boolean isCompatible(boolean isInt, Display newDisplay) {
+			if (intValues != null && intValues != isInt)
+				return false;
+			return display == null || sameDisplay(display, newDisplay);
+		}
+
+		private byte alarmCode(Alarm alarm) {
+			for (int i = 0; i < alarms.size(); i++) {
+				Alarm existing = alarms.get(i);
+				if (existing.getAlarmSeverity() == alarm.getAlarmSeverity()
+						&& existing.getAlarmName().equals(alarm.getAlarmName()))
+					return (byte) i;
+			}
+			if (alarms.size() == Byte.MAX_VALUE)
+				return FALLBACK;
+			alarms.add(ValueFactory.newAlarm(alarm.getAlarmSeverity(), alarm.getAlarmName()));
+			return (byte) (alarms.size() - 1);
+		}
+
+		private void addFallback(VType value) {
+			if (others == null)
+				others = new VType[epochNanos.length];
+			others[size] = value;
+			alarmCodes[size] = FALLBACK;
+		}
+
+	}
+
+}
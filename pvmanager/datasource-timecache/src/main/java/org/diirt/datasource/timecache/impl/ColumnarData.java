@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.impl;
+
+import org.diirt.datasource.timecache.Data;
+import org.diirt.util.time.Timestamp;
+import org.diirt.vtype.VType;
+
+/**
+ * {@link Data} pointing to a sample of a {@link ColumnBlock}. The value is
+ * rebuilt from the columns when requested.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+class ColumnarData implements Data {
+
+	private final ColumnBlock block;
+	private final int index;
+
+	ColumnarData(ColumnBlock block, int index) {
+		this.block = block;
+		this.index = index;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Timestamp getTimestamp() {
+		return block.getTimestamp(index);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public VType getValue() {
+		return block.getValue(index);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int compareTo(Data sd) {
+		if (sd instanceof ColumnarData) {
+			ColumnarData other = (ColumnarData) sd;
+			return Long.compare(block.getEpochNanos(index),
+					other.block.getEpochNanos(other.index));
+		}
+		return getTimestamp().compareTo(sd.getTimestamp());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hashCode() {
+		long nanos = block.getEpochNanos(index);
+		return (int) (nanos ^ (nanos >>> 32));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ColumnarData))
+			return false;
+		ColumnarData other = (ColumnarData) obj;
+		return block.getEpochNanos(index) == other.block.getEpochNanos(other.index);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return "ColumnarData [timestamp=" + getTimestamp() + "]";
+	}
+
+}
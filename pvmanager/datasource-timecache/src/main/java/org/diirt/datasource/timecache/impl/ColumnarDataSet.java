@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.impl;
+
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+import org.diirt.datasource.timecache.Data;
+
+/**
+ * Read-only {@link SortedSet} view of the samples of a sorted array of
+ * {@link ColumnBlock} between two times. The samples are not copied: the
+ * {@link Data} are created while iterating.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+class ColumnarDataSet extends AbstractSet<Data> implements SortedSet<Data> {
+
+	private final ColumnBlock[] blocks;
+	private final long fromNanos;
+	private final long toNanos;
+	private final int fromBlock;
+	private final int fromIndex;
+	private final int size;
+
+	/**
+	 * Creates a view of the samples between the given times, both included.
+	 */
+	ColumnarDataSet(ColumnBlock[] blocks, long fromNanos, long toNanos) {
+		this.blocks = blocks;
+		this.fromNanos = fromNanos;
+		this.toNanos = toNanos;
+		int firstBlock = ceilingBlock(blocks, fromNanos);
+		int lastBlock = floorBlock(blocks, toNanos);
+		if (fromNanos > toNanos || firstBlock > lastBlock) {
+			this.fromBlock = 0;
+			this.fromIndex = 0;
+			this.size = 0;
+			return;
+		}
+		int firstIndex = blocks[firstBlock].ceilingIndex(fromNanos);
+		int lastIndex = blocks[lastBlock].floorIndex(toNanos);
+		this.fromBlock = firstBlock;
+		this.fromIndex = firstIndex;
+		if (firstBlock == lastBlock) {
+			this.size = Math.max(0, lastIndex - firstIndex + 1);
+		} else {
+			int count = blocks[firstBlock].size() - firstIndex + lastIndex + 1;
+			for (int b = firstBlock + 1; b < lastBlock; b++)
+				count += blocks[b].size();
+			this.size = count;
+		}
+	}
+
+	/**
+	 * Returns the index of the first block with samples at or after the
+	 * given time, or the number of blocks if there is none.
+	 */
+	static int ceilingBlock(ColumnBlock[] blocks, long nanos) {
+		int low = 0;
+		int high = blocks.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (blocks[mid].lastNanos() < nanos)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the index of the last block with samples at or before the
+	 * given time, or -1 if there is none.
+	 */
+	static int floorBlock(ColumnBlock[] blocks, long nanos) {
+		int low = 0;
+		int high = blocks.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (blocks[mid].firstNanos() <= nanos)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low - 1;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Iterator<Data> iterator() {
+		return new Iterator<Data>() {
+			private int block = fromBlock;
+			private int index = fromIndex;
+			private int remaining = size;
+
+			@Override
+			public boolean hasNext() {
+				return remaining > 0;
+			}
+
+			@Override
+			public Data next() {
+				if (remaining == 0)
+					throw new NoSuchElementException();
+				if (index == blocks[block].size()) {
+					block++;
+					index = 0;
+				}
+				remaining--;
+				return new ColumnarData(blocks[block], index++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Storage views are read-only");
+			}
+		};
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof Data) || ((Data) o).getTimestamp() == null)
+			return false;
+		long nanos = ColumnBlock.toEpochNanos(((Data) o).getTimestamp());
+		if (nanos < fromNanos || nanos > toNanos)
+			return false;
+		int block = ceilingBlock(blocks, nanos);
+		if (block == blocks.length)
+			return false;
+		int index = blocks[block].ceilingIndex(nanos);
+		return index < blocks[block].size() && blocks[block].getEpochNanos(index) == nanos;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Comparator<? super Data> comparator() {
+		// Natural ordering
+		return null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public SortedSet<Data> subSet(Data fromElement, Data toElement) {
+		return new ColumnarDataSet(blocks,
+				Math.max(fromNanos, ColumnBlock.toEpochNanos(fromElement.getTimestamp())),
+				Math.min(toNanos, ColumnBlock.toEpochNanos(toElement.getTimestamp()) - 1));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public SortedSet<Data> headSet(Data toElement) {
+		return new ColumnarDataSet(blocks, fromNanos,
+				Math.min(toNanos, ColumnBlock.toEpochNanos(toElement.getTimestamp()) - 1));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public SortedSet<Data> tailSet(Data fromElement) {
+		return new ColumnarDataSet(blocks,
+				Math.max(fromNanos, ColumnBlock.toEpochNanos(fromElement.getTimestamp())), toNanos);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Data first() {
+		if (size == 0)
+			throw new NoSuchElementException();
+		return new ColumnarData(blocks[fromBlock], fromIndex);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Data last() {
+		if (size == 0)
+			throw new NoSuchElementException();
+		int block = fromBlock;
+		int index = fromIndex + size - 1;
+		while (index >= blocks[block].size()) {
+			index -= blocks[block].size();
+			block++;
+		}
+		return new ColumnarData(blocks[block], index);
+	}
+
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.diirt.datasource.timecache.Data;
+import org.diirt.datasource.timecache.DataChunk;
+import org.diirt.datasource.timecache.storage.DataStorage;
+import org.diirt.datasource.timecache.storage.DataStorageListener;
+import org.diirt.datasource.timecache.util.CacheHelper;
+import org.diirt.datasource.timecache.util.TimestampsSet;
+import org.diirt.util.time.TimeDuration;
+import org.diirt.util.time.TimeInterval;
+import org.diirt.util.time.Timestamp;
+
+/**
+ * {@link DataStorage} implementation which keeps samples in memory in
+ * columnar blocks: each block stores up to chunk size samples as parallel
+ * arrays of epoch nanoseconds, values and alarm codes (see
+ * {@link ColumnBlock}). Lookups are binary searches, and the sets returned
+ * by queries are views on the blocks: no sample is copied.
+ * <p>
+ * Instead of relying on the garbage collector, the storage has an explicit
+ * memory budget: when the estimated size of the blocks exceeds the budget,
+ * the least recently used blocks are removed and the listeners are notified
+ * of the data loss.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+public class ColumnarMemoryStorage implements DataStorage {
+
+	/** Sorted, non overlapping blocks. Replaced on each modification. */
+	private volatile ColumnBlock[] blocks = new ColumnBlock[0];
+
+	private final AtomicLong accessClock = new AtomicLong();
+
+	private List<DataStorageListener> listeners = new ArrayList<DataStorageListener>();
+
+	private int chunkSize = 1000;
+	private long memoryBudget = Long.MAX_VALUE;
+	private long usedMemory = 0;
+	private TimeDuration minChunkDuration = null;
+
+	public ColumnarMemoryStorage() {
+	}
+
+	public ColumnarMemoryStorage(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param chunkSize maximum number of samples per block and per chunk.
+	 * @param memoryBudget maximum estimated memory used by the samples, in
+	 *            bytes.
+	 */
+	public ColumnarMemoryStorage(int chunkSize, long memoryBudget) {
+		this.chunkSize = chunkSize;
+		this.memoryBudget = memoryBudget;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public DataChunk getData(String channelName, Timestamp from) {
+		ColumnBlock[] current = blocks;
+		DataChunk chunk = new DataChunk(chunkSize);
+		long fromNanos = from == null ? Long.MIN_VALUE : ColumnBlock.toEpochNanos(from);
+		int block = ColumnarDataSet.ceilingBlock(current, fromNanos);
+		if (block == current.length)
+			return chunk;
+		int index = current[block].ceilingIndex(fromNanos);
+		while (block < current.length) {
+			touch(current[block]);
+			if (!chunk.add(new ColumnarData(current[block], index)))
+				break;
+			index++;
+			if (index == current[block].size()) {
+				block++;
+				index = 0;
+			}
+		}
+		return chunk;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public SortedSet<Data> getAvailableData(TimeInterval interval) {
+		if (interval == null)
+			return new TreeSet<Data>();
+		interval = CacheHelper.arrange(interval);
+		ColumnBlock[] current = blocks;
+		long startNanos = startNanos(interval);
+		long endNanos = endNanos(interval);
+		SortedSet<Data> view = new ColumnarDataSet(current, startNanos, endNanos);
+		if (!view.isEmpty()) {
+			// Mark the blocks in the view as used
+			int first = ColumnarDataSet.ceilingBlock(current, startNanos);
+			int last = ColumnarDataSet.floorBlock(current, endNanos);
+			for (int b = first; b <= last; b++)
+				touch(current[b]);
+		}
+		return view;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean hasAvailableData(TimeInterval interval) {
+		if (interval == null)
+			return false;
+		interval = CacheHelper.arrange(interval);
+		ColumnBlock[] current = blocks;
+		long startNanos = startNanos(interval);
+		long endNanos = endNanos(interval);
+		int first = ColumnarDataSet.ceilingBlock(current, startNanos);
+		int last = ColumnarDataSet.floorBlock(current, endNanos);
+		if (first == current.length || last < 0)
+			return false;
+		Timestamp begin = current[first].getTimestamp(current[first].ceilingIndex(startNanos));
+		Timestamp end = current[last].getTimestamp(current[last].floorIndex(endNanos));
+		return interval.contains(begin) && interval.contains(end);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public SortedSet<Data> storeData(DataChunk chunk) {
+		if (chunk == null || chunk.isEmpty())
+			return new TreeSet<Data>();
+		TimestampsSet lostSet;
+		SortedSet<Data> stored;
+		synchronized (this) {
+			long chunkStart = ColumnBlock.toEpochNanos(chunk.getDatas().first().getTimestamp());
+			long chunkEnd = ColumnBlock.toEpochNanos(chunk.getDatas().last().getTimestamp());
+			ColumnBlock[] current = blocks;
+
+			// Blocks that overlap the chunk are merged with it
+			int first = ColumnarDataSet.ceilingBlock(current, chunkStart);
+			int last = ColumnarDataSet.floorBlock(current, chunkEnd);
+			List<ColumnBlock> merged = merge(current, first, last, chunk);
+
+			int removedCount = Math.max(0, last - first + 1);
+			ColumnBlock[] updated = new ColumnBlock[current.length - removedCount + merged.size()];
+			System.arraycopy(current, 0, updated, 0, first);
+			for (int i = 0; i < merged.size(); i++)
+				updated[first + i] = merged.get(i);
+			System.arraycopy(current, first + removedCount, updated,
+					first + merged.size(), current.length - first - removedCount);
+			for (int b = first; b < first + removedCount; b++)
+				usedMemory -= current[b].estimatedBytes();
+			for (ColumnBlock block : merged) {
+				usedMemory += block.estimatedBytes();
+				touch(block);
+			}
+			blocks = updated;
+
+			TimeDuration chunkDuration = chunk.getInterval().getEnd()
+					.durationFrom(chunk.getInterval().getStart());
+			if (minChunkDuration == null || chunkDuration.compareTo(minChunkDuration) < 0)
+				minChunkDuration = chunkDuration;
+
+			stored = new ColumnarDataSet(updated, chunkStart, chunkEnd);
+			lostSet = evict();
+		}
+		if (lostSet != null) {
+			for (DataStorageListener l : listeners)
+				l.dataLoss(lostSet);
+		}
+		return stored;
+	}
+
+	// Merges the samples of the given blocks and chunk into new blocks
+	private List<ColumnBlock> merge(ColumnBlock[] current, int first, int last, DataChunk chunk) {
+		List<ColumnBlock> merged = new ArrayList<ColumnBlock>();
+		ColumnBlock.Builder builder = new ColumnBlock.Builder(chunkSize);
+		int block = first;
+		int index = 0;
+		Iterator<Data> newData = chunk.getDatas().iterator();
+		Data next = newData.next();
+		long nextNanos = ColumnBlock.toEpochNanos(next.getTimestamp());
+		while (next != null || block <= last) {
+			if (builder.isFull()) {
+				merged.add(builder.build());
+				builder = new ColumnBlock.Builder(chunkSize);
+			}
+			long oldNanos = block <= last ? current[block].getEpochNanos(index) : Long.MAX_VALUE;
+			if (next != null && nextNanos <= oldNanos) {
+				builder.add(nextNanos, next.getValue());
+				if (nextNanos == oldNanos) {
+					// The new sample replaces the old one
+					index++;
+				}
+				next = newData.hasNext() ? newData.next() : null;
+				if (next != null)
+					nextNanos = ColumnBlock.toEpochNanos(next.getTimestamp());
+			} else {
+				builder.add(current[block], index);
+				index++;
+			}
+			if (block <= last && index == current[block].size()) {
+				block++;
+				index = 0;
+			}
+		}
+		if (!builder.isEmpty())
+			merged.add(builder.build());
+		return merged;
+	}
+
+	// Must be called with the lock held
+	private TimestampsSet evict() {
+		if (usedMemory <= memoryBudget)
+			return null;
+		TimestampsSet lostSet = new TimestampsSet();
+		lostSet.setTolerance(minChunkDuration);
+		List<ColumnBlock> remaining = new ArrayList<ColumnBlock>();
+		for (ColumnBlock block : blocks)
+			remaining.add(block);
+		while (usedMemory > memoryBudget && !remaining.isEmpty()) {
+			ColumnBlock leastUsed = remaining.get(0);
+			for (ColumnBlock block : remaining) {
+				if (block.lastAccess < leastUsed.lastAccess)
+					leastUsed = block;
+			}
+			remaining.remove(leastUsed);
+			usedMemory -= leastUsed.estimatedBytes();
+			for (int i = 0; i < leastUsed.size(); i++)
+				lostSet.add(leastUsed.getTimestamp(i));
+		}
+		blocks = remaining.toArray(new ColumnBlock[remaining.size()]);
+		return lostSet;
+	}
+
+	private void touch(ColumnBlock block) {
+		block.lastAccess = accessClock.incrementAndGet();
+	}
+
+	private static long startNanos(TimeInterval interval) {
+		return interval.getStart() == null ? Long.MIN_VALUE : ColumnBlock.toEpochNanos(interval.getStart());
+	}
+
+	private static long endNanos(TimeInterval interval) {
+		return interval.getEnd() == null ? Long.MAX_VALUE : ColumnBlock.toEpochNanos(interval.getEnd());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void addListener(DataStorageListener listener) {
+		if (listener != null)
+			listeners.add(listener);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void removeListener(DataStorageListener listener) {
+		if (listener != null)
+			listeners.remove(listener);
+	}
+
+	// Useful to debug
+	public int getStoredSampleCount() {
+		int count = 0;
+		for (ColumnBlock block : blocks)
+			count += block.size();
+		return count;
+	}
+
+	// Useful to debug
+	public synchronized long getEstimatedMemory() {
+		return usedMemory;
+	}
+
+	@Override
+	public void clearAll() {
+		TimestampsSet lostSet = new TimestampsSet();
+		synchronized (this) {
+			lostSet.setTolerance(minChunkDuration);
+			for (ColumnBlock block : blocks) {
+				for (int i = 0; i < block.size(); i++)
+					lostSet.add(block.getTimestamp(i));
+			}
+			blocks = new ColumnBlock[0];
+			usedMemory = 0;
+		}
+		for (DataStorageListener l : listeners)
+			l.dataLoss(lostSet);
+	}
+
+}
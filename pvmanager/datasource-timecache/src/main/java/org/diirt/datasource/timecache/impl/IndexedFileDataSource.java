@@ -0,0 +1,736 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.diirt.datasource.timecache.DataChunk;
+import org.diirt.datasource.timecache.source.DataSource;
+import org.diirt.datasource.timecache.source.SourceData;
+import org.diirt.util.array.ArrayDouble;
+import org.diirt.util.time.Timestamp;
+import org.diirt.vtype.Alarm;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.Time;
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+
+/**
+ * {@link DataSource} implementation which reads samples from a file dump of
+ * 'sample_view' from Archive RDB, like {@link SimpleFileDataSource}, without
+ * scanning the file for each chunk.
+ * <p>
+ * The file is scanned once to build an index per channel: the byte offset of
+ * one sample every {@link #INDEX_STEP} samples of the channel. The index is
+ * saved next to the file (see {@link #getIndexFile()}) and reused as long as
+ * the file is not modified. A chunk is read by seeking to the closest indexed
+ * sample and parsing the following lines directly from the bytes of the
+ * file, so that the cost of a request depends on the chunk size and not on
+ * the file size.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+public class IndexedFileDataSource implements DataSource {
+
+	private static final Logger log = Logger.getLogger(IndexedFileDataSource.class.getName());
+
+	/** Number of samples of a channel between two index entries. */
+	public static final int INDEX_STEP = 256;
+
+	private static final int INDEX_MAGIC = 0x54434958; // TCIX
+	private static final int INDEX_VERSION = 1;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int channel_name = 0;
+	private static final int smpl_time = 1;
+	private static final int nanosecs = 2;
+	private static final int severity = 3;
+	// private static final int status = 4;
+	private static final int num_val = 5;
+	private static final int float_val = 6;
+	private static final int str_val = 7;
+	private static final int array_nval = 8;
+	private static final int array_val = 9;
+	private static final int nb_columns = 10;
+
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1.0;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+	}
+
+	// Index of the samples of one channel
+	private static class ChannelIndex {
+		private final byte[] name;
+		private final boolean sorted;
+		private final long lastOffset;
+		// Epoch nanoseconds and line offsets of the indexed samples
+		private final long[] times;
+		private final long[] offsets;
+
+		public ChannelIndex(byte[] name, boolean sorted, long lastOffset,
+				long[] times, long[] offsets) {
+			this.name = name;
+			this.sorted = sorted;
+			this.lastOffset = lastOffset;
+			this.times = times;
+			this.offsets = offsets;
+		}
+
+		// Offset of the line from which samples at or after the given time
+		// have to be searched
+		public long startOffset(long fromNanos) {
+			if (!sorted)
+				return offsets[0];
+			int low = 0;
+			int high = times.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (times[mid] < fromNanos)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return offsets[Math.max(0, low - 1)];
+		}
+	}
+
+	private static class ChannelIndexBuilder {
+		private final byte[] name;
+		private boolean sorted = true;
+		private long lastTime = Long.MIN_VALUE;
+		private long lastOffset;
+		private int count = 0;
+		private long[] times = new long[16];
+		private long[] offsets = new long[16];
+		private int size = 0;
+
+		public ChannelIndexBuilder(byte[] name) {
+			this.name = name;
+		}
+
+		public void add(long time, long offset) {
+			if (count % INDEX_STEP == 0) {
+				if (size == times.length) {
+					times = Arrays.copyOf(times, size * 2);
+					offsets = Arrays.copyOf(offsets, size * 2);
+				}
+				times[size] = time;
+				offsets[size] = offset;
+				size++;
+			}
+			if (time < lastTime)
+				sorted = false;
+			lastTime = time;
+			lastOffset = offset;
+			count++;
+		}
+
+		public ChannelIndex build() {
+			return new ChannelIndex(name, sorted, lastOffset,
+					Arrays.copyOf(times, size), Arrays.copyOf(offsets, size));
+		}
+	}
+
+	/**
+	 * Reads the lines of the file from a given offset and splits them in
+	 * columns without creating strings.
+	 */
+	private static class LineReader {
+		private final FileChannel channel;
+		private final ZoneId zone;
+		private byte[] buffer = new byte[BUFFER_SIZE];
+		private ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+		private long bufferOffset;
+		private int limit;
+		private int position;
+		private boolean eof;
+
+		private long lineOffset;
+		private int nbFields;
+		private final int[] fieldStart = new int[nb_columns];
+		private final int[] fieldEnd = new int[nb_columns];
+
+		// Date and time fields of the last parsed line
+		private final int[] parts = new int[6];
+		// Last parsed hour and its epoch seconds
+		private long hourKey = -1;
+		private long hourSeconds;
+
+		public LineReader(FileChannel channel, ZoneId zone) {
+			this.channel = channel;
+			this.zone = zone;
+		}
+
+		public void seek(long offset) {
+			bufferOffset = offset;
+			limit = 0;
+			position = 0;
+			eof = false;
+		}
+
+		public boolean next() throws IOException {
+			int from = position;
+			while (true) {
+				for (int i = from; i < limit; i++) {
+					if (buffer[i] == '\n') {
+						split(position, i);
+						position = i + 1;
+						return true;
+					}
+				}
+				if (eof) {
+					if (position < limit) {
+						split(position, limit);
+						position = limit;
+						return true;
+					}
+					return false;
+				}
+				from = limit - position;
+				fill();
+			}
+		}
+
+		// Moves the current line to the beginning of the buffer and reads
+		// the following bytes
+		private void fill() throws IOException {
+			if (position > 0) {
+				System.arraycopy(buffer, position, buffer, 0, limit - position);
+				bufferOffset += position;
+				limit -= position;
+				position = 0;
+			}
+			if (limit == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				wrapper = ByteBuffer.wrap(buffer);
+			}
+			wrapper.limit(buffer.length);
+			wrapper.position(limit);
+			int read = channel.read(wrapper, bufferOffset + limit);
+			if (read <= 0)
+				eof = true;
+			else
+				limit += read;
+		}
+
+		private void split(int start, int end) {
+			lineOffset = bufferOffset + start;
+			if (end > start && buffer[end - 1] == '\r')
+				end--;
+			nbFields = 0;
+			fieldStart[0] = start;
+			for (int i = start; i < end && nbFields < nb_columns - 1; i++) {
+				if (buffer[i] == ';') {
+					fieldEnd[nbFields] = i;
+					nbFields++;
+					fieldStart[nbFields] = i + 1;
+				}
+			}
+			fieldEnd[nbFields] = end;
+			nbFields++;
+			if (nbFields == nb_columns) {
+				// Ignore extra columns
+				for (int i = fieldStart[nb_columns - 1]; i < end; i++) {
+					if (buffer[i] == ';') {
+						fieldEnd[nb_columns - 1] = i;
+						break;
+					}
+				}
+			}
+		}
+
+		public long getLineOffset() {
+			return lineOffset;
+		}
+
+		public boolean isEmpty(int field) {
+			return field >= nbFields || fieldStart[field] == fieldEnd[field];
+		}
+
+		public boolean fieldEquals(int field, byte[] value) {
+			if (field >= nbFields || fieldEnd[field] - fieldStart[field] != value.length)
+				return false;
+			int start = fieldStart[field];
+			for (int i = 0; i < value.length; i++) {
+				if (buffer[start + i] != value[i])
+					return false;
+			}
+			return true;
+		}
+
+		public byte[] fieldBytes(int field) {
+			return Arrays.copyOfRange(buffer, fieldStart[field], fieldEnd[field]);
+		}
+
+		public String fieldString(int field) {
+			if (field >= nbFields)
+				return null;
+			return new String(buffer, fieldStart[field],
+					fieldEnd[field] - fieldStart[field], Charset.defaultCharset());
+		}
+
+		/**
+		 * Parses the time of the sample as epoch nanoseconds: the date is
+		 * read in the default time zone, the nanoseconds come from their own
+		 * column, as in {@link SimpleFileDataSource}.
+		 * @return the time or {@link Long#MIN_VALUE} if the line is invalid.
+		 */
+		public long parseTime() {
+			if (nbFields <= nanosecs)
+				return Long.MIN_VALUE;
+			int i = fieldStart[smpl_time];
+			int end = fieldEnd[smpl_time];
+			// yyyy-MM-dd HH:mm:ss[.fffffffff]
+			int part = 0;
+			int value = 0;
+			int digits = 0;
+			for (; i < end && part < 6; i++) {
+				byte b = buffer[i];
+				if (b >= '0' && b <= '9') {
+					value = value * 10 + (b - '0');
+					digits++;
+				} else {
+					if (digits == 0)
+						return Long.MIN_VALUE;
+					parts[part++] = value;
+					value = 0;
+					digits = 0;
+					if (b == '.')
+						break;
+				}
+			}
+			if (part < 6 && digits > 0)
+				parts[part++] = value;
+			if (part < 6)
+				return Long.MIN_VALUE;
+			long key = ((parts[0] * 100L + parts[1]) * 100L + parts[2]) * 100L + parts[3];
+			if (key != hourKey) {
+				try {
+					hourSeconds = LocalDateTime.of(parts[0], parts[1], parts[2], parts[3], 0)
+							.atZone(zone).toEpochSecond();
+				} catch (RuntimeException e) {
+					return Long.MIN_VALUE;
+				}
+				hourKey = key;
+			}
+			long seconds = hourSeconds + parts[4] * 60L + parts[5];
+			long nanos = isEmpty(nanosecs) ? 0 : parseLong(nanosecs);
+			if (nanos < 0)
+				return Long.MIN_VALUE;
+			return seconds * 1000000000L + nanos;
+		}
+
+		// Parses a positive integer, returns -1 if invalid
+		private long parseLong(int field) {
+			long value = 0;
+			int start = fieldStart[field];
+			int end = fieldEnd[field];
+			if (start == end || end - start > 18)
+				return -1;
+			for (int i = start; i < end; i++) {
+				byte b = buffer[i];
+				if (b < '0' || b > '9')
+					return -1;
+				value = value * 10 + (b - '0');
+			}
+			return value;
+		}
+
+		public int parseInt(int field) {
+			int start = fieldStart[field];
+			int end = fieldEnd[field];
+			boolean negative = buffer[start] == '-';
+			int i = negative || buffer[start] == '+' ? start + 1 : start;
+			if (i == end || end - i > 9)
+				return Integer.parseInt(fieldString(field));
+			int value = 0;
+			for (; i < end; i++) {
+				byte b = buffer[i];
+				if (b < '0' || b > '9')
+					return Integer.parseInt(fieldString(field));
+				value = value * 10 + (b - '0');
+			}
+			return negative ? -value : value;
+		}
+
+		public double parseDouble(int field) {
+			return parseDouble(fieldStart[field], fieldEnd[field]);
+		}
+
+		/**
+		 * Parses decimal numbers with at most 15 significant digits and a
+		 * small exponent with one exact operation, other numbers with
+		 * {@link Double#parseDouble(String)}.
+		 */
+		private double parseDouble(int start, int end) {
+			int i = start;
+			boolean negative = false;
+			if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+				negative = buffer[i] == '-';
+				i++;
+			}
+			long mantissa = 0;
+			int significant = 0;
+			int exponent = 0;
+			boolean anyDigit = false;
+			boolean dot = false;
+			for (; i < end; i++) {
+				byte b = buffer[i];
+				if (b >= '0' && b <= '9') {
+					anyDigit = true;
+					if (mantissa != 0 || b != '0') {
+						if (++significant > 15)
+							return slowParseDouble(start, end);
+						mantissa = mantissa * 10 + (b - '0');
+					}
+					if (dot)
+						exponent--;
+				} else if (b == '.' && !dot) {
+					dot = true;
+				} else if ((b == 'e' || b == 'E') && anyDigit) {
+					break;
+				} else {
+					return slowParseDouble(start, end);
+				}
+			}
+			if (!anyDigit)
+				return slowParseDouble(start, end);
+			if (i < end) {
+				// Exponent
+				i++;
+				boolean negativeExponent = false;
+				if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+					negativeExponent = buffer[i] == '-';
+					i++;
+				}
+				if (i == end || end - i > 3)
+					return slowParseDouble(start, end);
+				int value = 0;
+				for (; i < end; i++) {
+					byte b = buffer[i];
+					if (b < '0' || b > '9')
+						return slowParseDouble(start, end);
+					value = value * 10 + (b - '0');
+				}
+				exponent += negativeExponent ? -value : value;
+			}
+			double result;
+			if (mantissa == 0) {
+				result = 0.0;
+			} else if (exponent >= 0 && exponent + significant <= 15) {
+				result = mantissa * POWERS_OF_TEN[exponent];
+			} else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+				result = mantissa / POWERS_OF_TEN[-exponent];
+			} else {
+				return slowParseDouble(start, end);
+			}
+			return negative ? -result : result;
+		}
+
+		private double slowParseDouble(int start, int end) {
+			return Double.parseDouble(new String(buffer, start, end - start, Charset.defaultCharset()));
+		}
+
+		public double[] parseDoubles(int field) {
+			int start = fieldStart[field];
+			int end = fieldEnd[field];
+			int count = 1;
+			for (int i = start; i < end; i++) {
+				if (buffer[i] == ' ')
+					count++;
+			}
+			double[] values = new double[count];
+			int index = 0;
+			int valueStart = start;
+			for (int i = start; i <= end; i++) {
+				if (i == end || buffer[i] == ' ') {
+					values[index++] = parseDouble(valueStart, i);
+					valueStart = i + 1;
+				}
+			}
+			return values;
+		}
+	}
+
+	private final String csvFile;
+	private final File indexFile;
+	private int chunkSize = 1000;
+
+	private Map<String, ChannelIndex> index;
+
+	// Alarms are shared by the samples with the same severity column
+	private final Map<String, Alarm> alarms = Collections.synchronizedMap(new HashMap<String, Alarm>());
+
+	public IndexedFileDataSource(String csvFilePath) {
+		this.csvFile = csvFilePath;
+		this.indexFile = new File(csvFilePath + ".idx");
+	}
+
+	public IndexedFileDataSource(String csvFilePath, int chunkSize) {
+		this(csvFilePath);
+		this.chunkSize = chunkSize;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public DataChunk getData(String channelName, Timestamp from) {
+		if (channelName == null || channelName.isEmpty() || from == null)
+			return new DataChunk();
+		try {
+			return readSamples(channelName.trim(), from);
+		} catch (Exception e) {
+			log.log(Level.SEVERE, e.getMessage());
+		}
+		return new DataChunk();
+	}
+
+	private DataChunk readSamples(String channelName, Timestamp from)
+			throws Exception {
+		DataChunk chunk = new DataChunk(chunkSize);
+		ChannelIndex channelIndex = getIndex().get(channelName);
+		if (channelIndex == null)
+			return chunk;
+		long fromNanos = from.getSec() * 1000000000L + from.getNanoSec();
+		FileChannel channel = FileChannel.open(new File(csvFile).toPath(), StandardOpenOption.READ);
+		try {
+			LineReader reader = new LineReader(channel, ZoneId.systemDefault());
+			reader.seek(channelIndex.startOffset(fromNanos));
+			while (!chunk.isFull() && reader.next()) {
+				if (reader.getLineOffset() > channelIndex.lastOffset)
+					break;
+				if (!reader.fieldEquals(channel_name, channelIndex.name))
+					continue;
+				long nanos = reader.parseTime();
+				if (nanos == Long.MIN_VALUE || nanos < fromNanos)
+					continue;
+				Timestamp time = Timestamp.of(Math.floorDiv(nanos, 1000000000L),
+						(int) Math.floorMod(nanos, 1000000000L));
+				chunk.add(new SourceData(time, decodeValue(reader, time)));
+			}
+		} finally {
+			channel.close();
+		}
+		return chunk;
+	}
+
+	private VType decodeValue(LineReader reader, Timestamp ts) {
+		Time time = ValueFactory.newTime(ts);
+		Alarm alarm = ValueFactory.alarmNone();
+		if (!reader.isEmpty(severity))
+			alarm = toAlarm(reader.fieldString(severity));
+
+		// Try double
+		if (!reader.isEmpty(float_val)) {
+			if (reader.isEmpty(array_nval)) {
+				return ValueFactory.newVDouble(reader.parseDouble(float_val),
+						alarm, time, ValueFactory.displayNone());
+			}
+			double[] data = reader.isEmpty(array_val) ? new double[] { reader.parseDouble(float_val) }
+					: reader.parseDoubles(array_val);
+			if (data.length == 1) {
+				return ValueFactory.newVDouble(data[0], alarm, time, ValueFactory.displayNone());
+			} else {
+				return ValueFactory.newVDoubleArray(new ArrayDouble(data),
+						alarm, time, ValueFactory.displayNone());
+			}
+		}
+
+		// Try integer
+		if (!reader.isEmpty(num_val)) {
+			return ValueFactory.newVInt(reader.parseInt(num_val), alarm, time,
+					ValueFactory.displayNone());
+		}
+
+		// Default to string
+		String txt = reader.fieldString(str_val);
+		return ValueFactory.newVString(txt, alarm, time);
+	}
+
+	private Alarm toAlarm(String alarmStr) {
+		Alarm alarm = alarms.get(alarmStr);
+		if (alarm == null) {
+			alarm = ValueFactory.alarmNone();
+			for (AlarmSeverity s : AlarmSeverity.values()) {
+				if (alarmStr.startsWith(s.name())) {
+					alarm = ValueFactory.newAlarm(s, alarmStr);
+					break;
+				}
+			}
+			alarms.put(alarmStr, alarm);
+		}
+		return alarm;
+	}
+
+	// Loads the index saved next to the file, or builds it
+	private synchronized Map<String, ChannelIndex> getIndex() throws IOException {
+		if (index != null)
+			return index;
+		File file = new File(csvFile);
+		ZoneId zone = ZoneId.systemDefault();
+		if (indexFile.exists()) {
+			try {
+				index = loadIndex(file, zone);
+			} catch (IOException e) {
+				log.log(Level.WARNING, "Cannot read index " + indexFile + ": " + e.getMessage());
+			}
+		}
+		if (index == null) {
+			index = buildIndex(file, zone);
+			try {
+				saveIndex(file, zone);
+			} catch (IOException e) {
+				log.log(Level.WARNING, "Cannot write index " + indexFile + ": " + e.getMessage());
+			}
+		}
+		return index;
+	}
+
+	private Map<String, ChannelIndex> buildIndex(File file, ZoneId zone) throws IOException {
+		Map<String, ChannelIndexBuilder> builders = new HashMap<String, ChannelIndexBuilder>();
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			LineReader reader = new LineReader(channel, zone);
+			reader.seek(0);
+			// Skip header
+			reader.next();
+			ChannelIndexBuilder current = null;
+			while (reader.next()) {
+				long time = reader.parseTime();
+				if (time == Long.MIN_VALUE)
+					continue;
+				if (current == null || !reader.fieldEquals(channel_name, current.name)) {
+					String name = reader.fieldString(channel_name);
+					current = builders.get(name);
+					if (current == null) {
+						current = new ChannelIndexBuilder(reader.fieldBytes(channel_name));
+						builders.put(name, current);
+					}
+				}
+				current.add(time, reader.getLineOffset());
+			}
+		} finally {
+			channel.close();
+		}
+		Map<String, ChannelIndex> channels = new HashMap<String, ChannelIndex>();
+		for (Map.Entry<String, ChannelIndexBuilder> entry : builders.entrySet())
+			channels.put(entry.getKey(), entry.getValue().build());
+		return channels;
+	}
+
+	private Map<String, ChannelIndex> loadIndex(File file, ZoneId zone) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+		try {
+			if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION
+					|| in.readInt() != INDEX_STEP
+					|| in.readLong() != file.length()
+					|| in.readLong() != file.lastModified()
+					|| !in.readUTF().equals(zone.getId()))
+				return null;
+			int nbChannels = in.readInt();
+			Map<String, ChannelIndex> channels = new HashMap<String, ChannelIndex>();
+			for (int c = 0; c < nbChannels; c++) {
+				String name = in.readUTF();
+				byte[] nameBytes = new byte[in.readInt()];
+				in.readFully(nameBytes);
+				boolean sorted = in.readBoolean();
+				long lastOffset = in.readLong();
+				int size = in.readInt();
+				long[] times = new long[size];
+				long[] offsets = new long[size];
+				for (int i = 0; i < size; i++) {
+					times[i] = in.readLong();
+					offsets[i] = in.readLong();
+				}
+				channels.put(name, new ChannelIndex(nameBytes, sorted, lastOffset, times, offsets));
+			}
+			return channels;
+		} finally {
+			in.close();
+		}
+	}
+
+	private void saveIndex(File file, ZoneId zone) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+		try {
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(INDEX_VERSION);
+			out.writeInt(INDEX_STEP);
+			out.writeLong(file.length());
+			out.writeLong(file.lastModified());
+			out.writeUTF(zone.getId());
+			out.writeInt(index.size());
+			for (Map.Entry<String, ChannelIndex> entry : index.entrySet()) {
+				ChannelIndex channelIndex = entry.getValue();
+				out.writeUTF(entry.getKey());
+				out.writeInt(channelIndex.name.length);
+				out.write(channelIndex.name);
+				out.writeBoolean(channelIndex.sorted);
+				out.writeLong(channelIndex.lastOffset);
+				out.writeInt(channelIndex.times.length);
+				for (int i = 0; i < channelIndex.times.length; i++) {
+					out.writeLong(channelIndex.times[i]);
+					out.writeLong(channelIndex.offsets[i]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public String getCsvFile() {
+		return csvFile;
+	}
+
+	/** @return the file in which the index of the CSV file is saved. */
+	public File getIndexFile() {
+		return indexFile;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((csvFile == null) ? 0 : csvFile.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		IndexedFileDataSource other = (IndexedFileDataSource) obj;
+		if (csvFile == null) {
+			if (other.csvFile != null)
+				return false;
+		} else if (!csvFile.equals(other.csvFile))
+			return false;
+		return true;
+	}
+
+}
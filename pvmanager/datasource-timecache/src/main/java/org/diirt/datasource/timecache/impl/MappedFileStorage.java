@@ -0,0 +1,762 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.diirt.datasource.timecache.Data;
+import org.diirt.datasource.timecache.DataChunk;
+import org.diirt.datasource.timecache.storage.DataStorage;
+import org.diirt.datasource.timecache.storage.DataStorageListener;
+import org.diirt.datasource.timecache.storage.PartitionedDataStorage;
+import org.diirt.datasource.timecache.storage.PersistentDataStorage;
+import org.diirt.datasource.timecache.util.CacheHelper;
+import org.diirt.datasource.timecache.util.IntervalsList;
+import org.diirt.datasource.timecache.util.TimestampsSet;
+import org.diirt.util.array.ArrayDouble;
+import org.diirt.util.array.ListNumber;
+import org.diirt.util.time.TimeInterval;
+import org.diirt.util.time.Timestamp;
+import org.diirt.vtype.Alarm;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.Time;
+import org.diirt.vtype.VDouble;
+import org.diirt.vtype.VDoubleArray;
+import org.diirt.vtype.VInt;
+import org.diirt.vtype.VString;
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+
+/**
+ * {@link DataStorage} implementation which persists samples to disk, in
+ * append-only segment files that are memory-mapped. The stored data
+ * survives restarts: a new instance on the same directory serves the
+ * samples stored by the previous one, so that they do not have to be
+ * fetched again from the sources.
+ * <p>
+ * Each record starts with its length and its time, followed by the alarm
+ * and the value. The samples of each stored chunk are written in time order
+ * and form a run, which has a sparse index of its times: lookups
+ * are binary searches in the index followed by a short scan of the record
+ * headers. The values are decoded from the mapped buffer only when
+ * requested. When runs overlap, the most recently stored sample wins.
+ * Samples identical to the stored ones are not written again, so that
+ * fetching an interval again does not grow the files.
+ * <p>
+ * An instance holds the samples of a single channel, and ignores the
+ * channel name given to {@link #getData(String, Timestamp)}. The storage
+ * of each channel is a partition in a sub-directory, named after the
+ * channel. The intervals completed by the cache are saved next to the
+ * segments, so that they are not requested again after a restart.
+ * <p>
+ * Only {@link VDouble}, {@link VInt}, {@link VString} and
+ * {@link VDoubleArray} values are stored, without display information.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+public class MappedFileStorage implements PersistentDataStorage, PartitionedDataStorage {
+
+	private static final Logger log = Logger.getLogger(MappedFileStorage.class.getName());
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".dat";
+	private static final String INTERVALS_FILE = "intervals.dat";
+
+	/** Number of records between two entries of the sparse index. */
+	private static final int INDEX_INTERVAL = 64;
+
+	// Record layout: int length, long epoch nanos, byte kind, byte severity,
+	// short alarm name length, alarm name, value
+	private static final int NANOS_OFFSET = 4;
+	private static final int KIND_OFFSET = 12;
+	private static final int SEVERITY_OFFSET = 13;
+	private static final int ALARM_OFFSET = 14;
+	private static final int HEADER_SIZE = 16;
+
+	private static final byte KIND_DOUBLE = 0;
+	private static final byte KIND_INT = 1;
+	private static final byte KIND_STRING = 2;
+	private static final byte KIND_DOUBLE_ARRAY = 3;
+
+	private static class Segment {
+		private final File file;
+		private final RandomAccessFile raf;
+		private final MappedByteBuffer buffer;
+		private int end;
+
+		Segment(File file, int capacity) throws IOException {
+			this.file = file;
+			this.raf = new RandomAccessFile(file, "rw");
+			if (raf.length() < capacity)
+				raf.setLength(capacity);
+			this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+		}
+
+		int remaining() {
+			return buffer.capacity() - end;
+		}
+
+		void close() throws IOException {
+			raf.close();
+		}
+	}
+
+	/** Consecutive records in time order. Immutable once built. */
+	private static class Run {
+		private final Segment segment;
+		private final long sequence;
+		private final int count;
+		private final long firstNanos;
+		private final long lastNanos;
+		private final long[] indexNanos;
+		private final int[] indexOffsets;
+
+		Run(Segment segment, long sequence, int count, long firstNanos, long lastNanos,
+				long[] indexNanos, int[] indexOffsets) {
+			this.segment = segment;
+			this.sequence = sequence;
+			this.count = count;
+			this.firstNanos = firstNanos;
+			this.lastNanos = lastNanos;
+			this.indexNanos = indexNanos;
+			this.indexOffsets = indexOffsets;
+		}
+
+		/** Returns a cursor on the first record at or after the given time. */
+		Cursor seek(long nanos) {
+			int entry = Arrays.binarySearch(indexNanos, nanos);
+			if (entry < 0)
+				entry = Math.max(0, -entry - 2);
+			Cursor cursor = new Cursor(this, indexOffsets[entry], entry * INDEX_INTERVAL);
+			while (cursor.isValid() && cursor.nanos < nanos)
+				cursor.next();
+			return cursor;
+		}
+	}
+
+	private static class RunBuilder {
+		private final Segment segment;
+		private final long sequence;
+		private int count = 0;
+		private long firstNanos;
+		private long lastNanos;
+		private long[] indexNanos = new long[4];
+		private int[] indexOffsets = new int[4];
+
+		RunBuilder(Segment segment, long sequence) {
+			this.segment = segment;
+			this.sequence = sequence;
+		}
+
+		boolean accepts(long nanos) {
+			return count == 0 || nanos > lastNanos;
+		}
+
+		void add(int offset, long nanos) {
+			if (count % INDEX_INTERVAL == 0) {
+				int entry = count / INDEX_INTERVAL;
+				if (entry == indexNanos.length) {
+					indexNanos = Arrays.copyOf(indexNanos, entry * 2);
+					indexOffsets = Arrays.copyOf(indexOffsets, entry * 2);
+				}
+				indexNanos[entry] = nanos;
+				indexOffsets[entry] = offset;
+			}
+			if (count == 0)
+				firstNanos = nanos;
+			lastNanos = nanos;
+			count++;
+		}
+
+		Run build() {
+			int entries = (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+			return new Run(segment, sequence, count, firstNanos, lastNanos,
+					Arrays.copyOf(indexNanos, entries), Arrays.copyOf(indexOffsets, entries));
+		}
+	}
+
+	/** Position on a record of a run. */
+	private static class Cursor {
+		private final Run run;
+		private int offset;
+		private int index;
+		private long nanos;
+
+		Cursor(Run run, int offset, int index) {
+			this.run = run;
+			this.offset = offset;
+			this.index = index;
+			if (isValid())
+				nanos = run.segment.buffer.getLong(offset + NANOS_OFFSET);
+		}
+
+		boolean isValid() {
+			return index < run.count;
+		}
+
+		void next() {
+			offset += run.segment.buffer.getInt(offset);
+			index++;
+			if (isValid())
+				nanos = run.segment.buffer.getLong(offset + NANOS_OFFSET);
+		}
+	}
+
+	// Earliest first; for the same time, the most recently stored first
+	private static final Comparator<Cursor> cursorOrder = new Comparator<Cursor>() {
+		@Override
+		public int compare(Cursor c1, Cursor c2) {
+			int result = Long.compare(c1.nanos, c2.nanos);
+			if (result != 0)
+				return result;
+			return Long.compare(c2.run.sequence, c1.run.sequence);
+		}
+	};
+
+	/** {@link Data} pointing to a record of a mapped segment. */
+	private static class MappedData implements Data {
+		private final MappedByteBuffer buffer;
+		private final int offset;
+
+		MappedData(MappedByteBuffer buffer, int offset) {
+			this.buffer = buffer;
+			this.offset = offset;
+		}
+
+		private long getEpochNanos() {
+			return buffer.getLong(offset + NANOS_OFFSET);
+		}
+
+		// Whether the stored record has the same content
+		private boolean hasRecord(byte[] record) {
+			if (buffer.getInt(offset) != record.length)
+				return false;
+			for (int i = 4; i < record.length; i++) {
+				if (buffer.get(offset + i) != record[i])
+					return false;
+			}
+			return true;
+		}
+
+		@Override
+		public Timestamp getTimestamp() {
+			return ColumnBlock.toTimestamp(getEpochNanos());
+		}
+
+		@Override
+		public VType getValue() {
+			return decodeValue(buffer, offset);
+		}
+
+		@Override
+		public int compareTo(Data sd) {
+			if (sd instanceof MappedData)
+				return Long.compare(getEpochNanos(), ((MappedData) sd).getEpochNanos());
+			return getTimestamp().compareTo(sd.getTimestamp());
+		}
+
+		@Override
+		public int hashCode() {
+			long nanos = getEpochNanos();
+			return (int) (nanos ^ (nanos >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof MappedData))
+				return false;
+			return getEpochNanos() == ((MappedData) obj).getEpochNanos();
+		}
+
+		@Override
+		public String toString() {
+			return "MappedData [timestamp=" + getTimestamp() + "]";
+		}
+	}
+
+	private final File directory;
+	private final int segmentSize;
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private volatile List<Run> runs = Collections.emptyList();
+	private long nextSequence = 0;
+	private final Map<String, MappedFileStorage> partitions = new HashMap<String, MappedFileStorage>();
+
+	private List<DataStorageListener> listeners = new CopyOnWriteArrayList<DataStorageListener>();
+
+	private int chunkSize = 1000;
+
+	/**
+	 * Opens the storage in the given directory, loading the segments
+	 * already present.
+	 * @param directory where the segments are stored.
+	 * @throws IOException if the segments can't be read.
+	 */
+	public MappedFileStorage(File directory) throws IOException {
+		this(directory, 1000, 64 * 1024 * 1024);
+	}
+
+	/**
+	 * @param directory where the segments are stored.
+	 * @param chunkSize maximum number of samples returned by
+	 *            {@link #getData(String, Timestamp)}.
+	 * @param segmentSize size in bytes of each segment file.
+	 * @throws IOException if the segments can't be read.
+	 */
+	public MappedFileStorage(File directory, int chunkSize, int segmentSize) throws IOException {
+		this.directory = directory;
+		this.chunkSize = chunkSize;
+		this.segmentSize = segmentSize;
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Can't create storage directory " + directory);
+		load();
+	}
+
+	private void load() throws IOException {
+		File[] files = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.getName().startsWith(SEGMENT_PREFIX)
+						&& file.getName().endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		// The zero padded names sort in creation order
+		Arrays.sort(files);
+		List<Run> loadedRuns = new ArrayList<Run>();
+		for (File file : files) {
+			Segment segment = new Segment(file, 0);
+			segments.add(segment);
+			// Records are written with their length last: a record with no
+			// length was not completely written
+			RunBuilder builder = new RunBuilder(segment, nextSequence++);
+			int offset = 0;
+			while (segment.buffer.capacity() - offset >= HEADER_SIZE) {
+				int length = segment.buffer.getInt(offset);
+				if (length < HEADER_SIZE || length > segment.buffer.capacity() - offset)
+					break;
+				long nanos = segment.buffer.getLong(offset + NANOS_OFFSET);
+				if (!builder.accepts(nanos)) {
+					loadedRuns.add(builder.build());
+					builder = new RunBuilder(segment, nextSequence++);
+				}
+				builder.add(offset, nanos);
+				offset += length;
+			}
+			if (builder.count > 0)
+				loadedRuns.add(builder.build());
+			segment.end = offset;
+		}
+		runs = Collections.unmodifiableList(loadedRuns);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public DataChunk getData(String channelName, Timestamp from) {
+		DataChunk chunk = new DataChunk(chunkSize);
+		long fromNanos = from == null ? Long.MIN_VALUE : ColumnBlock.toEpochNanos(from);
+		merge(fromNanos, Long.MAX_VALUE, chunkSize, chunk, null);
+		return chunk;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public SortedSet<Data> getAvailableData(TimeInterval interval) {
+		SortedSet<Data> result = new TreeSet<Data>();
+		if (interval == null)
+			return result;
+		interval = CacheHelper.arrange(interval);
+		merge(startNanos(interval), endNanos(interval), Integer.MAX_VALUE, null, result);
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean hasAvailableData(TimeInterval interval) {
+		if (interval == null)
+			return false;
+		interval = CacheHelper.arrange(interval);
+		long startNanos = startNanos(interval);
+		long endNanos = endNanos(interval);
+		for (Run run : runs) {
+			if (run.lastNanos >= startNanos && run.firstNanos <= endNanos) {
+				Cursor cursor = run.seek(startNanos);
+				if (cursor.isValid() && cursor.nanos <= endNanos)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	// Adds the samples between the given times, in order, to the chunk or
+	// to the set. The most recent sample wins for the same time.
+	private void merge(long fromNanos, long toNanos, int maxCount, DataChunk chunk, SortedSet<Data> set) {
+		PriorityQueue<Cursor> cursors = new PriorityQueue<Cursor>(11, cursorOrder);
+		for (Run run : runs) {
+			if (run.lastNanos >= fromNanos && run.firstNanos <= toNanos) {
+				Cursor cursor = run.seek(fromNanos);
+				if (cursor.isValid() && cursor.nanos <= toNanos)
+					cursors.add(cursor);
+			}
+		}
+		int count = 0;
+		boolean first = true;
+		long previousNanos = 0;
+		while (!cursors.isEmpty() && count < maxCount) {
+			Cursor cursor = cursors.poll();
+			if (first || cursor.nanos != previousNanos) {
+				Data data = new MappedData(cursor.run.segment.buffer, cursor.offset);
+				if (chunk != null)
+					chunk.add(data);
+				else
+					set.add(data);
+				count++;
+				first = false;
+				previousNanos = cursor.nanos;
+			}
+			cursor.next();
+			if (cursor.isValid() && cursor.nanos <= toNanos)
+				cursors.add(cursor);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public SortedSet<Data> storeData(DataChunk chunk) {
+		SortedSet<Data> stored = new TreeSet<Data>();
+		if (chunk == null || chunk.isEmpty())
+			return stored;
+		synchronized (this) {
+			List<Run> newRuns = new ArrayList<Run>(runs);
+			RunBuilder builder = null;
+			Iterator<Data> existing = getAvailableData(chunk.getInterval()).iterator();
+			MappedData current = existing.hasNext() ? (MappedData) existing.next() : null;
+			try {
+				for (Data data : chunk.getDatas()) {
+					byte[] record = encodeRecord(data);
+					if (record == null)
+						continue;
+					long nanos = ColumnBlock.toEpochNanos(data.getTimestamp());
+					while (current != null && current.getEpochNanos() < nanos)
+						current = existing.hasNext() ? (MappedData) existing.next() : null;
+					// A sample fetched again keeps its stored record
+					if (current != null && current.getEpochNanos() == nanos && current.hasRecord(record)) {
+						stored.add(current);
+						continue;
+					}
+					Segment segment = segmentFor(record.length);
+					if (builder == null || builder.segment != segment) {
+						if (builder != null && builder.count > 0)
+							newRuns.add(builder.build());
+						builder = new RunBuilder(segment, nextSequence++);
+					}
+					int offset = segment.end;
+					// Write the length last, so that incomplete records are ignored
+					for (int i = 4; i < record.length; i++)
+						segment.buffer.put(offset + i, record[i]);
+					segment.buffer.putInt(offset, record.length);
+					segment.end += record.length;
+					builder.add(offset, nanos);
+					stored.add(new MappedData(segment.buffer, offset));
+				}
+			} catch (IOException e) {
+				log.log(Level.SEVERE, "Can't write to storage " + directory, e);
+			}
+			if (builder != null && builder.count > 0)
+				newRuns.add(builder.build());
+			runs = Collections.unmodifiableList(newRuns);
+		}
+		return stored;
+	}
+
+	// Returns the segment to write a record of the given length
+	private Segment segmentFor(int length) throws IOException {
+		Segment current = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+		if (current != null && current.remaining() >= length)
+			return current;
+		String name = String.format("%s%09d%s", SEGMENT_PREFIX, segments.size(), SEGMENT_SUFFIX);
+		Segment segment = new Segment(new File(directory, name), Math.max(segmentSize, length));
+		segments.add(segment);
+		return segment;
+	}
+
+	/**
+	 * {@inheritDoc} The partition is stored in a sub-directory, with the
+	 * same chunk and segment sizes.
+	 * @throws IllegalStateException if the partition can't be opened.
+	 */
+	@Override
+	public synchronized DataStorage getPartition(String channelName) {
+		MappedFileStorage partition = partitions.get(channelName);
+		if (partition == null) {
+			File partitionDirectory = new File(directory, toFileName(channelName));
+			try {
+				partition = new MappedFileStorage(partitionDirectory, chunkSize, segmentSize);
+			} catch (IOException e) {
+				throw new IllegalStateException("Can't open storage " + partitionDirectory, e);
+			}
+			partitions.put(channelName, partition);
+		}
+		return partition;
+	}
+
+	// Keeps letters, digits, '-' and '_', escapes the other UTF-8 bytes as
+	// %XX: channel names may contain separators like ':' or '/'
+	private static String toFileName(String channelName) {
+		StringBuilder name = new StringBuilder();
+		for (byte b : channelName.getBytes(UTF8)) {
+			char c = (char) (b & 0xFF);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+					|| (c >= '0' && c <= '9') || c == '-' || c == '_')
+				name.append(c);
+			else
+				name.append(String.format("%%%02X", b & 0xFF));
+		}
+		return name.toString();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public synchronized IntervalsList getCompletedIntervals() {
+		IntervalsList completedIntervals = new IntervalsList();
+		File file = new File(directory, INTERVALS_FILE);
+		if (!file.isFile())
+			return completedIntervals;
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				Timestamp start = toTimestamp(in.readLong());
+				Timestamp end = toTimestamp(in.readLong());
+				completedIntervals.addToSelf(TimeInterval.between(start, end));
+			}
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Can't read " + file, e);
+			return new IntervalsList();
+		}
+		return completedIntervals;
+	}
+
+	/**
+	 * {@inheritDoc} The intervals are written to a temporary file, which
+	 * then replaces the previous one.
+	 */
+	@Override
+	public synchronized void storeCompletedIntervals(IntervalsList completedIntervals) {
+		File file = new File(directory, INTERVALS_FILE);
+		if (completedIntervals == null || completedIntervals.isEmpty()) {
+			if (file.exists() && !file.delete())
+				log.log(Level.WARNING, "Can't delete " + file);
+			return;
+		}
+		File tmpFile = new File(directory, INTERVALS_FILE + ".tmp");
+		List<TimeInterval> intervals = completedIntervals.getIntervals();
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+				out.writeInt(intervals.size());
+				for (TimeInterval interval : intervals) {
+					out.writeLong(startNanos(interval));
+					out.writeLong(endNanos(interval));
+				}
+			}
+			Files.move(tmpFile.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "Can't write " + file, e);
+		}
+	}
+
+	private static Timestamp toTimestamp(long nanos) {
+		if (nanos == Long.MIN_VALUE || nanos == Long.MAX_VALUE)
+			return null;
+		return ColumnBlock.toTimestamp(nanos);
+	}
+
+	private static byte[] encodeRecord(Data data) {
+		VType value = data.getValue();
+		if (data.getTimestamp() == null || !(value instanceof Alarm))
+			return null;
+		byte kind;
+		byte[] stringBytes = null;
+		int valueLength;
+		if (value instanceof VDouble && ((VDouble) value).getValue() != null) {
+			kind = KIND_DOUBLE;
+			valueLength = 8;
+		} else if (value instanceof VInt && ((VInt) value).getValue() != null) {
+			kind = KIND_INT;
+			valueLength = 4;
+		} else if (value instanceof VString && ((VString) value).getValue() != null) {
+			kind = KIND_STRING;
+			stringBytes = ((VString) value).getValue().getBytes(UTF8);
+			valueLength = 4 + stringBytes.length;
+		} else if (value instanceof VDoubleArray && ((VDoubleArray) value).getData() != null) {
+			kind = KIND_DOUBLE_ARRAY;
+			valueLength = 4 + 8 * ((VDoubleArray) value).getData().size();
+		} else {
+			return null;
+		}
+		Alarm alarm = (Alarm) value;
+		byte[] alarmName = alarm.getAlarmName() == null ? new byte[0] : alarm.getAlarmName().getBytes(UTF8);
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + alarmName.length + valueLength);
+		record.putInt(record.capacity());
+		record.putLong(ColumnBlock.toEpochNanos(data.getTimestamp()));
+		record.put(kind);
+		record.put((byte) alarm.getAlarmSeverity().ordinal());
+		record.putShort((short) alarmName.length);
+		record.put(alarmName);
+		switch (kind) {
+		case KIND_DOUBLE:
+			record.putDouble(((VDouble) value).getValue());
+			break;
+		case KIND_INT:
+			record.putInt(((VInt) value).getValue());
+			break;
+		case KIND_STRING:
+			record.putInt(stringBytes.length);
+			record.put(stringBytes);
+			break;
+		default:
+			ListNumber array = ((VDoubleArray) value).getData();
+			record.putInt(array.size());
+			for (int i = 0; i < array.size(); i++)
+				record.putDouble(array.getDouble(i));
+		}
+		return record.array();
+	}
+
+	private static VType decodeValue(MappedByteBuffer buffer, int offset) {
+		Time time = ValueFactory.newTime(ColumnBlock.toTimestamp(buffer.getLong(offset + NANOS_OFFSET)));
+		AlarmSeverity severity = AlarmSeverity.values()[buffer.get(offset + SEVERITY_OFFSET)];
+		int alarmLength = buffer.getShort(offset + ALARM_OFFSET);
+		Alarm alarm = ValueFactory.newAlarm(severity, readString(buffer, offset + HEADER_SIZE, alarmLength));
+		int valueOffset = offset + HEADER_SIZE + alarmLength;
+		switch (buffer.get(offset + KIND_OFFSET)) {
+		case KIND_DOUBLE:
+			return ValueFactory.newVDouble(buffer.getDouble(valueOffset), alarm, time, ValueFactory.displayNone());
+		case KIND_INT:
+			return ValueFactory.newVInt(buffer.getInt(valueOffset), alarm, time, ValueFactory.displayNone());
+		case KIND_STRING:
+			return ValueFactory.newVString(readString(buffer, valueOffset + 4, buffer.getInt(valueOffset)), alarm, time);
+		default:
+			double[] data = new double[buffer.getInt(valueOffset)];
+			for (int i = 0; i < data.length; i++)
+				data[i] = buffer.getDouble(valueOffset + 4 + 8 * i);
+			return ValueFactory.newVDoubleArray(new ArrayDouble(data), alarm, time, ValueFactory.displayNone());
+		}
+	}
+
+	private static String readString(MappedByteBuffer buffer, int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = buffer.get(offset + i);
+		return new String(bytes, UTF8);
+	}
+
+	private static long startNanos(TimeInterval interval) {
+		return interval.getStart() == null ? Long.MIN_VALUE : ColumnBlock.toEpochNanos(interval.getStart());
+	}
+
+	private static long endNanos(TimeInterval interval) {
+		return interval.getEnd() == null ? Long.MAX_VALUE : ColumnBlock.toEpochNanos(interval.getEnd());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void addListener(DataStorageListener listener) {
+		if (listener != null)
+			listeners.add(listener);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void removeListener(DataStorageListener listener) {
+		if (listener != null)
+			listeners.remove(listener);
+	}
+
+	// Useful to debug
+	public int getStoredSampleCount() {
+		SortedSet<Data> all = getAvailableData(TimeInterval.between(null, null));
+		return all.size();
+	}
+
+	/**
+	 * Closes the segment files, and the ones of the partitions. The stored
+	 * data remains on disk.
+	 */
+	public synchronized void close() {
+		for (MappedFileStorage partition : partitions.values())
+			partition.close();
+		partitions.clear();
+		for (Segment segment : segments) {
+			try {
+				segment.close();
+			} catch (IOException e) {
+				log.log(Level.WARNING, "Can't close " + segment.file, e);
+			}
+		}
+		segments.clear();
+		runs = Collections.emptyList();
+	}
+
+	/**
+	 * Removes all the segment files and the completed intervals. The
+	 * partitions are cleared by their own {@link #clearAll()}.
+	 */
+	@Override
+	public void clearAll() {
+		TimestampsSet lostSet = new TimestampsSet();
+		synchronized (this) {
+			for (Run run : runs) {
+				Cursor cursor = run.seek(Long.MIN_VALUE);
+				while (cursor.isValid()) {
+					lostSet.add(ColumnBlock.toTimestamp(cursor.nanos));
+					cursor.next();
+				}
+			}
+			List<Segment> removed = new ArrayList<Segment>(segments);
+			close();
+			for (Segment segment : removed) {
+				if (!segment.file.delete())
+					log.log(Level.WARNING, "Can't delete " + segment.file);
+			}
+			storeCompletedIntervals(null);
+		}
+		for (DataStorageListener l : listeners)
+			l.dataLoss(lostSet);
+	}
+
+}
@@ -125,6 +125,22 @@ public class QueryChunk {
 		}
 	}
 
+	/**
+	 * Transform the chunk to the corresponding {@link QueryData}
+	 * implementation, with the specified aggregates instead of the samples
+	 * of the chunk.
+	 */
+	public QueryData toQueryData(SortedSet<Data> aggregates) {
+		if (!isComplete())
+			return new QueryDataNR(timeInterval);
+		if (aggregates == null || aggregates.isEmpty())
+			return new QueryDataBlank(timeInterval);
+		SortedMap<Timestamp, VType> sortedMap = new TreeMap<Timestamp, VType>();
+		for (Data data : aggregates)
+			sortedMap.put(data.getTimestamp(), data.getValue());
+		return new QueryDataComplete(timeInterval, sortedMap);
+	}
+
 	// Useful for debug
 	public int getDataCount() {
 		return dataSet.size();
@@ -51,6 +51,8 @@ public class QueryImpl implements Query, PVCacheListener {
 	private List<QueryChunk> chunks;
 
 	private TimeDuration chunkDuration = TimeDuration.ofSeconds(1);
+	// Maximum duration of aggregated buckets, null for raw samples
+	private TimeDuration resolution;
 	private int nbChunks = 100;
 
 	private DataRequestThread runningThreadToStorage;
@@ -91,7 +93,8 @@ public class QueryImpl implements Query, PVCacheListener {
 					if (DEBUG) {
 						ps.println(impl + ": SOURCE " + CacheHelper.format(newDataInterval) + " completedIntervals: " + completedIntervals);
 					}
-					int added = updateChunks(newData, false);
+					// Aggregates are read from the cache when chunks are sent
+					int added = resolution == null ? updateChunks(newData, false) : newData.size();
 					if (DEBUG && added == 0) {
 						ps.println(impl + ": OVERLAPPING FROM SOURCE");
 					}
@@ -202,6 +205,7 @@ public class QueryImpl implements Query, PVCacheListener {
 			chunks.add(new QueryChunk(TimeInterval.between(start, newInterval.getEnd()), this));
 		}
 		this.interval = newInterval;
+		this.resolution = queryParameters.resolution;
 		log.log(Level.INFO, this + ": NEW request");
 		if (DEBUG) {
 			ps.println(this + ": NEW request");
@@ -211,7 +215,13 @@ public class QueryImpl implements Query, PVCacheListener {
 		}
 		completedIntervalsFromSources = cache.getCompletedIntervalsList();
 		completedIntervalsFromStorage = new IntervalsList();
-		runningThreadToStorage = cache.retrieveDataAsync(interval);
+		runningThreadToStorage = cache.retrieveDataAsync(interval, this);
+		if (resolution != null) {
+			// Aggregates do not need samples from storage
+			runningThreadToStorage = null;
+			handleIntervalCompletedFromStorage();
+			return;
+		}
 		if (runningThreadToStorage == null) {
 			// Consider the storage has been requested and is empty
 			completedIntervalsFromStorage = new IntervalsList(interval);
@@ -247,10 +257,11 @@ public class QueryImpl implements Query, PVCacheListener {
 		synchronized (chunks) { // lock chunks
 			completedIntervalsFromSources = cache.getCompletedIntervalsList();
 			completedIntervalsFromStorage = new IntervalsList(interval);
-			updateChunks(cache.retrieveDataSync(interval), true);
+			if (resolution == null)
+				updateChunks(cache.retrieveDataSync(interval), true);
 			checkCompletedChunks();
 			for (QueryChunk chunk : chunks) {
-				result.addData(chunk.toQueryData());
+				result.addData(toQueryData(chunk));
 			}
 		}
 		return result;
@@ -267,7 +278,7 @@ public class QueryImpl implements Query, PVCacheListener {
 		while (itChunk.hasNext()) {
 			QueryChunk chunk = itChunk.next();
 			if (chunk.isComplete() && !chunk.hasBeenSent()) {
-				result.addData(chunk.toQueryData());
+				result.addData(toQueryData(chunk));
 				chunk.markSent();
 			}
 		}
@@ -293,6 +304,12 @@ public class QueryImpl implements Query, PVCacheListener {
 		}
 	}
 
+	private QueryData toQueryData(QueryChunk chunk) {
+		if (resolution == null)
+			return chunk.toQueryData();
+		return chunk.toQueryData(cache.retrieveAggregatesSync(chunk.getTimeInterval(), resolution));
+	}
+
 	// Request cache for completed intervals and update chunk status
 	private void checkCompletedChunks() {
 		IntervalsList completedIntervals = new IntervalsList(completedIntervalsFromSources);
@@ -5,6 +5,7 @@
 package org.diirt.datasource.timecache.query;
 
 import org.diirt.datasource.timecache.Parameter;
+import org.diirt.util.time.TimeDuration;
 import org.diirt.util.time.TimeRelativeInterval;
 
 /**
@@ -13,6 +14,7 @@ import org.diirt.util.time.TimeRelativeInterval;
 public class QueryParameters {
 
 	TimeRelativeInterval timeInterval;
+	TimeDuration resolution;
 	public Parameter config = Parameter.Default;
 
 	public QueryParameters timeInterval(TimeRelativeInterval timeInterval) {
@@ -20,4 +22,14 @@ public class QueryParameters {
 		return this;
 	}
 
+	/**
+	 * Requests aggregates (min, max, mean and count) over buckets not longer
+	 * than the specified duration instead of raw samples. A null resolution
+	 * requests raw samples.
+	 */
+	public QueryParameters resolution(TimeDuration resolution) {
+		this.resolution = resolution;
+		return this;
+	}
+
 }
@@ -0,0 +1,23 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.storage;
+
+/**
+ * {@link DataStorage} which keeps the samples of each channel apart. The
+ * cache stores the samples of a channel in the partition returned for its
+ * name, instead of in the shared storage.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+public interface PartitionedDataStorage extends DataStorage {
+
+	/**
+	 * Returns the storage dedicated to the specified channel. The same
+	 * instance is returned for the same channel name.
+	 * @param channelName name of the channel.
+	 * @return storage of the channel samples.
+	 */
+	public DataStorage getPartition(String channelName);
+
+}
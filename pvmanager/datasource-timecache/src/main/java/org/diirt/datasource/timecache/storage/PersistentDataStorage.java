@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.storage;
+
+import org.diirt.datasource.timecache.util.IntervalsList;
+
+/**
+ * {@link DataStorage} which keeps its samples across restarts. It also
+ * keeps the intervals completely retrieved from the sources, so that a new
+ * cache does not request them again.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+public interface PersistentDataStorage extends DataStorage {
+
+	/**
+	 * Returns the completed intervals last stored, empty if none.
+	 * @return {@link IntervalsList} of completed intervals.
+	 */
+	public IntervalsList getCompletedIntervals();
+
+	/**
+	 * Stores the intervals completely retrieved from the sources. The
+	 * samples of these intervals must already be stored.
+	 * @param completedIntervals {@link IntervalsList} to store.
+	 */
+	public void storeCompletedIntervals(IntervalsList completedIntervals);
+
+}
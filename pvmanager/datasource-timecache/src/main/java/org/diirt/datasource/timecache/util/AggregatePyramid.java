@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.util;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.diirt.datasource.timecache.Data;
+import org.diirt.datasource.timecache.storage.DataStorage;
+import org.diirt.util.stats.Statistics;
+import org.diirt.util.stats.StatisticsAccumulator;
+import org.diirt.util.time.TimeDuration;
+import org.diirt.util.time.TimeInterval;
+import org.diirt.util.time.Timestamp;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.VStatistics;
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+
+/**
+ * Multi-resolution aggregates (min, max, mean, standard deviation and count
+ * per time bucket, kept by a {@link StatisticsAccumulator}) of
+ * the numeric samples of a {@link DataStorage}. Level 0 buckets last the base
+ * duration, each following level merges a fixed number of buckets of the
+ * previous one. <p> Buckets are recomputed from the storage for the updated
+ * intervals, so that samples received twice are not counted twice and lost
+ * samples are removed. Aggregates are returned as {@link VStatistics} at the
+ * start time of their bucket. </p>
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+public class AggregatePyramid {
+
+	private static class AggregateData implements Data {
+		private final Timestamp timestamp;
+		private final VStatistics value;
+
+		private AggregateData(Timestamp timestamp, VStatistics value) {
+			this.timestamp = timestamp;
+			this.value = value;
+		}
+
+		@Override
+		public Timestamp getTimestamp() {
+			return timestamp;
+		}
+
+		@Override
+		public VType getValue() {
+			return value;
+		}
+
+		@Override
+		public int compareTo(Data o) {
+			return timestamp.compareTo(o.getTimestamp());
+		}
+	}
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	private final long baseNanos;
+	private final int factor;
+	private final long[] bucketNanos;
+	// Buckets by index (start time divided by the bucket duration) per level
+	private final NavigableMap<Long, StatisticsAccumulator>[] levels;
+
+	/**
+	 * Creates 7 levels from 1 second to about 11 days.
+	 */
+	public AggregatePyramid() {
+		this(TimeDuration.ofSeconds(1), 10, 7);
+	}
+
+	/**
+	 * @param baseDuration duration of level 0 buckets.
+	 * @param factor number of buckets merged in a bucket of the next level.
+	 * @param nbLevels number of levels.
+	 */
+	@SuppressWarnings("unchecked")
+	public AggregatePyramid(TimeDuration baseDuration, int factor, int nbLevels) {
+		if (factor < 2 || nbLevels < 1 || baseDuration.toNanosLong() <= 0)
+			throw new IllegalArgumentException("Invalid pyramid definition");
+		this.baseNanos = baseDuration.toNanosLong();
+		this.factor = factor;
+		this.bucketNanos = new long[nbLevels];
+		this.levels = new NavigableMap[nbLevels];
+		long duration = baseNanos;
+		for (int level = 0; level < nbLevels; level++) {
+			bucketNanos[level] = duration;
+			levels[level] = new TreeMap<Long, StatisticsAccumulator>();
+			duration *= factor;
+		}
+	}
+
+	/**
+	 * Recomputes the buckets which intersect the specified interval from the
+	 * samples currently available in the storage.
+	 */
+	public synchronized void update(DataStorage storage, TimeInterval interval) {
+		if (storage == null || interval == null)
+			return;
+		interval = CacheHelper.arrange(interval);
+		if (interval.getStart() == null || interval.getEnd() == null)
+			return;
+		long first = Math.floorDiv(toNanos(interval.getStart()), baseNanos);
+		long last = Math.floorDiv(toNanos(interval.getEnd()), baseNanos);
+		SortedSet<Data> samples = storage.getAvailableData(TimeInterval.between(
+				toTimestamp(first * baseNanos),
+				toTimestamp((last + 1) * baseNanos - 1)));
+
+		NavigableMap<Long, StatisticsAccumulator> base = levels[0];
+		base.subMap(first, true, last, true).clear();
+		for (Data data : samples) {
+			VType value = data.getValue();
+			if (!(value instanceof VNumber) || ((VNumber) value).getValue() == null)
+				continue;
+			double number = ((VNumber) value).getValue().doubleValue();
+			if (Double.isNaN(number))
+				continue;
+			long index = Math.floorDiv(toNanos(data.getTimestamp()), baseNanos);
+			StatisticsAccumulator bucket = base.get(index);
+			if (bucket == null) {
+				bucket = new StatisticsAccumulator();
+				base.put(index, bucket);
+			}
+			bucket.add(number);
+		}
+
+		// Merge the updated buckets in the upper levels
+		for (int level = 1; level < levels.length; level++) {
+			first = Math.floorDiv(first, factor);
+			last = Math.floorDiv(last, factor);
+			NavigableMap<Long, StatisticsAccumulator> lower = levels[level - 1];
+			NavigableMap<Long, StatisticsAccumulator> current = levels[level];
+			current.subMap(first, true, last, true).clear();
+			for (Map.Entry<Long, StatisticsAccumulator> entry : lower.subMap(first * factor, true,
+					(last + 1) * factor, false).entrySet()) {
+				long index = Math.floorDiv(entry.getKey(), factor);
+				StatisticsAccumulator bucket = current.get(index);
+				if (bucket == null) {
+					bucket = new StatisticsAccumulator();
+					current.put(index, bucket);
+				}
+				bucket.add(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Returns the aggregates of the coarsest level with buckets not longer
+	 * than the specified resolution (level 0 if the resolution is smaller).
+	 * Only buckets which start in the interval are returned.
+	 */
+	public synchronized SortedSet<Data> getAggregates(TimeInterval interval, TimeDuration resolution) {
+		SortedSet<Data> result = new TreeSet<Data>();
+		if (interval == null)
+			return result;
+		interval = CacheHelper.arrange(interval);
+		int level = getLevel(resolution);
+		long duration = bucketNanos[level];
+		long first = interval.getStart() == null ? Long.MIN_VALUE
+				: Math.floorDiv(toNanos(interval.getStart()) + duration - 1, duration);
+		long last = interval.getEnd() == null ? Long.MAX_VALUE
+				: Math.floorDiv(toNanos(interval.getEnd()), duration);
+		if (first > last)
+			return result;
+		for (Map.Entry<Long, StatisticsAccumulator> entry : levels[level].subMap(first, true, last, true).entrySet()) {
+			Timestamp start = toTimestamp(entry.getKey() * duration);
+			result.add(new AggregateData(start, toVStatistics(entry.getValue(), start)));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the level used for the specified resolution.
+	 */
+	public int getLevel(TimeDuration resolution) {
+		if (resolution == null)
+			return 0;
+		long nanos = resolution.toNanosLong();
+		int level = 0;
+		while (level + 1 < bucketNanos.length && bucketNanos[level + 1] <= nanos)
+			level++;
+		return level;
+	}
+
+	/**
+	 * @return the duration of the buckets of the specified level.
+	 */
+	public TimeDuration getBucketDuration(int level) {
+		return TimeDuration.ofNanos(bucketNanos[level]);
+	}
+
+	public synchronized void clear() {
+		for (NavigableMap<Long, StatisticsAccumulator> level : levels)
+			level.clear();
+	}
+
+	// Useful to debug
+	public synchronized int getBucketCount(int level) {
+		return levels[level].size();
+	}
+
+	private static VStatistics toVStatistics(StatisticsAccumulator bucket, Timestamp start) {
+		Statistics stats = bucket.toStatistics();
+		return ValueFactory.newVStatistics(stats.getAverage(), stats.getStdDev(),
+				stats.getRange().getMinimum(), stats.getRange().getMaximum(), stats.getCount(),
+				ValueFactory.alarmNone(), ValueFactory.newTime(start), ValueFactory.displayNone());
+	}
+
+	private static long toNanos(Timestamp timestamp) {
+		return timestamp.getSec() * NANOS_PER_SECOND + timestamp.getNanoSec();
+	}
+
+	private static Timestamp toTimestamp(long nanos) {
+		return Timestamp.of(Math.floorDiv(nanos, NANOS_PER_SECOND),
+				(int) Math.floorMod(nanos, NANOS_PER_SECOND));
+	}
+
+}
@@ -5,8 +5,9 @@
 package org.diirt.datasource.timecache.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.diirt.util.time.TimeDuration;
 import org.diirt.util.time.TimeInterval;
@@ -17,20 +18,51 @@ import org.diirt.util.time.Timestamp;
  * list of contiguous regions on the real line. All intervals of the list are
  * disjoints to each other, they are stored in ascending order. </p> <p> The
  * class supports the main set operations like union and intersection. </p>
+ * <p> Intervals are stored in a persistent treap ordered by start time: adding
+ * or removing an interval costs O(log n + k) where k is the number of merged
+ * or removed intervals, and copies share their nodes. </p>
  * @author Fred Arnaud (Sopra Group) - ITER
  */
 public class IntervalsList {
 
 	public static final TimeDuration minDuration = TimeDuration.ofNanos(1);
 
-	/** The list of intervals. */
+	/** Immutable treap node, shared between copies. */
+	private static class Node {
+		private final TimeInterval interval;
+		private final int priority;
+		private final Node left;
+		private final Node right;
+		private final int size;
+
+		private Node(TimeInterval interval, int priority, Node left, Node right) {
+			this.interval = interval;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+			this.size = 1 + size(left) + size(right);
+		}
+
+		private Node(TimeInterval interval) {
+			this(interval, ThreadLocalRandom.current().nextInt(), null, null);
+		}
+
+		private Node with(Node left, Node right) {
+			return new Node(interval, priority, left, right);
+		}
+	}
+
+	/** The tree of intervals. */
+	private Node root;
+
+	/** Ordered intervals, computed on demand. */
 	private List<TimeInterval> intervals;
 
 	/**
 	 * Build an empty intervals list.
 	 */
 	public IntervalsList() {
-		intervals = new ArrayList<TimeInterval>();
+		root = null;
 	}
 
 	/**
@@ -38,9 +70,8 @@ public class IntervalsList {
 	 * @param i interval
 	 */
 	public IntervalsList(TimeInterval i) {
-		intervals = new ArrayList<TimeInterval>();
 		i = CacheHelper.arrange(i);
-		intervals.add(i);
+		root = new Node(i);
 	}
 
 	/**
@@ -49,34 +80,18 @@ public class IntervalsList {
 	 * @param i2 second interval
 	 */
 	public IntervalsList(TimeInterval i1, TimeInterval i2) {
-		intervals = new ArrayList<TimeInterval>();
-		i1 = CacheHelper.arrange(i1);
-		i2 = CacheHelper.arrange(i2);
-		if (CacheHelper.intersects(i1, i2)) {
-			intervals.add(TimeInterval.between(
-					CacheHelper.min(i1.getStart(), i2.getStart()),
-					CacheHelper.max(i1.getEnd(), i2.getEnd())));
-		} else if (i1.getEnd().compareTo(i2.getStart()) < 0) {
-			intervals.add(i1);
-			intervals.add(i2);
-		} else {
-			intervals.add(i2);
-			intervals.add(i1);
-		}
+		this(i1);
+		addToSelf(CacheHelper.arrange(i2));
 	}
 
 	/**
-	 * Copy constructor. <p> The copy operation is a deep copy: the underlying
-	 * intervals are independant of the instances of the copied list. </p>
+	 * Copy constructor. <p> Nodes are immutable, so the copy shares them with
+	 * the copied list and both lists remain independant. </p>
 	 * @param list intervals list to copy
 	 */
 	public IntervalsList(IntervalsList list) {
-		intervals = new ArrayList<TimeInterval>(list.intervals.size());
-		for (Iterator<TimeInterval> iterator = list.intervals.iterator(); iterator
-				.hasNext();) {
-			TimeInterval ti = (TimeInterval) iterator.next();
-			intervals.add(TimeInterval.between(ti.getStart(), ti.getEnd()));
-		}
+		root = list.root;
+		intervals = list.intervals;
 	}
 
 	/**
@@ -84,7 +99,7 @@ public class IntervalsList {
 	 * @return true if the instance is empty
 	 */
 	public boolean isEmpty() {
-		return intervals.isEmpty();
+		return root == null;
 	}
 
 	/**
@@ -93,7 +108,7 @@ public class IntervalsList {
 	 * @return true is the instance is connected
 	 */
 	public boolean isConnex() {
-		return intervals.size() == 1;
+		return size(root) == 1;
 	}
 
 	/**
@@ -102,7 +117,7 @@ public class IntervalsList {
 	 *         interval
 	 */
 	public Timestamp getStart() {
-		return intervals.isEmpty() ? null : intervals.get(0).getStart();
+		return root == null ? null : first(root).interval.getStart();
 	}
 
 	/**
@@ -111,8 +126,7 @@ public class IntervalsList {
 	 *         interval
 	 */
 	public Timestamp getEnd() {
-		return intervals.isEmpty() ? null : intervals.get(intervals.size() - 1)
-				.getEnd();
+		return root == null ? null : last(root).interval.getEnd();
 	}
 
 	/**
@@ -120,7 +134,7 @@ public class IntervalsList {
 	 * @return number of intervals in the list
 	 */
 	public int getSize() {
-		return intervals.size();
+		return size(root);
 	}
 
 	/**
@@ -129,14 +143,32 @@ public class IntervalsList {
 	 * @return interval at index i
 	 */
 	public TimeInterval getTimeInterval(int i) {
-		return intervals.get(i);
+		if (i < 0 || i >= size(root))
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size(root));
+		Node node = root;
+		while (true) {
+			int leftSize = size(node.left);
+			if (i < leftSize) {
+				node = node.left;
+			} else if (i == leftSize) {
+				return node.interval;
+			} else {
+				i -= leftSize + 1;
+				node = node.right;
+			}
+		}
 	}
 
 	/**
 	 * Get the ordered list of disjoints intervals.
-	 * @return list of disjoints intervals in ascending order
+	 * @return unmodifiable list of disjoints intervals in ascending order
 	 */
 	public List<TimeInterval> getIntervals() {
+		if (intervals == null) {
+			List<TimeInterval> list = new ArrayList<TimeInterval>(size(root));
+			collect(root, list);
+			intervals = Collections.unmodifiableList(list);
+		}
 		return intervals;
 	}
 
@@ -148,11 +180,8 @@ public class IntervalsList {
 	public boolean contains(Timestamp t) {
 		if (t == null)
 			return false;
-		for (Iterator<TimeInterval> iterator = intervals.iterator(); iterator
-				.hasNext();)
-			if (iterator.next().contains(t))
-				return true;
-		return false;
+		Node floor = floor(t);
+		return floor != null && floor.interval.contains(t);
 	}
 
 	/**
@@ -161,13 +190,11 @@ public class IntervalsList {
 	 * @return true if i is completely included in the instance
 	 */
 	public boolean contains(TimeInterval i) {
-		if (i == null)
+		if (i == null || root == null)
 			return false;
-		for (Iterator<TimeInterval> iterator = intervals.iterator(); iterator
-				.hasNext();)
-			if (CacheHelper.contains(iterator.next(), i))
-				return true;
-		return false;
+		i = CacheHelper.arrange(i);
+		Node candidate = i.getStart() == null ? first(root) : floor(i.getStart());
+		return candidate != null && CacheHelper.contains(candidate.interval, i);
 	}
 
 	/**
@@ -178,118 +205,69 @@ public class IntervalsList {
 	public boolean intersects(TimeInterval i) {
 		if (i == null)
 			return false;
-		for (Iterator<TimeInterval> iterator = intervals.iterator(); iterator
-				.hasNext();)
-			if (CacheHelper.intersects(iterator.next(), i))
-				return true;
-		return false;
+		i = CacheHelper.arrange(i);
+		// First interval which ends after the start of i
+		Node candidate = null;
+		Node node = root;
+		while (node != null) {
+			if (endsBefore(node, i.getStart())) {
+				node = node.right;
+			} else {
+				candidate = node;
+				node = node.left;
+			}
+		}
+		return candidate != null && CacheHelper.intersects(candidate.interval, i);
+	}
+
+	/**
+	 * Get the parts of an interval which are not covered by the instance.
+	 * <p> Only the intervals which intersect i are visited. </p>
+	 * @param i interval
+	 * @return a new intervals list which is i minus the instance
+	 */
+	public IntervalsList complementIn(TimeInterval i) {
+		IntervalsList gaps = new IntervalsList();
+		if (i == null)
+			return gaps;
+		i = CacheHelper.arrange(i);
+		Node overlapping = splitStartAtMost(splitEndBefore(root, i.getStart())[1], i.getEnd())[0];
+		List<TimeInterval> covered = new ArrayList<TimeInterval>(size(overlapping));
+		collect(overlapping, covered);
+		Timestamp cursor = i.getStart();
+		for (TimeInterval local : covered) {
+			if (local.getStart() != null
+					&& (cursor == null || cursor.compareTo(local.getStart()) < 0))
+				gaps.append(TimeInterval.between(cursor, local.getStart().minus(minDuration)));
+			if (local.getEnd() == null)
+				return gaps;
+			cursor = local.getEnd().plus(minDuration);
+		}
+		if (cursor == null || i.getEnd() == null || cursor.compareTo(i.getEnd()) <= 0)
+			gaps.append(TimeInterval.between(cursor, i.getEnd()));
+		return gaps;
 	}
 
 	/**
 	 * Add an interval to the instance. <p> This method expands the instance.
 	 * </p> <p> This operation is a union operation. The number of intervals in
 	 * the list can decrease if the interval fills some holes between existing
-	 * intervals in the list. </p>
+	 * intervals in the list. Contiguous intervals are merged. </p>
 	 * @param i interval to add to the instance
 	 */
 	public void addToSelf(TimeInterval i) {
 		if (i == null)
 			return;
-		if (isConnex() && getStart() == null && getEnd() == null)
-			return;
-		if (i.getStart() == null || i.getEnd() == null) {
-			handleAddNull(i);
-			return;
-		}
 		i = CacheHelper.arrange(i);
-		List<TimeInterval> newIntervals = new ArrayList<TimeInterval>();
-		Timestamp inf = null;
-		Timestamp sup = null;
-		boolean pending = false;
-		boolean processed = false;
-		for (Iterator<TimeInterval> iterator = intervals.iterator(); iterator
-				.hasNext();) {
-			TimeInterval local = iterator.next();
-			if (local.getEnd() != null
-					&& local.getEnd().compareTo(i.getStart()) < 0) {
-				newIntervals.add(local);
-			} else if (local.getStart() == null
-					|| local.getStart().compareTo(i.getEnd()) <= 0) {
-				if (!pending) {
-					inf = CacheHelper.min(local.getStart(), i.getStart());
-					pending = true;
-					processed = true;
-				}
-				sup = CacheHelper.max(local.getEnd(), i.getEnd());
-			} else {
-				if (pending) {
-					newIntervals.add(TimeInterval.between(inf, sup));
-					pending = false;
-				} else if (!processed) {
-					newIntervals.add(i);
-				}
-				processed = true;
-				newIntervals.add(local);
-			}
+		Timestamp start = i.getStart();
+		Timestamp end = i.getEnd();
+		Node[] before = splitEndBefore(root, start == null ? null : start.minus(minDuration));
+		Node[] merged = splitStartAtMost(before[1], end == null ? null : end.plus(minDuration));
+		if (merged[0] != null) {
+			start = CacheHelper.min(start, first(merged[0]).interval.getStart());
+			end = CacheHelper.max(end, last(merged[0]).interval.getEnd());
 		}
-		if (pending) {
-			newIntervals.add(TimeInterval.between(inf, sup));
-		} else if (!processed) {
-			newIntervals.add(i);
-		}
-		intervals = mergeAllLimits(newIntervals);
-	}
-
-	private void handleAddNull(TimeInterval i) {
-		List<TimeInterval> newIntervals = new ArrayList<TimeInterval>();
-		if (i.getStart() == null && i.getEnd() == null) {
-			newIntervals.add(TimeInterval.between(null, null));
-		} else if (i.getStart() == null && i.getEnd() != null) {
-			Timestamp sup = i.getEnd();
-			for (Iterator<TimeInterval> iterator = intervals.iterator(); iterator
-					.hasNext();) {
-				TimeInterval local = iterator.next();
-				if (local.getStart() == null
-						|| local.getStart().compareTo(i.getEnd()) <= 0)
-					sup = CacheHelper.max(local.getEnd(), sup);
-				else newIntervals.add(local);
-			}
-			newIntervals.add(TimeInterval.between(null, sup));
-		} else if (i.getStart() != null && i.getEnd() == null) {
-			Timestamp inf = i.getStart();
-			for (Iterator<TimeInterval> iterator = intervals.iterator(); iterator
-					.hasNext();) {
-				TimeInterval local = iterator.next();
-				if (local.getEnd() == null
-						|| local.getEnd().compareTo(i.getStart()) >= 0)
-					inf = CacheHelper.min(local.getStart(), inf);
-				else newIntervals.add(local);
-			}
-			newIntervals.add(TimeInterval.between(inf, null));
-		}
-		intervals = newIntervals;
-	}
-
-	private List<TimeInterval> mergeAllLimits(List<TimeInterval> intervals) {
-		List<TimeInterval> newIntervals = new ArrayList<TimeInterval>();
-		Iterator<TimeInterval> iterator = intervals.iterator();
-		TimeInterval previous = null;
-		TimeInterval current = null;
-		if (iterator.hasNext())
-			current = iterator.next();
-		while (iterator.hasNext()) {
-			previous = current;
-			current = iterator.next();
-			if (previous.getEnd().plus(minDuration).equals(current.getStart())) {
-				TimeInterval merged = TimeInterval.between(previous.getStart(), current.getEnd());
-				current = merged;
-			} else {
-				newIntervals.add(previous);
-			}
-		}
-		if (current != null)
-			newIntervals.add(current);
-		return newIntervals;
+		update(join(join(before[0], new Node(TimeInterval.between(start, end))), merged[1]));
 	}
 
 	/**
@@ -315,21 +293,21 @@ public class IntervalsList {
 	public void subtractFromSelf(TimeInterval i) {
 		if (i == null)
 			return;
-		if (i.getStart() == null && i.getEnd() == null) {
-			intervals.clear();
-			return;
-		}
-		IntervalsList inversedIntervals = new IntervalsList();
-		if (i.getStart() == null && i.getEnd() != null) {
-			inversedIntervals.addToSelf(TimeInterval.between(i.getEnd().plus(minDuration), null));
-		} else if (i.getStart() != null && i.getEnd() == null) {
-			inversedIntervals.addToSelf(TimeInterval.between(null, i.getStart().minus(minDuration)));
-		} else {
-			i = CacheHelper.arrange(i);
-			inversedIntervals.addToSelf(TimeInterval.between(null, i.getStart().minus(minDuration)));
-			inversedIntervals.addToSelf(TimeInterval.between(i.getEnd().plus(minDuration), null));
+		i = CacheHelper.arrange(i);
+		Timestamp start = i.getStart();
+		Timestamp end = i.getEnd();
+		Node[] before = splitEndBefore(root, start);
+		Node[] removed = splitStartAtMost(before[1], end);
+		Node result = before[0];
+		if (removed[0] != null) {
+			TimeInterval first = first(removed[0]).interval;
+			if (start != null && (first.getStart() == null || first.getStart().compareTo(start) < 0))
+				result = join(result, new Node(TimeInterval.between(first.getStart(), start.minus(minDuration))));
+			TimeInterval last = last(removed[0]).interval;
+			if (end != null && (last.getEnd() == null || last.getEnd().compareTo(end) > 0))
+				result = join(result, new Node(TimeInterval.between(end.plus(minDuration), last.getEnd())));
 		}
-		intersectSelf(inversedIntervals);
+		update(join(result, removed[1]));
 	}
 
 	/**
@@ -349,15 +327,25 @@ public class IntervalsList {
 	 * @param i interval
 	 */
 	public void intersectSelf(TimeInterval i) {
-		List<TimeInterval> newIntervals = new ArrayList<TimeInterval>();
-		for (Iterator<TimeInterval> iterator = intervals.iterator(); iterator
-				.hasNext();) {
-			TimeInterval local = iterator.next();
-			if (CacheHelper.intersects(local, i)) {
-				newIntervals.add(CacheHelper.intersection(local, i));
+		if (i == null) {
+			update(null);
+			return;
+		}
+		i = CacheHelper.arrange(i);
+		Node kept = splitStartAtMost(splitEndBefore(root, i.getStart())[1], i.getEnd())[0];
+		if (kept != null) {
+			TimeInterval first = first(kept).interval;
+			if (!CacheHelper.contains(i, first)) {
+				Node[] parts = splitAt(kept, 1);
+				kept = join(new Node(CacheHelper.intersection(first, i)), parts[1]);
+			}
+			TimeInterval last = last(kept).interval;
+			if (!CacheHelper.contains(i, last)) {
+				Node[] parts = splitAt(kept, size(kept) - 1);
+				kept = join(parts[0], new Node(CacheHelper.intersection(last, i)));
 			}
 		}
-		intervals = newIntervals;
+		update(kept);
 	}
 
 	/**
@@ -382,10 +370,13 @@ public class IntervalsList {
 	public void addToSelf(IntervalsList list) {
 		if (list == null)
 			return;
-		for (Iterator<TimeInterval> iterator = list.intervals.iterator(); iterator
-				.hasNext();) {
-			addToSelf(iterator.next());
+		if (root == null) {
+			root = list.root;
+			intervals = list.intervals;
+			return;
 		}
+		for (TimeInterval i : list.getIntervals())
+			addToSelf(i);
 	}
 
 	/**
@@ -407,9 +398,10 @@ public class IntervalsList {
 	public void subtractFromSelf(IntervalsList list) {
 		if (list == null)
 			return;
-		for (Iterator<TimeInterval> iterator = list.intervals.iterator(); iterator
-				.hasNext();) {
-			subtractFromSelf(iterator.next());
+		for (TimeInterval i : list.getIntervals()) {
+			if (root == null)
+				return;
+			subtractFromSelf(i);
 		}
 	}
 
@@ -427,11 +419,25 @@ public class IntervalsList {
 	}
 
 	/**
-	 * Intersect the instance and another intervals list.
+	 * Intersect the instance and another intervals list. <p> Both lists are
+	 * walked once in ascending order. </p>
 	 * @param list list to intersect with the instance
 	 */
 	public void intersectSelf(IntervalsList list) {
-		intervals = intersection(this, list).intervals;
+		List<TimeInterval> l1 = getIntervals();
+		List<TimeInterval> l2 = list.getIntervals();
+		update(null);
+		int i1 = 0, i2 = 0;
+		while (i1 < l1.size() && i2 < l2.size()) {
+			TimeInterval a = l1.get(i1);
+			TimeInterval b = l2.get(i2);
+			TimeInterval common = CacheHelper.intersection(a, b);
+			if (common != null)
+				append(common);
+			if (b.getEnd() == null || (a.getEnd() != null && a.getEnd().compareTo(b.getEnd()) <= 0))
+				i1++;
+			else i2++;
+		}
 	}
 
 	/**
@@ -442,26 +448,138 @@ public class IntervalsList {
 	 */
 	public static IntervalsList intersection(IntervalsList list1,
 			IntervalsList list2) {
-		IntervalsList list = new IntervalsList();
-		for (Iterator<TimeInterval> iterator = list2.intervals.iterator(); iterator
-				.hasNext();) {
-			list.addToSelf(intersection(list1, iterator.next()));
-		}
-		return list;
+		IntervalsList copy = new IntervalsList(list1);
+		copy.intersectSelf(list2);
+		return copy;
 	}
 
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
 		sb.append("IntervalsList [intervals=");
-		for (TimeInterval ti : intervals) {
+		for (TimeInterval ti : getIntervals()) {
 			sb.append(CacheHelper.format(ti));
 			sb.append(", ");
 		}
-		if (intervals.size() > 0)
+		if (root != null)
 			sb.delete(sb.length() - 2, sb.length());
 		sb.append("]");
 		return sb.toString();
 	}
 
-}
\ No newline at end of file
+	// Adds an interval which starts after the end of the last one
+	private void append(TimeInterval i) {
+		update(join(root, new Node(i)));
+	}
+
+	private void update(Node newRoot) {
+		root = newRoot;
+		intervals = null;
+	}
+
+	// Last interval which starts before t (included)
+	private Node floor(Timestamp t) {
+		Node candidate = null;
+		Node node = root;
+		while (node != null) {
+			if (startsAtMost(node, t)) {
+				candidate = node;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return candidate;
+	}
+
+	private static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+
+	private static Node first(Node node) {
+		while (node.left != null)
+			node = node.left;
+		return node;
+	}
+
+	private static Node last(Node node) {
+		while (node.right != null)
+			node = node.right;
+		return node;
+	}
+
+	private static void collect(Node node, List<TimeInterval> list) {
+		while (node != null) {
+			collect(node.left, list);
+			list.add(node.interval);
+			node = node.right;
+		}
+	}
+
+	// null means -infinity
+	private static boolean endsBefore(Node node, Timestamp t) {
+		return t != null && node.interval.getEnd() != null
+				&& node.interval.getEnd().compareTo(t) < 0;
+	}
+
+	// null means +infinity
+	private static boolean startsAtMost(Node node, Timestamp t) {
+		return t == null || node.interval.getStart() == null
+				|| node.interval.getStart().compareTo(t) <= 0;
+	}
+
+	// Concatenates two trees, all intervals of left being before right ones
+	private static Node join(Node left, Node right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+		if (left.priority > right.priority)
+			return left.with(left.left, join(left.right, right));
+		return right.with(join(left, right.left), right.right);
+	}
+
+	// Splits in intervals which end before t and the others
+	private static Node[] splitEndBefore(Node node, Timestamp t) {
+		if (node == null)
+			return new Node[2];
+		if (endsBefore(node, t)) {
+			Node[] parts = splitEndBefore(node.right, t);
+			parts[0] = node.with(node.left, parts[0]);
+			return parts;
+		}
+		Node[] parts = splitEndBefore(node.left, t);
+		parts[1] = node.with(parts[1], node.right);
+		return parts;
+	}
+
+	// Splits in intervals which start before t (included) and the others
+	private static Node[] splitStartAtMost(Node node, Timestamp t) {
+		if (node == null)
+			return new Node[2];
+		if (startsAtMost(node, t)) {
+			Node[] parts = splitStartAtMost(node.right, t);
+			parts[0] = node.with(node.left, parts[0]);
+			return parts;
+		}
+		Node[] parts = splitStartAtMost(node.left, t);
+		parts[1] = node.with(parts[1], node.right);
+		return parts;
+	}
+
+	// Splits in the first count intervals and the others
+	private static Node[] splitAt(Node node, int count) {
+		if (node == null)
+			return new Node[2];
+		int leftSize = size(node.left);
+		if (count > leftSize) {
+			Node[] parts = splitAt(node.right, count - leftSize - 1);
+			parts[0] = node.with(node.left, parts[0]);
+			return parts;
+		}
+		Node[] parts = splitAt(node.left, count);
+		parts[1] = node.with(parts[1], node.right);
+		return parts;
+	}
+
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.diirt.datasource.timecache.source.DataSource;
+import org.diirt.util.time.TimeInterval;
+import org.diirt.util.time.Timestamp;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link DataRequestScheduler}: executes urgent requests first and
+ * cancels waiting or running requests.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+public class DataRequestSchedulerUnitTests {
+
+	// Source which records requested channels and blocks on "blocking"
+	private static class GatedSource implements DataSource {
+		private final CountDownLatch gate = new CountDownLatch(1);
+		private final CountDownLatch blocked = new CountDownLatch(1);
+		private final List<String> requested = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public DataChunk getData(String channelName, Timestamp from) {
+			requested.add(channelName);
+			if (channelName.equals("blocking")) {
+				blocked.countDown();
+				try {
+					gate.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+				}
+			}
+			return new DataChunk(1);
+		}
+	}
+
+	private static class EndListener implements DataRequestListener {
+		private final CountDownLatch done;
+		private final List<String> completed = Collections.synchronizedList(new ArrayList<String>());
+		private final List<String> cancelled = Collections.synchronizedList(new ArrayList<String>());
+
+		public EndListener(int count) {
+			this.done = new CountDownLatch(count);
+		}
+		@Override
+		public void newData(DataChunk chunk, DataRequestThread thread) {
+		}
+		@Override
+		public void intervalComplete(DataRequestThread thread) {
+			completed.add(thread.getChannelName());
+			done.countDown();
+		}
+		@Override
+		public void intervalCancelled(DataRequestThread thread) {
+			cancelled.add(thread.getChannelName());
+			done.countDown();
+		}
+	}
+
+	private static final TimeInterval interval = TimeInterval.between(
+			Timestamp.of(1400000000, 0), Timestamp.of(1400003600, 0));
+
+	private static DataRequestThread request(String channelName, DataSource source,
+			DataRequestListener listener) throws Exception {
+		DataRequestThread thread = new DataRequestThread(channelName, source, interval);
+		thread.addListener(listener);
+		return thread;
+	}
+
+	/**
+	 * Test that urgent and promoted requests are executed before prefetching
+	 * requests, in submission order.
+	 */
+	@Test
+	public void testPriority() throws Exception {
+		DataRequestScheduler scheduler = new DataRequestScheduler(1);
+		GatedSource source = new GatedSource();
+		EndListener listener = new EndListener(5);
+		scheduler.submit(request("blocking", source, listener), true);
+		Assert.assertTrue(source.blocked.await(10, TimeUnit.SECONDS));
+		scheduler.submit(request("prefetch1", source, listener), false);
+		DataRequestThread prefetch2 = request("prefetch2", source, listener);
+		scheduler.submit(prefetch2, false);
+		scheduler.submit(request("visible1", source, listener), true);
+		scheduler.submit(request("visible2", source, listener), true);
+		Assert.assertEquals(4, scheduler.getWaitingCount());
+		Assert.assertTrue(scheduler.promote(prefetch2));
+		Assert.assertFalse(scheduler.promote(prefetch2));
+
+		source.gate.countDown();
+		Assert.assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(5, source.requested.size());
+		Assert.assertEquals("blocking", source.requested.get(0));
+		Assert.assertEquals("prefetch2", source.requested.get(1));
+		Assert.assertEquals("visible1", source.requested.get(2));
+		Assert.assertEquals("visible2", source.requested.get(3));
+		Assert.assertEquals("prefetch1", source.requested.get(4));
+		Assert.assertNotNull(prefetch2.getQueueWait());
+		Assert.assertNotNull(prefetch2.getFetchDuration());
+		scheduler.shutdown();
+	}
+
+	/**
+	 * Test that a waiting request is cancelled without requesting its source,
+	 * and that a running request stops before its next chunk.
+	 */
+	@Test
+	public void testCancel() throws Exception {
+		DataRequestScheduler scheduler = new DataRequestScheduler(1);
+		GatedSource source = new GatedSource();
+		EndListener listener = new EndListener(3);
+		DataRequestThread blocking = request("blocking", source, listener);
+		scheduler.submit(blocking, true);
+		Assert.assertTrue(source.blocked.await(10, TimeUnit.SECONDS));
+		DataRequestThread waiting = request("waiting", source, listener);
+		scheduler.submit(waiting, true);
+		scheduler.submit(request("other", source, listener), false);
+
+		scheduler.cancel(waiting);
+		Assert.assertEquals(1, scheduler.getWaitingCount());
+		Assert.assertEquals(Collections.singletonList("waiting"), listener.cancelled);
+		scheduler.cancel(blocking);
+		source.gate.countDown();
+		Assert.assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(2, listener.cancelled.size());
+		Assert.assertEquals("blocking", listener.cancelled.get(1));
+		Assert.assertEquals(Collections.singletonList("other"), listener.completed);
+		Assert.assertFalse(source.requested.contains("waiting"));
+		scheduler.shutdown();
+	}
+
+}
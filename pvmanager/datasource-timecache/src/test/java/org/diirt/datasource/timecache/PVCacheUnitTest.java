@@ -4,6 +4,7 @@
  */
 package org.diirt.datasource.timecache;
 
+import java.io.File;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -18,15 +19,23 @@ import org.diirt.datasource.timecache.DataRequestListener;
 import org.diirt.datasource.timecache.DataRequestThread;
 import org.diirt.datasource.timecache.PVCacheImpl;
 import org.diirt.datasource.timecache.PVCacheListener;
+import org.diirt.datasource.timecache.impl.MappedFileStorage;
 import org.diirt.datasource.timecache.impl.SimpleFileDataSource;
 import org.diirt.datasource.timecache.impl.SimpleMemoryStorage;
 import org.diirt.datasource.timecache.source.DataSource;
 import org.diirt.datasource.timecache.storage.DataStorage;
 import org.diirt.datasource.timecache.util.IntervalsList;
+import org.diirt.util.stats.Statistics;
+import org.diirt.util.stats.StatisticsAccumulator;
+import org.diirt.util.time.TimeDuration;
 import org.diirt.util.time.TimeInterval;
 import org.diirt.util.time.Timestamp;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.VStatistics;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Test {@link PVCacheImpl}: retrieves samples from sources for a given time
@@ -37,6 +46,9 @@ public class PVCacheUnitTest {
 
 	private static DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private class PVCacheListenerCounter implements PVCacheListener {
 		private final AtomicInteger newDataCount = new AtomicInteger(0);
 		private final Timestamp start;
@@ -258,4 +270,106 @@ public class PVCacheUnitTest {
 		}
 	}
 
+	/**
+	 * Test that the aggregates returned for a resolution match the samples
+	 * retrieved from sources and stored for the same buckets.
+	 */
+	@Test
+	public void testRetrieveAggregates() {
+		List<DataSource> sourcesList = new ArrayList<DataSource>();
+		sourcesList.add(new SimpleFileDataSource(
+				"src/test/resources/archive-ramps-1D.csv", 100));
+		DataStorage storage = new SimpleMemoryStorage(100);
+		try {
+			PVCacheImpl cache = new PVCacheImpl("TEST-BTY0:RAMP2", sourcesList, storage);
+			Timestamp start = Timestamp.of(dateFormat.parse("2014-12-03 00:00"));
+			Timestamp end = Timestamp.of(dateFormat.parse("2014-12-03 01:00"));
+			cache.retrieveDataAsync(TimeInterval.between(start, end));
+			int limit = 0;
+			while (cache.isProcessingSources() && limit <= 60) { // 30s
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {
+				}
+				limit++;
+			}
+			Assert.assertTrue(cache.getCompletedIntervalsList().contains(TimeInterval.between(start, end)));
+
+			// 5 minutes resolution => 100 seconds buckets of 50 samples
+			TimeDuration bucketDuration = TimeDuration.ofSeconds(100);
+			SortedSet<Data> aggregates = cache.retrieveAggregatesSync(
+					TimeInterval.between(start, end), TimeDuration.ofMinutes(5));
+			int count = 0;
+			for (Data aggregate : aggregates) {
+				VStatistics stats = (VStatistics) aggregate.getValue();
+				StatisticsAccumulator accumulator = new StatisticsAccumulator();
+				for (Data data : cache.retrieveDataSync(TimeInterval.between(aggregate.getTimestamp(),
+						aggregate.getTimestamp().plus(bucketDuration).minus(IntervalsList.minDuration))))
+					accumulator.add(((VNumber) data.getValue()).getValue().doubleValue());
+				Statistics expected = accumulator.toStatistics();
+				Assert.assertEquals(expected.getCount(), stats.getNSamples().intValue());
+				Assert.assertEquals(expected.getAverage(), stats.getAverage(), 1e-9);
+				Assert.assertEquals(expected.getStdDev(), stats.getStdDev(), 1e-9);
+				Assert.assertEquals(expected.getRange().getMinimum(), stats.getMin(), 0);
+				Assert.assertEquals(expected.getRange().getMaximum(), stats.getMax(), 0);
+				if (aggregate.getTimestamp().compareTo(end) < 0) {
+					Assert.assertEquals(50, stats.getNSamples().intValue());
+					count += stats.getNSamples();
+				}
+			}
+			Assert.assertEquals(1800, count);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Test that a PV cache built on a persistent storage serves the intervals
+	 * completed before a restart, without requesting sources again.
+	 */
+	@Test
+	public void testRetrieveRestored() {
+		List<DataSource> sourcesList = new ArrayList<DataSource>();
+		sourcesList.add(new SimpleFileDataSource(
+				"src/test/resources/archive-ramps-1D.csv", 100));
+		try {
+			File directory = folder.newFolder("storage");
+			MappedFileStorage storage = new MappedFileStorage(directory);
+			PVCacheImpl cache = new PVCacheImpl("TEST-BTY0:RAMP2", sourcesList,
+					storage.getPartition("TEST-BTY0:RAMP2"));
+			Timestamp start = Timestamp.of(dateFormat.parse("2014-12-03 00:00"));
+			Timestamp end = Timestamp.of(dateFormat.parse("2014-12-03 01:00"));
+			TimeInterval interval = TimeInterval.between(start, end);
+			cache.retrieveDataAsync(interval);
+			int limit = 0;
+			while (cache.isProcessingSources() && limit <= 60) { // 30s
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {
+				}
+				limit++;
+			}
+			Assert.assertTrue(cache.getCompletedIntervalsList().contains(interval));
+			int count = cache.retrieveDataSync(interval).size();
+			int aggregateCount = cache.retrieveAggregatesSync(interval, TimeDuration.ofMinutes(5)).size();
+			Assert.assertTrue(count > 0);
+			storage.close();
+
+			storage = new MappedFileStorage(directory);
+			cache = new PVCacheImpl("TEST-BTY0:RAMP2", sourcesList,
+					storage.getPartition("TEST-BTY0:RAMP2"));
+			Assert.assertTrue(cache.getCompletedIntervalsList().contains(interval));
+			cache.retrieveDataAsync(interval);
+			Assert.assertFalse(cache.isProcessingSources());
+			Assert.assertEquals(count, cache.retrieveDataSync(interval).size());
+			Assert.assertEquals(aggregateCount,
+					cache.retrieveAggregatesSync(interval, TimeDuration.ofMinutes(5)).size());
+			storage.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
 }
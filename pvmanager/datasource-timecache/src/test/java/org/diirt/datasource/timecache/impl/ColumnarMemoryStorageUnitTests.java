@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.impl;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.diirt.datasource.timecache.Data;
+import org.diirt.datasource.timecache.DataChunk;
+import org.diirt.datasource.timecache.source.DataSource;
+import org.diirt.datasource.timecache.storage.DataStorageListener;
+import org.diirt.datasource.timecache.util.TimestampsSet;
+import org.diirt.util.time.TimeDuration;
+import org.diirt.util.time.TimeInterval;
+import org.diirt.util.time.Timestamp;
+import org.diirt.vtype.Alarm;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.VDouble;
+import org.diirt.vtype.VString;
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link ColumnarMemoryStorage}: stores provided samples in columns,
+ * returns them unchanged and evicts them when the memory budget is exceeded.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+public class ColumnarMemoryStorageUnitTests {
+
+	private static class TestData implements Data {
+		private final Timestamp timestamp;
+		private final VType value;
+
+		public TestData(Timestamp timestamp, VType value) {
+			this.timestamp = timestamp;
+			this.value = value;
+		}
+
+		@Override
+		public Timestamp getTimestamp() {
+			return timestamp;
+		}
+
+		@Override
+		public VType getValue() {
+			return value;
+		}
+
+		@Override
+		public int compareTo(Data o) {
+			return timestamp.compareTo(o.getTimestamp());
+		}
+	}
+
+	private static DataChunk chunk(Timestamp start, int first, int count, int step) {
+		DataChunk chunk = new DataChunk(count);
+		for (int i = first; i < first + count * step; i += step) {
+			Timestamp time = start.plus(TimeDuration.ofMillis(100 * i));
+			Alarm alarm = i % 2 == 0 ? ValueFactory.newAlarm(AlarmSeverity.NONE, "NONE")
+					: ValueFactory.newAlarm(AlarmSeverity.MINOR, "LOW");
+			chunk.add(new TestData(time, ValueFactory.newVDouble((double) i, alarm,
+					ValueFactory.newTime(time), ValueFactory.displayNone())));
+		}
+		return chunk;
+	}
+
+	/**
+	 * Test that no data is lost when writing/reading from storage, with the
+	 * same intervals as {@link SimpleMemoryStorageUnitTests}.
+	 */
+	@Test
+	public void testStorage() {
+		DataSource source = new SimpleFileDataSource(
+				"src/test/resources/mini-archive-export.csv");
+		ColumnarMemoryStorage storage = new ColumnarMemoryStorage(100);
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+		try {
+			Date startDate = sdf.parse("2014-03-14 16:00");
+			DataChunk chunk = source.getData("TEST-BTY0:AI1", Timestamp.of(startDate));
+			int chunkSize = chunk.getDatas().size();
+			TimeInterval chunkInterval = chunk.getInterval();
+
+			// test wrong parameters
+			storage.storeData(null);
+			Assert.assertTrue(storage.getAvailableData(null).isEmpty());
+			Assert.assertTrue(storage.getAvailableData(chunkInterval).isEmpty());
+			Assert.assertFalse(storage.hasAvailableData(chunkInterval));
+
+			// store/retrieve data and compare
+			storage.storeData(chunk);
+			SortedSet<Data> dataSet = storage.getAvailableData(chunkInterval);
+			Assert.assertEquals(chunkSize, dataSet.size());
+			Iterator<Data> itSet = dataSet.iterator();
+			Iterator<Data> itChunk = chunk.getDatas().iterator();
+			for (int index = 0; index < chunkSize; index++) {
+				Data expected = itChunk.next();
+				Data actual = itSet.next();
+				Assert.assertEquals(expected.getTimestamp(), actual.getTimestamp());
+				Assert.assertEquals(expected.getValue().getClass(), actual.getValue().getClass());
+				if (expected.getValue() instanceof VDouble) {
+					Assert.assertEquals(((VDouble) expected.getValue()).getValue(),
+							((VDouble) actual.getValue()).getValue());
+					Assert.assertEquals(((VDouble) expected.getValue()).getAlarmName(),
+							((VDouble) actual.getValue()).getAlarmName());
+				}
+			}
+			Assert.assertFalse(itSet.hasNext());
+
+			// test intervals with one/both missing border and reversed
+			Assert.assertEquals(chunkSize, storage.getAvailableData(TimeInterval.between(chunkInterval.getStart(), null)).size());
+			Assert.assertEquals(chunkSize, storage.getAvailableData(TimeInterval.between(null, chunkInterval.getEnd())).size());
+			Assert.assertEquals(chunkSize, storage.getAvailableData(TimeInterval.between(null, null)).size());
+			Assert.assertEquals(chunkSize, storage.getAvailableData(TimeInterval.between(
+					chunkInterval.getEnd(), chunkInterval.getStart())).size());
+			Assert.assertTrue(storage.hasAvailableData(chunkInterval));
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Test that overlapping chunks are merged and that views behave as
+	 * sorted sets.
+	 */
+	@Test
+	public void testMerge() {
+		Timestamp start = Timestamp.of(1400000000, 0);
+		ColumnarMemoryStorage storage = new ColumnarMemoryStorage(10);
+		// even samples, then odd samples and a few overlapping ones
+		storage.storeData(chunk(start, 0, 20, 2));
+		storage.storeData(chunk(start, 1, 20, 2));
+		storage.storeData(chunk(start, 10, 5, 1));
+		Assert.assertEquals(40, storage.getStoredSampleCount());
+
+		SortedSet<Data> all = storage.getAvailableData(TimeInterval.between(null, null));
+		Assert.assertEquals(40, all.size());
+		int expected = 0;
+		for (Data data : all) {
+			Assert.assertEquals(start.plus(TimeDuration.ofMillis(100 * expected)), data.getTimestamp());
+			VDouble value = (VDouble) data.getValue();
+			Assert.assertEquals(expected, value.getValue(), 0.0);
+			Assert.assertEquals(expected % 2 == 0 ? "NONE" : "LOW", value.getAlarmName());
+			Assert.assertEquals(data.getTimestamp(), value.getTimestamp());
+			expected++;
+		}
+
+		Assert.assertEquals(start, all.first().getTimestamp());
+		Assert.assertEquals(start.plus(TimeDuration.ofMillis(3900)), all.last().getTimestamp());
+		SortedSet<Data> sub = all.subSet(all.headSet(all.last()).last(), all.last());
+		Assert.assertEquals(1, sub.size());
+		Assert.assertEquals(10, all.tailSet(new TestData(start.plus(TimeDuration.ofMillis(3000)), null)).size());
+		Assert.assertTrue(all.contains(new TestData(start.plus(TimeDuration.ofMillis(1500)), null)));
+		Assert.assertFalse(all.contains(new TestData(start.plus(TimeDuration.ofMillis(1550)), null)));
+
+		// values that do not fit the columns are kept as is
+		Timestamp time = start.plus(TimeDuration.ofMillis(150));
+		VString text = ValueFactory.newVString("text", ValueFactory.alarmNone(), ValueFactory.newTime(time));
+		DataChunk chunk = new DataChunk(1);
+		chunk.add(new TestData(time, text));
+		storage.storeData(chunk);
+		SortedSet<Data> stored = storage.getAvailableData(TimeInterval.between(time, time));
+		Assert.assertSame(text, stored.first().getValue());
+		Assert.assertEquals(41, storage.getStoredSampleCount());
+	}
+
+	/**
+	 * Test that the storage evicts the least recently used blocks when the
+	 * memory budget is exceeded, and notifies its listeners.
+	 */
+	@Test
+	public void testBudget() {
+		Timestamp start = Timestamp.of(1400000000, 0);
+		ColumnarMemoryStorage storage = new ColumnarMemoryStorage(100);
+		storage.storeData(chunk(start, 0, 100, 1));
+		long blockBytes = storage.getEstimatedMemory();
+
+		storage = new ColumnarMemoryStorage(100, 3 * blockBytes);
+		final AtomicInteger lostDataCount = new AtomicInteger(0);
+		storage.addListener(new DataStorageListener() {
+			@Override
+			public void dataLoss(TimestampsSet lostSet) {
+				lostDataCount.getAndAdd(lostSet.getSize());
+			}
+		});
+		storage.storeData(chunk(start, 0, 100, 1));
+		storage.storeData(chunk(start, 100, 100, 1));
+		SortedSet<Data> firstBlock = storage.getAvailableData(TimeInterval.between(start, start));
+		storage.storeData(chunk(start, 200, 100, 1));
+		Assert.assertEquals(0, lostDataCount.get());
+
+		// the second block is the least recently used
+		storage.storeData(chunk(start, 300, 100, 1));
+		Assert.assertEquals(100, lostDataCount.get());
+		Assert.assertEquals(300, storage.getStoredSampleCount());
+		Assert.assertEquals(1, storage.getAvailableData(TimeInterval.between(start, start)).size());
+		Assert.assertTrue(storage.getAvailableData(TimeInterval.between(
+				start.plus(TimeDuration.ofMillis(10000)), start.plus(TimeDuration.ofMillis(19900)))).isEmpty());
+		// views stay valid after the eviction
+		Assert.assertEquals(1, firstBlock.size());
+
+		storage.clearAll();
+		Assert.assertEquals(400, lostDataCount.get());
+		Assert.assertEquals(0, storage.getEstimatedMemory());
+	}
+
+}
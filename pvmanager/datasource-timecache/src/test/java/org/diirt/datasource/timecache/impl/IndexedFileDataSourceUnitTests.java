@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.impl;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Iterator;
+
+import org.diirt.datasource.timecache.Data;
+import org.diirt.datasource.timecache.DataChunk;
+import org.diirt.datasource.timecache.source.DataSource;
+import org.diirt.util.time.TimeDuration;
+import org.diirt.util.time.Timestamp;
+import org.diirt.vtype.Alarm;
+import org.diirt.vtype.VDouble;
+import org.diirt.vtype.VNumber;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test {@link IndexedFileDataSource}: returns the same chunks as
+ * {@link SimpleFileDataSource} and saves its index next to the file.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+public class IndexedFileDataSourceUnitTests {
+
+	private static DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File copy(String resource) throws Exception {
+		File file = new File(folder.getRoot(), new File(resource).getName());
+		Files.copy(new File(resource).toPath(), file.toPath());
+		return file;
+	}
+
+	private static void compare(DataChunk expected, DataChunk actual) {
+		Assert.assertEquals(expected.getDatas().size(), actual.getDatas().size());
+		Assert.assertEquals(expected.getInterval(), actual.getInterval());
+		Iterator<Data> itActual = actual.getDatas().iterator();
+		for (Data e : expected.getDatas()) {
+			Data a = itActual.next();
+			Assert.assertEquals(e.getTimestamp(), a.getTimestamp());
+			Assert.assertEquals(e.getValue().getClass(), a.getValue().getClass());
+			Assert.assertEquals(((Alarm) e.getValue()).getAlarmSeverity(), ((Alarm) a.getValue()).getAlarmSeverity());
+			Assert.assertEquals(((Alarm) e.getValue()).getAlarmName(), ((Alarm) a.getValue()).getAlarmName());
+			Assert.assertEquals(((VNumber) e.getValue()).getValue(), ((VNumber) a.getValue()).getValue());
+		}
+	}
+
+	/**
+	 * Test that wrong parameters result in an empty chunk and that chunks are
+	 * the same as the ones read by {@link SimpleFileDataSource}, for channels
+	 * stored in the same file.
+	 */
+	@Test
+	public void readData() throws Exception {
+		File file = copy("src/test/resources/archive-ramps-1D.csv");
+		DataSource expectedSource = new SimpleFileDataSource(file.getPath(), 500);
+		IndexedFileDataSource source = new IndexedFileDataSource(file.getPath(), 500);
+		Timestamp start = Timestamp.of(dateFormat.parse("2014-12-03 00:00"));
+
+		Assert.assertTrue(source.getData(null, null).isEmpty());
+		Assert.assertTrue(source.getData("TEST-BTY0:RAMP1", null).isEmpty());
+		Assert.assertTrue(source.getData(null, start).isEmpty());
+		Assert.assertTrue(source.getData("UNKNOWN", start).isEmpty());
+
+		for (String channel : new String[] { "TEST-BTY0:RAMP1", "TEST-BTY0:RAMP2" }) {
+			for (int hour = 0; hour < 25; hour += 3) {
+				Timestamp from = start.plus(TimeDuration.ofHours(hour));
+				compare(expectedSource.getData(channel, from), source.getData(channel, from));
+			}
+			// Iterate over all samples of the channel
+			int count = 0;
+			Timestamp from = start.minus(TimeDuration.ofHours(1));
+			DataChunk chunk = source.getData(channel, from);
+			while (!chunk.isEmpty()) {
+				count += chunk.getDatas().size();
+				from = chunk.getInterval().getEnd().plus(TimeDuration.ofNanos(1));
+				chunk = source.getData(channel, from);
+			}
+			Assert.assertEquals(channel.endsWith("1") ? 4277 : 43200, count);
+		}
+		Assert.assertTrue(source.getIndexFile().exists());
+	}
+
+	/**
+	 * Test that the saved index is used by new instances, and rebuilt when
+	 * the file is modified.
+	 */
+	@Test
+	public void testIndexFile() throws Exception {
+		File file = copy("src/test/resources/mini-archive-export.csv");
+		Timestamp from = Timestamp.of(dateFormat.parse("2014-03-14 16:00"));
+		IndexedFileDataSource source = new IndexedFileDataSource(file.getPath());
+		DataChunk chunk = source.getData("TEST-BTY0:AI1", from);
+		Assert.assertEquals(234, chunk.getDatas().size());
+		long indexLength = source.getIndexFile().length();
+		Assert.assertTrue(indexLength > 0);
+
+		source = new IndexedFileDataSource(file.getPath());
+		compare(chunk, source.getData("TEST-BTY0:AI1", from));
+
+		FileWriter writer = new FileWriter(file, true);
+		writer.write("\nTEST-BTY0:AI1;2014-03-14 16:12:00.5;500000000;MINOR;LOW;;1.5e-3;;;\n");
+		writer.close();
+		source = new IndexedFileDataSource(file.getPath());
+		chunk = source.getData("TEST-BTY0:AI1", from);
+		Assert.assertEquals(235, chunk.getDatas().size());
+		Data last = chunk.getDatas().last();
+		Assert.assertEquals(500000000, last.getTimestamp().getNanoSec());
+		Assert.assertEquals(1.5e-3, ((VDouble) last.getValue()).getValue(), 0.0);
+		Assert.assertEquals("MINOR", ((Alarm) last.getValue()).getAlarmName());
+	}
+
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.impl;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.SortedSet;
+
+import org.diirt.datasource.timecache.Data;
+import org.diirt.datasource.timecache.DataChunk;
+import org.diirt.datasource.timecache.source.DataSource;
+import org.diirt.datasource.timecache.storage.DataStorage;
+import org.diirt.datasource.timecache.util.IntervalsList;
+import org.diirt.util.time.TimeDuration;
+import org.diirt.util.time.TimeInterval;
+import org.diirt.util.time.Timestamp;
+import org.diirt.vtype.Alarm;
+import org.diirt.vtype.VDouble;
+import org.diirt.vtype.VString;
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test {@link MappedFileStorage}: stores provided samples on disk and
+ * serves them again after a restart.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+public class MappedFileStorageUnitTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static class TestData implements Data {
+		private final Timestamp timestamp;
+		private final VType value;
+
+		public TestData(Timestamp timestamp, VType value) {
+			this.timestamp = timestamp;
+			this.value = value;
+		}
+
+		@Override
+		public Timestamp getTimestamp() {
+			return timestamp;
+		}
+
+		@Override
+		public VType getValue() {
+			return value;
+		}
+
+		@Override
+		public int compareTo(Data o) {
+			return timestamp.compareTo(o.getTimestamp());
+		}
+	}
+
+	private static DataChunk chunk(Timestamp start, int first, int count, double offset) {
+		DataChunk chunk = new DataChunk(count);
+		for (int i = first; i < first + count; i++) {
+			Timestamp time = start.plus(TimeDuration.ofMillis(100 * i));
+			chunk.add(new TestData(time, ValueFactory.newVDouble(i + offset,
+					ValueFactory.alarmNone(), ValueFactory.newTime(time), ValueFactory.displayNone())));
+		}
+		return chunk;
+	}
+
+	/**
+	 * Test that no data is lost when writing/reading from storage, and after
+	 * reopening the storage.
+	 */
+	@Test
+	public void testStorage() throws Exception {
+		DataSource source = new SimpleFileDataSource(
+				"src/test/resources/mini-archive-export.csv");
+		File directory = folder.newFolder("storage");
+		MappedFileStorage storage = new MappedFileStorage(directory);
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+		Date startDate = sdf.parse("2014-03-14 16:00");
+		DataChunk chunk = source.getData("TEST-BTY0:AI1", Timestamp.of(startDate));
+		int chunkSize = chunk.getDatas().size();
+		TimeInterval chunkInterval = chunk.getInterval();
+
+		Assert.assertTrue(storage.getAvailableData(chunkInterval).isEmpty());
+		Assert.assertFalse(storage.hasAvailableData(chunkInterval));
+		Assert.assertEquals(chunkSize, storage.storeData(chunk).size());
+		compare(chunk, storage.getAvailableData(chunkInterval));
+		Assert.assertTrue(storage.hasAvailableData(chunkInterval));
+		storage.close();
+
+		// A new instance reads the samples stored by the previous one
+		storage = new MappedFileStorage(directory);
+		compare(chunk, storage.getAvailableData(chunkInterval));
+		compare(chunk, storage.getAvailableData(TimeInterval.between(null, null)));
+		Assert.assertEquals(chunkSize, storage.getData("TEST-BTY0:AI1", null).getDatas().size());
+		storage.close();
+	}
+
+	private static void compare(DataChunk chunk, SortedSet<Data> dataSet) {
+		Assert.assertEquals(chunk.getDatas().size(), dataSet.size());
+		Iterator<Data> itSet = dataSet.iterator();
+		for (Data expected : chunk.getDatas()) {
+			Data actual = itSet.next();
+			Assert.assertEquals(expected.getTimestamp(), actual.getTimestamp());
+			Assert.assertEquals(expected.getValue().getClass(), actual.getValue().getClass());
+			Assert.assertEquals(((Alarm) expected.getValue()).getAlarmName(),
+					((Alarm) actual.getValue()).getAlarmName());
+			if (expected.getValue() instanceof VDouble) {
+				Assert.assertEquals(((VDouble) expected.getValue()).getValue(),
+						((VDouble) actual.getValue()).getValue());
+			}
+		}
+	}
+
+	/**
+	 * Test that overlapping chunks return the most recent samples, also
+	 * across segments and after reopening the storage.
+	 */
+	@Test
+	public void testOverlap() throws Exception {
+		Timestamp start = Timestamp.of(1400000000, 0);
+		File directory = folder.newFolder("overlap");
+		// Small segments, so that the samples span many files
+		MappedFileStorage storage = new MappedFileStorage(directory, 100, 4096);
+		storage.storeData(chunk(start, 0, 500, 0.0));
+		storage.storeData(chunk(start, 250, 500, 0.5));
+		Assert.assertTrue(directory.listFiles().length > 1);
+
+		for (int pass = 0; pass < 2; pass++) {
+			SortedSet<Data> all = storage.getAvailableData(TimeInterval.between(null, null));
+			Assert.assertEquals(750, all.size());
+			int expected = 0;
+			for (Data data : all) {
+				double offset = expected < 250 ? 0.0 : 0.5;
+				Assert.assertEquals(expected + offset, ((VDouble) data.getValue()).getValue(), 0.0);
+				expected++;
+			}
+
+			DataChunk chunk = storage.getData("test", start.plus(TimeDuration.ofMillis(24950)));
+			Assert.assertEquals(100, chunk.getDatas().size());
+			Assert.assertEquals(start.plus(TimeDuration.ofMillis(25000)), chunk.getDatas().first().getTimestamp());
+			Assert.assertEquals(250.5, ((VDouble) chunk.getDatas().first().getValue()).getValue(), 0.0);
+
+			storage.close();
+			storage = new MappedFileStorage(directory, 100, 4096);
+		}
+
+		// Strings are stored too
+		Timestamp time = start.plus(TimeDuration.ofMillis(50));
+		DataChunk chunk = new DataChunk(1);
+		chunk.add(new TestData(time, ValueFactory.newVString("text", ValueFactory.alarmNone(), ValueFactory.newTime(time))));
+		storage.storeData(chunk);
+		SortedSet<Data> stored = storage.getAvailableData(TimeInterval.between(time, time));
+		Assert.assertEquals("text", ((VString) stored.first().getValue()).getValue());
+
+		storage.clearAll();
+		Assert.assertEquals(0, storage.getStoredSampleCount());
+		Assert.assertEquals(0, directory.listFiles().length);
+	}
+
+	/**
+	 * Test that the samples of each channel are stored in their own
+	 * partition, which is found again after reopening the storage.
+	 */
+	@Test
+	public void testPartitions() throws Exception {
+		Timestamp start = Timestamp.of(1400000000, 0);
+		File directory = folder.newFolder("partitions");
+		MappedFileStorage storage = new MappedFileStorage(directory);
+		DataStorage ramp1 = storage.getPartition("TEST-BTY0:RAMP1");
+		DataStorage ramp2 = storage.getPartition("TEST-BTY0:RAMP2");
+		Assert.assertSame(ramp1, storage.getPartition("TEST-BTY0:RAMP1"));
+		Assert.assertNotSame(ramp1, ramp2);
+		ramp1.storeData(chunk(start, 0, 100, 0.0));
+		ramp2.storeData(chunk(start, 50, 100, 0.5));
+		Assert.assertTrue(new File(directory, "TEST-BTY0%3ARAMP1").isDirectory());
+		Assert.assertTrue(new File(directory, "TEST-BTY0%3ARAMP2").isDirectory());
+
+		for (int pass = 0; pass < 2; pass++) {
+			ramp1 = storage.getPartition("TEST-BTY0:RAMP1");
+			ramp2 = storage.getPartition("TEST-BTY0:RAMP2");
+			SortedSet<Data> all1 = ramp1.getAvailableData(TimeInterval.between(null, null));
+			SortedSet<Data> all2 = ramp2.getAvailableData(TimeInterval.between(null, null));
+			Assert.assertEquals(100, all1.size());
+			Assert.assertEquals(100, all2.size());
+			Assert.assertEquals(0.0, ((VDouble) all1.first().getValue()).getValue(), 0.0);
+			Assert.assertEquals(50.5, ((VDouble) all2.first().getValue()).getValue(), 0.0);
+			Assert.assertEquals(0, storage.getStoredSampleCount());
+
+			storage.close();
+			storage = new MappedFileStorage(directory);
+		}
+		storage.close();
+	}
+
+	/**
+	 * Test that the completed intervals are found again after reopening the
+	 * storage, and are removed with the samples.
+	 */
+	@Test
+	public void testCompletedIntervals() throws Exception {
+		Timestamp start = Timestamp.of(1400000000, 0);
+		File directory = folder.newFolder("intervals");
+		MappedFileStorage storage = new MappedFileStorage(directory);
+		Assert.assertTrue(storage.getCompletedIntervals().isEmpty());
+
+		storage.storeData(chunk(start, 0, 100, 0.0));
+		TimeInterval interval1 = TimeInterval.between(start, start.plus(TimeDuration.ofSeconds(5)));
+		TimeInterval interval2 = TimeInterval.between(start.plus(TimeDuration.ofSeconds(8)),
+				start.plus(TimeDuration.ofSeconds(10)));
+		storage.storeCompletedIntervals(new IntervalsList(interval1, interval2));
+		storage.close();
+
+		storage = new MappedFileStorage(directory);
+		IntervalsList completedIntervals = storage.getCompletedIntervals();
+		Assert.assertEquals(2, completedIntervals.getSize());
+		Assert.assertEquals(interval1, completedIntervals.getTimeInterval(0));
+		Assert.assertEquals(interval2, completedIntervals.getTimeInterval(1));
+
+		storage.clearAll();
+		Assert.assertTrue(storage.getCompletedIntervals().isEmpty());
+		Assert.assertEquals(0, directory.listFiles().length);
+	}
+
+	/**
+	 * Test that samples stored again are not written twice, while the
+	 * modified ones are.
+	 */
+	@Test
+	public void testDuplicates() throws Exception {
+		Timestamp start = Timestamp.of(1400000000, 0);
+		File directory = folder.newFolder("duplicates");
+		MappedFileStorage storage = new MappedFileStorage(directory, 100, 4096);
+		storage.storeData(chunk(start, 0, 500, 0.0));
+		int segmentCount = directory.listFiles().length;
+
+		for (int pass = 0; pass < 3; pass++) {
+			Assert.assertEquals(500, storage.storeData(chunk(start, 0, 500, 0.0)).size());
+			Assert.assertEquals(250, storage.storeData(chunk(start, 250, 250, 0.0)).size());
+		}
+		Assert.assertEquals(segmentCount, directory.listFiles().length);
+		Assert.assertEquals(500, storage.getStoredSampleCount());
+
+		// Modified samples are written and win over the stored ones
+		storage.storeData(chunk(start, 0, 500, 0.5));
+		Assert.assertTrue(directory.listFiles().length > segmentCount);
+		SortedSet<Data> all = storage.getAvailableData(TimeInterval.between(null, null));
+		Assert.assertEquals(500, all.size());
+		Assert.assertEquals(0.5, ((VDouble) all.first().getValue()).getValue(), 0.0);
+		storage.close();
+	}
+
+}
@@ -7,13 +7,16 @@ package org.diirt.datasource.timecache.query;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.diirt.datasource.timecache.DataChunk;
 import org.diirt.datasource.timecache.DataRequestListener;
 import org.diirt.datasource.timecache.DataRequestThread;
+import org.diirt.datasource.timecache.PVCacheImpl;
 import org.diirt.datasource.timecache.impl.SimpleFileDataSource;
+import org.diirt.datasource.timecache.impl.SimpleMemoryStorage;
 import org.diirt.datasource.timecache.query.Query;
 import org.diirt.datasource.timecache.query.QueryChunk;
 import org.diirt.datasource.timecache.query.QueryData;
@@ -27,6 +30,7 @@ import org.diirt.util.time.TimeDuration;
 import org.diirt.util.time.TimeInterval;
 import org.diirt.util.time.TimeRelativeInterval;
 import org.diirt.util.time.Timestamp;
+import org.diirt.vtype.VStatistics;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -214,4 +218,59 @@ public class QueryUnitTests {
 		}
 	}
 
+	/**
+	 * Test that a query with a resolution returns, for each completed chunk,
+	 * the aggregates of the cache instead of the samples.
+	 */
+	@Test
+	public void testResolution() {
+		try {
+			List<DataSource> sources = new ArrayList<DataSource>();
+			sources.add(new SimpleFileDataSource("src/test/resources/archive-ramps-1D.csv", 100));
+			PVCacheImpl cache = new PVCacheImpl("TEST-BTY0:RAMP2", sources, new SimpleMemoryStorage(100));
+			Timestamp start = timeOf("2014-12-03 00:00");
+			Timestamp end = timeOf("2014-12-03 01:00");
+			// 5 minutes resolution => 100 seconds buckets of 50 samples
+			QueryParameters params = new QueryParameters()
+					.timeInterval(TimeRelativeInterval.of(start, end))
+					.resolution(TimeDuration.ofMinutes(5));
+
+			// 6 chunk per 1 hour query => 10 minutes per chunk
+			Query query = new QueryImpl(cache, 6);
+			query.update(params);
+			int limit = 0;
+			while ((!query.isCompleted() || cache.isProcessingSources()) && limit <= 60) { // 30s
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {
+				}
+				limit++;
+			}
+			Assert.assertTrue(query.isCompleted());
+
+			QueryResult result = query.getResult();
+			Assert.assertEquals(6, result.getData().size());
+			int count = 0;
+			for (QueryData data : result.getData()) {
+				Assert.assertTrue(data instanceof QueryDataComplete);
+				for (int i = 0; i < data.getCount(); i++) {
+					Timestamp bucketStart = data.getTimestamps().get(i);
+					Assert.assertTrue(data.getTimeInterval().contains(bucketStart));
+					VStatistics stats = (VStatistics) data.getData().get(i);
+					Assert.assertTrue(stats.getMin() <= stats.getAverage());
+					Assert.assertTrue(stats.getAverage() <= stats.getMax());
+					if (bucketStart.compareTo(end) < 0) {
+						Assert.assertEquals(50, stats.getNSamples().intValue());
+						count += stats.getNSamples();
+					}
+				}
+			}
+			Assert.assertEquals(1800, count);
+			query.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
 }
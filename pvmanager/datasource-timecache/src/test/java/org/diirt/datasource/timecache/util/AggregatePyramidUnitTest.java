@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.timecache.util;
+
+import java.util.SortedSet;
+
+import org.diirt.datasource.timecache.Data;
+import org.diirt.datasource.timecache.DataChunk;
+import org.diirt.datasource.timecache.impl.SimpleMemoryStorage;
+import org.diirt.datasource.timecache.source.SourceData;
+import org.diirt.datasource.timecache.storage.DataStorage;
+import org.diirt.util.time.TimeDuration;
+import org.diirt.util.time.TimeInterval;
+import org.diirt.util.time.Timestamp;
+import org.diirt.vtype.VStatistics;
+import org.diirt.vtype.ValueFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link AggregatePyramid}: aggregates samples of a storage per bucket at
+ * several resolutions.
+ * @author Fred Arnaud (Sopra Group) - ITER
+ */
+public class AggregatePyramidUnitTest {
+
+	private static final Timestamp start = Timestamp.of(1400000000, 0);
+
+	// Samples every 100ms with values 0, 1, 2...
+	private static DataChunk chunk(int first, int count) {
+		DataChunk chunk = new DataChunk(count);
+		for (int i = first; i < first + count; i++) {
+			Timestamp time = start.plus(TimeDuration.ofMillis(100 * i));
+			chunk.add(new SourceData(time, ValueFactory.newVDouble((double) i,
+					ValueFactory.alarmNone(), ValueFactory.newTime(time), ValueFactory.displayNone())));
+		}
+		return chunk;
+	}
+
+	/**
+	 * Test that each level contains the right buckets and that buckets are
+	 * not counted twice when samples are received twice.
+	 */
+	@Test
+	public void testLevels() {
+		DataStorage storage = new SimpleMemoryStorage(1000);
+		AggregatePyramid pyramid = new AggregatePyramid(TimeDuration.ofSeconds(1), 10, 3);
+		for (int first = 0; first < 10000; first += 1000) {
+			DataChunk chunk = chunk(first, 1000);
+			storage.storeData(chunk);
+			pyramid.update(storage, chunk.getInterval());
+		}
+		Assert.assertEquals(1000, pyramid.getBucketCount(0));
+		Assert.assertEquals(100, pyramid.getBucketCount(1));
+		Assert.assertEquals(10, pyramid.getBucketCount(2));
+
+		// Overlapping chunk
+		DataChunk chunk = chunk(500, 1000);
+		storage.storeData(chunk);
+		pyramid.update(storage, chunk.getInterval());
+
+		Assert.assertEquals(0, pyramid.getLevel(TimeDuration.ofMillis(100)));
+		Assert.assertEquals(1, pyramid.getLevel(TimeDuration.ofSeconds(15)));
+		Assert.assertEquals(2, pyramid.getLevel(TimeDuration.ofHours(1)));
+		Assert.assertEquals(TimeDuration.ofSeconds(10), pyramid.getBucketDuration(1));
+
+		SortedSet<Data> aggregates = pyramid.getAggregates(TimeInterval.between(
+				start, start.plus(TimeDuration.ofSeconds(1000))), TimeDuration.ofSeconds(15));
+		Assert.assertEquals(100, aggregates.size());
+		int bucket = 0;
+		for (Data data : aggregates) {
+			VStatistics stats = (VStatistics) data.getValue();
+			Assert.assertEquals(start.plus(TimeDuration.ofSeconds(10 * bucket)), data.getTimestamp());
+			Assert.assertEquals(100, stats.getNSamples().intValue());
+			Assert.assertEquals(100.0 * bucket, stats.getMin(), 0.0);
+			Assert.assertEquals(100.0 * bucket + 99, stats.getMax(), 0.0);
+			Assert.assertEquals(100.0 * bucket + 49.5, stats.getAverage(), 1e-9);
+			bucket++;
+		}
+
+		// Only buckets which start in the interval
+		aggregates = pyramid.getAggregates(TimeInterval.between(
+				start.plus(TimeDuration.ofSeconds(5)), start.plus(TimeDuration.ofSeconds(30))), TimeDuration.ofSeconds(10));
+		Assert.assertEquals(3, aggregates.size());
+		Assert.assertEquals(start.plus(TimeDuration.ofSeconds(10)), aggregates.first().getTimestamp());
+	}
+
+	/**
+	 * Test that buckets are removed when samples are lost by the storage.
+	 */
+	@Test
+	public void testDataLoss() {
+		DataStorage storage = new SimpleMemoryStorage(1000);
+		AggregatePyramid pyramid = new AggregatePyramid();
+		DataChunk chunk = chunk(0, 1000);
+		storage.storeData(chunk);
+		pyramid.update(storage, chunk.getInterval());
+		Assert.assertEquals(100, pyramid.getBucketCount(0));
+		Assert.assertEquals(1, pyramid.getBucketCount(3));
+
+		storage.clearAll();
+		pyramid.update(storage, chunk.getInterval());
+		for (int level = 0; level < 7; level++)
+			Assert.assertEquals(0, pyramid.getBucketCount(level));
+		Assert.assertTrue(pyramid.getAggregates(chunk.getInterval(), null).isEmpty());
+	}
+
+}
@@ -5,8 +5,10 @@
 package org.diirt.datasource.timecache.util;
 
 import java.text.ParseException;
+import java.util.Random;
 
 import org.diirt.datasource.timecache.util.IntervalsList;
+import org.diirt.util.time.TimeDuration;
 import org.diirt.util.time.TimeInterval;
 import org.diirt.util.time.Timestamp;
 import org.junit.Assert;
@@ -182,4 +184,82 @@ public class IntervalsListUnitTest {
 		}
 	}
 
+	/**
+	 * Test that the gaps of an interval are the parts which are not covered by
+	 * the list and that copies are independant.
+	 */
+	@Test
+	public void testComplementIn() {
+		try {
+			IntervalsList iList = new IntervalsList(
+					UnitTestUtils.timeIntervalOf("16:00", "16:15"),
+					UnitTestUtils.timeIntervalOf("16:45", "17:00"));
+			IntervalsList copy = new IntervalsList(iList);
+
+			IntervalsList gaps = iList.complementIn(UnitTestUtils.timeIntervalOf("15:00", "18:00"));
+			Assert.assertEquals(3, gaps.getSize());
+			Assert.assertFalse(gaps.intersects(UnitTestUtils.timeIntervalOf("16:00", "16:15")));
+			Assert.assertTrue(gaps.contains(UnitTestUtils.timeIntervalOf("16:16", "16:44")));
+			Assert.assertEquals(UnitTestUtils.timestampOf("17:00").plus(IntervalsList.minDuration),
+					gaps.getTimeInterval(2).getStart());
+			Assert.assertEquals(IntervalsList.subtract(new IntervalsList(
+					UnitTestUtils.timeIntervalOf("15:00", "18:00")), iList).getIntervals(), gaps.getIntervals());
+
+			Assert.assertTrue(iList.complementIn(UnitTestUtils.timeIntervalOf("16:05", "16:10")).isEmpty());
+			Assert.assertTrue(iList.complementIn(null).isEmpty());
+			gaps = iList.complementIn(UnitTestUtils.timeIntervalOf(null, null));
+			Assert.assertEquals(3, gaps.getSize());
+			Assert.assertNull(gaps.getStart());
+			Assert.assertNull(gaps.getEnd());
+
+			iList.addToSelf(UnitTestUtils.timeIntervalOf("16:15", "16:45"));
+			Assert.assertEquals(1, iList.getSize());
+			Assert.assertEquals(2, copy.getSize());
+			copy.subtractFromSelf(UnitTestUtils.timeIntervalOf("16:00", "16:30"));
+			Assert.assertEquals(1, copy.getSize());
+			Assert.assertTrue(iList.contains(UnitTestUtils.timeIntervalOf("16:00", "17:00")));
+
+		} catch (ParseException e) {
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Test random operations against a list of covered minutes.
+	 */
+	@Test
+	public void testRandomOperations() {
+		Random random = new Random(42);
+		Timestamp origin = Timestamp.of(1400000000, 0);
+		boolean[] covered = new boolean[200];
+		IntervalsList iList = new IntervalsList();
+		for (int n = 0; n < 2000; n++) {
+			int a = random.nextInt(covered.length);
+			int b = Math.min(covered.length - 1, a + random.nextInt(20));
+			TimeInterval i = TimeInterval.between(
+					origin.plus(TimeDuration.ofMinutes(a)),
+					origin.plus(TimeDuration.ofMinutes(b + 1)).minus(IntervalsList.minDuration));
+			switch (random.nextInt(3)) {
+			case 0:
+				iList.addToSelf(i);
+				for (int m = a; m <= b; m++) covered[m] = true;
+				break;
+			case 1:
+				iList.subtractFromSelf(i);
+				for (int m = a; m <= b; m++) covered[m] = false;
+				break;
+			default:
+				IntervalsList gaps = iList.complementIn(i);
+				for (int m = a; m <= b; m++)
+					Assert.assertEquals(!covered[m], gaps.contains(origin.plus(TimeDuration.ofMinutes(m))));
+			}
+			int count = 0;
+			for (int m = 0; m < covered.length; m++) {
+				Assert.assertEquals(covered[m], iList.contains(origin.plus(TimeDuration.ofMinutes(m))));
+				if (covered[m] && (m == 0 || !covered[m - 1])) count++;
+			}
+			Assert.assertEquals(count, iList.getSize());
+		}
+	}
+
 }
@@ -16,6 +16,7 @@ import org.diirt.datasource.timecache.PVCache;
 import org.diirt.datasource.timecache.PVCacheListener;
 import org.diirt.datasource.timecache.PVCacheStatistics;
 import org.diirt.datasource.timecache.util.IntervalsList;
+import org.diirt.util.time.TimeDuration;
 import org.diirt.util.time.TimeInterval;
 
 public class PVCacheMock implements PVCache {
@@ -62,11 +63,21 @@ public class PVCacheMock implements PVCache {
 		return storageThread;
 	}
 
+	@Override
+	public DataRequestThread retrieveDataAsync(TimeInterval interval, PVCacheListener requester) {
+		return storageThread;
+	}
+
 	@Override
 	public SortedSet<Data> retrieveDataSync(TimeInterval interval) {
 		return new TreeSet<Data>();
 	}
 
+	@Override
+	public SortedSet<Data> retrieveAggregatesSync(TimeInterval interval, TimeDuration resolution) {
+		return new TreeSet<Data>();
+	}
+
 	public void addCompletedInterval(TimeInterval interval) {
 		if (interval != null)
 			completedIntervals.addToSelf(interval);
@@ -16,34 +16,52 @@ import org.diirt.util.time.TimeDuration;
 class ActiveScanDecoupler extends SourceDesiredRateDecoupler {
     
     private volatile ScheduledFuture<?> scanTaskHandle;
+    private volatile ScanTimerWheel.Registration scanRegistration;
 
     public ActiveScanDecoupler(ScheduledExecutorService scannerExecutor,
             TimeDuration maxDuration, DesiredRateEventListener listener) {
         super(scannerExecutor, maxDuration, listener);
     }
 
-    @Override
-    void onStart() {
-        scanTaskHandle = getScannerExecutor().scheduleWithFixedDelay(new Runnable() {
+    public ActiveScanDecoupler(ScheduledExecutorService scannerExecutor, ScanTimerWheel timerWheel,
+            TimeDuration maxDuration, DesiredRateEventListener listener) {
+        super(scannerExecutor, timerWheel, maxDuration, listener);
+    }
+    
+    private final Runnable scanTask = new Runnable() {
 
-            @Override
-            public void run() {
-                if (!isStopped() && !isPaused() && !isEventProcessing()) {
-                    DesiredRateEvent event = new DesiredRateEvent();
-                    event.addType(DesiredRateEvent.Type.READ_CONNECTION);
-                    event.addType(DesiredRateEvent.Type.READ_EXCEPTION);
-                    event.addType(DesiredRateEvent.Type.VALUE);
-                    event.addType(DesiredRateEvent.Type.WRITE_CONNECTION);
-                    event.addType(DesiredRateEvent.Type.WRITE_EXCEPTION);
-                    sendDesiredRateEvent(event);
-                }
+        @Override
+        public void run() {
+            if (!isStopped() && !isPaused() && !isEventProcessing()) {
+                DesiredRateEvent event = new DesiredRateEvent();
+                event.addType(DesiredRateEvent.Type.READ_CONNECTION);
+                event.addType(DesiredRateEvent.Type.READ_EXCEPTION);
+                event.addType(DesiredRateEvent.Type.VALUE);
+                event.addType(DesiredRateEvent.Type.WRITE_CONNECTION);
+                event.addType(DesiredRateEvent.Type.WRITE_EXCEPTION);
+                sendDesiredRateEvent(event);
             }
-        }, 0, getMaxDuration().toNanosLong(), TimeUnit.NANOSECONDS);
+        }
+    };
+
+    @Override
+    void onStart() {
+        if (getTimerWheel() != null) {
+            // All the scanners with the same rate are fired together:
+            // scan right away and then at the next group tick
+            scanRegistration = getTimerWheel().scheduleAtFixedRate(scanTask, getMaxDuration());
+            getScannerExecutor().submit(scanTask);
+        } else {
+            scanTaskHandle = getScannerExecutor().scheduleWithFixedDelay(scanTask, 0, getMaxDuration().toNanosLong(), TimeUnit.NANOSECONDS);
+        }
     }
 
     @Override
     void onStop() {
-        if (scanTaskHandle != null) {
+        if (scanRegistration != null) {
+            scanRegistration.cancel();
+            scanRegistration = null;
+        } else if (scanTaskHandle != null) {
             scanTaskHandle.cancel(false);
             scanTaskHandle = null;
         } else {
@@ -6,7 +6,7 @@ package org.diirt.datasource;
 
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static org.diirt.util.concurrent.Executors.namedPool;
@@ -24,6 +24,11 @@ import static org.diirt.util.concurrent.Executors.namedPool;
  * Channel handlers can be implemented from scratch, or one can use the {@link MultiplexedChannelHandler}
  * for handlers that want to open a single connection which is going to be
  * shared by all readers and writers.
+ * <p>
+ * Connections, disconnections and writes are performed asynchronously on
+ * a set of worker threads. All the operations on the same channel are
+ * performed on the same worker, so that they are executed in order, while
+ * operations on different channels may be executed in parallel.
  *
  * @author carcassi
  */
@@ -49,11 +54,33 @@ public abstract class DataSource {
      * @param writeable whether the data source implements write operations
      */
     public DataSource(boolean writeable) {
+        this(writeable, 1);
+    }
+    
+    /**
+     * Creates a new data source that uses the given number of worker
+     * threads to connect, disconnect and write channels.
+     * 
+     * @param writeable whether the data source implements write operations
+     * @param workerThreads the number of threads for the asynchronous operations; must be positive
+     */
+    public DataSource(boolean writeable, int workerThreads) {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("workerThreads must be positive (was " + workerThreads + ")");
+        }
         this.writeable = writeable;
+        ThreadFactory threadFactory = namedPool("PVMgr " + getClass().getSimpleName() + " Worker ");
+        workers = new ExecutorService[workerThreads];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
     }
 
     // Keeps track of the currently created channels
     private Map<String, ChannelHandler> usedChannels = new ConcurrentHashMap<String, ChannelHandler>();
+    // Guards the creation of new channels, so that the same channel
+    // is never created twice
+    private final Object channelCreationLock = new Object();
 
     /**
      * Returns a channel from the given name, either cached or it
@@ -65,10 +92,15 @@ public abstract class DataSource {
     ChannelHandler channel(String channelName) {
         ChannelHandler channel = usedChannels.get(channelHandlerLookupName(channelName));
         if (channel == null) {
-            channel = createChannel(channelName);
-            if (channel == null)
-                return null;
-            usedChannels.put(channelHandlerRegisterName(channelName, channel), channel);
+            synchronized (channelCreationLock) {
+                channel = usedChannels.get(channelHandlerLookupName(channelName));
+                if (channel == null) {
+                    channel = createChannel(channelName);
+                    if (channel == null)
+                        return null;
+                    usedChannels.put(channelHandlerRegisterName(channelName, channel), channel);
+                }
+            }
         }
         return channel;
     }
@@ -114,10 +146,62 @@ public abstract class DataSource {
      */
     protected abstract ChannelHandler createChannel(String channelName);
 
-    // The executor used by the data source to perform asynchronous operations,
-    // such as connections and writes. We use one extra thread for each datasource,
-    // mainly to be able to shut it down during cleanup
-    private final ExecutorService exec = Executors.newSingleThreadExecutor(namedPool("PVMgr " + getClass().getSimpleName() + " Worker "));
+    // The executors used by the data source to perform asynchronous operations,
+    // such as connections and writes. We use extra threads for each datasource,
+    // mainly to be able to shut them down during cleanup. Each channel
+    // is always assigned to the same single threaded executor, so that
+    // all operations on the channel are done in order.
+    private final ExecutorService[] workers;
+    
+    /**
+     * The executor on which all the operations of the given channel
+     * are performed.
+     * 
+     * @param channelHandler a channel handler
+     * @return the executor for the channel
+     */
+    private ExecutorService worker(ChannelHandler channelHandler) {
+        if (workers.length == 1) {
+            return workers[0];
+        }
+        int hash = channelHandler.getChannelName().hashCode();
+        hash ^= (hash >>> 16);
+        return workers[(hash & 0x7fffffff) % workers.length];
+    }
+    
+    /**
+     * Groups the entries by the worker of their channel handler, and
+     * submits one task per worker that processes all its entries.
+     * 
+     * @param <T> the type of the argument for each channel
+     * @param handlers the channel handlers and the argument for each
+     * @param operation the operation to perform on each channel
+     */
+    private <T> void executeOnWorkers(Map<ChannelHandler, T> handlers, final BiConsumer<ChannelHandler, T> operation) {
+        Map<ExecutorService, Map<ChannelHandler, T>> handlersByWorker = new HashMap<>();
+        for (Map.Entry<ChannelHandler, T> entry : handlers.entrySet()) {
+            ExecutorService worker = worker(entry.getKey());
+            Map<ChannelHandler, T> workerHandlers = handlersByWorker.get(worker);
+            if (workerHandlers == null) {
+                workerHandlers = new HashMap<>();
+                handlersByWorker.put(worker, workerHandlers);
+            }
+            workerHandlers.put(entry.getKey(), entry.getValue());
+        }
+        
+        for (Map.Entry<ExecutorService, Map<ChannelHandler, T>> workerEntry : handlersByWorker.entrySet()) {
+            final Map<ChannelHandler, T> workerHandlers = workerEntry.getValue();
+            workerEntry.getKey().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (Map.Entry<ChannelHandler, T> entry : workerHandlers.entrySet()) {
+                        operation.accept(entry.getKey(), entry.getValue());
+                    }
+                }
+            });
+        }
+    }
     
     // Keeps track of the recipes that were opened with
     // this data source.
@@ -143,44 +227,43 @@ public abstract class DataSource {
         // breaks unexpectadely, either everything works or nothing works
         final Map<ChannelHandler, Collection<ChannelReadRecipe>> handlersWithSubscriptions =
                 new HashMap<>();
-        for (final ChannelReadRecipe channelRecipe : readRecipe.getChannelReadRecipes()) {
-            try {
-                String channelName = channelRecipe.getChannelName();
-                ChannelHandler channelHandler = channel(channelName);
-                if (channelHandler == null) {
-                    throw new RuntimeException("Channel named '" + channelName + "' not found");
-                }
-                Collection<ChannelReadRecipe> channelSubscriptions = handlersWithSubscriptions.get(channelHandler);
-                if (channelSubscriptions == null) {
-                    channelSubscriptions = new HashSet<>();
-                    handlersWithSubscriptions.put(channelHandler, channelSubscriptions);
+        // Create all the missing channels at once
+        synchronized (channelCreationLock) {
+            for (final ChannelReadRecipe channelRecipe : readRecipe.getChannelReadRecipes()) {
+                try {
+                    String channelName = channelRecipe.getChannelName();
+                    ChannelHandler channelHandler = channel(channelName);
+                    if (channelHandler == null) {
+                        throw new RuntimeException("Channel named '" + channelName + "' not found");
+                    }
+                    Collection<ChannelReadRecipe> channelSubscriptions = handlersWithSubscriptions.get(channelHandler);
+                    if (channelSubscriptions == null) {
+                        channelSubscriptions = new HashSet<>();
+                        handlersWithSubscriptions.put(channelHandler, channelSubscriptions);
+                    }
+                    channelSubscriptions.add(channelRecipe);
+                } catch (Exception ex) {
+                    // If any error happens while creating the channel,
+                    // report it to the exception handler of that channel
+                    channelRecipe.getReadSubscription().getExceptionWriteFunction().writeValue(ex);
                 }
-                channelSubscriptions.add(channelRecipe);
-            } catch (Exception ex) {
-                // If any error happens while creating the channel,
-                // report it to the exception handler of that channel
-                channelRecipe.getReadSubscription().getExceptionWriteFunction().writeValue(ex);
+
             }
-            
         }
         
         // Now that we went through all channels,
         // add a monitor to the ones that were found
-        exec.execute(new Runnable() {
+        executeOnWorkers(handlersWithSubscriptions, new BiConsumer<ChannelHandler, Collection<ChannelReadRecipe>>() {
 
             @Override
-            public void run() {
-                for (Map.Entry<ChannelHandler, Collection<ChannelReadRecipe>> entry : handlersWithSubscriptions.entrySet()) {
-                    ChannelHandler channelHandler = entry.getKey();
-                    Collection<ChannelReadRecipe> channelRecipes = entry.getValue();
-                    for (ChannelReadRecipe channelRecipe : channelRecipes) {
-                        try {
-                            channelHandler.addReader(channelRecipe.getReadSubscription());
-                        } catch(Exception ex) {
-                            // If an error happens while adding the read subscription,
-                            // notify the appropriate handler
-                            channelRecipe.getReadSubscription().getExceptionWriteFunction().writeValue(ex);
-                        }
+            public void accept(ChannelHandler channelHandler, Collection<ChannelReadRecipe> channelRecipes) {
+                for (ChannelReadRecipe channelRecipe : channelRecipes) {
+                    try {
+                        channelHandler.addReader(channelRecipe.getReadSubscription());
+                    } catch(Exception ex) {
+                        // If an error happens while adding the read subscription,
+                        // notify the appropriate handler
+                        channelRecipe.getReadSubscription().getExceptionWriteFunction().writeValue(ex);
                     }
                 }
             }
@@ -216,15 +299,11 @@ public abstract class DataSource {
         }
         
         // Schedule disconnection and return right away.
-        exec.execute(new Runnable() {
+        executeOnWorkers(handlers, new BiConsumer<ChannelHandler, ChannelHandlerReadSubscription>() {
 
             @Override
-            public void run() {
-                for (Map.Entry<ChannelHandler, ChannelHandlerReadSubscription> entry : handlers.entrySet()) {
-                    ChannelHandler channelHandler = entry.getKey();
-                    ChannelHandlerReadSubscription channelHandlerReadSubscription = entry.getValue();
-                    channelHandler.removeReader(channelHandlerReadSubscription);
-                }
+            public void accept(ChannelHandler channelHandler, ChannelHandlerReadSubscription channelHandlerReadSubscription) {
+                channelHandler.removeReader(channelHandlerReadSubscription);
             }
             
         });
@@ -270,21 +349,17 @@ public abstract class DataSource {
         }
 
         // Connect using another thread
-        exec.execute(new Runnable() {
+        executeOnWorkers(handlers, new BiConsumer<ChannelHandler, Collection<ChannelHandlerWriteSubscription>>() {
 
             @Override
-            public void run() {
-                for (Map.Entry<ChannelHandler, Collection<ChannelHandlerWriteSubscription>> entry : handlers.entrySet()) {
-                    ChannelHandler channelHandler = entry.getKey();
-                    Collection<ChannelHandlerWriteSubscription> subscriptions = entry.getValue();
-                    for (ChannelHandlerWriteSubscription subscription : subscriptions) {
-                        try {
-                            channelHandler.addWriter(subscription);
-                        } catch (Exception ex) {
-                            // If an error happens while adding the write subscription,
-                            // notify the appropriate handler
-                            subscription.getExceptionWriteFunction().writeValue(ex);
-                        }
+            public void accept(ChannelHandler channelHandler, Collection<ChannelHandlerWriteSubscription> subscriptions) {
+                for (ChannelHandlerWriteSubscription subscription : subscriptions) {
+                    try {
+                        channelHandler.addWriter(subscription);
+                    } catch (Exception ex) {
+                        // If an error happens while adding the write subscription,
+                        // notify the appropriate handler
+                        subscription.getExceptionWriteFunction().writeValue(ex);
                     }
                 }
             }
@@ -327,15 +402,11 @@ public abstract class DataSource {
         }
 
         // Disconnect using another thread
-        exec.execute(new Runnable() {
+        executeOnWorkers(handlers, new BiConsumer<ChannelHandler, ChannelHandlerWriteSubscription>() {
 
             @Override
-            public void run() {
-                for (Map.Entry<ChannelHandler, ChannelHandlerWriteSubscription> entry : handlers.entrySet()) {
-                    ChannelHandler channelHandler = entry.getKey();
-                    ChannelHandlerWriteSubscription channelHandlerWriteSubscription = entry.getValue();
-                    channelHandler.removeWrite(channelHandlerWriteSubscription);
-                }
+            public void accept(ChannelHandler channelHandler, ChannelHandlerWriteSubscription channelHandlerWriteSubscription) {
+                channelHandler.removeWrite(channelHandlerWriteSubscription);
             }
         });
     }
@@ -362,46 +433,52 @@ public abstract class DataSource {
                     channelWriteRecipe.getWriteSubscription().getWriteCache().getPrecedingChannels());
         }
 
-        // Connect using another thread
-        exec.execute(new Runnable() {
-
-            private void scheduleNext() {
-                for (Map.Entry<ChannelHandler, Object> entry : planner.nextChannels().entrySet()) {
-                    final String channelName = entry.getKey().getChannelName();
-                    try {
-                        entry.getKey().write(entry.getValue(), new ChannelWriteCallback() {
+        // Each channel is written on its own worker, so that the write
+        // is executed after the connection. The planner is shared
+        // among workers and callbacks.
+        scheduleNextWrites(planner, callback, exceptionHandler);
+    }
+    
+    private void scheduleNextWrites(final WritePlanner planner, final Runnable callback, final ExceptionHandler exceptionHandler) {
+        Map<ChannelHandler, Object> nextChannels;
+        synchronized (planner) {
+            nextChannels = planner.nextChannels();
+        }
+        executeOnWorkers(nextChannels, new BiConsumer<ChannelHandler, Object>() {
 
-                            AtomicInteger counter = new AtomicInteger();
+            @Override
+            public void accept(ChannelHandler channelHandler, Object value) {
+                final String channelName = channelHandler.getChannelName();
+                try {
+                    channelHandler.write(value, new ChannelWriteCallback() {
 
-                            @Override
-                            public void channelWritten(Exception ex) {
+                        @Override
+                        public void channelWritten(Exception ex) {
+                            boolean done;
+                            synchronized (planner) {
                                 planner.removeChannel(channelName);
+                                done = planner.isDone();
+                            }
 
-                                // If there was an error, notify the exception
-                                // and don't schedule anything else
-                                if (ex != null) {
-                                    exceptionHandler.handleException(ex);
-                                    return;
-                                }
+                            // If there was an error, notify the exception
+                            // and don't schedule anything else
+                            if (ex != null) {
+                                exceptionHandler.handleException(ex);
+                                return;
+                            }
 
-                                // Notify only when the last channel was written
-                                if (planner.isDone()) {
-                                    callback.run();
-                                } else {
-                                    scheduleNext();
-                                }
+                            // Notify only when the last channel was written
+                            if (done) {
+                                callback.run();
+                            } else {
+                                scheduleNextWrites(planner, callback, exceptionHandler);
                             }
-                        });
-                    } catch (RuntimeException ex) {
-                        exceptionHandler.handleException(ex);
-                    }
+                        }
+                    });
+                } catch (RuntimeException ex) {
+                    exceptionHandler.handleException(ex);
                 }
             }
-
-            @Override
-            public void run() {
-                scheduleNext();
-            }
         });
     }
 
@@ -418,7 +495,9 @@ public abstract class DataSource {
      * Closes the DataSource and the resources associated with it.
      */
     public void close() {
-        exec.shutdownNow();
+        for (ExecutorService worker : workers) {
+            worker.shutdownNow();
+        }
     }
     
 }
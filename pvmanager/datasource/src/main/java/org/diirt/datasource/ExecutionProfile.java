@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+/**
+ * The threading model used by {@link PVManager} to scan for new values,
+ * to evaluate the read functions and to dispatch the notifications.
+ * <p>
+ * The profile can be changed with {@link PVManager#setExecutionProfile(org.diirt.datasource.ExecutionProfile) }
+ * or selected at startup through the "diirt.pvmanager.executionProfile"
+ * system property. In all profiles, the notifications for the same
+ * reader are never executed concurrently.
+ *
+ * @author carcassi
+ */
+public enum ExecutionProfile {
+
+    /**
+     * Scanning, read function evaluation and asynchronous writes share
+     * the PVManager work pool, and the notifications run on the scanning
+     * thread. This is the default: it is efficient as long as the
+     * listeners return quickly.
+     */
+    SHARED_POOL,
+
+    /**
+     * Each notification runs on its own thread, which is a virtual
+     * thread if the runtime supports them. Listeners
+     * that block on I/O do not hold up the scanning of other readers.
+     */
+    THREAD_PER_NOTIFICATION,
+
+    /**
+     * Scanning and read function evaluation run on a single dedicated
+     * thread, while notifications and asynchronous writes run on the
+     * PVManager work pool. The scanning timing is not affected by the
+     * listeners or the writes.
+     */
+    DEDICATED_SCANNER,
+
+    /**
+     * The scanning is scheduled on a timer wheel that runs the read
+     * function evaluation on a work-stealing pool, and the notifications
+     * run on the same thread. This balances the load when many readers
+     * have expensive read functions and quick listeners.
+     */
+    WORK_STEALING
+}
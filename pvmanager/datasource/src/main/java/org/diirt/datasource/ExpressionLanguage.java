@@ -191,6 +191,26 @@ public class ExpressionLanguage {
                 new QueueCollector<T>(maxValues),
                 expression.getName());
     }
+
+    /**
+     * Returns up to maxValues new values generated by the expression source rate,
+     * using a lock-free ring buffer to collect them.
+     * <p>
+     * Same as {@link #newValuesOf(org.diirt.datasource.expression.SourceRateExpression, int) },
+     * but the source never blocks on the reader: use for sources
+     * that send values at high rate.
+     *
+     * @param <T> type being read
+     * @param expression source rate expression
+     * @param maxValues maximum number of values to send with each notification
+     * @return a new expression
+     */
+    public static <T> DesiredRateExpression<List<T>>
+            newValuesOfLockFree(SourceRateExpression<T> expression, int maxValues) {
+        return new DesiredRateExpressionImpl<List<T>>(expression,
+                new LockFreeQueueCollector<T>(maxValues),
+                expression.getName());
+    }
     
     /**
      * Expression that returns (only) the latest value computed
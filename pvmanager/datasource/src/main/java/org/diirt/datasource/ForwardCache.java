@@ -53,5 +53,14 @@ public class ForwardCache<T, R> implements ValueCache<T> {
     public Class<T> getType() {
         return valueCache.getType();
     }
+
+    /**
+     * The cache that holds the value.
+     *
+     * @return the wrapped cache
+     */
+    ValueCache<T> getValueCache() {
+        return valueCache;
+    }
     
 }
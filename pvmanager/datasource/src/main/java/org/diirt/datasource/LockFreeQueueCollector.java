@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Collects value at read rate and puts them in a bounded ring buffer.
+ * <p>
+ * Same semantic as {@link QueueCollector}: every read clears the cache,
+ * the values are returned oldest value first and, when maxSize is reached,
+ * the oldest values are discarded. Writers never take a lock: each write claims
+ * a slot through an atomic counter and overwrites the oldest value in O(1).
+ * Reads are expected to come from a single thread (the scanner) and drain
+ * the buffer into a list that is reused every other read.
+ * <p>
+ * The ring has a fixed capacity, determined at creation: the maximum size
+ * can be changed with {@link #setMaxSize(int) } but never beyond the capacity.
+ *
+ * @param <T> the type contained in the queue
+ * @author carcassi
+ */
+public class LockFreeQueueCollector<T> implements Collector<T, List<T>> {
+
+    private static class Slot<T> {
+        private final long sequence;
+        private final T value;
+
+        Slot(long sequence, T value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+    }
+
+    private final AtomicReferenceArray<Slot<T>> ring;
+    private final int mask;
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private volatile int maxSize;
+    private volatile Runnable notification;
+
+    // Guarded by readLock
+    private final Object readLock = new Object();
+    private long readSequence;
+    private List<T> readBuffer = new ArrayList<>();
+    private List<T> previousReadBuffer = new ArrayList<>();
+
+    /**
+     * New queue collector with the given max size for the queue. The capacity
+     * of the ring is the max size rounded up to the next power of two.
+     *
+     * @param maxSize maximum number of elements in the queue
+     */
+    public LockFreeQueueCollector(int maxSize) {
+        this(maxSize, maxSize);
+    }
+
+    /**
+     * New queue collector with the given max size for the queue and the
+     * given capacity for the ring. The capacity is rounded up
+     * to the next power of two, and limits the values that can
+     * later be passed to {@link #setMaxSize(int) }.
+     *
+     * @param maxSize maximum number of elements in the queue
+     * @param capacity the maximum number of elements the queue can be resized to
+     */
+    public LockFreeQueueCollector(int maxSize, int capacity) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive (was " + maxSize + ")");
+        }
+        if (capacity < maxSize) {
+            throw new IllegalArgumentException("capacity (" + capacity + ") must be at least maxSize (" + maxSize + ")");
+        }
+        if (capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be at most 2^30 (was " + capacity + ")");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void setChangeNotification(Runnable notification) {
+        this.notification = notification;
+    }
+
+    @Override
+    public void writeValue(T newValue) {
+        long sequence = writeSequence.getAndIncrement();
+        ring.lazySet((int) (sequence & mask), new Slot<>(sequence, newValue));
+        Runnable task = notification;
+        if (task != null) {
+            task.run();
+        }
+    }
+
+    @Override
+    public List<T> readValue() {
+        synchronized (readLock) {
+            List<T> data = previousReadBuffer;
+            data.clear();
+            drain(data);
+            previousReadBuffer = readBuffer;
+            readBuffer = data;
+            return data;
+        }
+    }
+
+    /**
+     * Removes all the values currently in the queue, adding them
+     * to the given collection oldest value first.
+     * <p>
+     * This avoids the creation of a new list when the values
+     * are to be accumulated by the caller.
+     *
+     * @param destination the collection where to put the values
+     * @return the number of values added
+     */
+    public int drainTo(Collection<? super T> destination) {
+        synchronized (readLock) {
+            return drain(destination);
+        }
+    }
+
+    // Must be called with readLock held
+    private int drain(Collection<? super T> destination) {
+        long end = writeSequence.get();
+        long start = Math.max(readSequence, end - maxSize);
+        if (start > readSequence) {
+            overflowCount.addAndGet(start - readSequence);
+        }
+
+        int count = 0;
+        long sequence = start;
+        while (sequence < end) {
+            int index = (int) (sequence & mask);
+            Slot<T> slot = ring.get(index);
+            if (slot == null || slot.sequence < sequence) {
+                // The writer claimed the slot but did not publish it yet:
+                // stop here and pick it up at the next read
+                break;
+            }
+            if (slot.sequence == sequence) {
+                destination.add(slot.value);
+                // Release the reference, unless a writer already replaced it
+                ring.compareAndSet(index, slot, null);
+                count++;
+            } else {
+                // A writer lapped the ring and overwrote the value
+                overflowCount.incrementAndGet();
+            }
+            sequence++;
+        }
+        readSequence = sequence;
+        return count;
+    }
+
+    /**
+     * Changes the number of maximum values in the queue.
+     * <p>
+     * If new maxSize is less than the current number of element in the queue,
+     * the old values are discarded at the next read.
+     *
+     * @param maxSize the maximum number of elements in the queue
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 1 || maxSize > getCapacity()) {
+            throw new IllegalArgumentException("maxSize must be between 1 and the capacity " + getCapacity() + " (was " + maxSize + ")");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * The maximum number of elements in the queue.
+     *
+     * @return the maximum number of elements in the queue
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * The number of elements the ring can hold, which is the upper
+     * limit for the maximum size.
+     *
+     * @return the capacity of the ring
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * The number of values that were discarded, since creation, because
+     * the queue was full.
+     *
+     * @return the number of values lost
+     */
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+}
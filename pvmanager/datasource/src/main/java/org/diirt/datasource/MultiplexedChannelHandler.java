@@ -4,6 +4,12 @@
  */
 package org.diirt.datasource;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -35,6 +41,14 @@ import java.util.logging.Logger;
  * message payload never leave this handler, only value types created by the
  * type adapters</li>
  * </ul>
+ * <p>
+ * By default, the processing of the messages is done while holding the
+ * lock of the handler. If the datasource guarantees that the messages for
+ * the same channel are processed by one thread at a time (e.g. the network
+ * callback thread), it can call {@link #setSnapshotDispatch(boolean) } so that
+ * messages are dispatched without locking on an immutable snapshot of the
+ * monitors, which is recreated only when the subscriptions or the
+ * connection change.
  *
  * @param <ConnectionPayload> type of the payload for the connection
  * @param <MessagePayload> type of the payload for each message
@@ -47,12 +61,116 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
     private int writeUsageCounter = 0;
     private boolean connected = false;
     private boolean writeConnected = false;
-    private MessagePayload lastMessage;
-    private ConnectionPayload connectionPayload;
+    private volatile MessagePayload lastMessage;
+    private volatile ConnectionPayload connectionPayload;
     private Map<ChannelHandlerReadSubscription, MonitorHandler> monitors = new ConcurrentHashMap<>();
     private Map<WriteCache<?>, ChannelHandlerWriteSubscription> writeSubscriptions = new ConcurrentHashMap<>();
     private boolean processMessageOnDisconnect = true;
     private boolean processMessageOnReconnect = true;
+    private volatile boolean snapshotDispatch = false;
+    private volatile DispatchSnapshot dispatchSnapshot = new DispatchSnapshot();
+    
+    /**
+     * The immutable state needed to dispatch a message to all the monitors.
+     * <p>
+     * The monitors are grouped by type adapter and cache type, so that each
+     * payload is converted once per group and the same value is shared by
+     * all the caches in the group.
+     */
+    private class DispatchSnapshot {
+        
+        private final ConnectionPayload connectionPayload;
+        private final List<DispatchGroup> groups;
+
+        private DispatchSnapshot() {
+            this.connectionPayload = null;
+            this.groups = Collections.emptyList();
+        }
+
+        private DispatchSnapshot(ConnectionPayload connectionPayload, Collection<MonitorHandler> monitorHandlers) {
+            this.connectionPayload = connectionPayload;
+            List<DispatchGroup> newGroups = new ArrayList<>();
+            Map<List<Object>, DispatchGroup> groupByKey = new HashMap<>();
+            for (MonitorHandler monitor : monitorHandlers) {
+                if (monitor.typeAdapter != null) {
+                    ValueCache<?> cache = monitor.subscription.getValueCache();
+                    if (isShareable(cache)) {
+                        List<Object> key = Arrays.<Object>asList(monitor.typeAdapter, cache.getType());
+                        DispatchGroup group = groupByKey.get(key);
+                        if (group == null) {
+                            group = new DispatchGroup(monitor.typeAdapter);
+                            groupByKey.put(key, group);
+                            newGroups.add(group);
+                        }
+                        group.monitors.add(monitor);
+                    } else {
+                        DispatchGroup group = new DispatchGroup(monitor.typeAdapter);
+                        group.monitors.add(monitor);
+                        newGroups.add(group);
+                    }
+                }
+            }
+            this.groups = newGroups;
+        }
+        
+        private void dispatch(MessagePayload payload) {
+            for (int i = 0; i < groups.size(); i++) {
+                groups.get(i).dispatch(connectionPayload, payload);
+            }
+        }
+    }
+    
+    /**
+     * Caches for which reading back the value gives the value
+     * written, and can be therefore be filled by copying the value
+     * from another cache. A {@link ForwardCache}, used by all the read
+     * expressions, qualifies if the cache it wraps does.
+     */
+    private static boolean isShareable(ValueCache<?> cache) {
+        if (cache instanceof ForwardCache) {
+            return isShareable(((ForwardCache<?, ?>) cache).getValueCache());
+        }
+        return cache.getClass() == ValueCacheImpl.class && cache.getType() != null;
+    }
+    
+    /**
+     * The monitors that share the same type adapter and cache type.
+     */
+    private class DispatchGroup {
+        
+        private final DataSourceTypeAdapter<ConnectionPayload, MessagePayload> typeAdapter;
+        private final List<MonitorHandler> monitors = new ArrayList<>();
+
+        private DispatchGroup(DataSourceTypeAdapter<ConnectionPayload, MessagePayload> typeAdapter) {
+            this.typeAdapter = typeAdapter;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void dispatch(ConnectionPayload connection, MessagePayload payload) {
+            // Convert the payload once for the first cache
+            MonitorHandler first = monitors.get(0);
+            boolean updated;
+            try {
+                updated = typeAdapter.updateCache(first.subscription.getValueCache(), connection, payload);
+            } catch (RuntimeException e) {
+                for (int i = 0; i < monitors.size(); i++) {
+                    monitors.get(i).subscription.getExceptionWriteFunction().writeValue(e);
+                }
+                return;
+            }
+            
+            // And share the converted value with the others
+            if (monitors.size() > 1) {
+                Object value = first.subscription.getValueCache().readValue();
+                for (int i = 1; i < monitors.size(); i++) {
+                    ValueCache<Object> cache = (ValueCache<Object>) monitors.get(i).subscription.getValueCache();
+                    if (updated || cache.readValue() != value) {
+                        cache.writeValue(value);
+                    }
+                }
+            }
+        }
+    }
     
     private class MonitorHandler {
 
@@ -80,11 +198,29 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
         }
         
         public final void findTypeAdapter() {
+            findTypeAdapter(null);
+        }
+        
+        /**
+         * Finds the type adapter, reusing the one already found for
+         * a cache of the same type.
+         * 
+         * @param adapterCache the adapters already found by cache type; can be null
+         */
+        private void findTypeAdapter(Map<Class<?>, DataSourceTypeAdapter<ConnectionPayload, MessagePayload>> adapterCache) {
             if (getConnectionPayload() == null) {
                 typeAdapter = null;
             } else {
+                Class<?> cacheType = subscription.getValueCache().getType();
+                if (adapterCache != null && cacheType != null && adapterCache.containsKey(cacheType)) {
+                    typeAdapter = adapterCache.get(cacheType);
+                    return;
+                }
                 try {
                     typeAdapter = MultiplexedChannelHandler.this.findTypeAdapter(subscription.getValueCache(), getConnectionPayload());
+                    if (adapterCache != null && cacheType != null) {
+                        adapterCache.put(cacheType, typeAdapter);
+                    }
                 } catch(RuntimeException ex) {
                     subscription.getExceptionWriteFunction().writeValue(ex);
                 }
@@ -135,7 +271,7 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
      * 
      * @return the connection payload or null
      */
-    protected synchronized final ConnectionPayload getConnectionPayload() {
+    protected final ConnectionPayload getConnectionPayload() {
         return connectionPayload;
     }
 
@@ -144,7 +280,7 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
      * 
      * @return the message payload or null
      */
-    protected synchronized final MessagePayload getLastMessagePayload() {
+    protected final MessagePayload getLastMessagePayload() {
         return lastMessage;
     }
 
@@ -163,9 +299,12 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
         setConnected(isConnected(connectionPayload));
         setWriteConnected(isWriteConnected(connectionPayload));
         
+        // The type adapter is looked up once per cache type
+        Map<Class<?>, DataSourceTypeAdapter<ConnectionPayload, MessagePayload>> adapterCache = new HashMap<>();
         for (MonitorHandler monitor : monitors.values()) {
-            monitor.findTypeAdapter();
+            monitor.findTypeAdapter(adapterCache);
         }
+        updateDispatchSnapshot();
         
         if (isConnected() && lastMessage != null && processMessageOnReconnect) {
             processMessage(lastMessage);
@@ -244,6 +383,7 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
         MonitorHandler monitor = new MonitorHandler(subscription);
         monitors.put(subscription, monitor);
         monitor.findTypeAdapter();
+        updateDispatchSnapshot();
         guardedConnect();
         if (getUsageCounter() > 1) {
             if (connectionPayload != null) {
@@ -258,6 +398,7 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
     @Override
     protected synchronized void removeReader(ChannelHandlerReadSubscription subscription) {
         monitors.remove(subscription);
+        updateDispatchSnapshot();
         readUsageCounter--;
         guardedDisconnect();
     }
@@ -296,16 +437,33 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
      * 
      * @param payload the payload of for this type of channel
      */
-    protected synchronized final void processMessage(MessagePayload payload) {
+    protected final void processMessage(MessagePayload payload) {
         if (log.isLoggable(Level.FINEST)) {
             log.log(Level.FINEST, "processMessage for channel {0} messagePayload {1}", new Object[]{getChannelName(), payload});
         }
         
-        lastMessage = payload;
-        for (MonitorHandler monitor : monitors.values()) {
-            monitor.processValue(payload);
+        if (snapshotDispatch) {
+            // The last message must be set before reading the snapshot,
+            // so that a reader added concurrently gets either from the
+            // snapshot or from the last message
+            lastMessage = payload;
+            dispatchSnapshot.dispatch(payload);
+        } else {
+            synchronized (this) {
+                lastMessage = payload;
+                dispatchSnapshot.dispatch(payload);
+            }
         }
     }
+    
+    /**
+     * Recreates the snapshot used for dispatching the messages. Must be
+     * called, while holding the lock, every time the monitors, their
+     * type adapters or the connection payload change.
+     */
+    private void updateDispatchSnapshot() {
+        dispatchSnapshot = new DispatchSnapshot(connectionPayload, monitors.values());
+    }
 
     private void guardedConnect() {
         if (getUsageCounter() == 1) {
@@ -325,6 +483,7 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
                     lastMessage = null;
                 }
                 connectionPayload = null;
+                updateDispatchSnapshot();
             } catch (RuntimeException ex) {
                 reportExceptionToAllReadersAndWriters(ex);
                 log.log(Level.WARNING, "Couldn't disconnect channel " + getChannelName(), ex);
@@ -433,6 +592,25 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
     protected synchronized final void setProcessMessageOnReconnect(boolean processMessageOnReconnect) {
         this.processMessageOnReconnect = processMessageOnReconnect;
     }
+
+    /**
+     * Determines whether {@link #processMessage(java.lang.Object)} dispatches
+     * the message to the monitors without holding the lock of the handler.
+     * Default is false.
+     * <p>
+     * The message is dispatched on a snapshot of the monitors, so adding
+     * or removing readers never blocks the delivery, and a slow type
+     * conversion does not block the subscriptions. This should be enabled
+     * only if {@link #processMessage(java.lang.Object)} is never
+     * called concurrently for the same channel, as the messages are
+     * not serialized by the handler. A reader added while a message is
+     * being dispatched may receive the previous message after the current one.
+     * 
+     * @param snapshotDispatch whether to dispatch messages without locking
+     */
+    protected final void setSnapshotDispatch(boolean snapshotDispatch) {
+        this.snapshotDispatch = snapshotDispatch;
+    }
     
     
 }
@@ -187,8 +187,20 @@ public class PVDirector<T> {
         }
     }
     
+    /**
+     * The data source used to connect the expressions.
+     * <p>
+     * This can be used by expressions that share state among the readers
+     * of the same data source.
+     *
+     * @return the data source; can be null
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
     private volatile boolean closed = false;
-    
+
     void close() {
         closed = true;
         disconnect();
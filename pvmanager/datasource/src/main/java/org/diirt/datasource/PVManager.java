@@ -5,8 +5,11 @@
 package org.diirt.datasource;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.diirt.datasource.expression.DesiredRateExpression;
 import org.diirt.datasource.expression.DesiredRateReadWriteExpression;
 import org.diirt.datasource.expression.SourceRateExpression;
@@ -41,6 +44,18 @@ import org.diirt.datasource.expression.WriteExpression;
  * scan for new values. By default this uses the internal PVManager work pool. The work
  * submitted here is the calculation of the corresponding {@link DesiredRateExpression}
  * and submission to the NotificationExecutor.
+ * <p>
+ * <b>ReadScannerTimerWheel</b> - When enabled, the scanning tasks of all
+ * readers and writers are scheduled on a single timer wheel instead of
+ * being scheduled individually on the ReadScannerExecutorService. All
+ * the scanners with the same rate are executed at the same tick and
+ * in batches. This reduces the scheduling overhead when a large number
+ * of readers are open. It is disabled by default.
+ * <p>
+ * <b>ExecutionProfile</b> - Sets all the above at once according to
+ * one of the predefined threading models (see {@link ExecutionProfile}).
+ * The initial profile can be selected with the "diirt.pvmanager.executionProfile"
+ * system property, and is {@link ExecutionProfile#SHARED_POOL} by default.
  *
  * @author carcassi
  */
@@ -51,7 +66,26 @@ public class PVManager {
     private static final ScheduledExecutorService workerPool = Executors.newScheduledThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
             org.diirt.util.concurrent.Executors.namedPool("PVMgr Worker "));
     private static ScheduledExecutorService readScannerExecutorService = workerPool;
+    private static Executor readScannerTaskExecutor = workerPool;
     private static ScheduledExecutorService asyncWriteExecutor = workerPool;
+    private static boolean readScannerTimerWheelEnabled = false;
+    private static ScanTimerWheel readScannerTimerWheel;
+    private static ExecutionProfile executionProfile = ExecutionProfile.SHARED_POOL;
+    // Created only if the corresponding profile is used
+    private static ScheduledExecutorService dedicatedScanner;
+    private static ExecutorService notificationThreads;
+    private static ExecutorService workStealingPool;
+    
+    static {
+        String profile = System.getProperty("diirt.pvmanager.executionProfile");
+        if (profile != null && !profile.trim().isEmpty()) {
+            try {
+                setExecutionProfile(ExecutionProfile.valueOf(profile.trim().toUpperCase()));
+            } catch (IllegalArgumentException ex) {
+                Logger.getLogger(PVManager.class.getName()).log(Level.WARNING, "Unknown execution profile " + profile + ": using " + executionProfile, ex);
+            }
+        }
+    }
 
     /**
      * Changes the default executor on which all notifications are going to be posted.
@@ -189,7 +223,121 @@ public class PVManager {
      * @param readScannerExecutorService  the new service for the read operations
      */
     public static void setReadScannerExecutorService(ScheduledExecutorService readScannerExecutorService) {
-        PVManager.readScannerExecutorService = readScannerExecutorService;
+        synchronized (PVManager.class) {
+            PVManager.readScannerExecutorService = readScannerExecutorService;
+            PVManager.readScannerTaskExecutor = readScannerExecutorService;
+            readScannerTimerWheel = null;
+        }
+    }
+
+    /**
+     * Changes the notification, asynchronous write and read scanner
+     * executors according to the given profile. Only affects readers
+     * and writers created after the change.
+     * 
+     * @param profile the new execution profile
+     */
+    public static void setExecutionProfile(ExecutionProfile profile) {
+        synchronized (PVManager.class) {
+            switch (profile) {
+                case SHARED_POOL:
+                    readScannerExecutorService = workerPool;
+                    readScannerTaskExecutor = workerPool;
+                    asyncWriteExecutor = workerPool;
+                    defaultNotificationExecutor = org.diirt.util.concurrent.Executors.localThread();
+                    break;
+                case THREAD_PER_NOTIFICATION:
+                    if (notificationThreads == null) {
+                        notificationThreads = org.diirt.util.concurrent.Executors.threadPerTask("PVMgr Notification ");
+                    }
+                    readScannerExecutorService = workerPool;
+                    readScannerTaskExecutor = workerPool;
+                    asyncWriteExecutor = workerPool;
+                    defaultNotificationExecutor = notificationThreads;
+                    break;
+                case DEDICATED_SCANNER:
+                    if (dedicatedScanner == null) {
+                        dedicatedScanner = Executors.newSingleThreadScheduledExecutor(org.diirt.util.concurrent.Executors.namedPool("PVMgr Scanner "));
+                    }
+                    readScannerExecutorService = dedicatedScanner;
+                    readScannerTaskExecutor = dedicatedScanner;
+                    asyncWriteExecutor = workerPool;
+                    defaultNotificationExecutor = workerPool;
+                    break;
+                case WORK_STEALING:
+                    if (workStealingPool == null) {
+                        workStealingPool = org.diirt.util.concurrent.Executors.workStealingPool("PVMgr Scan Worker ");
+                    }
+                    readScannerExecutorService = workerPool;
+                    readScannerTaskExecutor = workStealingPool;
+                    asyncWriteExecutor = workerPool;
+                    defaultNotificationExecutor = org.diirt.util.concurrent.Executors.localThread();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported profile " + profile);
+            }
+            readScannerTimerWheel = null;
+            executionProfile = profile;
+        }
+    }
+
+    /**
+     * The execution profile last set.
+     * <p>
+     * If the executors were changed individually after the profile
+     * was set, they may not reflect the profile.
+     * 
+     * @return the current execution profile
+     */
+    public static ExecutionProfile getExecutionProfile() {
+        synchronized (PVManager.class) {
+            return executionProfile;
+        }
+    }
+
+    /**
+     * Changes whether the periodic read scan is scheduled on a single
+     * timer wheel shared by all readers. Only affects readers and writers
+     * created after the change.
+     * 
+     * @param enabled true if the scanning should use the timer wheel
+     */
+    public static void setReadScannerTimerWheelEnabled(boolean enabled) {
+        synchronized (PVManager.class) {
+            readScannerTimerWheelEnabled = enabled;
+        }
+    }
+
+    /**
+     * Whether the periodic read scan is scheduled on a single
+     * timer wheel shared by all readers.
+     * 
+     * @return true if the scanning uses the timer wheel
+     */
+    public static boolean isReadScannerTimerWheelEnabled() {
+        synchronized (PVManager.class) {
+            return readScannerTimerWheelEnabled;
+        }
+    }
+
+    /**
+     * The timer wheel on which to schedule the scanning, running on
+     * the current read scanner executor. The wheel is always used when
+     * the scanning tasks run on a different executor, as in the
+     * {@link ExecutionProfile#WORK_STEALING} profile.
+     * 
+     * @return the timer wheel; null if disabled
+     */
+    static ScanTimerWheel getReadScannerTimerWheel() {
+        synchronized (PVManager.class) {
+            if (!readScannerTimerWheelEnabled && readScannerTaskExecutor == readScannerExecutorService) {
+                return null;
+            }
+            if (readScannerTimerWheel == null) {
+                readScannerTimerWheel = new ScanTimerWheel(readScannerExecutorService, readScannerTaskExecutor);
+            }
+            return readScannerTimerWheel;
+        }
     }
     
 }
@@ -151,6 +151,7 @@ public class PVReaderConfiguration<T> extends CommonConfiguration {
         ScannerParameters scannerParameters = new ScannerParameters()
                 .readerDirector(director)
                 .scannerExecutor(PVManager.getReadScannerExecutorService())
+                .timerWheel(PVManager.getReadScannerTimerWheel())
                 .maxDuration(readConfiguration.maxRate);
         if (readConfiguration.aggregatedFunction instanceof Collector || readConfiguration.aggregatedFunction instanceof ValueCache) {
             scannerParameters.type(ScannerParameters.Type.PASSIVE);
@@ -146,6 +146,7 @@ public class PVWriterConfiguration<T> extends CommonConfiguration {
         ScannerParameters scannerParameters = new ScannerParameters()
                 .writerDirector(director)
                 .scannerExecutor(PVManager.getReadScannerExecutorService())
+                .timerWheel(PVManager.getReadScannerTimerWheel())
                 .maxDuration(TimeDuration.ofMillis(100));
         scannerParameters.type(ScannerParameters.Type.PASSIVE);
         SourceDesiredRateDecoupler rateDecoupler = scannerParameters.build();
@@ -33,6 +33,14 @@ class PassiveScanDecoupler extends SourceDesiredRateDecoupler {
             lastSubmission = Timestamp.now().minus(getMaxDuration());
         }
     }
+
+    public PassiveScanDecoupler(ScheduledExecutorService scannerExecutor, ScanTimerWheel timerWheel,
+            TimeDuration maxDuration, DesiredRateEventListener listener) {
+        super(scannerExecutor, timerWheel, maxDuration, listener);
+        synchronized(lock) {
+            lastSubmission = Timestamp.now().minus(getMaxDuration());
+        }
+    }
     
     private final Runnable notificationTask = new Runnable() {
 
@@ -194,6 +202,8 @@ class PassiveScanDecoupler extends SourceDesiredRateDecoupler {
     private void scheduleNext(TimeDuration delay) {
         if (delay == null || delay.isNegative()) {
             getScannerExecutor().submit(notificationTask);
+        } else if (getTimerWheel() != null) {
+            getTimerWheel().schedule(notificationTask, delay);
         } else {
             getScannerExecutor().schedule(notificationTask, delay.toNanosLong(), TimeUnit.NANOSECONDS);
         }
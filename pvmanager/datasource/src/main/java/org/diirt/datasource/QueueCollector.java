@@ -23,6 +23,7 @@ public class QueueCollector<T> implements Collector<T, List<T>> {
     private List<T> readBuffer;
     private List<T> writeBuffer;
     private int maxSize;
+    private long overflowCount;
     private Runnable notification;
 
     /**
@@ -52,6 +53,7 @@ public class QueueCollector<T> implements Collector<T, List<T>> {
             writeBuffer.add(newValue);
             if (writeBuffer.size() > maxSize) {
                 writeBuffer.remove(0);
+                overflowCount++;
             }
             task = notification;
         }
@@ -85,6 +87,7 @@ public class QueueCollector<T> implements Collector<T, List<T>> {
             this.maxSize = maxSize;
             while (writeBuffer.size() > maxSize) {
                 writeBuffer.remove(0);
+                overflowCount++;
             }
         }
     }
@@ -99,5 +102,17 @@ public class QueueCollector<T> implements Collector<T, List<T>> {
             return maxSize;
         }
     }
+
+    /**
+     * The number of values that were discarded, since creation, because
+     * the queue was full.
+     *
+     * @return the number of values lost
+     */
+    public long getOverflowCount() {
+        synchronized(lock) {
+            return overflowCount;
+        }
+    }
     
 }
@@ -0,0 +1,368 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.diirt.util.time.TimeDuration;
+
+/**
+ * A hashed timer wheel that schedules the scanning tasks of many
+ * readers on a single periodic task.
+ * <p>
+ * Instead of having each decoupler submit its own tasks to the
+ * {@link ScheduledExecutorService}, the wheel keeps the timeouts in buckets
+ * and advances at a fixed tick. Periodic tasks with the same period are
+ * coalesced in a single group, which is fired once per period: the tasks
+ * that expire in the same tick are dispatched to the executor in batches.
+ * Delays and periods are rounded up to the tick duration.
+ * <p>
+ * The ticking task runs only when there are pending timeouts.
+ *
+ * @author carcassi
+ */
+class ScanTimerWheel {
+
+    private static final Logger log = Logger.getLogger(ScanTimerWheel.class.getName());
+
+    /**
+     * A handle for a task scheduled on the wheel.
+     */
+    interface Registration {
+
+        /**
+         * Removes the task from the wheel. The task may still be
+         * executed if it was already dispatched.
+         */
+        void cancel();
+    }
+
+    private class Timeout {
+        // Either a single task or a group, the other is null
+        private final Runnable task;
+        private final ScanGroup group;
+        private final long periodTicks;
+        private long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, ScanGroup group, long deadline, long periodTicks) {
+            this.task = task;
+            this.group = group;
+            this.deadline = deadline;
+            this.periodTicks = periodTicks;
+        }
+    }
+
+    private class ScanGroup {
+        private final long periodTicks;
+        private final Set<Runnable> tasks = ConcurrentHashMap.newKeySet();
+        private Timeout timeout;
+
+        private ScanGroup(long periodTicks) {
+            this.periodTicks = periodTicks;
+        }
+    }
+
+    private final ScheduledExecutorService executor;
+    private final Executor taskExecutor;
+    private final long tickNanos;
+    private final int mask;
+    private final int batchSize;
+    private final List<Queue<Timeout>> wheel;
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final Object lock = new Object();
+    // Guarded by lock
+    private final Map<Long, ScanGroup> groups = new HashMap<>();
+    private ScheduledFuture<?> tickerHandle;
+    private int nTimeouts;
+    private long tickerStartNanos;
+    // Accessed only by the ticker task, which does not overlap with itself
+    private long currentTick;
+
+    /**
+     * Creates a new timer wheel that executes the tasks on the given executor.
+     *
+     * @param executor the executor for both the ticking and the scanning tasks
+     * @param tickDuration the resolution of the wheel
+     * @param wheelSize the number of buckets in the wheel; rounded up to a power of two
+     * @param batchSize the maximum number of tasks to run in a single executor task
+     */
+    ScanTimerWheel(ScheduledExecutorService executor, TimeDuration tickDuration, int wheelSize, int batchSize) {
+        this(executor, executor, tickDuration, wheelSize, batchSize);
+    }
+
+    /**
+     * Creates a new timer wheel that ticks on the given scheduled executor
+     * and executes the tasks on the task executor.
+     *
+     * @param executor the executor for the ticking task
+     * @param taskExecutor the executor for the scanning tasks
+     * @param tickDuration the resolution of the wheel
+     * @param wheelSize the number of buckets in the wheel; rounded up to a power of two
+     * @param batchSize the maximum number of tasks to run in a single executor task
+     */
+    ScanTimerWheel(ScheduledExecutorService executor, Executor taskExecutor, TimeDuration tickDuration, int wheelSize, int batchSize) {
+        if (!tickDuration.isPositive()) {
+            throw new IllegalArgumentException("Tick duration must be positive (was " + tickDuration + ")");
+        }
+        if (wheelSize < 1 || wheelSize > (1 << 20)) {
+            throw new IllegalArgumentException("Wheel size must be between 1 and 2^20 (was " + wheelSize + ")");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive (was " + batchSize + ")");
+        }
+        this.executor = executor;
+        this.taskExecutor = taskExecutor;
+        this.tickNanos = tickDuration.toNanosLong();
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.batchSize = batchSize;
+        wheel = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            wheel.add(new LinkedList<Timeout>());
+        }
+    }
+
+    /**
+     * Creates a new timer wheel with a 1 ms tick, 512 buckets and batches
+     * of 64 tasks.
+     *
+     * @param executor the executor for both the ticking and the scanning tasks
+     */
+    ScanTimerWheel(ScheduledExecutorService executor) {
+        this(executor, executor);
+    }
+
+    /**
+     * Creates a new timer wheel with a 1 ms tick, 512 buckets and batches
+     * of 64 tasks, that executes the tasks on the task executor.
+     *
+     * @param executor the executor for the ticking task
+     * @param taskExecutor the executor for the scanning tasks
+     */
+    ScanTimerWheel(ScheduledExecutorService executor, Executor taskExecutor) {
+        this(executor, taskExecutor, TimeDuration.ofMillis(1), 512, 64);
+    }
+
+    /**
+     * The executor used to run the ticking task.
+     *
+     * @return the executor
+     */
+    ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * The executor used to run the tasks.
+     *
+     * @return the executor
+     */
+    Executor getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    /**
+     * Executes the task once after the given delay.
+     *
+     * @param task the task to execute
+     * @param delay the delay; rounded up to the tick duration
+     * @return the handle to cancel the task
+     */
+    Registration schedule(Runnable task, TimeDuration delay) {
+        final Timeout timeout = newTimeout(task, null, toTicks(delay), 0);
+        return new Registration() {
+
+            @Override
+            public void cancel() {
+                timeout.cancelled = true;
+            }
+        };
+    }
+
+    /**
+     * Executes the task periodically. All tasks with the same period
+     * (after rounding to the tick duration) are executed in the same tick.
+     *
+     * @param task the task to execute
+     * @param period the period; rounded up to the tick duration
+     * @return the handle to remove the task
+     */
+    Registration scheduleAtFixedRate(final Runnable task, TimeDuration period) {
+        long periodTicks = Math.max(1, toTicks(period));
+        final ScanGroup group;
+        synchronized (lock) {
+            ScanGroup existing = groups.get(periodTicks);
+            if (existing == null) {
+                existing = new ScanGroup(periodTicks);
+                groups.put(periodTicks, existing);
+                existing.timeout = newTimeout(null, existing, periodTicks, periodTicks);
+            }
+            group = existing;
+            group.tasks.add(task);
+        }
+        return new Registration() {
+
+            @Override
+            public void cancel() {
+                synchronized (lock) {
+                    group.tasks.remove(task);
+                    if (group.tasks.isEmpty() && groups.get(group.periodTicks) == group) {
+                        groups.remove(group.periodTicks);
+                        group.timeout.cancelled = true;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * The number of distinct periods currently scheduled.
+     *
+     * @return the number of groups
+     */
+    int getGroupCount() {
+        synchronized (lock) {
+            return groups.size();
+        }
+    }
+
+    private long toTicks(TimeDuration duration) {
+        long nanos = duration.toNanosLong();
+        if (nanos <= 0) {
+            return 0;
+        }
+        return (nanos + tickNanos - 1) / tickNanos;
+    }
+
+    private Timeout newTimeout(Runnable task, ScanGroup group, long delayTicks, long periodTicks) {
+        Timeout timeout;
+        synchronized (lock) {
+            if (tickerHandle == null) {
+                tickerStartNanos = System.nanoTime();
+                tickerHandle = executor.scheduleAtFixedRate(ticker, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+            }
+            nTimeouts++;
+            // The deadline is computed from the wall time, as the ticker
+            // may not have processed the latest ticks yet
+            long nowTick = (System.nanoTime() - tickerStartNanos) / tickNanos;
+            timeout = new Timeout(task, group, nowTick + Math.max(1, delayTicks), periodTicks);
+        }
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    private final Runnable ticker = new Runnable() {
+
+        @Override
+        public void run() {
+            try {
+                tick();
+            } catch (RuntimeException ex) {
+                // Exceptions would cancel the periodic ticker
+                log.log(Level.WARNING, "Unexpected exception in scan timer wheel", ex);
+            }
+        }
+    };
+
+    private void tick() {
+        currentTick++;
+
+        List<Runnable> expired = new ArrayList<>();
+        List<Timeout> rescheduled = new ArrayList<>();
+        int nRemoved = 0;
+        Iterator<Timeout> iter = wheel.get((int) (currentTick & mask)).iterator();
+        while (iter.hasNext()) {
+            Timeout timeout = iter.next();
+            if (timeout.cancelled) {
+                iter.remove();
+                nRemoved++;
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            } else {
+                iter.remove();
+                if (timeout.group != null) {
+                    expired.addAll(timeout.group.tasks);
+                } else {
+                    expired.add(timeout.task);
+                }
+                if (timeout.periodTicks > 0) {
+                    timeout.deadline += timeout.periodTicks;
+                    rescheduled.add(timeout);
+                } else {
+                    nRemoved++;
+                }
+            }
+        }
+        // Place new and periodic timeouts after the current bucket was
+        // processed, so that the rounds are counted from the next tick
+        for (Timeout timeout : rescheduled) {
+            place(timeout);
+        }
+        Timeout pending;
+        while ((pending = pendingTimeouts.poll()) != null) {
+            place(pending);
+        }
+
+        if (nRemoved > 0) {
+            synchronized (lock) {
+                nTimeouts -= nRemoved;
+                if (nTimeouts == 0 && pendingTimeouts.isEmpty()) {
+                    tickerHandle.cancel(false);
+                    tickerHandle = null;
+                    currentTick = 0;
+                }
+            }
+        }
+
+        dispatch(expired);
+    }
+
+    private void place(Timeout timeout) {
+        long deadline = Math.max(timeout.deadline, currentTick + 1);
+        timeout.deadline = deadline;
+        timeout.remainingRounds = (deadline - currentTick - 1) >> Long.numberOfTrailingZeros(mask + 1);
+        wheel.get((int) (deadline & mask)).add(timeout);
+    }
+
+    private void dispatch(List<Runnable> tasks) {
+        for (int start = 0; start < tasks.size(); start += batchSize) {
+            final List<Runnable> batch = tasks.subList(start, Math.min(tasks.size(), start + batchSize));
+            taskExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (Runnable task : batch) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException ex) {
+                            log.log(Level.WARNING, "Unexpected exception in scan task", ex);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+}
@@ -17,6 +17,7 @@ class ScannerParameters {
     
     private Type type = Type.ACTIVE;
     private ScheduledExecutorService scannerExecutor;
+    private ScanTimerWheel timerWheel;
     private TimeDuration maxDuration;
     private TimeDuration timeout;
     private String timeoutMessage;
@@ -58,6 +59,15 @@ class ScannerParameters {
     public ScheduledExecutorService getScannerExecutor() {
         return scannerExecutor;
     }
+
+    public ScannerParameters timerWheel(ScanTimerWheel timerWheel) {
+        this.timerWheel = timerWheel;
+        return this;
+    }
+
+    public ScanTimerWheel getTimerWheel() {
+        return timerWheel;
+    }
     
     public ScannerParameters timeout(TimeDuration timeout, String timeoutMessage) {
         this.timeout = timeout;
@@ -76,7 +86,7 @@ class ScannerParameters {
             if (maxDuration == null) {
                 throw new NullPointerException("Active scanner requires a maxDuration");
             }
-            return new ActiveScanDecoupler(scannerExecutor, maxDuration, listener);
+            return new ActiveScanDecoupler(scannerExecutor, timerWheel, maxDuration, listener);
         }
         if (type == Type.PASSIVE) {
             if (scannerExecutor == null) {
@@ -88,7 +98,7 @@ class ScannerParameters {
             if (maxDuration == null) {
                 throw new NullPointerException("Passive scanner requires a maxDuration");
             }
-            return new PassiveScanDecoupler(scannerExecutor, maxDuration, listener);
+            return new PassiveScanDecoupler(scannerExecutor, timerWheel, maxDuration, listener);
         }
         throw new IllegalStateException("Can't create suitable scanner");
     }
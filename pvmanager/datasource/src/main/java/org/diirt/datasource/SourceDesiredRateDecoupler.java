@@ -20,6 +20,7 @@ abstract class SourceDesiredRateDecoupler {
     private final DesiredRateEventListener listener;
     private final ScheduledExecutorService scannerExecutor;
     private final TimeDuration maxDuration;
+    private final ScanTimerWheel timerWheel;
     
     protected final Object lock = new Object();
     private boolean eventProcessing = false;
@@ -36,8 +37,23 @@ abstract class SourceDesiredRateDecoupler {
      */
     public SourceDesiredRateDecoupler(ScheduledExecutorService scannerExecutor, TimeDuration maxDuration,
             DesiredRateEventListener listener) {
+        this(scannerExecutor, null, maxDuration, listener);
+    }
+
+    /**
+     * Creates a new rate decoupler that will send the events to the
+     * given listener, and that schedules its tasks on the given timer wheel.
+     * 
+     * @param scannerExecutor executor for the scanner tasks
+     * @param timerWheel the wheel to schedule the timed tasks; null to schedule directly on the executor
+     * @param maxDuration max interval between notifications
+     * @param listener the event callback
+     */
+    public SourceDesiredRateDecoupler(ScheduledExecutorService scannerExecutor, ScanTimerWheel timerWheel, TimeDuration maxDuration,
+            DesiredRateEventListener listener) {
         this.listener = listener;
         this.scannerExecutor = scannerExecutor;
+        this.timerWheel = timerWheel;
         this.maxDuration = maxDuration;
     }
 
@@ -45,6 +61,15 @@ abstract class SourceDesiredRateDecoupler {
         return scannerExecutor;
     }
 
+    /**
+     * The timer wheel shared among decouplers, if any.
+     * 
+     * @return the timer wheel or null
+     */
+    public ScanTimerWheel getTimerWheel() {
+        return timerWheel;
+    }
+
     public TimeDuration getMaxDuration() {
         return maxDuration;
     }
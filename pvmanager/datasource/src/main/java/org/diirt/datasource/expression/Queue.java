@@ -5,6 +5,8 @@
 package org.diirt.datasource.expression;
 
 import java.util.List;
+import org.diirt.datasource.Collector;
+import org.diirt.datasource.LockFreeQueueCollector;
 import org.diirt.datasource.QueueCollector;
 import org.diirt.datasource.WriteFunction;
 
@@ -19,8 +21,12 @@ import org.diirt.datasource.WriteFunction;
  */
 public class Queue<T> extends DesiredRateExpressionImpl<List<T>> {
     
-    private static <T> QueueCollector<T> createQueue(int maxSize) {
-        return new QueueCollector<>(maxSize);
+    private static <T> Collector<T, List<T>> createQueue(int maxSize, boolean lockFree) {
+        if (lockFree) {
+            return new LockFreeQueueCollector<>(maxSize);
+        } else {
+            return new QueueCollector<>(maxSize);
+        }
     }
 
     /**
@@ -29,7 +35,21 @@ public class Queue<T> extends DesiredRateExpressionImpl<List<T>> {
      * @param maxSize the maximum number of elements in the cache
      */
     public Queue(int maxSize) {
-        super(new DesiredRateExpressionListImpl<Object>(), Queue.<T>createQueue(maxSize), "queue");
+        this(maxSize, false);
+    }
+
+    /**
+     * Creates a new queue expression.
+     * <p>
+     * A lock-free queue is backed by a ring buffer: writes never block,
+     * but the maximum size cannot be later increased beyond the
+     * initial one rounded up to the next power of two.
+     *
+     * @param maxSize the maximum number of elements in the cache
+     * @param lockFree whether to use a lock-free ring buffer
+     */
+    public Queue(int maxSize, boolean lockFree) {
+        super(new DesiredRateExpressionListImpl<Object>(), Queue.<T>createQueue(maxSize, lockFree), "queue");
     }
 
     /**
@@ -39,7 +59,18 @@ public class Queue<T> extends DesiredRateExpressionImpl<List<T>> {
      * @param maxSize the maximum number of elements in the cache
      */
     public Queue(SourceRateExpression<T> sourceExpression, int maxSize) {
-        super(sourceExpression, Queue.<T>createQueue(maxSize), "queue");
+        this(sourceExpression, maxSize, false);
+    }
+
+    /**
+     * Creates a new queue expression.
+     *
+     * @param sourceExpression the source rate expression that will fill the queue
+     * @param maxSize the maximum number of elements in the cache
+     * @param lockFree whether to use a lock-free ring buffer
+     */
+    public Queue(SourceRateExpression<T> sourceExpression, int maxSize, boolean lockFree) {
+        super(sourceExpression, Queue.<T>createQueue(maxSize, lockFree), "queue");
     }
     
     /**
@@ -52,8 +83,8 @@ public class Queue<T> extends DesiredRateExpressionImpl<List<T>> {
     }
     
     @SuppressWarnings("unchecked")
-    private QueueCollector<T> getCollector() {
-        return (QueueCollector<T>) getFunction();
+    private Collector<T, List<T>> getCollector() {
+        return (Collector<T, List<T>>) getFunction();
     }
     
     /**
@@ -63,10 +94,27 @@ public class Queue<T> extends DesiredRateExpressionImpl<List<T>> {
      * @return this expression
      */
     public Queue<T> maxSize(int maxSize) {
-        getCollector().setMaxSize(maxSize);
+        if (getCollector() instanceof LockFreeQueueCollector) {
+            ((LockFreeQueueCollector<T>) getCollector()).setMaxSize(maxSize);
+        } else {
+            ((QueueCollector<T>) getCollector()).setMaxSize(maxSize);
+        }
         return this;
     }
     
+    /**
+     * The number of values that were discarded because the queue was full.
+     *
+     * @return the number of values lost
+     */
+    public long getOverflowCount() {
+        if (getCollector() instanceof LockFreeQueueCollector) {
+            return ((LockFreeQueueCollector<T>) getCollector()).getOverflowCount();
+        } else {
+            return ((QueueCollector<T>) getCollector()).getOverflowCount();
+        }
+    }
+    
     /**
      * Adds a new value to the queue
      *
@@ -57,6 +57,26 @@ public class ActiveScanDecouplerTest {
         });
     }
 
+    @Test
+    public void activeScanningRateTimerWheel() throws Exception {
+        final ScanTimerWheel timerWheel = new ScanTimerWheel(PVManager.getReadScannerExecutorService());
+        repeatTest(10, new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                DesiredRateEventLog log = new DesiredRateEventLog();
+                SourceDesiredRateDecoupler decoupler = new ActiveScanDecoupler(PVManager.getReadScannerExecutorService(), timerWheel, TimeDuration.ofHertz(10), log);
+                log.setDecoupler(decoupler);
+                decoupler.start();
+                Thread.sleep(500);
+                decoupler.stop();
+                assertThat(log.getEvents().size(), lessThanOrEqualTo(6));
+                assertThat(log.getEvents().size(), greaterThanOrEqualTo(4));
+                assertThat(timerWheel.getGroupCount(), equalTo(0));
+                return null;
+            }
+        });
+    }
+
     @Test
     public void pausedScanningRate() throws Exception {
         repeatTest(10, new Callable<Object>() {
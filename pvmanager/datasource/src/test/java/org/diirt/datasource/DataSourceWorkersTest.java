@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class DataSourceWorkersTest {
+
+    private static class TestDataSource extends DataSource {
+
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        private final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        private volatile CountDownLatch latch;
+
+        public TestDataSource(int workerThreads) {
+            super(false, workerThreads);
+        }
+
+        @Override
+        protected ChannelHandler createChannel(final String channelName) {
+            return new MultiplexedChannelHandler<Object, Object>(channelName) {
+
+                @Override
+                protected void connect() {
+                    events.add("connect " + channelName);
+                    threads.add(Thread.currentThread().getName());
+                    processConnection(new Object());
+                    latch.countDown();
+                }
+
+                @Override
+                protected void disconnect() {
+                    events.add("disconnect " + channelName);
+                    latch.countDown();
+                }
+
+                @Override
+                protected void write(Object newValue, ChannelWriteCallback callback) {
+                    throw new UnsupportedOperationException("Not supported.");
+                }
+            };
+        }
+    }
+
+    private static ReadRecipe recipe(int nChannels) {
+        ReadRecipeBuilder builder = new ReadRecipeBuilder();
+        for (int i = 0; i < nChannels; i++) {
+            builder.addChannel("channel" + i, new ValueCacheImpl<>(Object.class));
+        }
+        return builder.build(new QueueCollector<Exception>(10), new ConnectionCollector());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void new1() {
+        new TestDataSource(0);
+    }
+
+    @Test
+    public void connectRead1() throws Exception {
+        TestDataSource dataSource = new TestDataSource(4);
+        try {
+            ReadRecipe recipe = recipe(100);
+            dataSource.latch = new CountDownLatch(100);
+            dataSource.connectRead(recipe);
+            assertThat(dataSource.latch.await(5, TimeUnit.SECONDS), equalTo(true));
+            assertThat(dataSource.getChannels().size(), equalTo(100));
+            // Channels are spread across the workers
+            assertThat(dataSource.threads.size(), greaterThan(1));
+            assertThat(dataSource.threads.size(), lessThanOrEqualTo(4));
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void connectDisconnectRead1() throws Exception {
+        TestDataSource dataSource = new TestDataSource(4);
+        try {
+            ReadRecipe recipe = recipe(50);
+            dataSource.latch = new CountDownLatch(100);
+            dataSource.connectRead(recipe);
+            dataSource.disconnectRead(recipe);
+            assertThat(dataSource.latch.await(5, TimeUnit.SECONDS), equalTo(true));
+            // Operations on the same channel are executed in order
+            for (int i = 0; i < 50; i++) {
+                int connect = dataSource.events.indexOf("connect channel" + i);
+                int disconnect = dataSource.events.indexOf("disconnect channel" + i);
+                assertThat(connect, not(equalTo(-1)));
+                assertThat(disconnect, greaterThan(connect));
+            }
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void connectRead2() throws Exception {
+        TestDataSource dataSource = new TestDataSource(1);
+        try {
+            ReadRecipe recipe = recipe(10);
+            dataSource.latch = new CountDownLatch(10);
+            dataSource.connectRead(recipe);
+            assertThat(dataSource.latch.await(5, TimeUnit.SECONDS), equalTo(true));
+            assertThat(dataSource.threads.size(), equalTo(1));
+        } finally {
+            dataSource.close();
+        }
+    }
+
+}
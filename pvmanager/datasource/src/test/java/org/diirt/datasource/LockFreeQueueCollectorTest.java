@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class LockFreeQueueCollectorTest {
+
+    @Test
+    public void readValue1() {
+        LockFreeQueueCollector<Integer> collector = new LockFreeQueueCollector<>(5);
+        assertThat(collector.getMaxSize(), equalTo(5));
+        assertThat(collector.getCapacity(), equalTo(8));
+        assertThat(collector.readValue(), equalTo(Collections.<Integer>emptyList()));
+        collector.writeValue(1);
+        collector.writeValue(2);
+        collector.writeValue(3);
+        assertThat(collector.readValue(), equalTo(Arrays.asList(1, 2, 3)));
+        assertThat(collector.readValue(), equalTo(Collections.<Integer>emptyList()));
+        assertThat(collector.getOverflowCount(), equalTo(0L));
+    }
+
+    @Test
+    public void readValue2() {
+        LockFreeQueueCollector<Integer> collector = new LockFreeQueueCollector<>(3);
+        for (int i = 0; i < 10; i++) {
+            collector.writeValue(i);
+        }
+        assertThat(collector.readValue(), equalTo(Arrays.asList(7, 8, 9)));
+        assertThat(collector.getOverflowCount(), equalTo(7L));
+        collector.writeValue(10);
+        assertThat(collector.readValue(), equalTo(Arrays.asList(10)));
+        assertThat(collector.getOverflowCount(), equalTo(7L));
+    }
+
+    @Test
+    public void readValue3() {
+        // The list of the previous read is still valid after the following one
+        LockFreeQueueCollector<Integer> collector = new LockFreeQueueCollector<>(3);
+        collector.writeValue(1);
+        List<Integer> first = collector.readValue();
+        collector.writeValue(2);
+        List<Integer> second = collector.readValue();
+        assertThat(first, equalTo(Arrays.asList(1)));
+        assertThat(second, equalTo(Arrays.asList(2)));
+    }
+
+    @Test
+    public void drainTo1() {
+        LockFreeQueueCollector<Integer> collector = new LockFreeQueueCollector<>(4);
+        List<Integer> values = new ArrayList<>();
+        collector.writeValue(1);
+        collector.writeValue(2);
+        assertThat(collector.drainTo(values), equalTo(2));
+        collector.writeValue(3);
+        assertThat(collector.drainTo(values), equalTo(1));
+        assertThat(values, equalTo(Arrays.asList(1, 2, 3)));
+    }
+
+    @Test
+    public void setMaxSize1() {
+        LockFreeQueueCollector<Integer> collector = new LockFreeQueueCollector<>(2, 16);
+        collector.setMaxSize(10);
+        for (int i = 0; i < 10; i++) {
+            collector.writeValue(i);
+        }
+        collector.setMaxSize(2);
+        assertThat(collector.readValue(), equalTo(Arrays.asList(8, 9)));
+        assertThat(collector.getOverflowCount(), equalTo(8L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaxSize2() {
+        LockFreeQueueCollector<Integer> collector = new LockFreeQueueCollector<>(5);
+        collector.setMaxSize(9);
+    }
+
+    @Test
+    public void notification() {
+        LockFreeQueueCollector<Integer> collector = new LockFreeQueueCollector<>(5);
+        final AtomicInteger count = new AtomicInteger();
+        collector.setChangeNotification(new Runnable() {
+
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        });
+        collector.writeValue(1);
+        collector.writeValue(2);
+        assertThat(count.get(), equalTo(2));
+    }
+
+    @Test
+    public void concurrentWriters() throws Exception {
+        final LockFreeQueueCollector<Integer> collector = new LockFreeQueueCollector<>(1024);
+        final int nWriters = 4;
+        final int nValues = 100000;
+        final CountDownLatch done = new CountDownLatch(nWriters);
+        for (int n = 0; n < nWriters; n++) {
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < nValues; i++) {
+                        collector.writeValue(i);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        long read = 0;
+        while (done.getCount() != 0) {
+            read += collector.readValue().size();
+        }
+        read += collector.readValue().size();
+        // Every value is either read or counted as overflow
+        assertThat(read + collector.getOverflowCount(), equalTo((long) nWriters * nValues));
+    }
+
+}
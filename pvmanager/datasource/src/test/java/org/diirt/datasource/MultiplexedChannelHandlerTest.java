@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import static org.diirt.util.time.TimeDuration.ofMillis;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class MultiplexedChannelHandlerTest {
+
+    private static class TestChannelHandler extends MultiplexedChannelHandler<Object, Object> {
+
+        private final AtomicInteger typeAdapterLookups = new AtomicInteger();
+
+        public TestChannelHandler(String channelName, boolean snapshotDispatch) {
+            super(channelName);
+            setSnapshotDispatch(snapshotDispatch);
+        }
+
+        @Override
+        protected void connect() {
+            processConnection(new Object());
+        }
+
+        @Override
+        protected void disconnect() {
+        }
+
+        @Override
+        protected void write(Object newValue, ChannelWriteCallback callback) {
+            throw new UnsupportedOperationException("Not supported.");
+        }
+
+        @Override
+        protected DataSourceTypeAdapter<Object, Object> findTypeAdapter(ValueCache<?> cache, Object connection) {
+            typeAdapterLookups.incrementAndGet();
+            return super.findTypeAdapter(cache, connection);
+        }
+
+        public void message(Object payload) {
+            processMessage(payload);
+        }
+
+        public void reconnect() {
+            processConnection(new Object());
+        }
+    }
+
+    private static ChannelHandlerReadSubscription subscription(ValueCache<?> cache) {
+        return new ChannelHandlerReadSubscription(cache, new QueueCollector<Exception>(10), new LatestValueCollector<Boolean>());
+    }
+
+    @Test
+    public void snapshotDispatch1() {
+        TestChannelHandler handler = new TestChannelHandler("test", true);
+        ValueCache<Object> cache1 = new ValueCacheImpl<>(Object.class);
+        ValueCache<Object> cache2 = new ValueCacheImpl<>(Object.class);
+        ChannelHandlerReadSubscription subscription1 = subscription(cache1);
+        ChannelHandlerReadSubscription subscription2 = subscription(cache2);
+        handler.addReader(subscription1);
+        handler.addReader(subscription2);
+        assertThat(handler.isConnected(), equalTo(true));
+
+        handler.message("A");
+        assertThat(cache1.readValue(), equalTo((Object) "A"));
+        assertThat(cache2.readValue(), equalTo((Object) "A"));
+
+        handler.removeReader(subscription2);
+        handler.message("B");
+        assertThat(cache1.readValue(), equalTo((Object) "B"));
+        assertThat(cache2.readValue(), equalTo((Object) "A"));
+
+        // New reader gets the last message
+        ValueCache<Object> cache3 = new ValueCacheImpl<>(Object.class);
+        handler.addReader(subscription(cache3));
+        assertThat(cache3.readValue(), equalTo((Object) "B"));
+    }
+
+    @Test
+    public void lockedDispatch1() {
+        TestChannelHandler handler = new TestChannelHandler("test", false);
+        ValueCache<Object> cache1 = new ValueCacheImpl<>(Object.class);
+        ValueCache<Object> cache2 = new ValueCacheImpl<>(Object.class);
+        handler.addReader(subscription(cache1));
+        handler.addReader(subscription(cache2));
+        handler.message("A");
+        assertThat(cache1.readValue(), equalTo((Object) "A"));
+        assertThat(cache2.readValue(), equalTo((Object) "A"));
+        assertThat(handler.getLastMessagePayload(), equalTo((Object) "A"));
+    }
+
+    @Test
+    public void sharedConversion1() {
+        final AtomicInteger conversions = new AtomicInteger();
+        final DataSourceTypeAdapter<Object, Object> adapter = new DataSourceTypeAdapter<Object, Object>() {
+
+            @Override
+            public int match(ValueCache<?> cache, Object connection) {
+                return 1;
+            }
+
+            @Override
+            public Object getSubscriptionParameter(ValueCache<?> cache, Object connection) {
+                return null;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean updateCache(ValueCache<?> cache, Object connection, Object message) {
+                conversions.incrementAndGet();
+                // Creates a new instance at every conversion
+                ((ValueCache<Object>) cache).writeValue(new StringBuilder().append(message).toString());
+                return true;
+            }
+        };
+        TestChannelHandler handler = new TestChannelHandler("test", true) {
+
+            @Override
+            protected DataSourceTypeAdapter<Object, Object> findTypeAdapter(ValueCache<?> cache, Object connection) {
+                return adapter;
+            }
+        };
+        ValueCache<Object> cache1 = new ValueCacheImpl<>(Object.class);
+        ValueCache<Object> cache2 = new ValueCacheImpl<>(Object.class);
+        ValueCache<String> cache3 = new ValueCacheImpl<>(String.class);
+        handler.addReader(subscription(cache1));
+        handler.addReader(subscription(cache2));
+        handler.addReader(subscription(cache3));
+        conversions.set(0);
+
+        // Converted once per cache type, and the same instance is shared
+        handler.message("A");
+        assertThat(conversions.get(), equalTo(2));
+        assertThat(cache1.readValue(), equalTo((Object) "A"));
+        assertThat(cache2.readValue(), sameInstance(cache1.readValue()));
+        assertThat(cache3.readValue(), equalTo("A"));
+    }
+
+    @Test
+    public void sharedConversionPipeline1() throws Exception {
+        final AtomicInteger conversions = new AtomicInteger();
+        final DataSourceTypeAdapter<Object, Object> adapter = new DataSourceTypeAdapter<Object, Object>() {
+
+            @Override
+            public int match(ValueCache<?> cache, Object connection) {
+                return 1;
+            }
+
+            @Override
+            public Object getSubscriptionParameter(ValueCache<?> cache, Object connection) {
+                return null;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean updateCache(ValueCache<?> cache, Object connection, Object message) {
+                conversions.incrementAndGet();
+                ((ValueCache<Object>) cache).writeValue(new StringBuilder().append(message).toString());
+                return true;
+            }
+        };
+        final TestChannelHandler handler = new TestChannelHandler("test", true) {
+
+            @Override
+            protected DataSourceTypeAdapter<Object, Object> findTypeAdapter(ValueCache<?> cache, Object connection) {
+                return adapter;
+            }
+        };
+        DataSource dataSource = new DataSource(false) {
+
+            @Override
+            protected ChannelHandler createChannel(String channelName) {
+                return handler;
+            }
+        };
+        final CountDownLatch connections = new CountDownLatch(2);
+        final CountDownLatch values = new CountDownLatch(2);
+        PVReaderListener<Object> listener = new PVReaderListener<Object>() {
+
+            @Override
+            public void pvChanged(PVReaderEvent<Object> event) {
+                if (event.isConnectionChanged() && event.getPvReader().isConnected()) {
+                    connections.countDown();
+                }
+                if (event.isValueChanged()) {
+                    values.countDown();
+                }
+            }
+        };
+        PVReader<Object> pv1 = null;
+        PVReader<Object> pv2 = null;
+        try {
+            // Real readers subscribe with a ForwardCache
+            pv1 = PVManager.read(channel("test")).from(dataSource)
+                    .readListener(listener).maxRate(ofMillis(10));
+            pv2 = PVManager.read(channel("test")).from(dataSource)
+                    .readListener(listener).maxRate(ofMillis(10));
+            assertThat(connections.await(5, TimeUnit.SECONDS), equalTo(true));
+            conversions.set(0);
+
+            handler.message("A");
+            assertThat(values.await(5, TimeUnit.SECONDS), equalTo(true));
+            assertThat(conversions.get(), equalTo(1));
+            assertThat(pv1.getValue(), equalTo((Object) "A"));
+            assertThat(pv2.getValue(), sameInstance(pv1.getValue()));
+        } finally {
+            if (pv1 != null) {
+                pv1.close();
+            }
+            if (pv2 != null) {
+                pv2.close();
+            }
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void typeAdapterLookup1() {
+        TestChannelHandler handler = new TestChannelHandler("test", true);
+        for (int i = 0; i < 5; i++) {
+            handler.addReader(subscription(new ValueCacheImpl<>(Object.class)));
+        }
+        handler.addReader(subscription(new ValueCacheImpl<>(String.class)));
+        handler.typeAdapterLookups.set(0);
+
+        // On reconnection, the adapter is looked up once per cache type
+        handler.reconnect();
+        assertThat(handler.typeAdapterLookups.get(), equalTo(2));
+    }
+
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.diirt.util.time.TimeDuration;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class ScanTimerWheelTest {
+
+    private static class CountingTask implements Runnable {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void run() {
+            count.incrementAndGet();
+        }
+
+        public int getCount() {
+            return count.get();
+        }
+    }
+
+    @Test
+    public void schedule1() throws Exception {
+        ScanTimerWheel timerWheel = new ScanTimerWheel(PVManager.getReadScannerExecutorService());
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        final AtomicInteger elapsedMs = new AtomicInteger();
+        timerWheel.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                elapsedMs.set((int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                latch.countDown();
+            }
+        }, TimeDuration.ofMillis(50));
+        assertThat(latch.await(1, TimeUnit.SECONDS), equalTo(true));
+        assertThat(elapsedMs.get(), greaterThanOrEqualTo(45));
+    }
+
+    @Test
+    public void schedule2() throws Exception {
+        // Delays longer than a full rotation of the wheel
+        ScanTimerWheel timerWheel = new ScanTimerWheel(PVManager.getReadScannerExecutorService(), TimeDuration.ofMillis(1), 16, 4);
+        CountingTask task = new CountingTask();
+        timerWheel.schedule(task, TimeDuration.ofMillis(100));
+        Thread.sleep(60);
+        assertThat(task.getCount(), equalTo(0));
+        Thread.sleep(150);
+        assertThat(task.getCount(), equalTo(1));
+    }
+
+    @Test
+    public void taskExecutor1() throws Exception {
+        // Tasks run on the task executor, not on the ticking one
+        ExecutorService taskExecutor = Executors.newSingleThreadExecutor(org.diirt.util.concurrent.Executors.namedPool("Wheel Test "));
+        try {
+            ScanTimerWheel timerWheel = new ScanTimerWheel(PVManager.getReadScannerExecutorService(), taskExecutor);
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicReference<String> threadName = new AtomicReference<>();
+            timerWheel.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    threadName.set(Thread.currentThread().getName());
+                    latch.countDown();
+                }
+            }, TimeDuration.ofMillis(10));
+            assertThat(latch.await(1, TimeUnit.SECONDS), equalTo(true));
+            assertThat(threadName.get(), startsWith("Wheel Test "));
+        } finally {
+            taskExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancel1() throws Exception {
+        ScanTimerWheel timerWheel = new ScanTimerWheel(PVManager.getReadScannerExecutorService());
+        CountingTask task = new CountingTask();
+        ScanTimerWheel.Registration registration = timerWheel.schedule(task, TimeDuration.ofMillis(50));
+        registration.cancel();
+        Thread.sleep(150);
+        assertThat(task.getCount(), equalTo(0));
+    }
+
+    @Test
+    public void scheduleAtFixedRate1() throws Exception {
+        ScanTimerWheel timerWheel = new ScanTimerWheel(PVManager.getReadScannerExecutorService(), TimeDuration.ofMillis(1), 64, 2);
+        CountingTask[] tasks = new CountingTask[10];
+        ScanTimerWheel.Registration[] registrations = new ScanTimerWheel.Registration[tasks.length];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new CountingTask();
+            registrations[i] = timerWheel.scheduleAtFixedRate(tasks[i], TimeDuration.ofHertz(20));
+        }
+        // All the tasks with the same rate are in the same group
+        assertThat(timerWheel.getGroupCount(), equalTo(1));
+        Thread.sleep(520);
+        for (int i = 0; i < tasks.length; i++) {
+            registrations[i].cancel();
+        }
+        assertThat(timerWheel.getGroupCount(), equalTo(0));
+        for (CountingTask task : tasks) {
+            assertThat(task.getCount(), greaterThanOrEqualTo(9));
+            assertThat(task.getCount(), lessThanOrEqualTo(11));
+        }
+        int count = tasks[0].getCount();
+        Thread.sleep(150);
+        assertThat(tasks[0].getCount(), equalTo(count));
+    }
+
+    @Test
+    public void scheduleAtFixedRate2() throws Exception {
+        ScanTimerWheel timerWheel = new ScanTimerWheel(PVManager.getReadScannerExecutorService());
+        CountingTask task1 = new CountingTask();
+        CountingTask task2 = new CountingTask();
+        ScanTimerWheel.Registration registration1 = timerWheel.scheduleAtFixedRate(task1, TimeDuration.ofHertz(10));
+        ScanTimerWheel.Registration registration2 = timerWheel.scheduleAtFixedRate(task2, TimeDuration.ofHertz(50));
+        assertThat(timerWheel.getGroupCount(), equalTo(2));
+        Thread.sleep(510);
+        registration1.cancel();
+        registration2.cancel();
+        assertThat(task1.getCount(), greaterThanOrEqualTo(4));
+        assertThat(task1.getCount(), lessThanOrEqualTo(6));
+        assertThat(task2.getCount(), greaterThanOrEqualTo(23));
+        assertThat(task2.getCount(), lessThanOrEqualTo(26));
+    }
+
+}
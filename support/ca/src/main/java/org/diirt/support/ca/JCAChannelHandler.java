@@ -63,6 +63,9 @@ class JCAChannelHandler extends MultiplexedChannelHandler<JCAConnectionPayload,
     private volatile boolean sentReadOnlyException = false;
     private final boolean putCallback;
     private final boolean longString;
+    // Serializes the monitor events: the handler itself, unless the
+    // events are dispatched on a snapshot
+    private final Object messageLock;
     
     // For the AccessChaneListener we need to guard it differently
     private final AtomicBoolean needsAccessChangeListener = new AtomicBoolean(false);
@@ -76,6 +79,12 @@ class JCAChannelHandler extends MultiplexedChannelHandler<JCAConnectionPayload,
         super(channelName);
         setProcessMessageOnReconnect(false);
         this.jcaDataSource = jcaDataSource;
+        if (jcaDataSource.isSnapshotDispatch()) {
+            setSnapshotDispatch(true);
+            messageLock = new Object();
+        } else {
+            messageLock = this;
+        }
         
         boolean longStringName = longStringPattern.matcher(channelName).matches();
         
@@ -337,7 +346,7 @@ class JCAChannelHandler extends MultiplexedChannelHandler<JCAConnectionPayload,
 
                 @Override
                 public void getCompleted(GetEvent ev) {
-                    synchronized(JCAChannelHandler.this) {
+                    synchronized(messageLock) {
                         if (log.isLoggable(Level.FINEST)) {
                             log.log(Level.FINEST, "JCA metadata getCompleted for channel {0} event {1}", new Object[] {getChannelName(), ev});
                         }
@@ -514,7 +523,7 @@ class JCAChannelHandler extends MultiplexedChannelHandler<JCAConnectionPayload,
 
         @Override
         public void monitorChanged(MonitorEvent event) {
-            synchronized(JCAChannelHandler.this) {
+            synchronized(messageLock) {
                 if (log.isLoggable(Level.FINEST)) {
                     log.log(Level.FINEST, "JCA value monitorChanged for channel {0} value {1}, event {2}", new Object[] {getChannelName(), toStringDBR(event.getDBR()), event});
                 }
@@ -532,7 +541,7 @@ class JCAChannelHandler extends MultiplexedChannelHandler<JCAConnectionPayload,
 
         @Override
         public void monitorChanged(MonitorEvent ev) {
-            synchronized(JCAChannelHandler.this) {
+            synchronized(messageLock) {
                 if (log.isLoggable(Level.FINEST)) {
                     log.log(Level.FINEST, "JCA metadata monitorChanged for channel {0} event {1}", new Object[] {getChannelName(), ev});
                 }
@@ -41,6 +41,7 @@ public class JCADataSource extends DataSource {
     private final JCATypeSupport typeSupport;
     private final boolean rtypValueOnly;
     private final boolean honorZeroPrecision;
+    private final boolean snapshotDispatch;
     
     /**
      * Creates a new data source using the parameters given in the configuration.
@@ -48,7 +49,7 @@ public class JCADataSource extends DataSource {
      * @param configuration the configuration of the new data source
      */
     JCADataSource(JCADataSourceConfiguration configuration) {
-        super(true);
+        super(true, configuration == null ? 1 : configuration.workerThreads);
         // Retrive data source properties
         
         if (configuration == null) {
@@ -83,6 +84,7 @@ public class JCADataSource extends DataSource {
         dbePropertySupported = configuration.dbePropertySupported;
         rtypValueOnly = configuration.rtypValueOnly;
         honorZeroPrecision = configuration.honorZeroPrecision;
+        snapshotDispatch = configuration.snapshotDispatch;
         
         if (useContextSwitchForAccessRightCallback()) {
             contextSwitch = Executors.newSingleThreadExecutor(namedPool("PVMgr JCA Workaround "));
@@ -162,6 +164,16 @@ public class JCADataSource extends DataSource {
         return honorZeroPrecision;
     }
     
+    /**
+     * True if the monitor events are delivered without holding the lock
+     * of the channel.
+     * 
+     * @return true if using snapshot dispatch
+     */
+    public boolean isSnapshotDispatch() {
+        return snapshotDispatch;
+    }
+    
     final boolean useContextSwitchForAccessRightCallback() {
         if (ctxt instanceof JNIContext) {
             return true;
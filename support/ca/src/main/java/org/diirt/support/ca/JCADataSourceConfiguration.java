@@ -50,6 +50,8 @@ public final class JCADataSourceConfiguration extends DataSourceConfiguration<JC
     Boolean varArraySupported;
     boolean rtypValueOnly = false;
     boolean honorZeroPrecision = true;
+    int workerThreads = 1;
+    boolean snapshotDispatch = false;
     String jcaContextClass = null;
     
     Map<String, String> jcaContextProperties = new HashMap<>();
@@ -133,6 +135,22 @@ public final class JCADataSourceConfiguration extends DataSourceConfiguration<JC
                 }
             }
             
+            String workerThreads = xPath.evaluate("/ca/dataSourceOptions/@workerThreads", document);
+            if (workerThreads != null && !workerThreads.isEmpty()) {
+                workerThreads(Integer.parseInt(workerThreads));
+            }
+            
+            String snapshotDispatch = xPath.evaluate("/ca/dataSourceOptions/@snapshotDispatch", document);
+            if (snapshotDispatch != null && !snapshotDispatch.isEmpty()) {
+                switch (snapshotDispatch.toUpperCase()) {
+                    case "TRUE":
+                        snapshotDispatch(true);
+                        break;
+                    default:
+                        snapshotDispatch(false);
+                }
+            }
+            
             String pureJava = xPath.evaluate("/ca/jcaContext/@pureJava", document);
             if (pureJava != null && !pureJava.isEmpty()) {
                 switch (pureJava.toUpperCase()) {
@@ -189,7 +207,7 @@ public final class JCADataSourceConfiguration extends DataSourceConfiguration<JC
      * @return this
      */
     public JCADataSourceConfiguration jcaContext(Context jcaContext) {
-        if (jcaContext != null || jcaContextClass != null) {
+        if (this.jcaContext != null || jcaContextClass != null) {
             throw new IllegalStateException("You should call once either jcaContextClass or jcaContext.");
         }
         this.jcaContext = jcaContext;
@@ -285,6 +303,43 @@ public final class JCADataSourceConfiguration extends DataSourceConfiguration<JC
         return this;
     }
 
+    /**
+     * The number of threads used to connect, disconnect and write channels.
+     * Operations on the same channel are always executed by the same
+     * thread, while different channels may be processed in parallel. This
+     * may speed up the startup of clients that open many channels.
+     * <p>
+     * Default is 1.
+     * 
+     * @param workerThreads the number of worker threads; must be positive
+     * @return this
+     */
+    public JCADataSourceConfiguration workerThreads(int workerThreads) {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("workerThreads must be positive (was " + workerThreads + ")");
+        }
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    /**
+     * If true, the monitor events of a channel are serialized by a lock of
+     * their own, and are delivered to the readers without holding the lock
+     * of the channel. A slow type conversion then no longer blocks readers
+     * being added or removed on the same channel, and vice-versa. A reader
+     * added while an event is being delivered may receive the previous
+     * value after the current one.
+     * <p>
+     * Default is false.
+     * 
+     * @param snapshotDispatch true will enable
+     * @return this
+     */
+    public JCADataSourceConfiguration snapshotDispatch(boolean snapshotDispatch) {
+        this.snapshotDispatch = snapshotDispatch;
+        return this;
+    }
+
     /**
      * Adds a new property that is passed directly to the JCALibrary when
      * creating the context.
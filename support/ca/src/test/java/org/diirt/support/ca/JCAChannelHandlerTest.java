@@ -4,13 +4,34 @@
  */
 package org.diirt.support.ca;
 
+import gov.aps.jca.CAStatus;
+import gov.aps.jca.Channel;
+import gov.aps.jca.Context;
+import gov.aps.jca.Monitor;
+import gov.aps.jca.dbr.DBRType;
+import gov.aps.jca.dbr.Severity;
+import gov.aps.jca.dbr.Status;
+import gov.aps.jca.event.ConnectionEvent;
+import gov.aps.jca.event.ConnectionListener;
+import gov.aps.jca.event.MonitorEvent;
+import gov.aps.jca.event.MonitorListener;
+import org.diirt.datasource.ConnectionCollector;
+import org.diirt.datasource.QueueCollector;
+import org.diirt.datasource.ReadRecipe;
+import org.diirt.datasource.ReadRecipeBuilder;
+import org.diirt.datasource.ValueCacheImpl;
 import org.diirt.support.ca.JCAChannelHandler;
 import org.diirt.support.ca.JCADataSource;
+import org.diirt.util.time.Timestamp;
+import org.diirt.vtype.VString;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
 import org.junit.Before;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
 /**
@@ -129,4 +150,45 @@ public class JCAChannelHandlerTest {
         String result = JCAChannelHandler.toString(test);
         assertThat(result, equalTo("abcd"));
     }
+    
+    @Test
+    public void snapshotDispatch1() throws Exception {
+        // Monitor events are delivered through the data source and the channel handler
+        Context context = mock(Context.class);
+        Channel channel = mock(Channel.class);
+        when(context.createChannel(eq("test"), Mockito.any(ConnectionListener.class), anyShort())).thenReturn(channel);
+        when(channel.getName()).thenReturn("test");
+        when(channel.getFieldType()).thenReturn(DBRType.STRING);
+        when(channel.getElementCount()).thenReturn(1);
+        when(channel.getConnectionState()).thenReturn(Channel.ConnectionState.CONNECTED);
+        when(channel.getWriteAccess()).thenReturn(true);
+        when(channel.getContext()).thenReturn(context);
+        when(channel.addMonitor(Mockito.any(DBRType.class), anyInt(), anyInt(), Mockito.any(MonitorListener.class))).thenReturn(mock(Monitor.class));
+        JCADataSource jca = new JCADataSourceConfiguration().jcaContext(context)
+                .varArraySupported(false).snapshotDispatch(true).create();
+        assertThat(jca.isSnapshotDispatch(), equalTo(true));
+        
+        ValueCacheImpl<VString> cache = new ValueCacheImpl<>(VString.class);
+        ReadRecipe recipe = new ReadRecipeBuilder().addChannel("test", cache)
+                .build(new QueueCollector<Exception>(10), new ConnectionCollector());
+        try {
+            jca.connectRead(recipe);
+            ArgumentCaptor<ConnectionListener> connectionListener = ArgumentCaptor.forClass(ConnectionListener.class);
+            verify(context, timeout(1000)).createChannel(eq("test"), connectionListener.capture(), anyShort());
+            connectionListener.getValue().connectionChanged(new ConnectionEvent(channel, true));
+            ArgumentCaptor<MonitorListener> monitorListener = ArgumentCaptor.forClass(MonitorListener.class);
+            verify(channel).addMonitor(Mockito.any(DBRType.class), eq(1), anyInt(), monitorListener.capture());
+            
+            Timestamp timestamp = Timestamp.of(1234567, 1234);
+            monitorListener.getValue().monitorChanged(new MonitorEvent(channel,
+                    JCAVTypeAdapterSetTest.createDBRTimeString(new String[]{"A"}, Severity.NO_ALARM, Status.NO_ALARM, timestamp), CAStatus.NORMAL));
+            assertThat(cache.readValue().getValue(), equalTo("A"));
+            assertThat(cache.readValue().getTimestamp(), equalTo(timestamp));
+            monitorListener.getValue().monitorChanged(new MonitorEvent(channel,
+                    JCAVTypeAdapterSetTest.createDBRTimeString(new String[]{"B"}, Severity.NO_ALARM, Status.NO_ALARM, timestamp), CAStatus.NORMAL));
+            assertThat(cache.readValue().getValue(), equalTo("B"));
+        } finally {
+            jca.close();
+        }
+    }
 }
@@ -12,6 +12,7 @@ import gov.aps.jca.jni.JNIContext;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
 
 /**
  *
@@ -27,6 +28,8 @@ public class JCADataSourceConfigurationTest {
         assertThat(conf.honorZeroPrecision, equalTo(true));
         assertThat(conf.rtypValueOnly, equalTo(false));
         assertThat(conf.varArraySupported, nullValue());
+        assertThat(conf.workerThreads, equalTo(1));
+        assertThat(conf.snapshotDispatch, equalTo(false));
         assertThat(conf.jcaContextClass, nullValue());
         assertThat(conf.jcaContextProperties.isEmpty(), equalTo(true));
         
@@ -51,6 +54,8 @@ public class JCADataSourceConfigurationTest {
         assertThat(conf.honorZeroPrecision, equalTo(false));
         assertThat(conf.rtypValueOnly, equalTo(true));
         assertThat(conf.varArraySupported, equalTo(false));
+        assertThat(conf.workerThreads, equalTo(4));
+        assertThat(conf.snapshotDispatch, equalTo(true));
         assertThat(conf.jcaContextClass, equalTo(JCALibrary.CHANNEL_ACCESS_JAVA));
         assertThat(conf.jcaContextProperties.size(), equalTo(7));
         assertThat(conf.jcaContextProperties, hasEntry("addr_list", "192.168.1.0"));
@@ -164,4 +169,21 @@ public class JCADataSourceConfigurationTest {
         context.dispose();
     }
     
+    @Test
+    public void jcaContext1() {
+        Context jcaContext = mock(Context.class);
+        JCADataSourceConfiguration conf = new JCADataSourceConfiguration().jcaContext(jcaContext);
+        assertThat(conf.createContext(), sameInstance(jcaContext));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void jcaContext2() {
+        new JCADataSourceConfiguration().jcaContext(mock(Context.class)).jcaContext(mock(Context.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void jcaContext3() {
+        new JCADataSourceConfiguration().jcaContextClass(JCALibrary.CHANNEL_ACCESS_JAVA).jcaContext(mock(Context.class));
+    }
+    
 }
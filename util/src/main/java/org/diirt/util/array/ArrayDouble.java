@@ -86,6 +86,15 @@ public final class ArrayDouble extends ListDouble implements Serializable {
         return super.equals(obj);
     }
     
+    /**
+     * Whether the wrapper prevents writes to the array.
+     * 
+     * @return true if the list is read-only
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+    
     double[] wrappedArray() {
         return array;
     }
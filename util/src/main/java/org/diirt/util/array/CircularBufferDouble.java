@@ -19,6 +19,7 @@ public class CircularBufferDouble extends ListDouble {
     private int endOffset;
     private final int maxCapacity;
     private boolean reachedMax;
+    private long addedCount;
 
     /**
      * Creates a new circular buffer with the given maximum capacity.
@@ -98,6 +99,7 @@ public class CircularBufferDouble extends ListDouble {
             startOffset++;
         if (startOffset == data.length)
             startOffset = 0;
+        addedCount++;
     }
     
     /**
@@ -108,6 +110,17 @@ public class CircularBufferDouble extends ListDouble {
         endOffset = 0;
     }
 
+    /**
+     * The number of values added since the buffer was created, including
+     * the ones that were overwritten or cleared. The values currently in
+     * the buffer are the last {@link #size()} added.
+     * 
+     * @return the number of values added
+     */
+    public long getAddedCount() {
+        return addedCount;
+    }
+
     /**
      * The maximum capacity for this circular buffer.
      * 
@@ -0,0 +1,336 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.util.array;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fast Fourier transform on primitive arrays.
+ * <p>
+ * Sizes that are a power of two use an iterative radix-2 transform; other
+ * sizes are reduced to a power of two transform with the Bluestein (chirp-z)
+ * algorithm, so that all sizes are computed in O(n log n). Twiddle factors
+ * and permutations are computed once per size and shared between threads.
+ * <p>
+ * The forward transform is X[k] = sum x[j] exp(-2 pi i j k / n), without
+ * normalization.
+ *
+ * @author carcassi
+ */
+public class FourierTransform {
+
+    private FourierTransform() {
+    }
+
+    /**
+     * The window functions that can be applied to the data before the transform.
+     */
+    public enum Window {
+
+        /**
+         * No window: all values are multiplied by 1.
+         */
+        RECTANGULAR,
+
+        /**
+         * Hann window: 0.5 - 0.5 cos(2 pi j / (n - 1)).
+         */
+        HANN,
+
+        /**
+         * Hamming window: 0.54 - 0.46 cos(2 pi j / (n - 1)).
+         */
+        HAMMING,
+
+        /**
+         * Blackman window: 0.42 - 0.5 cos(2 pi j / (n - 1)) + 0.08 cos(4 pi j / (n - 1)).
+         */
+        BLACKMAN;
+
+        /**
+         * Multiplies the values by the window, in place.
+         *
+         * @param values the values to modify
+         */
+        public void applyTo(double[] values) {
+            int n = values.length;
+            if (this == RECTANGULAR || n < 2) {
+                return;
+            }
+            for (int j = 0; j < n; j++) {
+                double arg = 2.0 * Math.PI * j / (n - 1);
+                double factor;
+                switch (this) {
+                    case HANN:
+                        factor = 0.5 - 0.5 * Math.cos(arg);
+                        break;
+                    case HAMMING:
+                        factor = 0.54 - 0.46 * Math.cos(arg);
+                        break;
+                    default:
+                        factor = 0.42 - 0.5 * Math.cos(arg) + 0.08 * Math.cos(2 * arg);
+                }
+                values[j] *= factor;
+            }
+        }
+    }
+
+    /**
+     * Twiddle factors and permutation for one size.
+     */
+    private static class Plan {
+
+        private final int size;
+        // cos and sin of 2 pi k / size, for k in [0, size / 2]
+        private final double[] cos;
+        private final double[] sin;
+        // Power of two: bit reversal permutation
+        private final int[] reversed;
+        // Other sizes: chirp exp(-pi i k^2 / size) and transform of its conjugate
+        private final double[] chirpRe;
+        private final double[] chirpIm;
+        private final double[] filterRe;
+        private final double[] filterIm;
+        private final Plan convolution;
+
+        private Plan(int size) {
+            this.size = size;
+            int half = size / 2;
+            cos = new double[half + 1];
+            sin = new double[half + 1];
+            for (int k = 0; k <= half; k++) {
+                double arg = 2.0 * Math.PI * k / size;
+                cos[k] = Math.cos(arg);
+                sin[k] = Math.sin(arg);
+            }
+            if (isPowerOfTwo(size)) {
+                int bits = Integer.numberOfTrailingZeros(size);
+                reversed = new int[size];
+                for (int i = 0; i < size; i++) {
+                    reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+                }
+                chirpRe = chirpIm = filterRe = filterIm = null;
+                convolution = null;
+            } else {
+                reversed = null;
+                convolution = plan(Integer.highestOneBit(2 * size - 1) << 1);
+                int m = convolution.size;
+                chirpRe = new double[size];
+                chirpIm = new double[size];
+                filterRe = new double[m];
+                filterIm = new double[m];
+                for (int k = 0; k < size; k++) {
+                    // k^2 modulo 2 size keeps the argument small
+                    long square = ((long) k * k) % (2L * size);
+                    double arg = Math.PI * square / size;
+                    chirpRe[k] = Math.cos(arg);
+                    chirpIm[k] = -Math.sin(arg);
+                    filterRe[k] = chirpRe[k];
+                    filterIm[k] = -chirpIm[k];
+                    if (k != 0) {
+                        filterRe[m - k] = chirpRe[k];
+                        filterIm[m - k] = -chirpIm[k];
+                    }
+                }
+                convolution.transform(filterRe, filterIm);
+            }
+        }
+
+        private void transform(double[] re, double[] im) {
+            if (reversed != null) {
+                radix2(re, im);
+            } else {
+                bluestein(re, im);
+            }
+        }
+
+        private void radix2(double[] re, double[] im) {
+            for (int i = 0; i < size; i++) {
+                int j = reversed[i];
+                if (i < j) {
+                    double tmp = re[i];
+                    re[i] = re[j];
+                    re[j] = tmp;
+                    tmp = im[i];
+                    im[i] = im[j];
+                    im[j] = tmp;
+                }
+            }
+            for (int length = 2; length <= size; length <<= 1) {
+                int half = length >> 1;
+                int step = size / length;
+                for (int start = 0; start < size; start += length) {
+                    for (int k = 0; k < half; k++) {
+                        double wr = cos[k * step];
+                        double wi = -sin[k * step];
+                        int a = start + k;
+                        int b = a + half;
+                        double tr = re[b] * wr - im[b] * wi;
+                        double ti = re[b] * wi + im[b] * wr;
+                        re[b] = re[a] - tr;
+                        im[b] = im[a] - ti;
+                        re[a] += tr;
+                        im[a] += ti;
+                    }
+                }
+            }
+        }
+
+        private void bluestein(double[] re, double[] im) {
+            int m = convolution.size;
+            double[] aRe = new double[m];
+            double[] aIm = new double[m];
+            for (int k = 0; k < size; k++) {
+                aRe[k] = re[k] * chirpRe[k] - im[k] * chirpIm[k];
+                aIm[k] = re[k] * chirpIm[k] + im[k] * chirpRe[k];
+            }
+            convolution.transform(aRe, aIm);
+            // Multiply by the filter and transform back with the conjugate trick
+            for (int k = 0; k < m; k++) {
+                double r = aRe[k] * filterRe[k] - aIm[k] * filterIm[k];
+                double i = aRe[k] * filterIm[k] + aIm[k] * filterRe[k];
+                aRe[k] = r;
+                aIm[k] = -i;
+            }
+            convolution.transform(aRe, aIm);
+            for (int k = 0; k < size; k++) {
+                double r = aRe[k] / m;
+                double i = -aIm[k] / m;
+                re[k] = r * chirpRe[k] - i * chirpIm[k];
+                im[k] = r * chirpIm[k] + i * chirpRe[k];
+            }
+        }
+    }
+
+    private static final int MAX_CACHED_PLANS = 64;
+    private static final Map<Integer, Plan> plans = new ConcurrentHashMap<>();
+
+    private static Plan plan(int size) {
+        Plan plan = plans.get(size);
+        if (plan == null) {
+            plan = new Plan(size);
+            if (plans.size() >= MAX_CACHED_PLANS) {
+                plans.clear();
+            }
+            plans.put(size, plan);
+        }
+        return plan;
+    }
+
+    private static boolean isPowerOfTwo(int size) {
+        return (size & (size - 1)) == 0;
+    }
+
+    /**
+     * Computes the forward transform in place.
+     *
+     * @param re the real part; replaced by the real part of the transform
+     * @param im the imaginary part; replaced by the imaginary part of the transform
+     */
+    public static void transform(double[] re, double[] im) {
+        if (re.length != im.length) {
+            throw new IllegalArgumentException("Real and imaginary part must be of the same length");
+        }
+        if (re.length > 1) {
+            plan(re.length).transform(re, im);
+        }
+    }
+
+    /**
+     * Computes the inverse transform in place, including the 1/n
+     * normalization.
+     *
+     * @param re the real part; replaced by the real part of the inverse
+     * @param im the imaginary part; replaced by the imaginary part of the inverse
+     */
+    public static void inverseTransform(double[] re, double[] im) {
+        int n = re.length;
+        for (int k = 0; k < n; k++) {
+            im[k] = -im[k];
+        }
+        transform(re, im);
+        for (int k = 0; k < n; k++) {
+            re[k] = re[k] / n;
+            im[k] = -im[k] / n;
+        }
+    }
+
+    /**
+     * Computes the first half of the transform of real values, from index 0
+     * to n/2 included. The other half is the complex conjugate of the first
+     * one (X[n - k] = conj(X[k])).
+     * <p>
+     * For an even number of values, the values are transformed as a complex
+     * array of half the size.
+     *
+     * @param values the real values; not modified
+     * @param re the real part of the result; at least n/2 + 1 long
+     * @param im the imaginary part of the result; at least n/2 + 1 long
+     */
+    public static void realTransform(double[] values, double[] re, double[] im) {
+        int n = values.length;
+        int half = n / 2;
+        if (n < 2 || n % 2 != 0) {
+            double[] fullRe = values.clone();
+            double[] fullIm = new double[n];
+            transform(fullRe, fullIm);
+            System.arraycopy(fullRe, 0, re, 0, Math.min(n, half + 1));
+            System.arraycopy(fullIm, 0, im, 0, Math.min(n, half + 1));
+            return;
+        }
+
+        // Even and odd values as real and imaginary part
+        double[] zRe = new double[half];
+        double[] zIm = new double[half];
+        for (int j = 0; j < half; j++) {
+            zRe[j] = values[2 * j];
+            zIm[j] = values[2 * j + 1];
+        }
+        transform(zRe, zIm);
+
+        // X[k] = E[k] + exp(-2 pi i k / n) O[k], where
+        // E[k] = (Z[k] + conj(Z[half - k])) / 2 and O[k] = (Z[k] - conj(Z[half - k])) / 2i
+        Plan plan = plan(n);
+        for (int k = 0; k <= half; k++) {
+            int k1 = k == half ? 0 : k;
+            int k2 = k == 0 ? 0 : half - k;
+            double eRe = (zRe[k1] + zRe[k2]) / 2;
+            double eIm = (zIm[k1] - zIm[k2]) / 2;
+            double oRe = (zIm[k1] + zIm[k2]) / 2;
+            double oIm = -(zRe[k1] - zRe[k2]) / 2;
+            double wr = plan.cos[k];
+            double wi = -plan.sin[k];
+            re[k] = eRe + oRe * wr - oIm * wi;
+            im[k] = eIm + oRe * wi + oIm * wr;
+        }
+    }
+
+    /**
+     * Computes the power spectrum of real values: |X[k]|^2 / n^2 for k from
+     * 0 to n/2 included.
+     *
+     * @param values the real values; not modified
+     * @param window the window applied to a copy of the values before the transform
+     * @return the power of each frequency
+     */
+    public static double[] powerSpectrum(double[] values, Window window) {
+        int n = values.length;
+        if (n == 0) {
+            return new double[0];
+        }
+        double[] windowed = values.clone();
+        window.applyTo(windowed);
+        double[] re = new double[n / 2 + 1];
+        double[] im = new double[n / 2 + 1];
+        realTransform(windowed, re, im);
+        double norm = (double) n * n;
+        double[] power = new double[n / 2 + 1];
+        for (int k = 0; k < power.length; k++) {
+            power[k] = (re[k] * re[k] + im[k] * im[k]) / norm;
+        }
+        return power;
+    }
+}
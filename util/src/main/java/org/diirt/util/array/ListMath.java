@@ -100,16 +100,18 @@ public class ListMath {
     public static ListDouble rescale(final ListNumber data, final double factor, final double offset) {
         if (factor == 1.0)
             return add(data, offset);
-        return new ListDouble() {
+        return new UnaryOperation(data) {
 
             @Override
-            public double getDouble(int index) {
-                return factor * data.getDouble(index) + offset;
+            double apply(double value) {
+                return factor * value + offset;
             }
 
             @Override
-            public int size() {
-                return data.size();
+            void applyTo(double[] values) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = factor * values[i] + offset;
+                }
             }
         };
     }
@@ -123,16 +125,18 @@ public class ListMath {
      * @return result[x] = numerator / data[x] + offset
      */
     public static ListDouble inverseRescale(final ListNumber data, final double numerator, final double offset) {
-        return new ListDouble() {
+        return new UnaryOperation(data) {
 
             @Override
-            public double getDouble(int index) {
-                return numerator / data.getDouble(index) + offset;
+            double apply(double value) {
+                return numerator / value + offset;
             }
 
             @Override
-            public int size() {
-                return data.size();
+            void applyTo(double[] values) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = numerator / values[i] + offset;
+                }
             }
         };
     }
@@ -145,16 +149,18 @@ public class ListMath {
      * @return result[x] = data[x] ** expon
      */
     public static ListDouble pow(final ListNumber data, final double expon) {
-        return new ListDouble() {
+        return new UnaryOperation(data) {
 
             @Override
-            public double getDouble(int index) {
-                return Math.pow(data.getDouble(index), expon);
+            double apply(double value) {
+                return Math.pow(value, expon);
             }
 
             @Override
-            public int size() {
-                return data.size();
+            void applyTo(double[] values) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = Math.pow(values[i], expon);
+                }
             }
         };
     }
@@ -167,16 +173,18 @@ public class ListMath {
      * @return result[x] = base ** expons[x]
      */
     public static ListDouble pow(final double base, final ListNumber expons) {
-        return new ListDouble() {
+        return new UnaryOperation(expons) {
 
             @Override
-            public double getDouble(int index) {
-                return Math.pow(base, expons.getDouble(index));
+            double apply(double value) {
+                return Math.pow(base, value);
             }
 
             @Override
-            public int size() {
-                return expons.size();
+            void applyTo(double[] values) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = Math.pow(base, values[i]);
+                }
             }
         };
     }
@@ -189,16 +197,18 @@ public class ListMath {
      * @return result[x] = data[x] + offset
      */
     public static ListDouble add(final ListNumber data, final double offset) {
-        return new ListDouble() {
+        return new UnaryOperation(data) {
 
             @Override
-            public double getDouble(int index) {
-                return data.getDouble(index) + offset;
+            double apply(double value) {
+                return value + offset;
             }
 
             @Override
-            public int size() {
-                return data.size();
+            void applyTo(double[] values) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = values[i] + offset;
+                }
             }
         };
     }
@@ -214,16 +224,18 @@ public class ListMath {
     public static ListDouble add(final ListNumber data1, final ListNumber data2) {
         if (data1.size() != data2.size())
             throw new IllegalArgumentException("Can't sum ListNumbers of different size (" + data1.size() + " - " + data2.size() + ")");
-        return new ListDouble() {
+        return new BinaryOperation(data1, data2) {
 
             @Override
-            public double getDouble(int index) {
-                return data1.getDouble(index) + data2.getDouble(index);
+            double apply(double value1, double value2) {
+                return value1 + value2;
             }
 
             @Override
-            public int size() {
-                return data1.size();
+            void applyTo(double[] values1, double[] values2) {
+                for (int i = 0; i < values1.length; i++) {
+                    values1[i] = values1[i] + values2[i];
+                }
             }
         };
     }
@@ -239,16 +251,18 @@ public class ListMath {
     public static ListDouble subtract(final ListNumber data1, final ListNumber data2) {
         if (data1.size() != data2.size())
             throw new IllegalArgumentException("Can't subtract ListNumbers of different size (" + data1.size() + " - " + data2.size() + ")");
-        return new ListDouble() {
+        return new BinaryOperation(data1, data2) {
 
             @Override
-            public double getDouble(int index) {
-                return data1.getDouble(index) - data2.getDouble(index);
+            double apply(double value1, double value2) {
+                return value1 - value2;
             }
 
             @Override
-            public int size() {
-                return data1.size();
+            void applyTo(double[] values1, double[] values2) {
+                for (int i = 0; i < values1.length; i++) {
+                    values1[i] = values1[i] - values2[i];
+                }
             }
         };
     }
@@ -266,16 +280,18 @@ public class ListMath {
             throw new IllegalArgumentException(
                         "Can't do element-wise mult on ListNumbers of different size ("
                      + data1.size() + " - " + data2.size() + ")");
-        return new ListDouble() {
+        return new BinaryOperation(data1, data2) {
 
             @Override
-            public double getDouble(int index) {
-                return data1.getDouble(index) * data2.getDouble(index);
+            double apply(double value1, double value2) {
+                return value1 * value2;
             }
 
             @Override
-            public int size() {
-                return data1.size();
+            void applyTo(double[] values1, double[] values2) {
+                for (int i = 0; i < values1.length; i++) {
+                    values1[i] = values1[i] * values2[i];
+                }
             }
         };
     }
@@ -293,22 +309,153 @@ public class ListMath {
             throw new IllegalArgumentException(
                         "Can't do element-wise mult on ListNumbers of different size ("
                      + data1.size() + " - " + data2.size() + ")");
-        return new ListDouble() {
+        return new BinaryOperation(data1, data2) {
 
             @Override
-            public double getDouble(int index) {
-                return data1.getDouble(index) / data2.getDouble(index);
+            double apply(double value1, double value2) {
+                return value1 / value2;
             }
 
             @Override
-            public int size() {
-                return data1.size();
+            void applyTo(double[] values1, double[] values2) {
+                for (int i = 0; i < values1.length; i++) {
+                    values1[i] = values1[i] / values2[i];
+                }
             }
         };
     }
 
     /**
-     * XXX: This is just a prototype
+     * Computes the given list into a new array. If the list is the result of
+     * operations of this class, the whole chain is evaluated with one loop
+     * per operation on a single array, instead of one chain of virtual calls
+     * per element.
+     * <p>
+     * The operations of this class are lazy: each read of the element is
+     * recomputed from the original data. Materializing the result is
+     * preferable when it is read more than once.
+     *
+     * @param data a list of numbers
+     * @return a new list with the values of data
+     */
+    public static ArrayDouble materialize(ListNumber data) {
+        return new ArrayDouble(evaluate(data));
+    }
+
+    /**
+     * Evaluates the list into a new array that can be modified.
+     */
+    private static double[] evaluate(ListNumber data) {
+        if (data instanceof UnaryOperation) {
+            UnaryOperation operation = (UnaryOperation) data;
+            double[] values = evaluate(operation.data);
+            operation.applyTo(values);
+            return values;
+        }
+        if (data instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) data;
+            double[] values = evaluate(operation.data1);
+            operation.applyTo(values, evaluateReadOnly(operation.data2));
+            return values;
+        }
+        return toDoubleArray(data);
+    }
+
+    /**
+     * Evaluates the list into an array that must not be modified.
+     */
+    private static double[] evaluateReadOnly(ListNumber data) {
+        double[] values = CollectionNumbers.wrappedDoubleArray(data);
+        if (values != null) {
+            return values;
+        }
+        return evaluate(data);
+    }
+
+    private static double[] toDoubleArray(ListNumber data) {
+        if (data instanceof ArrayDouble) {
+            return ((ArrayDouble) data).wrappedArray().clone();
+        }
+        double[] values = new double[data.size()];
+        if (data instanceof ArrayFloat) {
+            float[] array = ((ArrayFloat) data).wrappedArray();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = array[i];
+            }
+        } else if (data instanceof ArrayInt) {
+            int[] array = ((ArrayInt) data).wrappedArray();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = array[i];
+            }
+        } else {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = data.getDouble(i);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * A lazy element-wise operation on a list, that can also be applied
+     * on a whole array.
+     */
+    private static abstract class UnaryOperation extends ListDouble {
+
+        final ListNumber data;
+
+        UnaryOperation(ListNumber data) {
+            this.data = data;
+        }
+
+        abstract double apply(double value);
+
+        abstract void applyTo(double[] values);
+
+        @Override
+        public final double getDouble(int index) {
+            return apply(data.getDouble(index));
+        }
+
+        @Override
+        public final int size() {
+            return data.size();
+        }
+    }
+
+    /**
+     * A lazy element-wise operation on two lists of the same size, that can
+     * also be applied on whole arrays.
+     */
+    private static abstract class BinaryOperation extends ListDouble {
+
+        final ListNumber data1;
+        final ListNumber data2;
+
+        BinaryOperation(ListNumber data1, ListNumber data2) {
+            this.data1 = data1;
+            this.data2 = data2;
+        }
+
+        abstract double apply(double value1, double value2);
+
+        abstract void applyTo(double[] values1, double[] values2);
+
+        @Override
+        public final double getDouble(int index) {
+            return apply(data1.getDouble(index), data2.getDouble(index));
+        }
+
+        @Override
+        public final int size() {
+            return data1.size();
+        }
+    }
+
+    /**
+     * Discrete Fourier transform of the given complex values, normalized
+     * by the number of values. The transform is computed with
+     * {@link FourierTransform}.
+     *
      * @param x real part
      * @param y imaginary part
      * @return the real and imaginary part of the transform
@@ -318,30 +465,53 @@ public class ListMath {
             throw new IllegalArgumentException("Real and imaginary part must be of the same length");
         }
         
-        double cosarg,sinarg;
-        double[] resX = new double[x.size()];
-        double[] resY = new double[x.size()];
-        int direction = 1; // -1 would be inverse
-        double size = x.size();
-
-        for (int i = 0; i < x.size(); i++) {
-            double arg = - direction * 2.0 * Math.PI * (double) i / size;
-            for (int k = 0; k < x.size(); k++) {
-                cosarg = Math.cos(k * arg);
-                sinarg = Math.sin(k * arg);
-                resX[i] += (x.getDouble(k) * cosarg - y.getDouble(k) * sinarg);
-                resY[i] += (x.getDouble(k) * sinarg + y.getDouble(k) * cosarg);
-            }
+        double[] resX = evaluate(x);
+        double[] resY = evaluate(y);
+        FourierTransform.transform(resX, resY);
+        normalize(resX, resY, x.size());
+        return Arrays.<ListNumber>asList(new ArrayDouble(resX), new ArrayDouble(resY));
+    }
+
+    /**
+     * Discrete Fourier transform of the given real values, normalized
+     * by the number of values. Same result as {@link #dft(ListNumber, ListNumber) }
+     * with a zero imaginary part, but only half of the transform is computed:
+     * the second half is the complex conjugate of the first.
+     *
+     * @param x the real values
+     * @return the real and imaginary part of the transform
+     */
+    public static List<ListNumber> dft(ListNumber x) {
+        int size = x.size();
+        int half = size / 2;
+        double[] resX = new double[size];
+        double[] resY = new double[size];
+        FourierTransform.realTransform(evaluateReadOnly(x), resX, resY);
+        for (int k = half + 1; k < size; k++) {
+            resX[k] = resX[size - k];
+            resY[k] = -resY[size - k];
         }
+        normalize(resX, resY, size);
+        return Arrays.<ListNumber>asList(new ArrayDouble(resX), new ArrayDouble(resY));
+    }
 
-        if (direction == 1) {
-            for (int i = 0; i < x.size(); i++) {
-                resX[i] = resX[i] / size;
-                resY[i] = resY[i] / size;
-            }
-            return Arrays.<ListNumber>asList(new ArrayDouble(resX), new ArrayDouble(resY));
-        } else {
-            return Arrays.<ListNumber>asList(new ArrayDouble(resY), new ArrayDouble(resX));
+    private static void normalize(double[] resX, double[] resY, int size) {
+        for (int i = 0; i < size; i++) {
+            resX[i] = resX[i] / size;
+            resY[i] = resY[i] / size;
         }
     }
+
+    /**
+     * Power spectrum of the given real values, after applying the window:
+     * the square modulus of the normalized transform, from the zero frequency
+     * up to the Nyquist frequency (size / 2 + 1 elements).
+     *
+     * @param x the real values
+     * @param window the window to apply before the transform
+     * @return the power of each frequency
+     */
+    public static ListDouble powerSpectrum(ListNumber x, FourierTransform.Window window) {
+        return new ArrayDouble(FourierTransform.powerSpectrum(evaluateReadOnly(x), window));
+    }
 }
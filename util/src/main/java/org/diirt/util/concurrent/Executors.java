@@ -4,7 +4,11 @@
  */
 package org.diirt.util.concurrent;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -76,6 +80,54 @@ public class Executors {
         return new DefaultThreadFactory(poolName);
     }
     
+    /**
+     * An executor that runs each task on its own thread. When the runtime
+     * supports virtual threads (Java 21 and later), each task
+     * runs on a new virtual thread; otherwise, tasks run on a cached
+     * pool of daemon threads with the given name, which are reused
+     * only when idle.
+     * <p>
+     * This can be used for tasks that block on I/O, so that they
+     * do not hold up the threads of a bounded pool.
+     * 
+     * @param poolName name of the pool, used if virtual threads are not available
+     * @return a new executor
+     */
+    public static ExecutorService threadPerTask(String poolName) {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            log.log(Level.FINE, "Virtual threads not available: using platform threads", ex);
+            return java.util.concurrent.Executors.newCachedThreadPool(namedPool(poolName));
+        }
+    }
+    
+    /**
+     * A work-stealing pool with one daemon thread per processor, where each
+     * new thread starts with the given name.
+     * <p>
+     * This can be used for many short CPU-bound tasks, such as the
+     * evaluation of the read functions: idle threads take tasks from
+     * the busy ones.
+     * 
+     * @param poolName name of the pool
+     * @return a new pool
+     */
+    public static ExecutorService workStealingPool(final String poolName) {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        return new ForkJoinPool(Runtime.getRuntime().availableProcessors(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(poolName + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, null, true);
+    }
+    
     /**
      * Taken from {@link Executors#defaultThreadFactory() }.
      */
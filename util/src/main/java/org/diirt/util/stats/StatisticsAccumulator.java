@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.util.stats;
+
+/**
+ * Accumulates the statistics of a stream of values, excluding NaN values.
+ * <p>
+ * The average and the sum of the square differences from the average are
+ * updated with Welford's algorithm, which avoids the loss of precision of the
+ * sum of squares. Two accumulators can be merged (Chan et al.), so that the
+ * statistics of different parts of a set can be calculated separately, and
+ * in parallel, and then combined.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author carcassi
+ */
+public class StatisticsAccumulator {
+
+    private int count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double average;
+    // Sum of the squares of the differences from the average
+    private double m2;
+
+    /**
+     * Adds a value. NaN values are skipped.
+     *
+     * @param value the new value
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+        count++;
+        double delta = value - average;
+        average += delta / count;
+        m2 += delta * (value - average);
+    }
+
+    /**
+     * Adds the values of the array between from (included) and to (excluded).
+     * NaN values are skipped.
+     * <p>
+     * The values are processed with two passes, one for the average and one
+     * for the differences, and merged as a block: this is faster than
+     * adding each value, and as precise.
+     *
+     * @param values the array
+     * @param from the first index
+     * @param to the index after the last
+     */
+    public void add(double[] values, int from, int to) {
+        int blockCount = 0;
+        double blockMin = Double.POSITIVE_INFINITY;
+        double blockMax = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            double value = values[i];
+            if (!Double.isNaN(value)) {
+                if (value < blockMin) {
+                    blockMin = value;
+                }
+                if (value > blockMax) {
+                    blockMax = value;
+                }
+                sum += value;
+                blockCount++;
+            }
+        }
+        if (blockCount == 0) {
+            return;
+        }
+        double blockAverage = sum / blockCount;
+        double blockM2 = 0;
+        for (int i = from; i < to; i++) {
+            double value = values[i];
+            if (!Double.isNaN(value)) {
+                double delta = value - blockAverage;
+                blockM2 += delta * delta;
+            }
+        }
+        merge(blockCount, blockMin, blockMax, blockAverage, blockM2);
+    }
+
+    /**
+     * Adds all the values of the other accumulator.
+     *
+     * @param other another accumulator; not modified
+     */
+    public void add(StatisticsAccumulator other) {
+        merge(other.count, other.min, other.max, other.average, other.m2);
+    }
+
+    /**
+     * Adds the values summarized by the given statistics. If the statistics
+     * are null, nothing is added.
+     *
+     * @param stats the statistics of other values; can be null
+     */
+    public void add(Statistics stats) {
+        if (stats == null || stats.getCount() == 0) {
+            return;
+        }
+        double stdDev = stats.getStdDev();
+        merge(stats.getCount(), stats.getRange().getMinimum(), stats.getRange().getMaximum(),
+                stats.getAverage(), stdDev * stdDev * stats.getCount());
+    }
+
+    private void merge(int otherCount, double otherMin, double otherMax, double otherAverage, double otherM2) {
+        if (otherCount == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = otherCount;
+            min = otherMin;
+            max = otherMax;
+            average = otherAverage;
+            m2 = otherM2;
+            return;
+        }
+        int newCount = count + otherCount;
+        double delta = otherAverage - average;
+        average += delta * otherCount / newCount;
+        m2 += otherM2 + delta * delta * ((double) count * otherCount / newCount);
+        count = newCount;
+        min = Math.min(min, otherMin);
+        max = Math.max(max, otherMax);
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+        count = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        average = 0;
+        m2 = 0;
+    }
+
+    /**
+     * The number of values (excluding NaN) added so far.
+     *
+     * @return the number of values
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * The statistics of the values added so far. The returned object is
+     * not affected by further changes to the accumulator.
+     *
+     * @return the statistics; null if no value was added
+     */
+    public Statistics toStatistics() {
+        if (count == 0) {
+            return null;
+        }
+        return new StatisticsUtil.StatisticsImpl(Ranges.range(min, max), count, average, Math.sqrt(m2 / count));
+    }
+}
@@ -4,10 +4,20 @@
  */
 package org.diirt.util.stats;
 
-import java.util.Iterator;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+import org.diirt.util.array.ArrayDouble;
+import org.diirt.util.array.CircularBufferDouble;
 import org.diirt.util.array.CollectionNumber;
+import org.diirt.util.array.CollectionNumbers;
 import org.diirt.util.array.IteratorNumber;
+import org.diirt.util.array.ListNumber;
 
 /**
  * Utility class to calculate statistical information.
@@ -16,7 +26,7 @@ import org.diirt.util.array.IteratorNumber;
  */
 public class StatisticsUtil {
 
-    private static class StatisticsImpl extends Statistics {
+    static class StatisticsImpl extends Statistics {
         
         private final int count;
         private final Range range;
@@ -52,88 +62,274 @@ public class StatisticsUtil {
         
     }
 
+    // Number of values processed by each task
+    private static final int CHUNK_SIZE = 16 * 1024;
+    // Lists smaller than this are processed in the calling thread
+    private static final int PARALLEL_THRESHOLD = 256 * 1024;
+    // Number of values summarized by each block of a circular buffer
+    private static final int BUFFER_BLOCK_SIZE = 1024;
+    // Marks cached statistics of data with no values other than NaN
+    private static final Statistics NO_STATISTICS = new StatisticsImpl(null, 0, Double.NaN, Double.NaN);
+    
+    private static final WeakIdentityMap<ArrayDouble, Statistics> arrayStatistics = new WeakIdentityMap<>();
+    private static final WeakIdentityMap<CircularBufferDouble, BufferStatistics> bufferStatistics = new WeakIdentityMap<>();
+
     /**
      * Calculates data statistics, excluding NaN values.
+     * <p>
+     * The statistics of a read-only {@link ArrayDouble} are calculated once
+     * and kept until the instance is garbage collected. This assumes that
+     * the wrapped array, which is not copied, is never modified afterwards.
+     * For a {@link CircularBufferDouble}, the statistics of the values
+     * already seen are kept by blocks, so calling this method again on the
+     * same buffer only processes the values added since, and the oldest
+     * block, partially overwritten. Large lists are split in chunks that
+     * are processed in parallel.
      * 
      * @param data the data
      * @return the calculated statistics
      */
     public static Statistics statisticsOf(CollectionNumber data) {
-        IteratorNumber iterator = data.iterator();
-        if (!iterator.hasNext()) {
-            return null;
-        }
-        int count = 0;
-        double min = iterator.nextDouble();
-        while (Double.isNaN(min)) {
-            if (!iterator.hasNext()) {
-                return null;
-            } else {
-                min = iterator.nextDouble();
+        if (data instanceof ArrayDouble && ((ArrayDouble) data).isReadOnly()) {
+            ArrayDouble array = (ArrayDouble) data;
+            Statistics stats = arrayStatistics.get(array);
+            if (stats == null) {
+                stats = statisticsOf(CollectionNumbers.wrappedDoubleArray(array));
+                arrayStatistics.put(array, stats == null ? NO_STATISTICS : stats);
             }
+            return stats == NO_STATISTICS ? null : stats;
+        }
+        if (data instanceof CircularBufferDouble) {
+            CircularBufferDouble buffer = (CircularBufferDouble) data;
+            BufferStatistics stats = bufferStatistics.get(buffer);
+            if (stats == null) {
+                stats = new BufferStatistics();
+                bufferStatistics.put(buffer, stats);
+            }
+            return stats.update(buffer);
+        }
+        if (data instanceof ListNumber) {
+            return statisticsOf(null, (ListNumber) data, data.size());
         }
-        double max = min;
-        double total = min;
-        double totalSquare = min*min;
-        count++;
         
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        double[] buffer = new double[Math.min(CHUNK_SIZE, data.size())];
+        IteratorNumber iterator = data.iterator();
         while (iterator.hasNext()) {
-            double value = iterator.nextDouble();
-            if (!Double.isNaN(value)) {
-                if (value > max)
-                    max = value;
-                if (value < min)
-                    min = value;
-                total += value;
-                totalSquare += value*value;
-                count++;
+            int n = 0;
+            while (n < buffer.length && iterator.hasNext()) {
+                buffer[n] = iterator.nextDouble();
+                n++;
             }
+            accumulator.add(buffer, 0, n);
         }
-        
-        double average = total/count;
-        double stdDev = Math.sqrt(totalSquare / count - average * average);
-        
-        return new StatisticsImpl(Ranges.range(min, max), count, average, stdDev);
+        return accumulator.toStatistics();
     }
 
     /**
-     * Aggregates statistical information.
+     * Calculates the statistics of the values of the array, excluding NaN
+     * values. Large arrays are split in chunks that are processed in parallel.
      * 
-     * @param data a list of statistical information
-     * @return the aggregate of all
+     * @param data the data
+     * @return the calculated statistics
      */
-    public static Statistics statisticsOf(List<Statistics> data) {
-        if (data.isEmpty())
-            return null;
+    public static Statistics statisticsOf(double[] data) {
+        return statisticsOf(data, null, data.length);
+    }
+    
+    private static Statistics statisticsOf(double[] array, ListNumber list, int size) {
+        boolean parallel = size >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1;
+        StatisticsTask task = new StatisticsTask(array, list, 0, size, parallel);
+        if (parallel) {
+            return task.invoke().toStatistics();
+        } else {
+            return task.compute().toStatistics();
+        }
+    }
+    
+    /**
+     * Calculates the statistics of a range of an array or of a list
+     * by splitting it in half until the chunks are small enough.
+     * The chunks are the same whether they are processed in parallel
+     * or not, and the partial results are always merged in the same order,
+     * so the result does not depend on the scheduling or on the number
+     * of processors.
+     */
+    private static class StatisticsTask extends RecursiveTask<StatisticsAccumulator> {
+        
+        private static final long serialVersionUID = 1L;
         
-        Iterator<Statistics> iterator = data.iterator();
-        if (!iterator.hasNext()) {
-            return null;
+        private final double[] array;
+        private final ListNumber list;
+        private final int from;
+        private final int to;
+        private final boolean parallel;
+
+        StatisticsTask(double[] array, ListNumber list, int from, int to, boolean parallel) {
+            this.array = array;
+            this.list = list;
+            this.from = from;
+            this.to = to;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected StatisticsAccumulator compute() {
+            if (to - from <= CHUNK_SIZE) {
+                StatisticsAccumulator accumulator = new StatisticsAccumulator();
+                if (array != null) {
+                    accumulator.add(array, from, to);
+                } else {
+                    double[] buffer = new double[to - from];
+                    for (int i = 0; i < buffer.length; i++) {
+                        buffer[i] = list.getDouble(from + i);
+                    }
+                    accumulator.add(buffer, 0, buffer.length);
+                }
+                return accumulator;
+            }
+            int middle = (from + to) >>> 1;
+            StatisticsTask left = new StatisticsTask(array, list, from, middle, parallel);
+            StatisticsTask right = new StatisticsTask(array, list, middle, to, parallel);
+            StatisticsAccumulator result;
+            if (parallel) {
+                left.fork();
+                StatisticsAccumulator rightResult = right.compute();
+                result = left.join();
+                result.add(rightResult);
+            } else {
+                result = left.compute();
+                result.add(right.compute());
+            }
+            return result;
         }
-        Statistics first = null;
-        while (first == null && iterator.hasNext()) {
-            first = iterator.next();
+    }
+
+    /**
+     * The statistics of the values of a circular buffer, by blocks of
+     * {@value #BUFFER_BLOCK_SIZE} values. The blocks are aligned on the
+     * number of values added to the buffer, so that the blocks already
+     * calculated never change: only the oldest one, partially overwritten,
+     * is recalculated from the buffer.
+     */
+    private static class BufferStatistics {
+        
+        private final ArrayDeque<StatisticsAccumulator> blocks = new ArrayDeque<>();
+        // Index of the first block, counted from the first value ever added
+        private long firstBlock;
+        // Number of values added to the blocks, counted the same way
+        private long processedCount;
+        
+        private synchronized Statistics update(CircularBufferDouble buffer) {
+            long addedCount = buffer.getAddedCount();
+            int size = buffer.size();
+            long firstValue = addedCount - size;
+            
+            // Remove the blocks with only overwritten values
+            while (!blocks.isEmpty() && (firstBlock + 1) * BUFFER_BLOCK_SIZE <= firstValue) {
+                blocks.removeFirst();
+                firstBlock++;
+            }
+            
+            // Add the new values, skipping the ones already overwritten
+            for (long value = Math.max(processedCount, firstValue); value < addedCount; value++) {
+                long block = value / BUFFER_BLOCK_SIZE;
+                if (blocks.isEmpty()) {
+                    firstBlock = block;
+                    blocks.addLast(new StatisticsAccumulator());
+                } else if (block >= firstBlock + blocks.size()) {
+                    blocks.addLast(new StatisticsAccumulator());
+                }
+                blocks.getLast().add(buffer.getDouble((int) (value - firstValue)));
+            }
+            processedCount = addedCount;
+            
+            StatisticsAccumulator accumulator = new StatisticsAccumulator();
+            boolean oldest = true;
+            for (StatisticsAccumulator block : blocks) {
+                long blockStart = firstBlock * BUFFER_BLOCK_SIZE;
+                if (oldest && blockStart < firstValue) {
+                    int end = (int) Math.min(blockStart + BUFFER_BLOCK_SIZE - firstValue, size);
+                    for (int i = 0; i < end; i++) {
+                        accumulator.add(buffer.getDouble(i));
+                    }
+                } else {
+                    accumulator.add(block);
+                }
+                oldest = false;
+            }
+            return accumulator.toStatistics();
         }
-        if (first == null)
-            return null;
+    }
+    
+    /**
+     * A map whose keys are compared by identity and only weakly referenced.
+     * The lists compare by content, which would make a regular map both
+     * slow and wrong as a cache of their statistics. The values must not
+     * reference their keys.
+     */
+    private static class WeakIdentityMap<K, V> {
         
-        int count = first.getCount();
-        Range range = first.getRange();
-        double total = first.getAverage() * first.getCount();
-        double totalSquare = (first.getStdDev() * first.getStdDev() + first.getAverage() * first.getAverage()) * first.getCount();
+        private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+        private final Map<Key<K>, V> map = new HashMap<>();
         
-        while (iterator.hasNext()) {
-            Statistics stats = iterator.next();
-            range = range.combine(stats.getRange());
-            total += stats.getAverage() * stats.getCount();
-            totalSquare += ( stats.getStdDev() * stats.getStdDev() + stats.getAverage() * stats.getAverage() ) * stats.getCount();
-            count += stats.getCount();
+        private static class Key<K> extends WeakReference<K> {
+            
+            private final int hash;
+
+            private Key(K referent, ReferenceQueue<K> queue) {
+                super(referent, queue);
+                hash = System.identityHashCode(referent);
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                if (obj == this) {
+                    return true;
+                }
+                if (!(obj instanceof Key)) {
+                    return false;
+                }
+                Object referent = get();
+                return referent != null && referent == ((Key<?>) obj).get();
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
         }
         
-        double average = total/count;
-        double stdDev = Math.sqrt(totalSquare / count - average * average);
+        private synchronized V get(K key) {
+            removeCollected();
+            return map.get(new Key<>(key, null));
+        }
+        
+        private synchronized void put(K key, V value) {
+            removeCollected();
+            map.put(new Key<>(key, queue), value);
+        }
         
-        return new StatisticsImpl(range, count, average, stdDev);
+        private void removeCollected() {
+            Reference<? extends K> reference;
+            while ((reference = queue.poll()) != null) {
+                map.remove(reference);
+            }
+        }
+    }
+
+    /**
+     * Aggregates statistical information.
+     * 
+     * @param data a list of statistical information
+     * @return the aggregate of all
+     */
+    public static Statistics statisticsOf(List<Statistics> data) {
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        for (Statistics stats : data) {
+            accumulator.add(stats);
+        }
+        return accumulator.toStatistics();
     }
     
     /**
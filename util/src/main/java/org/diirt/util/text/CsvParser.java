@@ -4,16 +4,23 @@
  */
 package org.diirt.util.text;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.diirt.util.array.ArrayDouble;
-import org.diirt.util.array.ListDouble;
+import static org.diirt.util.concurrent.Executors.namedPool;
 import static org.diirt.util.text.StringUtil.DOUBLE_REGEX_WITH_NAN;
 
 /**
@@ -29,18 +36,22 @@ import static org.diirt.util.text.StringUtil.DOUBLE_REGEX_WITH_NAN;
  * and other sources.
  * <p>
  * The parser can try multiple separators, so that it can auto-detect the
- * likely correct one. It does so by trying them one by one, checking
- * that it finds more than one column and that all the rows have the same
- * number of columns. If not, proceeds to the next separator.
+ * likely correct one. It does so by trying them one by one on the first
+ * lines of the text, checking that it finds more than one column and that
+ * all the rows have the same number of columns. If not, proceeds to the next
+ * separator.
+ * <p>
+ * The text is read only once: after the separator is chosen, the lines
+ * are tokenized in batches and the values are stored directly in the
+ * columns (a {@code double[]} for numeric columns), so that the whole text
+ * is never kept in memory. Batches can be converted in parallel
+ * (see {@link #withParallelism(int) }).
  * <p>
  * Typical use of the parser:
  * <blockquote><pre>
  * CsvParserResult result = CsvParser.AUTOMATIC
  *   .withHeader(CsvParser.Header.NONE)
  *   .parse(new FileReader("table.csv"));</pre></blockquote>
- * <p>
- * The parsing of each line is based on code and insights found in
- * <a href="http://regex.info/book.html"> Mastering Regular Expressions</a>.
  *
  * @author carcassi
  */
@@ -49,6 +60,7 @@ public class CsvParser {
     // Configuration
     private final String separators;
     private final Header header;
+    private final int parallelism;
 
     /**
      * The configuration options for the header.
@@ -80,39 +92,26 @@ public class CsvParser {
          */
         NONE};
     
-    private class State {
-        // Parser state
-        private int nColumns;
-        private boolean columnMismatch = false;
-        private List<String> columnNames;
-        private List<Boolean> columnNumberParsable;
-        private List<Boolean> columnTimestampParsable;
-        private List<List<String>> columnTokens;
-        private String currentSeparator;
-        
-        // Regex object used for parsing
-        private Matcher mLineTokens;
-        private final Matcher mQuote = pQuote.matcher("");
-        private final Matcher mDouble = pDouble.matcher("");
-        
-        // Keep data on best matched separator
-        private String bestSeparator;
-        private int bestNLines = -1;
-    }
-    
+    /**
+     * Number of lines used to detect the separator and the column types.
+     */
+    static final int SAMPLE_LINES = 1000;
     
-    private static final Pattern pQuote = Pattern.compile("\"\"");
-    private static final Pattern pDouble = Pattern.compile(DOUBLE_REGEX_WITH_NAN);
+    /**
+     * Number of lines converted at once after the sample.
+     */
+    static final int BATCH_LINES = 8192;
     
     /**
      * Automatic parser: auto-detects whether the first line is a header or not
      * and tries the most common separators (i.e. ',' ';' 'TAB' 'SPACE').
      */
-    public static final CsvParser AUTOMATIC = new CsvParser(",;\t ", Header.AUTO);
+    public static final CsvParser AUTOMATIC = new CsvParser(",;\t ", Header.AUTO, 1);
 
-    private CsvParser(String separators, Header header) {
+    private CsvParser(String separators, Header header, int parallelism) {
         this.separators = separators;
         this.header = header;
+        this.parallelism = parallelism;
     }
 
     /**
@@ -134,7 +133,7 @@ public class CsvParser {
      * @return a new parser
      */
     public CsvParser withSeparators(String separators) {
-        return new CsvParser(separators, header);
+        return new CsvParser(separators, header, parallelism);
     }
 
     /**
@@ -154,9 +153,37 @@ public class CsvParser {
      * @return a new parser
      */
     public CsvParser withHeader(Header header) {
-        return new CsvParser(separators, header);
+        return new CsvParser(separators, header, parallelism);
     }
 
+    /**
+     * Returns the number of threads used to convert the lines.
+     * 
+     * @return the number of threads; 1 if the text is parsed on the
+     * calling thread
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    /**
+     * Creates a new parser that converts the lines on the given number
+     * of threads.
+     * <p>
+     * The text is still read sequentially and divided on line boundaries:
+     * batches of lines are tokenized and converted in parallel, and
+     * appended to the result in order. This is worth it only for large
+     * texts.
+     * 
+     * @param parallelism the number of threads; 1 to parse on the calling thread
+     * @return a new parser
+     */
+    public CsvParser withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 (was " + parallelism + ")");
+        }
+        return new CsvParser(separators, header, parallelism);
+    }
     
     /**
      * Parser the text provided by the reader with the format defined in this
@@ -166,304 +193,574 @@ public class CsvParser {
      * will have information in the result. The idea is that, in the future,
      * the parser can provide multiple reasons as why the parsing failed or 
      * event incomplete results.
+     * <p>
+     * The separator and the column types are determined on the first
+     * {@value #SAMPLE_LINES} lines. If a numeric column contains text
+     * afterwards, the column becomes text, and the values already read
+     * keep the text they had in the file.
      * 
      * @param reader a reader
      * @return the parsed information
      */
     public CsvParserResult parse(Reader reader) {
-        // State used for parsing. Since each call has its own state,
-        // the parsing is thread safe.
-        State state = new State();
+        LineReader lineReader = new LineReader(reader);
         
-        // Divide into lines.
-        // Note that means we are going to keep in memory the whole file.
-        // This is not very memory efficient. But since we have to do multiple
-        // passes to find the right separator, we don't have much choice.
-        // Also: the actual parsed result will need to stay in memory anyway.
-        List<String> lines = csvLines(reader);
+        // Read the sample used for the detection
+        List<String> sample = new ArrayList<>();
+        String line;
+        while (sample.size() < SAMPLE_LINES && (line = lineReader.readLine()) != null) {
+            sample.add(line);
+        }
+        if (sample.isEmpty()) {
+            return new CsvParserResult(null, null, null, 0, false, "Parsing failed: no lines");
+        }
         
-        // Try each seaparater
+        // Try each separator on the sample
+        Tokens titles = new Tokens();
+        Tokens tokens = new Tokens();
+        char separator = 0;
+        boolean found = false;
+        char bestSeparator = 0;
+        int bestNLines = -1;
         separatorLoop:
-        for(int nSeparator = 0; nSeparator < getSeparators().length(); nSeparator++) {
-            state.currentSeparator = getSeparators().substring(nSeparator, nSeparator+1);
-            
-            // Taken from Mastering Regular Exceptions
-            // Disabled comments so that space could work as possible separator
-            String regex = // puts a doublequoted field in group(1) and an unquoted field into group(2)
-                    // Start with beginning of line or separator
-                    "\\G(?:^|" + state.currentSeparator + ")" +
-                    // Match a quoted string
-                    "(?:" +
-                    "\"" +
-                    "((?:[^\"]++|\"\")*+)" +
-                    "\"" +
-                    // Or match a string without the separator
-                    "|" +
-                    "([^\"" + state.currentSeparator + "]*)" +
-                    ")";
-            // Compile the matcher once for all the parsing
-            state.mLineTokens = Pattern.compile(regex).matcher("");
+        for (int nSeparator = 0; nSeparator < getSeparators().length(); nSeparator++) {
+            separator = getSeparators().charAt(nSeparator);
             
             // Try to parse the first line (the titles)
             // If only one columns is found, proceed to next separator
-            state.columnNames = parseTitles(state, lines.get(0));
-            state.nColumns = state.columnNames.size();
-            if (state.nColumns == 1) {
+            tokenize(sample.get(0), separator, titles);
+            if (titles.size == 1) {
                 continue;
             }
             
-            // Prepare the data structures to hold column data while parsing
-            state.columnMismatch = false;
-            state.columnNumberParsable = new ArrayList<>(state.nColumns);
-            state.columnTimestampParsable = new ArrayList<>(state.nColumns);
-            state.columnTokens = new ArrayList<>();
-            for (int i = 0; i < state.nColumns; i++) {
-                state.columnNumberParsable.add(true);
-                state.columnTimestampParsable.add(false);
-                state.columnTokens.add(new ArrayList<String>());
-            }
-            
-            // Parse each line
             // If one line does not match the number of columns found in the first
             // line, pass to the next separator
-            for (int i = 1; i < lines.size(); i++) {
-                parseLine(state, lines.get(i));
-                if (state.columnMismatch) {
-                    if (i > state.bestNLines) {
-                        state.bestSeparator =  state.currentSeparator;
-                        state.bestNLines = i;
+            for (int i = 1; i < sample.size(); i++) {
+                tokenize(sample.get(i), separator, tokens);
+                if (tokens.size != titles.size) {
+                    if (i > bestNLines) {
+                        bestSeparator = separator;
+                        bestNLines = i;
                     }
                     continue separatorLoop;
                 }
             }
             
             // The parsing succeeded! No need to try other separator
+            found = true;
             break;
-            
+        }
+        if (!found) {
+            if (bestNLines == -1) {
+                return new CsvParserResult(null, null, null, 0, false, "Parsing failed: only one column found with separators '"
+                        + getSeparators() + "'");
+            }
+            return columnMismatch(bestSeparator, bestNLines);
         }
         
-        // We are out of the loop: did we end because we parsed correctly,
-        // or because even the last separator was a mismatch?
-        if (state.columnMismatch) {
-            return new CsvParserResult(null, null, null, 0, false, "Parsing failed: number of columns not constant. Using separator '"
-                    + state.bestSeparator + "', line " + (state.bestNLines + 1));
+        // Convert the sample, then the rest of the text by batches
+        int nColumns = titles.size;
+        Column[] columns = new Column[nColumns];
+        for (int i = 0; i < nColumns; i++) {
+            columns[i] = new Column();
+        }
+        Batch sampleBatch = new Batch(sample.subList(1, sample.size()), 1, separator, nColumns);
+        sample = null;
+        append(columns, sampleBatch.call());
+        int mismatchLine = readBatches(lineReader, separator, columns, 1 + sampleBatch.lines.size());
+        if (mismatchLine != -1) {
+            return columnMismatch(separator, mismatchLine);
         }
         
-        // Parsing was successful.
         // Should the first line be used as data?
-        if (header == Header.NONE || (header == Header.AUTO && isFirstLineData(state, state.columnNames))) {
-            for (int i = 0; i < state.nColumns; i++) {
-                state.columnTokens.set(i, joinList(state.columnNames.get(i), state.columnTokens.get(i)));
-                state.columnNames.set(i, alphabeticName(i));
+        List<String> columnNames = new ArrayList<>(nColumns);
+        if (header == Header.NONE || (header == Header.AUTO && isFirstLineData(columns, titles))) {
+            for (int i = 0; i < nColumns; i++) {
+                columns[i].addFirst(titles.values[i]);
+                columnNames.add(alphabeticName(i));
             }
+        } else {
+            columnNames.addAll(Arrays.asList(titles.values).subList(0, nColumns));
         }
         
-        // Now it's time to convert the tokens to the actual type.
-        List<Object> columnValues = new ArrayList<>(state.nColumns);
-        List<Class<?>> columnTypes = new ArrayList<>(state.nColumns);
-        for (int i = 0; i < state.nColumns; i++) {
-            if (state.columnNumberParsable.get(i)) {
-                columnValues.add(convertToListDouble(state.columnTokens.get(i)));
+        List<Object> columnValues = new ArrayList<>(nColumns);
+        List<Class<?>> columnTypes = new ArrayList<>(nColumns);
+        for (int i = 0; i < nColumns; i++) {
+            if (columns[i].isNumber()) {
+                columnValues.add(new ArrayDouble(columns[i].toArray()));
                 columnTypes.add(double.class);
             } else {
-                columnValues.add(state.columnTokens.get(i));
+                columnValues.add(columns[i].strings);
                 columnTypes.add(String.class);
             }
         }
-        
-        // Prepare result, and remember to clear the state, so
-        // we don't keep references to junk
-        CsvParserResult result = new CsvParserResult(state.columnNames, columnValues, columnTypes, state.columnTokens.get(0).size(), true, null);
-        return result;
+        return new CsvParserResult(columnNames, columnValues, columnTypes, columns[0].size, true, null);
     }
     
-    /**
-     * Given a list of tokens, convert them to a list of numbers.
-     * 
-     * @param tokens the tokens to be converted
-     * @return the number list
-     */
-    private ListDouble convertToListDouble(List<String> tokens) {
-        double[] values = new double[tokens.size()];
-        for (int i = 0; i < values.length; i++) {
-            if (tokens.get(i).isEmpty()) {
-                values[i] = Double.NaN;
-            } else {
-                values[i] = Double.parseDouble(tokens.get(i));
-            }
-        }
-        return new ArrayDouble(values);
+    private static CsvParserResult columnMismatch(char separator, int line) {
+        return new CsvParserResult(null, null, null, 0, false, "Parsing failed: number of columns not constant. Using separator '"
+                + separator + "', line " + (line + 1));
     }
-
+    
     /**
-     * Divides the whole text into lines.
+     * Reads the remaining lines by batches and appends them to the columns.
      * 
-     * @param reader the source of text
-     * @return the lines
+     * @return the index of the first line with a wrong number of columns,
+     * or -1
      */
-    static List<String> csvLines(Reader reader) {
-        // This needs to handle quoted text that spans multiple lines,
-        // so we divide the full text into chunks that correspond to
-        // a single csv line
+    private int readBatches(LineReader lineReader, char separator, Column[] columns, int firstLine) {
+        ExecutorService pool = null;
+        Deque<Future<Batch>> pending = new ArrayDeque<>();
         try {
-            BufferedReader br = new BufferedReader(reader);
-            List<String> lines = new ArrayList<>();
-            // The current line read from the Reader
-            String line;
-            // The full csv line that may span multiple lines
-            String longLine = null;
-            while ((line = br.readLine()) != null) {
-                // If we have a line from the previous iteration,
-                // we concatenate it
-                if (longLine == null) {
-                    longLine = line;
+            List<String> lines = readLines(lineReader);
+            while (!lines.isEmpty()) {
+                Batch batch = new Batch(lines, firstLine, separator, columns.length);
+                firstLine += lines.size();
+                if (parallelism == 1) {
+                    if (!append(columns, batch.call())) {
+                        return batch.mismatchLine;
+                    }
                 } else {
-                    longLine = longLine.concat("\n").concat(line);
+                    if (pool == null) {
+                        pool = java.util.concurrent.Executors.newFixedThreadPool(parallelism, namedPool("CsvParser worker "));
+                    }
+                    pending.add(pool.submit(batch));
+                    // Limit the lines kept in memory
+                    if (pending.size() >= 2 * parallelism) {
+                        batch = pending.poll().get();
+                        if (!append(columns, batch)) {
+                            return batch.mismatchLine;
+                        }
+                    }
                 }
-                // Count the number of quotes: if it's even, the csv line
-                // must end here. If not, it will continue to the next
-                if (isEvenQuotes(longLine)) {
-                    lines.add(longLine);
-                    longLine = null;
+                lines = readLines(lineReader);
+            }
+            while (!pending.isEmpty()) {
+                Batch batch = pending.poll().get();
+                if (!append(columns, batch)) {
+                    return batch.mismatchLine;
                 }
             }
-            // If there is text leftover, the line was not closed propertly.
-            // XXX: we need to figure out how to handle errors like this
-            if (longLine != null) {
-                lines.add(longLine);
+            return -1;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Parsing interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Couldn't process data", ex.getCause());
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
             }
-            return lines;
-        } catch(IOException ex) {
-            throw new RuntimeException("Couldn't process data", ex);
         }
     }
     
+    private static List<String> readLines(LineReader lineReader) {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while (lines.size() < BATCH_LINES && (line = lineReader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+    
     /**
-     * Determines whether the string contains an even number of double quote
-     * characters.
+     * Appends the values of the batch to the columns.
      * 
-     * @param string the given string
-     * @return true if contains even number of '"'
+     * @return false if the batch has a line with a wrong number of columns
      */
-    static boolean isEvenQuotes(String string) {
-        // In principle, we could use the regex given by:
-        // Pattern pEvenQuotes = Pattern.compile("([^\"]*\\\"[^\"]*\\\")*[^\"]*");
-        // We assume just counting the instances of double quotes is more efficient
-        // but we haven't really tested that assumption.
-
-        boolean even = true;
-        for (int i = 0; i < string.length(); i++) {
-            if (string.charAt(i) == '\"') {
-                even = !even;
-            }
+    private static boolean append(Column[] columns, Batch batch) {
+        if (batch.mismatchLine != -1) {
+            return false;
         }
-        return even;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].append(batch, i);
+        }
+        return true;
     }
 
     /**
-     * Parses the first line to get the column names.
-     * 
-     * @param line the text line
-     * @return the column names
+     * Reads the text one csv line at a time. A csv line may span multiple
+     * text lines when a quoted token contains new lines.
      */
-    private List<String> parseTitles(State state, String line) {
-        // Match using the parser
-        List<String> titles = new ArrayList<>();
-        state.mLineTokens.reset(line);
-        while (state.mLineTokens.find()) {
-            String value;
-            if (state.mLineTokens.start(2) >= 0) {
-                value = state.mLineTokens.group(2);
-            } else {
-                // If quoted, always use string
-                value = state.mQuote.reset(state.mLineTokens.group(1)).replaceAll("\"");
+    static class LineReader {
+        private final Reader reader;
+        private final char[] buffer = new char[65536];
+        private int position;
+        private int limit;
+        private final StringBuilder line = new StringBuilder();
+        private boolean skipLineFeed;
+        
+        LineReader(Reader reader) {
+            this.reader = reader;
+        }
+        
+        /**
+         * Returns the next csv line, without the line terminator. New lines
+         * within quotes are returned as '\n'.
+         * 
+         * @return the next line or null at the end of the text
+         */
+        String readLine() {
+            try {
+                line.setLength(0);
+                boolean quoted = false;
+                boolean empty = true;
+                while (true) {
+                    if (position == limit) {
+                        limit = reader.read(buffer, 0, buffer.length);
+                        position = 0;
+                        if (limit <= 0) {
+                            limit = 0;
+                            // If there is text leftover, the line was not closed propertly.
+                            // XXX: we need to figure out how to handle errors like this
+                            return empty ? null : line.toString();
+                        }
+                    }
+                    if (skipLineFeed) {
+                        skipLineFeed = false;
+                        if (buffer[position] == '\n') {
+                            position++;
+                            continue;
+                        }
+                    }
+                    empty = false;
+                    // Copy the characters up to the next special one at once
+                    int start = position;
+                    while (position < limit && buffer[position] != '\r'
+                            && buffer[position] != '\n' && buffer[position] != '"') {
+                        position++;
+                    }
+                    line.append(buffer, start, position - start);
+                    if (position == limit) {
+                        continue;
+                    }
+                    char c = buffer[position++];
+                    if (c == '\r' || c == '\n') {
+                        skipLineFeed = c == '\r';
+                        if (!quoted) {
+                            return line.toString();
+                        }
+                        line.append('\n');
+                    } else {
+                        quoted = !quoted;
+                        line.append(c);
+                    }
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException("Couldn't process data", ex);
             }
-            titles.add(value);
         }
-        return titles;
     }
-
+    
     /**
-     * Parses a line, saving the tokens, and determines the type match.
-     * 
-     * @param line a new line
+     * The tokens of a line.
      */
-    private void parseLine(State state, String line) {
-        // XXX The regex does not work if the first token is blank, and I
-        // don't understand why. Workaround: if it's blank, add a space,
-        // and remember I added a space.
-        boolean firstEmpty = false;
-        if (line.startsWith(state.currentSeparator)) {
-            line = " " + line;
-            firstEmpty = true;
-        }
+    static class Tokens {
+        String[] values = new String[16];
+        boolean[] quoted = new boolean[16];
+        int size;
         
-        // Match using the parser
-        state.mLineTokens.reset(line);
-        int nColumn = 0;
-        while (state.mLineTokens.find()) {
-            // Does this line have more columns than expected?
-            if (nColumn == state.nColumns) {
-                state.columnMismatch = true;
-                return;
+        private void add(String value, boolean isQuoted) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+                quoted = Arrays.copyOf(quoted, size * 2);
             }
-            
-            String token;
-            if (state.mLineTokens.start(2) >= 0) {
-                // The token was unquoted. Check if it could be a number.
-                token = state.mLineTokens.group(2);
-                if (firstEmpty) {
-                    token = "";
-                    firstEmpty = false;
-                }
-                if (!isTokenNumberParsable(state, token)) {
-                    state.columnNumberParsable.set(nColumn, false);
+            values[size] = value;
+            quoted[size] = isQuoted;
+            size++;
+        }
+    }
+    
+    /**
+     * Divides a csv line into tokens. Quoted tokens are unquoted, and
+     * their double quotes are replaced by a single one. If the line is
+     * malformed (e.g. text after the closing quote), the tokenization stops
+     * at the error.
+     * 
+     * @param line the csv line
+     * @param separator the separator
+     * @param tokens the result
+     */
+    static void tokenize(String line, char separator, Tokens tokens) {
+        tokens.size = 0;
+        int length = line.length();
+        int position = 0;
+        while (true) {
+            if (position < length && line.charAt(position) == '"') {
+                // Quoted token: up to the next quote not followed by another quote
+                StringBuilder token = null;
+                int start = position + 1;
+                while (true) {
+                    int end = line.indexOf('"', start);
+                    if (end == -1) {
+                        return;
+                    }
+                    if (end + 1 < length && line.charAt(end + 1) == '"') {
+                        if (token == null) {
+                            token = new StringBuilder();
+                        }
+                        token.append(line, start, end + 1);
+                        start = end + 2;
+                    } else {
+                        if (token == null) {
+                            tokens.add(line.substring(position + 1, end), true);
+                        } else {
+                            tokens.add(token.append(line, start, end).toString(), true);
+                        }
+                        position = end + 1;
+                        break;
+                    }
                 }
             } else {
-                // If quoted, always use string
-                token = state.mQuote.reset(state.mLineTokens.group(1)).replaceAll("\"");
-                state.columnNumberParsable.set(nColumn, false);
+                // Unquoted token: up to the next separator
+                int end = position;
+                while (end < length) {
+                    char c = line.charAt(end);
+                    if (c == separator) {
+                        break;
+                    }
+                    if (c == '"') {
+                        return;
+                    }
+                    end++;
+                }
+                tokens.add(line.substring(position, end), false);
+                position = end;
             }
-            state.columnTokens.get(nColumn).add(token);
-            nColumn++;
-        }
-        // Does this line have fewer columns than expected?
-        if (nColumn != state.nColumns) {
-            state.columnMismatch = true;
+            if (position == length || line.charAt(position) != separator) {
+                return;
+            }
+            position++;
         }
     }
     
     /**
-     * Check whether the token can be parsed to a number.
+     * Check whether the token can be parsed to a number. Matches
+     * {@link StringUtil#DOUBLE_REGEX_WITH_NAN} or the empty token.
      * 
-     * @param state the state of the parser
      * @param token the token
      * @return true if token matches a double
      */
-    private boolean isTokenNumberParsable(State state, String token) {
-        if (token.isEmpty()) {
+    static boolean isTokenNumberParsable(String token) {
+        int length = token.length();
+        if (length == 0 || token.equals("NaN")) {
             return true;
         }
-        return state.mDouble.reset(token).matches();
+        int i = 0;
+        char c = token.charAt(0);
+        if (c == '-' || c == '+') {
+            i++;
+        }
+        int integerDigits = 0;
+        while (i < length && isDigit(token.charAt(i))) {
+            i++;
+            integerDigits++;
+        }
+        if (i < length && token.charAt(i) == '.') {
+            i++;
+            int fractionDigits = 0;
+            while (i < length && isDigit(token.charAt(i))) {
+                i++;
+                fractionDigits++;
+            }
+            if (fractionDigits == 0) {
+                return false;
+            }
+        } else if (integerDigits == 0) {
+            return false;
+        }
+        if (i < length && (token.charAt(i) == 'e' || token.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (token.charAt(i) == '-' || token.charAt(i) == '+')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            while (i < length && isDigit(token.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    private static double toDouble(String token) {
+        if (token.isEmpty()) {
+            return Double.NaN;
+        }
+        return Double.parseDouble(token);
+    }
+    
+    /**
+     * The text that {@link #toDouble(java.lang.String)} converts to the
+     * given value in the most common case: integers without decimals,
+     * other numbers as {@link Double#toString(double) }, NaN as empty.
+     */
+    private static String toToken(double value) {
+        if (Double.isNaN(value)) {
+            return "";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+    
+    /**
+     * A batch of lines converted to columns. The tokens are kept so that
+     * the batch can be appended to a column that already contains text.
+     * For the numeric columns, the rows whose number would not be
+     * formatted back to the same text are also recorded, in case the
+     * column turns to text later.
+     */
+    private static class Batch implements Callable<Batch> {
+        private final List<String> lines;
+        private final int firstLine;
+        private final char separator;
+        private final String[][] tokens;
+        private final double[][] numbers;
+        private final int[][] textRows;
+        private int mismatchLine = -1;
+
+        private Batch(List<String> lines, int firstLine, char separator, int nColumns) {
+            this.lines = lines;
+            this.firstLine = firstLine;
+            this.separator = separator;
+            this.tokens = new String[nColumns][lines.size()];
+            this.numbers = new double[nColumns][];
+            this.textRows = new int[nColumns][];
+        }
+
+        @Override
+        public Batch call() {
+            int nColumns = tokens.length;
+            boolean[] numberParsable = new boolean[nColumns];
+            Arrays.fill(numberParsable, true);
+            Tokens lineTokens = new Tokens();
+            for (int row = 0; row < lines.size(); row++) {
+                tokenize(lines.get(row), separator, lineTokens);
+                if (lineTokens.size != nColumns) {
+                    mismatchLine = firstLine + row;
+                    return this;
+                }
+                for (int i = 0; i < nColumns; i++) {
+                    String token = lineTokens.values[i];
+                    tokens[i][row] = token;
+                    if (numberParsable[i] && (lineTokens.quoted[i] || !isTokenNumberParsable(token))) {
+                        numberParsable[i] = false;
+                    }
+                }
+            }
+            int[] rows = new int[lines.size()];
+            for (int i = 0; i < nColumns; i++) {
+                if (numberParsable[i]) {
+                    double[] values = new double[lines.size()];
+                    int nRows = 0;
+                    for (int row = 0; row < values.length; row++) {
+                        values[row] = toDouble(tokens[i][row]);
+                        if (!toToken(values[row]).equals(tokens[i][row])) {
+                            rows[nRows] = row;
+                            nRows++;
+                        }
+                    }
+                    numbers[i] = values;
+                    textRows[i] = Arrays.copyOf(rows, nRows);
+                }
+            }
+            return this;
+        }
+    }
+    
+    /**
+     * The values of a column: numbers, until a token that is not a
+     * number is found. Until then, only the text of the numbers that
+     * would not be formatted back to the same text is kept, by row.
+     */
+    private static class Column {
+        private double[] numbers = new double[16];
+        private Map<Integer, String> numberTexts = new HashMap<>();
+        private List<String> strings;
+        private int size;
+        
+        private boolean isNumber() {
+            return strings == null;
+        }
+        
+        private void append(Batch batch, int column) {
+            int count = batch.lines.size();
+            if (isNumber() && batch.numbers[column] != null) {
+                if (size + count > numbers.length) {
+                    numbers = Arrays.copyOf(numbers, Math.max(size + count, 2 * numbers.length));
+                }
+                System.arraycopy(batch.numbers[column], 0, numbers, size, count);
+                for (int row : batch.textRows[column]) {
+                    numberTexts.put(size + row, batch.tokens[column][row]);
+                }
+            } else {
+                if (isNumber()) {
+                    convertToStrings(count);
+                }
+                strings.addAll(Arrays.asList(batch.tokens[column]));
+            }
+            size += count;
+        }
+        
+        private double[] toArray() {
+            if (numbers.length == size) {
+                return numbers;
+            }
+            return Arrays.copyOf(numbers, size);
+        }
+        
+        private void addFirst(String token) {
+            if (isNumber() && isTokenNumberParsable(token)) {
+                double[] newNumbers = new double[size + 1];
+                newNumbers[0] = toDouble(token);
+                System.arraycopy(numbers, 0, newNumbers, 1, size);
+                numbers = newNumbers;
+            } else {
+                if (isNumber()) {
+                    convertToStrings(1);
+                }
+                strings.add(0, token);
+            }
+            size++;
+        }
+        
+        private void convertToStrings(int extraCapacity) {
+            strings = new ArrayList<>(size + extraCapacity);
+            for (int i = 0; i < size; i++) {
+                String text = numberTexts.get(i);
+                strings.add(text != null ? text : toToken(numbers[i]));
+            }
+            numbers = null;
+            numberTexts = null;
+        }
     }
     
     /**
      * Checks whether the header can be safely interpreted as data.
      * This is used for the auto header detection.
      * 
-     * @param state the state of the parser
+     * @param columns the parsed columns
      * @param headerTokens the header
      * @return true if header should be handled as data
      */
-    private boolean isFirstLineData(State state, List<String> headerTokens) {
+    private boolean isFirstLineData(Column[] columns, Tokens headerTokens) {
         // Check whether the type of the header match the type of the following data
         boolean headerCompatible = true;
         // Check whether if all types where strings
         boolean allStrings = true;
-        for (int i = 0; i < state.nColumns; i++) {
-            if (state.columnNumberParsable.get(i)) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].isNumber()) {
                 allStrings = false;
-                if (!isTokenNumberParsable(state, headerTokens.get(i))) {
+                if (!isTokenNumberParsable(headerTokens.values[i])) {
                     headerCompatible = false;
                 }
             }
@@ -475,32 +772,6 @@ public class CsvParser {
         return !allStrings && headerCompatible;
     }
     
-    /**
-     * Takes an elements and a list and returns a new list with both.
-     * 
-     * @param head the first element
-     * @param tail the rest of the elements
-     * @return a list with all elements
-     */
-    private List<String> joinList(final String head, final List<String> tail) {
-        return new AbstractList<String>() {
-
-            @Override
-            public String get(int index) {
-                if (index == 0) {
-                    return head;
-                } else {
-                    return tail.get(index - 1);
-                }
-            }
-
-            @Override
-            public int size() {
-                return tail.size()+1;
-            }
-        };
-    }
-    
     static String alphabeticName(int i) {
         String name = "";
         while (true) {
@@ -109,4 +109,19 @@ public class CircularBufferDoubleTest {
         coll.clear();
         assertThat(coll.size(), equalTo(0));
     }
+    
+    @Test
+    public void addedCount1() {
+        CircularBufferDouble coll = new CircularBufferDouble(3);
+        assertThat(coll.getAddedCount(), equalTo(0L));
+        for (int i = 0; i < 5; i++) {
+            coll.addDouble(i);
+        }
+        assertThat(coll.getAddedCount(), equalTo(5L));
+        assertThat(coll.size(), equalTo(3));
+        coll.clear();
+        coll.addDouble(5);
+        assertThat(coll.getAddedCount(), equalTo(6L));
+        assertThat(coll.size(), equalTo(1));
+    }
 }
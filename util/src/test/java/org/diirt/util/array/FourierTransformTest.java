@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.util.array;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class FourierTransformTest {
+    
+    public FourierTransformTest() {
+    }
+
+    private static double[][] naiveDft(double[] re, double[] im) {
+        int n = re.length;
+        double[][] result = new double[2][n];
+        for (int k = 0; k < n; k++) {
+            for (int j = 0; j < n; j++) {
+                double arg = -2.0 * Math.PI * ((long) j * k % n) / n;
+                result[0][k] += re[j] * Math.cos(arg) - im[j] * Math.sin(arg);
+                result[1][k] += re[j] * Math.sin(arg) + im[j] * Math.cos(arg);
+            }
+        }
+        return result;
+    }
+
+    private static double[] random(Random rand, int size) {
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = rand.nextDouble() * 2 - 1;
+        }
+        return values;
+    }
+
+    @Test
+    public void transform1() {
+        Random rand = new Random(1);
+        for (int size : new int[] {1, 2, 3, 4, 5, 7, 8, 12, 16, 17, 100, 128, 255}) {
+            double[] re = random(rand, size);
+            double[] im = random(rand, size);
+            double[][] expected = naiveDft(re, im);
+            FourierTransform.transform(re, im);
+            for (int k = 0; k < size; k++) {
+                assertThat("size " + size, re[k], closeTo(expected[0][k], 1e-9));
+                assertThat("size " + size, im[k], closeTo(expected[1][k], 1e-9));
+            }
+        }
+    }
+
+    @Test
+    public void inverseTransform1() {
+        Random rand = new Random(2);
+        for (int size : new int[] {6, 64, 99}) {
+            double[] re = random(rand, size);
+            double[] im = random(rand, size);
+            double[] transformedRe = re.clone();
+            double[] transformedIm = im.clone();
+            FourierTransform.transform(transformedRe, transformedIm);
+            FourierTransform.inverseTransform(transformedRe, transformedIm);
+            for (int k = 0; k < size; k++) {
+                assertThat(transformedRe[k], closeTo(re[k], 1e-12));
+                assertThat(transformedIm[k], closeTo(im[k], 1e-12));
+            }
+        }
+    }
+
+    @Test
+    public void realTransform1() {
+        Random rand = new Random(3);
+        for (int size : new int[] {0, 1, 2, 3, 6, 10, 32, 33, 1000}) {
+            double[] values = random(rand, size);
+            double[][] expected = naiveDft(values, new double[size]);
+            double[] re = new double[size / 2 + 1];
+            double[] im = new double[size / 2 + 1];
+            FourierTransform.realTransform(values, re, im);
+            for (int k = 0; k < Math.min(size, size / 2 + 1); k++) {
+                assertThat("size " + size, re[k], closeTo(expected[0][k], 1e-9));
+                assertThat("size " + size, im[k], closeTo(expected[1][k], 1e-9));
+            }
+        }
+    }
+
+    @Test
+    public void powerSpectrum1() {
+        // Sine at frequency 10 of amplitude 2: power 1 at bin 10
+        double[] values = new double[256];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 2 * Math.sin(2 * Math.PI * 10 * i / values.length);
+        }
+        double[] power = FourierTransform.powerSpectrum(values, FourierTransform.Window.RECTANGULAR);
+        assertThat(power.length, equalTo(129));
+        assertThat(power[10], closeTo(1.0, 1e-12));
+        assertThat(power[11], closeTo(0.0, 1e-12));
+
+        // The Hann window spreads the peak over the neighbouring bins
+        power = FourierTransform.powerSpectrum(values, FourierTransform.Window.HANN);
+        assertThat(power[10], greaterThan(power[11]));
+        assertThat(power[11], greaterThan(0.01));
+        assertThat(power[20], lessThan(1e-6));
+    }
+
+    @Test
+    public void window1() {
+        double[] values = new double[] {1, 1, 1, 1, 1};
+        FourierTransform.Window.HANN.applyTo(values);
+        assertThat(values[0], closeTo(0.0, 1e-12));
+        assertThat(values[2], closeTo(1.0, 1e-12));
+        assertThat(values[4], closeTo(0.0, 1e-12));
+        values = new double[] {1, 1, 1};
+        FourierTransform.Window.HAMMING.applyTo(values);
+        assertThat(values[0], closeTo(0.08, 1e-12));
+        values = new double[] {1, 1, 1};
+        FourierTransform.Window.BLACKMAN.applyTo(values);
+        assertThat(values[1], closeTo(1.0, 1e-12));
+        values = new double[] {2, 3};
+        FourierTransform.Window.RECTANGULAR.applyTo(values);
+        assertThat(values, equalTo(new double[] {2, 3}));
+    }
+}
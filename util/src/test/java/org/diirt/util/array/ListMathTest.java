@@ -39,6 +39,29 @@ public class ListMathTest {
         assertThat(CollectionNumbers.doubleArrayCopyOf(summed), equalTo(new double[] {0, 0, 0, 0, 0, 0}));
     }
 
+    @Test
+    public void materialize1() {
+        ArrayDouble array1 = new ArrayDouble(0, 1, 2, 3, 4, 5);
+        ArrayFloat array2 = new ArrayFloat(5, 4, 3, 2, 1, 0.5f);
+        ArrayInt array3 = new ArrayInt(1, 2, 3, 4, 5, 6);
+        ListDouble chain = ListMath.divide(ListMath.multiply(ListMath.subtract(ListMath.add(
+                ListMath.rescale(array1, 2.5, -5.0), array2), ListMath.pow(array3, 2)),
+                ListMath.inverseRescale(array2, 2, 1)), ListMath.pow(2, array3));
+        ArrayDouble materialized = ListMath.materialize(chain);
+        assertThat(materialized, equalTo((ListDouble) new ArrayDouble(CollectionNumbers.doubleArrayCopyOf(chain))));
+        assertThat(CollectionNumbers.doubleArrayCopyOf(array1), equalTo(new double[] {0, 1, 2, 3, 4, 5}));
+        assertThat(CollectionNumbers.doubleArrayCopyOf(array2), equalTo(new double[] {5, 4, 3, 2, 1, 0.5}));
+    }
+
+    @Test
+    public void materialize2() {
+        ArrayDouble array1 = new ArrayDouble(0, 1, 2, 3);
+        ListDouble limit = ListMath.limit(array1, 1, 3);
+        assertThat(ListMath.materialize(ListMath.add(limit, limit)), equalTo((ListDouble) new ArrayDouble(2, 4)));
+        assertThat(ListMath.materialize(array1), equalTo((ListDouble) array1));
+        assertThat(CollectionNumbers.wrappedDoubleArray(ListMath.materialize(array1)), not(sameInstance(CollectionNumbers.wrappedDoubleArray(array1))));
+    }
+
     @Test
     public void limit1() {
         ListDouble array1 = new ArrayDouble(0, 1, 2, 3, 4, 5);
@@ -60,5 +83,31 @@ public class ListMathTest {
         ListDouble x = new ArrayDouble(0, 1.0, 0, -1.0, 0, 1, 0, -1);
         ListDouble y = new ArrayDouble(0, 0, 0, 0, 0, 0, 0, 0);
         List<ListNumber> res = ListMath.dft(x, y);
+        assertThat(res.get(0).getDouble(2), closeTo(0.0, 1e-12));
+        assertThat(res.get(1).getDouble(2), closeTo(-0.5, 1e-12));
+        assertThat(res.get(1).getDouble(6), closeTo(0.5, 1e-12));
+        assertThat(res.get(1).getDouble(1), closeTo(0.0, 1e-12));
+    }
+
+    @Test
+    public void dft2() {
+        ListDouble x = new ArrayDouble(1, 3, -2, 5, 0.5, 7, -1);
+        List<ListNumber> complex = ListMath.dft(x, new ArrayDouble(new double[7]));
+        List<ListNumber> real = ListMath.dft(x);
+        for (int i = 0; i < x.size(); i++) {
+            assertThat(real.get(0).getDouble(i), closeTo(complex.get(0).getDouble(i), 1e-12));
+            assertThat(real.get(1).getDouble(i), closeTo(complex.get(1).getDouble(i), 1e-12));
+        }
+        assertThat(real.get(0).getDouble(0), closeTo(13.5 / 7, 1e-12));
+    }
+
+    @Test
+    public void powerSpectrum1() {
+        ListDouble x = new ArrayDouble(0, 1.0, 0, -1.0, 0, 1, 0, -1);
+        ListDouble power = ListMath.powerSpectrum(x, FourierTransform.Window.RECTANGULAR);
+        assertThat(power.size(), equalTo(5));
+        assertThat(power.getDouble(2), closeTo(0.25, 1e-12));
+        assertThat(power.getDouble(0), closeTo(0.0, 1e-12));
+        assertThat(power.getDouble(4), closeTo(0.0, 1e-12));
     }
 }
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.util.array.performance;
+
+import java.util.Random;
+import org.diirt.util.array.ArrayDouble;
+import org.diirt.util.array.ListDouble;
+import org.diirt.util.array.ListMath;
+
+/**
+ * Compares reading a chain of lazy operations with materializing it first.
+ *
+ * @author carcassi
+ */
+public class ListMathBenchmark {
+    public static void main(String[] args) {
+        System.out.println(System.getProperty("java.version"));
+        
+        int nSamples = 1000000;
+        int nIterations = 100;
+
+        double[] doubleArray = new double[nSamples];
+        double[] doubleArray2 = new double[nSamples];
+        Random rand = new Random();
+        for (int i = 0; i < doubleArray.length; i++) {
+            doubleArray[i] = rand.nextGaussian();
+            doubleArray2[i] = rand.nextGaussian();
+        }
+        ArrayDouble data = new ArrayDouble(doubleArray);
+        ArrayDouble data2 = new ArrayDouble(doubleArray2);
+        
+        // Five operations on the waveform
+        ListDouble chain = ListMath.rescale(ListMath.multiply(ListMath.add(ListMath.subtract(
+                ListMath.add(data, 1.0), data2), data), data2), 2.0, -1.0);
+        
+        System.out.println("Lazy chain, read once");
+        ListBenchmark.profileListDouble(chain, nIterations);
+        
+        System.out.println("Materialized chain, read once");
+        long startTime = System.nanoTime();
+        for (int i = 0; i < nIterations; i++) {
+            double sum = 0;
+            ListDouble values = ListMath.materialize(chain);
+            for (int n = 0; n < values.size(); n++) {
+                sum += values.getDouble(n);
+            }
+            if (sum == 0) {
+                System.out.println("Unexpected value " + sum);
+            }
+        }
+        long stopTime = System.nanoTime();
+        System.out.println("Materialize and iterate: " + (stopTime - startTime) / nIterations +" ns/iter - " +
+                (stopTime - startTime) / nIterations / nSamples + " ns/sample");
+        
+        System.out.println("Materialized chain, read many times");
+        ListBenchmark.profileListDouble(ListMath.materialize(chain), nIterations);
+    }
+}
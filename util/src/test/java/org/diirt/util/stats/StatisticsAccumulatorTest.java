@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.util.stats;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class StatisticsAccumulatorTest {
+    
+    @Test
+    public void add1() {
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        assertThat(accumulator.toStatistics(), nullValue());
+        for (double value : new double[] {1, 3, 5, Double.NaN, -1, 7}) {
+            accumulator.add(value);
+        }
+        Statistics stats = accumulator.toStatistics();
+        assertThat(stats.getAverage(), equalTo(3.0));
+        assertThat(stats.getStdDev(), equalTo(2.8284271247461903));
+        assertThat(stats.getRange().getMinimum(), equalTo(-1.0));
+        assertThat(stats.getRange().getMaximum(), equalTo(7.0));
+        assertThat(stats.getCount(), equalTo(5));
+    }
+    
+    @Test
+    public void add2() {
+        // Values with a large offset lose all precision with the sum of squares
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        accumulator.add(new double[] {1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16}, 0, 4);
+        Statistics stats = accumulator.toStatistics();
+        assertThat(stats.getAverage(), equalTo(1e9 + 10));
+        assertThat(stats.getStdDev(), closeTo(Math.sqrt(22.5), 1e-9));
+    }
+    
+    @Test
+    public void merge1() {
+        Random rand = new Random(1);
+        double[] values = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rand.nextGaussian() * 3 + 100;
+        }
+        StatisticsAccumulator all = new StatisticsAccumulator();
+        for (double value : values) {
+            all.add(value);
+        }
+        StatisticsAccumulator first = new StatisticsAccumulator();
+        first.add(values, 0, 300);
+        StatisticsAccumulator second = new StatisticsAccumulator();
+        second.add(values, 300, 1000);
+        first.add(second);
+        first.add(new StatisticsAccumulator());
+        Statistics expected = all.toStatistics();
+        Statistics merged = first.toStatistics();
+        assertThat(merged.getCount(), equalTo(1000));
+        assertThat(merged.getAverage(), closeTo(expected.getAverage(), 1e-12));
+        assertThat(merged.getStdDev(), closeTo(expected.getStdDev(), 1e-12));
+        assertThat(merged.getRange().getMinimum(), equalTo(expected.getRange().getMinimum()));
+        assertThat(merged.getRange().getMaximum(), equalTo(expected.getRange().getMaximum()));
+    }
+    
+    @Test
+    public void clear1() {
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        accumulator.add(1.0);
+        accumulator.clear();
+        assertThat(accumulator.getCount(), equalTo(0));
+        assertThat(accumulator.toStatistics(), nullValue());
+        accumulator.add(2.0);
+        assertThat(accumulator.toStatistics().getRange().getMinimum(), equalTo(2.0));
+    }
+}
@@ -8,6 +8,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.diirt.util.array.ArrayDouble;
+import org.diirt.util.array.CircularBufferDouble;
+import org.diirt.util.array.CollectionNumbers;
+import org.diirt.util.array.ListDouble;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
@@ -73,4 +76,79 @@ public class StatisticsUtilTest {
         assertThat(stats.getRange().getMaximum(), equalTo(7.0));
         assertThat(stats.getCount(), equalTo(5));
     }
+    
+    @Test
+    public void statisticsOf6() {
+        // Large enough to be split in chunks
+        final int size = 1000000;
+        ListDouble data = new ListDouble() {
+
+            @Override
+            public double getDouble(int index) {
+                return index % 7 == 0 ? Double.NaN : index % 1000;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+        Statistics stats = StatisticsUtil.statisticsOf(data);
+        double[] copy = new double[size];
+        for (int i = 0; i < size; i++) {
+            copy[i] = data.getDouble(i);
+        }
+        StatisticsAccumulator expected = new StatisticsAccumulator();
+        for (double value : copy) {
+            expected.add(value);
+        }
+        assertThat(stats.getCount(), equalTo(expected.getCount()));
+        assertThat(Math.abs(stats.getAverage() - expected.toStatistics().getAverage()) < 1e-9, equalTo(true));
+        assertThat(Math.abs(stats.getStdDev() - expected.toStatistics().getStdDev()) < 1e-9, equalTo(true));
+        assertThat(stats.getRange().getMinimum(), equalTo(0.0));
+        assertThat(stats.getRange().getMaximum(), equalTo(999.0));
+        assertThat(StatisticsUtil.statisticsOf(copy).getAverage(), equalTo(stats.getAverage()));
+    }
+    
+    @Test
+    public void statisticsOf7() {
+        ArrayDouble data = new ArrayDouble(1, 3, 5, -1, 7);
+        Statistics stats = StatisticsUtil.statisticsOf(data);
+        assertThat(StatisticsUtil.statisticsOf(data), sameInstance(stats));
+        assertThat(StatisticsUtil.statisticsOf(new ArrayDouble(Double.NaN)), nullValue());
+    }
+    
+    @Test
+    public void statisticsOf8() {
+        // Writable arrays are not cached
+        double[] values = new double[] {1, 3, 5};
+        ArrayDouble data = new ArrayDouble(values, false);
+        assertThat(StatisticsUtil.statisticsOf(data).getAverage(), equalTo(3.0));
+        data.setDouble(0, 4);
+        assertThat(StatisticsUtil.statisticsOf(data).getAverage(), equalTo(4.0));
+    }
+    
+    @Test
+    public void statisticsOf9() {
+        CircularBufferDouble coll = new CircularBufferDouble(2500);
+        assertThat(StatisticsUtil.statisticsOf(coll), nullValue());
+        for (int i = 0; i < 10000; i++) {
+            coll.addDouble(i % 3000);
+            if (i % 777 == 0 || i == 9999) {
+                Statistics stats = StatisticsUtil.statisticsOf(coll);
+                Statistics expected = StatisticsUtil.statisticsOf(CollectionNumbers.doubleArrayCopyOf(coll));
+                assertThat(stats.getCount(), equalTo(expected.getCount()));
+                assertThat(Math.abs(stats.getAverage() - expected.getAverage()) < 1e-9, equalTo(true));
+                assertThat(Math.abs(stats.getStdDev() - expected.getStdDev()) < 1e-9, equalTo(true));
+                assertThat(stats.getRange().getMinimum(), equalTo(expected.getRange().getMinimum()));
+                assertThat(stats.getRange().getMaximum(), equalTo(expected.getRange().getMaximum()));
+            }
+        }
+        coll.clear();
+        assertThat(StatisticsUtil.statisticsOf(coll), nullValue());
+        coll.addDouble(Double.NaN);
+        assertThat(StatisticsUtil.statisticsOf(coll), nullValue());
+        coll.addDouble(4.0);
+        assertThat(StatisticsUtil.statisticsOf(coll).getAverage(), equalTo(4.0));
+    }
 }
@@ -5,6 +5,7 @@
 package org.diirt.util.text;
 
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.util.Arrays;
 import java.util.List;
 import org.diirt.util.array.ArrayDouble;
@@ -234,4 +235,105 @@ public class CsvParserTest {
         assertThat(result.getColumnValues().get(1), equalTo((Object) new ArrayDouble(1, Double.NaN, Double.NaN, 4, Double.NaN)));
         assertThat(result.getColumnValues().get(2), equalTo((Object) new ArrayDouble(1,2,3, Double.NaN, Double.NaN)));
     }
-}
\ No newline at end of file
+
+    private static String largeTable(int nRows) {
+        StringBuilder text = new StringBuilder("Name,Value,Index\r\n");
+        for (int i = 0; i < nRows; i++) {
+            text.append("\"Row ").append(i).append("\",").append(i * 0.5).append(',').append(i).append("\r\n");
+        }
+        return text.toString();
+    }
+    
+    @Test
+    public void parseLargeTable() throws Exception {
+        int nRows = CsvParser.SAMPLE_LINES + 3 * CsvParser.BATCH_LINES + 17;
+        String text = largeTable(nRows);
+        for (CsvParser parser : Arrays.asList(CsvParser.AUTOMATIC, CsvParser.AUTOMATIC.withParallelism(4))) {
+            CsvParserResult result = parser.parse(new StringReader(text));
+            assertThat(result.isParsingSuccessful(), equalTo(true));
+            assertThat(result.getRowCount(), equalTo(nRows));
+            assertThat(result.getColumnNames(), equalTo(Arrays.asList("Name", "Value", "Index")));
+            assertThat((Object) result.getColumnTypes().get(0), equalTo((Object) String.class));
+            assertThat((Object) result.getColumnTypes().get(1), equalTo((Object) double.class));
+            List<?> names = (List<?>) result.getColumnValues().get(0);
+            ListNumber values = (ListNumber) result.getColumnValues().get(1);
+            ListNumber indexes = (ListNumber) result.getColumnValues().get(2);
+            assertThat(names.size(), equalTo(nRows));
+            for (int i = 0; i < nRows; i++) {
+                assertThat(names.get(i), equalTo((Object) ("Row " + i)));
+                assertThat(values.getDouble(i), equalTo(i * 0.5));
+                assertThat(indexes.getDouble(i), equalTo((double) i));
+            }
+        }
+    }
+    
+    @Test
+    public void parseLargeTableMismatch() throws Exception {
+        int nRows = CsvParser.SAMPLE_LINES + 2 * CsvParser.BATCH_LINES;
+        String text = largeTable(nRows) + "\"Last\",1\n";
+        for (CsvParser parser : Arrays.asList(CsvParser.AUTOMATIC, CsvParser.AUTOMATIC.withParallelism(3))) {
+            CsvParserResult result = parser.parse(new StringReader(text));
+            assertThat(result.isParsingSuccessful(), equalTo(false));
+            assertThat(result.getMessage(), equalTo("Parsing failed: number of columns not constant. Using separator ',', line " + (nRows + 2)));
+        }
+    }
+    
+    @Test
+    public void parseLargeTableTextAfterSample() throws Exception {
+        int nRows = CsvParser.SAMPLE_LINES + 10;
+        String text = largeTable(nRows) + "\"Last\",,unknown\n";
+        CsvParserResult result = CsvParser.AUTOMATIC.parse(new StringReader(text));
+        assertThat(result.isParsingSuccessful(), equalTo(true));
+        assertThat((Object) result.getColumnTypes().get(1), equalTo((Object) double.class));
+        assertThat((Object) result.getColumnTypes().get(2), equalTo((Object) String.class));
+        List<?> indexes = (List<?>) result.getColumnValues().get(2);
+        assertThat(indexes.get(0), equalTo((Object) "0"));
+        assertThat(indexes.get(nRows - 1), equalTo((Object) Integer.toString(nRows - 1)));
+        assertThat(indexes.get(nRows), equalTo((Object) "unknown"));
+        assertThat(((ListNumber) result.getColumnValues().get(1)).getDouble(nRows), equalTo(Double.NaN));
+    }
+
+    @Test
+    public void parseLargeTableTextAfterSampleTokens() throws Exception {
+        // The text of the numbers does not depend on where the column turns to text
+        List<String> numbers = Arrays.asList("000", "1.50", "NaN", "1e10", "", "-0", "3", "-2", "0.25", "123456789012");
+        int nRows = CsvParser.SAMPLE_LINES + 2 * CsvParser.BATCH_LINES;
+        StringBuilder text = new StringBuilder("Name,Value\n");
+        for (int i = 0; i < nRows; i++) {
+            text.append(i).append(',').append(numbers.get(i % numbers.size())).append('\n');
+        }
+        text.append("Last,text\n");
+        for (CsvParser parser : Arrays.asList(CsvParser.AUTOMATIC, CsvParser.AUTOMATIC.withParallelism(3))) {
+            CsvParserResult result = parser.parse(new StringReader(text.toString()));
+            assertThat(result.isParsingSuccessful(), equalTo(true));
+            assertThat((Object) result.getColumnTypes().get(1), equalTo((Object) String.class));
+            List<?> values = (List<?>) result.getColumnValues().get(1);
+            assertThat(values.size(), equalTo(nRows + 1));
+            for (int i = 0; i < nRows; i++) {
+                assertThat(values.get(i), equalTo((Object) numbers.get(i % numbers.size())));
+            }
+            assertThat(values.get(nRows), equalTo((Object) "text"));
+        }
+    }
+
+    @Test
+    public void tokenize() {
+        CsvParser.Tokens tokens = new CsvParser.Tokens();
+        CsvParser.tokenize(",a,\"b,\"\"c\"\"\",", ',', tokens);
+        assertThat(tokens.size, equalTo(4));
+        assertThat(Arrays.asList(tokens.values).subList(0, 4), equalTo(Arrays.asList("", "a", "b,\"c\"", "")));
+        assertThat(tokens.quoted[2], equalTo(true));
+        CsvParser.tokenize("\"a\"b,c", ',', tokens);
+        assertThat(tokens.size, equalTo(1));
+    }
+    
+    @Test
+    public void isTokenNumberParsable() {
+        for (String token : Arrays.asList("0", "-1", "+1.5", ".5", "1e10", "1.2E-3", "NaN")) {
+            assertThat(token, CsvParser.isTokenNumberParsable(token), equalTo(true));
+        }
+        for (String token : Arrays.asList("1.", "-", "e5", "1e", "1e+", "nan", "1,2", " 1", "Infinity", "0x10")) {
+            assertThat(token, CsvParser.isTokenNumberParsable(token), equalTo(false));
+        }
+    }
+}
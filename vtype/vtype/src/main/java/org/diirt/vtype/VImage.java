@@ -53,7 +53,13 @@ public interface VImage extends VType {
     public int getWidth();
 
     /**
-     * Image buffer;
+     * Image buffer; not a copy.
+     * <p>
+     * The buffer may be shared with the producer of the image, which may
+     * reuse it for a later image once this VImage is not referenced anymore.
+     * Callers must not modify the buffer, nor keep it longer than
+     * this VImage: copy it, for example with {@link ValueUtil#toImage(org.diirt.vtype.VImage) },
+     * if it is needed afterwards.
      *
      * @return image buffer
      */
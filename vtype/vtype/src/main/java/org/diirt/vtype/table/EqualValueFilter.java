@@ -45,6 +45,22 @@ public class EqualValueFilter {
         }
     }
     
+    List<VTable> getTables() {
+        return tables;
+    }
+
+    int getColumnIndex(int table) {
+        return columnIndexes[table];
+    }
+
+    /**
+     * The type used for the comparison: double.class for all numeric
+     * columns, String.class otherwise.
+     */
+    Class<?> getType() {
+        return type;
+    }
+    
     public boolean filterRow(int[] rowIndexes) {
         if (type == double.class) {
             double value = ((ListNumber) tables.get(0).getColumnData(columnIndexes[0])).getDouble(rowIndexes[0]);
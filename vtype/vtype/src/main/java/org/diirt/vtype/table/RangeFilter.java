@@ -6,6 +6,7 @@ package org.diirt.vtype.table;
 
 import java.util.List;
 import java.util.Objects;
+import org.diirt.util.array.CollectionNumbers;
 import org.diirt.util.array.ListNumber;
 import org.diirt.vtype.VNumber;
 import org.diirt.vtype.VString;
@@ -43,6 +44,52 @@ class RangeFilter {
         this.max = max;
     }
     
+    int getColumnIndex() {
+        return columnIndex;
+    }
+    
+    /**
+     * Evaluates the filter on all the rows. The column is scanned directly
+     * if it wraps an array.
+     * 
+     * @return the matching rows
+     */
+    RowSelection select() {
+        RowSelection selection = new RowSelection(table.getRowCount());
+        if (min instanceof VNumber) {
+            double minValue = ((VNumber) min).getValue().doubleValue();
+            double maxValue = ((VNumber) max).getValue().doubleValue();
+            ListNumber columnData = (ListNumber) table.getColumnData(columnIndex);
+            double[] array = CollectionNumbers.wrappedDoubleArray(columnData);
+            if (array != null) {
+                for (int i = 0; i < array.length; i++) {
+                    if (array[i] >= minValue && array[i] < maxValue) {
+                        selection.set(i);
+                    }
+                }
+            } else {
+                for (int i = 0; i < columnData.size(); i++) {
+                    double columnValue = columnData.getDouble(i);
+                    if (columnValue >= minValue && columnValue < maxValue) {
+                        selection.set(i);
+                    }
+                }
+            }
+        } else {
+            String minValue = ((VString) min).getValue();
+            String maxValue = ((VString) max).getValue();
+            @SuppressWarnings("unchecked")
+            List<String> columnData = (List<String>) table.getColumnData(columnIndex);
+            for (int i = 0; i < columnData.size(); i++) {
+                String columnValue = columnData.get(i);
+                if (minValue.compareTo(columnValue) <= 0 && maxValue.compareTo(columnValue) > 0) {
+                    selection.set(i);
+                }
+            }
+        }
+        return selection;
+    }
+    
     public boolean filterRow(int rowIndex) {
         if (min instanceof VNumber) {
             double columnValue = ((ListNumber) table.getColumnData(columnIndex)).getDouble(rowIndex);
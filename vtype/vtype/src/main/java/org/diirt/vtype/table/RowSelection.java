@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.vtype.table;
+
+import org.diirt.util.array.ArrayInt;
+import org.diirt.util.array.ListInt;
+
+/**
+ * The rows of a table that satisfy a condition, stored as a bitmap.
+ * <p>
+ * Selections on the same table can be combined with {@link #and(RowSelection)}
+ * and {@link #or(RowSelection)}, which work on 64 rows at a time, and then
+ * applied to the table with {@link VTableFactory#select(org.diirt.vtype.VTable, RowSelection)}.
+ * Selections are immutable once returned.
+ *
+ * @author carcassi
+ */
+public final class RowSelection {
+
+    private final int rowCount;
+    private final long[] words;
+
+    RowSelection(int rowCount) {
+        this.rowCount = rowCount;
+        this.words = new long[(rowCount + 63) >>> 6];
+    }
+
+    void set(int row) {
+        words[row >>> 6] |= 1L << row;
+    }
+
+    /**
+     * The number of rows of the table.
+     *
+     * @return the number of rows, selected or not
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Whether the given row is selected.
+     *
+     * @param row the index of the row
+     * @return true if selected
+     */
+    public boolean isSelected(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds (" + rowCount + " rows)");
+        }
+        return (words[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * The number of selected rows.
+     *
+     * @return the number of selected rows
+     */
+    public int getSelectedCount() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * The rows selected both by this and the other selection.
+     *
+     * @param other a selection on the same table
+     * @return a new selection
+     */
+    public RowSelection and(RowSelection other) {
+        checkSameSize(other);
+        RowSelection result = new RowSelection(rowCount);
+        for (int i = 0; i < words.length; i++) {
+            result.words[i] = words[i] & other.words[i];
+        }
+        return result;
+    }
+
+    /**
+     * The rows selected by this or the other selection.
+     *
+     * @param other a selection on the same table
+     * @return a new selection
+     */
+    public RowSelection or(RowSelection other) {
+        checkSameSize(other);
+        RowSelection result = new RowSelection(rowCount);
+        for (int i = 0; i < words.length; i++) {
+            result.words[i] = words[i] | other.words[i];
+        }
+        return result;
+    }
+
+    private void checkSameSize(RowSelection other) {
+        if (other.rowCount != rowCount) {
+            throw new IllegalArgumentException("Selections must be on tables of the same size (" + rowCount + " and " + other.rowCount + ")");
+        }
+    }
+
+    /**
+     * The indexes of the selected rows.
+     *
+     * @return the indexes in ascending order
+     */
+    public ListInt toIndexes() {
+        int[] indexes = new int[getSelectedCount()];
+        int n = 0;
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                indexes[n++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return new ArrayInt(indexes);
+    }
+}
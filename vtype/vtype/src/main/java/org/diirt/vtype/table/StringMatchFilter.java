@@ -33,6 +33,23 @@ class StringMatchFilter {
         this.substring = substring;
     }
     
+    /**
+     * Evaluates the filter on all the rows.
+     * 
+     * @return the matching rows
+     */
+    RowSelection select() {
+        RowSelection selection = new RowSelection(table.getRowCount());
+        @SuppressWarnings("unchecked")
+        List<String> columnData = (List<String>) table.getColumnData(columnIndex);
+        for (int i = 0; i < columnData.size(); i++) {
+            if (columnData.get(i).contains(substring)) {
+                selection.set(i);
+            }
+        }
+        return selection;
+    }
+    
     public boolean filterRow(int rowIndex) {
         @SuppressWarnings("unchecked")
         List<String> columnData = (List<String>) table.getColumnData(columnIndex);
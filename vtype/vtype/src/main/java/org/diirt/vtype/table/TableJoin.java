@@ -0,0 +1,307 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.vtype.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.diirt.util.array.BufferInt;
+import org.diirt.util.array.ListInt;
+import org.diirt.util.array.ListNumber;
+import org.diirt.vtype.VTable;
+
+/**
+ * Finds the rows of a natural join: the combinations of one row from each
+ * table that have equal values in the common columns.
+ * <p>
+ * The other tables are indexed by the values of the common columns, smallest
+ * table first, each index keeping only the values found in the previous ones.
+ * The rows of the first table are then looked up in the indexes. If the only
+ * common column is numeric and sorted in all tables, the tables are merged
+ * instead. In both cases the combinations are in the same order as the ones
+ * of a nested loop on the rows of all the tables.
+ *
+ * @author carcassi
+ */
+class TableJoin {
+
+    // Key of the rows that cannot match any other row (NaN)
+    static final Object NO_MATCH = new Object();
+
+    private TableJoin() {
+    }
+
+    /**
+     * The indexes of the rows of each table in the joined table.
+     *
+     * @param tables the tables to join
+     * @param filters the equality conditions on the common columns
+     * @return for each table, the index of the row in each joined row
+     */
+    static List<BufferInt> rowIndexes(VTable[] tables, List<EqualValueFilter> filters) {
+        return rowIndexes(tables, filters, null);
+    }
+
+    /**
+     * The indexes of the rows of each table in the joined table. If a
+     * cache is given and there is only one common column, the indexes of
+     * the column are taken from the cache.
+     *
+     * @param tables the tables to join
+     * @param filters the equality conditions on the common columns
+     * @param cache the index cache; can be null
+     * @return for each table, the index of the row in each joined row
+     */
+    static List<BufferInt> rowIndexes(VTable[] tables, List<EqualValueFilter> filters, VTableIndexCache cache) {
+        List<BufferInt> rowIndexes = new ArrayList<>();
+        for (int i = 0; i < tables.length; i++) {
+            rowIndexes.add(new BufferInt());
+        }
+        for (VTable table : tables) {
+            if (table.getRowCount() == 0) {
+                return rowIndexes;
+            }
+        }
+
+        if (cache != null && filters.size() == 1) {
+            cachedHashJoin(tables, filters.get(0), cache, rowIndexes);
+            return rowIndexes;
+        }
+
+        if (filters.size() == 1 && filters.get(0).getType() == double.class) {
+            ListNumber[] keys = new ListNumber[tables.length];
+            boolean sorted = true;
+            for (int i = 0; i < tables.length && sorted; i++) {
+                keys[i] = (ListNumber) tables[i].getColumnData(filters.get(0).getColumnIndex(i));
+                sorted = isSorted(keys[i]);
+            }
+            if (sorted) {
+                mergeJoin(keys, rowIndexes);
+                return rowIndexes;
+            }
+        }
+
+        hashJoin(tables, filters, rowIndexes);
+        return rowIndexes;
+    }
+
+    private static boolean isSorted(ListNumber values) {
+        double previous = values.getDouble(0);
+        if (Double.isNaN(previous)) {
+            return false;
+        }
+        for (int i = 1; i < values.size(); i++) {
+            double value = values.getDouble(i);
+            // False also for NaN
+            if (!(previous <= value)) {
+                return false;
+            }
+            previous = value;
+        }
+        return true;
+    }
+
+    private static void mergeJoin(ListNumber[] keys, List<BufferInt> rowIndexes) {
+        int[] positions = new int[keys.length];
+        ListInt[] groups = new ListInt[keys.length];
+        while (true) {
+            double max = keys[0].getDouble(positions[0]);
+            for (int i = 1; i < keys.length; i++) {
+                max = Math.max(max, keys[i].getDouble(positions[i]));
+            }
+
+            // Skip the smaller values
+            boolean match = true;
+            for (int i = 0; i < keys.length; i++) {
+                while (positions[i] < keys[i].size() && keys[i].getDouble(positions[i]) < max) {
+                    positions[i]++;
+                }
+                if (positions[i] == keys[i].size()) {
+                    return;
+                }
+                if (keys[i].getDouble(positions[i]) != max) {
+                    match = false;
+                }
+            }
+
+            if (match) {
+                for (int i = 0; i < keys.length; i++) {
+                    int end = positions[i] + 1;
+                    while (end < keys[i].size() && keys[i].getDouble(end) == max) {
+                        end++;
+                    }
+                    groups[i] = range(positions[i], end);
+                    positions[i] = end;
+                }
+                addCombinations(groups, rowIndexes);
+                for (int i = 0; i < keys.length; i++) {
+                    if (positions[i] == keys[i].size()) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void hashJoin(final VTable[] tables, List<EqualValueFilter> filters, List<BufferInt> rowIndexes) {
+        Integer[] order = new Integer[tables.length - 1];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i + 1;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Integer.compare(tables[o1].getRowCount(), tables[o2].getRowCount());
+            }
+        });
+
+        List<Map<Object, BufferInt>> indexes = new ArrayList<>();
+        for (int i = 0; i < tables.length; i++) {
+            indexes.add(null);
+        }
+        Map<Object, BufferInt> previousIndex = null;
+        for (int nTable : order) {
+            Map<Object, BufferInt> index = new HashMap<>();
+            for (int row = 0; row < tables[nTable].getRowCount(); row++) {
+                Object key = key(filters, nTable, row);
+                if (key == NO_MATCH || (previousIndex != null && !previousIndex.containsKey(key))) {
+                    continue;
+                }
+                BufferInt rows = index.get(key);
+                if (rows == null) {
+                    rows = new BufferInt();
+                    index.put(key, rows);
+                }
+                rows.addInt(row);
+            }
+            if (index.isEmpty()) {
+                return;
+            }
+            indexes.set(nTable, index);
+            previousIndex = index;
+        }
+
+        ListInt[] groups = new ListInt[tables.length];
+        for (int row = 0; row < tables[0].getRowCount(); row++) {
+            Object key = key(filters, 0, row);
+            if (key == NO_MATCH || !previousIndex.containsKey(key)) {
+                continue;
+            }
+            groups[0] = range(row, row + 1);
+            for (int nTable = 1; nTable < tables.length; nTable++) {
+                groups[nTable] = indexes.get(nTable).get(key);
+            }
+            addCombinations(groups, rowIndexes);
+        }
+    }
+
+    private static void cachedHashJoin(VTable[] tables, EqualValueFilter filter, VTableIndexCache cache, List<BufferInt> rowIndexes) {
+        List<Map<Object, BufferInt>> indexes = new ArrayList<>();
+        indexes.add(null);
+        for (int nTable = 1; nTable < tables.length; nTable++) {
+            indexes.add(cache.buckets(tables[nTable], filter.getColumnIndex(nTable)));
+        }
+
+        ListInt[] groups = new ListInt[tables.length];
+        for (int row = 0; row < tables[0].getRowCount(); row++) {
+            Object key = value(filter, 0, row);
+            boolean match = key != NO_MATCH;
+            for (int nTable = 1; nTable < tables.length && match; nTable++) {
+                groups[nTable] = indexes.get(nTable).get(key);
+                match = groups[nTable] != null;
+            }
+            if (match) {
+                groups[0] = range(row, row + 1);
+                addCombinations(groups, rowIndexes);
+            }
+        }
+    }
+
+    /**
+     * The values of the common columns for the given row, such that rows
+     * that match according to the filters have equal keys.
+     */
+    private static Object key(List<EqualValueFilter> filters, int table, int row) {
+        if (filters.size() == 1) {
+            return value(filters.get(0), table, row);
+        }
+        Object[] values = new Object[filters.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = value(filters.get(i), table, row);
+            if (values[i] == NO_MATCH) {
+                return NO_MATCH;
+            }
+        }
+        return Arrays.asList(values);
+    }
+
+    private static Object value(EqualValueFilter filter, int table, int row) {
+        Object columnData = filter.getTables().get(table).getColumnData(filter.getColumnIndex(table));
+        return key(columnData, filter.getType() == double.class, row);
+    }
+
+    /**
+     * The key of a row of a numeric or string column: values that are equal
+     * have equal keys. Returns {@link #NO_MATCH} for NaN.
+     */
+    static Object key(Object columnData, boolean numeric, int row) {
+        if (numeric) {
+            return numberKey(((ListNumber) columnData).getDouble(row));
+        }
+        return ((List<?>) columnData).get(row);
+    }
+
+    static Object numberKey(double value) {
+        if (Double.isNaN(value)) {
+            return NO_MATCH;
+        }
+        // 0.0 and -0.0 are equal
+        return value == 0.0 ? 0.0 : value;
+    }
+
+    /**
+     * Adds all the combinations of one row from each group, in the order
+     * of a nested loop.
+     */
+    private static void addCombinations(ListInt[] groups, List<BufferInt> rowIndexes) {
+        int[] positions = new int[groups.length];
+        while (true) {
+            for (int i = 0; i < groups.length; i++) {
+                rowIndexes.get(i).addInt(groups[i].getInt(positions[i]));
+            }
+            int offset = groups.length - 1;
+            while (offset >= 0) {
+                positions[offset]++;
+                if (positions[offset] < groups[offset].size()) {
+                    break;
+                }
+                positions[offset] = 0;
+                offset--;
+            }
+            if (offset < 0) {
+                return;
+            }
+        }
+    }
+
+    private static ListInt range(final int start, final int end) {
+        return new ListInt() {
+
+            @Override
+            public int getInt(int index) {
+                return start + index;
+            }
+
+            @Override
+            public int size() {
+                return end - start;
+            }
+        };
+    }
+}
@@ -42,6 +42,10 @@ public class VTableFactory {
     }
     
     public static VTable join(VTable... tables) {
+        return join(tables, null);
+    }
+    
+    static VTable join(VTable[] tables, VTableIndexCache cache) {
         if (tables.length == 0) {
             return null;
         }
@@ -83,41 +87,7 @@ public class VTableFactory {
         }
         
         // Find rows
-        boolean done = false;
-        List<BufferInt> rowIndexes = new ArrayList<>();
-        for (int i = 0; i < tables.length; i++) {
-            rowIndexes.add(new BufferInt());
-            if (tables[i].getRowCount() == 0) {
-                done = true;
-            }
-        }
-        int[] currentIndexes = new int[tables.length];
-        while (!done) {
-            boolean match = true;
-            for (EqualValueFilter filter : filters) {
-                match = match && filter.filterRow(currentIndexes);
-            }
-            if (match) {
-                for (int i = 0; i < currentIndexes.length; i++) {
-                    rowIndexes.get(i).addInt(currentIndexes[i]);
-                }
-            }
-            boolean needsIncrement = true;
-            int offset = currentIndexes.length - 1;
-            while (needsIncrement) {
-                currentIndexes[offset]++;
-                if (currentIndexes[offset] == tables[offset].getRowCount()) {
-                    currentIndexes[offset] = 0;
-                    offset--;
-                    if (offset == -1) {
-                        done = true;
-                        needsIncrement = false;
-                    }
-                } else {
-                    needsIncrement = false;
-                }
-            }
-        }
+        List<BufferInt> rowIndexes = TableJoin.rowIndexes(tables, filters, cache);
         
         List<String> columnNames = new ArrayList<>();
         List<Class<?>> columnTypes = new ArrayList<>();
@@ -568,38 +538,66 @@ public class VTableFactory {
     }
     
     public static VTable tableValueFilter(VTable table, String columnName, Object value) {
-        ValueFilter valueFilter = new ValueFilter(table, columnName, value);
-        BufferInt indexes = new BufferInt();
-        for (int i = 0; i < table.getRowCount(); i++) {
-            if (valueFilter.filterRow(i)) {
-                indexes.addInt(i);
-            }
-        }
-        
-        return extractRows(table, indexes);
+        return extractRows(table, valueSelection(table, columnName, value).toIndexes());
     }
     
     public static VTable tableStringMatchFilter(VTable table, String columnName, String substring) {
-        StringMatchFilter filter = new StringMatchFilter(table, columnName, substring);
-        BufferInt indexes = new BufferInt();
-        for (int i = 0; i < table.getRowCount(); i++) {
-            if (filter.filterRow(i)) {
-                indexes.addInt(i);
-            }
-        }
-        
-        return extractRows(table, indexes);
+        return extractRows(table, stringMatchSelection(table, columnName, substring).toIndexes());
     }
     
     public static VTable tableRangeFilter(VTable table, String columnName, Object min, Object max) {
-        RangeFilter valueFilter = new RangeFilter(table, columnName, min, max);
-        BufferInt indexes = new BufferInt();
-        for (int i = 0; i < table.getRowCount(); i++) {
-            if (valueFilter.filterRow(i)) {
-                indexes.addInt(i);
-            }
-        }
-        
-        return extractRows(table, indexes);
+        return extractRows(table, rangeSelection(table, columnName, min, max).toIndexes());
+    }
+    
+    /**
+     * The rows where the column is equal to the value.
+     * 
+     * @param table the table
+     * @param columnName the name of a numeric or string column
+     * @param value a VNumber or a VString
+     * @return the matching rows
+     */
+    public static RowSelection valueSelection(VTable table, String columnName, Object value) {
+        return new ValueFilter(table, columnName, value).select();
+    }
+    
+    /**
+     * The rows where the column contains the substring.
+     * 
+     * @param table the table
+     * @param columnName the name of a string column
+     * @param substring the text to match
+     * @return the matching rows
+     */
+    public static RowSelection stringMatchSelection(VTable table, String columnName, String substring) {
+        return new StringMatchFilter(table, columnName, substring).select();
+    }
+    
+    /**
+     * The rows where the column is greater or equal to min and less than max.
+     * 
+     * @param table the table
+     * @param columnName the name of a numeric or string column
+     * @param min a VNumber or a VString
+     * @param max a VNumber or a VString
+     * @return the matching rows
+     */
+    public static RowSelection rangeSelection(VTable table, String columnName, Object min, Object max) {
+        return new RangeFilter(table, columnName, min, max).select();
+    }
+    
+    /**
+     * A view of the table with only the selected rows. The data is not
+     * copied: the columns of the result read through to the original table.
+     * 
+     * @param table the table
+     * @param selection a selection on the table
+     * @return the selected rows
+     */
+    public static VTable select(VTable table, RowSelection selection) {
+        if (selection.getRowCount() != table.getRowCount()) {
+            throw new IllegalArgumentException("Selection is for " + selection.getRowCount() + " rows but table has " + table.getRowCount());
+        }
+        return extractRows(table, selection.toIndexes());
     }
 }
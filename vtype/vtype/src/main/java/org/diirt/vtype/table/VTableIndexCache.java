@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.vtype.table;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.diirt.util.array.ArrayInt;
+import org.diirt.util.array.BufferInt;
+import org.diirt.util.array.ListInt;
+import org.diirt.util.array.ListNumber;
+import org.diirt.util.array.ListNumbers;
+import org.diirt.util.array.SortedListView;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.VString;
+import org.diirt.vtype.VTable;
+
+/**
+ * Filters and joins tables using indexes on their columns that are kept
+ * for as long as the table is in use, so that repeating a query on
+ * the same table instance does not scan the table again.
+ * <p>
+ * Two indexes are built for each column: the rows grouped by value, for
+ * value filters and joins, and the rows sorted by value, for range filters
+ * on numeric columns. The first filter on a column scans the table, as an
+ * index would cost more than the scan for a table filtered only once: the
+ * indexes are built when the same column of the same table instance is
+ * filtered again. Joins build the rows grouped by value on first use, as
+ * the join would group them anyway. Indexes are kept per table instance,
+ * and are discarded once the table is garbage collected.
+ * The tables, like all values, must not be modified after being used
+ * with the cache.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author carcassi
+ */
+public class VTableIndexCache {
+
+    private static class ColumnIndex {
+
+        private final Object columnData;
+        private final boolean numeric;
+        private Map<Object, BufferInt> buckets;
+        // Values without NaN in ascending order, and their rows
+        private ListNumber sortedValues;
+        private ListInt sortedRows;
+        private int filterCount;
+
+        ColumnIndex(Object columnData, boolean numeric) {
+            this.columnData = columnData;
+            this.numeric = numeric;
+        }
+
+        // Whether the column was filtered before
+        synchronized boolean isFilteredAgain() {
+            filterCount++;
+            return filterCount > 1;
+        }
+
+        synchronized Map<Object, BufferInt> buckets() {
+            if (buckets == null) {
+                int size = numeric ? ((ListNumber) columnData).size() : ((List<?>) columnData).size();
+                Map<Object, BufferInt> newBuckets = new HashMap<>();
+                for (int row = 0; row < size; row++) {
+                    Object key = TableJoin.key(columnData, numeric, row);
+                    if (key != TableJoin.NO_MATCH) {
+                        BufferInt rows = newBuckets.get(key);
+                        if (rows == null) {
+                            rows = new BufferInt();
+                            newBuckets.put(key, rows);
+                        }
+                        rows.addInt(row);
+                    }
+                }
+                buckets = newBuckets;
+            }
+            return buckets;
+        }
+
+        synchronized void sort() {
+            if (sortedValues != null) {
+                return;
+            }
+            ListNumber values = (ListNumber) columnData;
+            BufferInt validRows = new BufferInt();
+            for (int row = 0; row < values.size(); row++) {
+                if (!Double.isNaN(values.getDouble(row))) {
+                    validRows.addInt(row);
+                }
+            }
+            if (validRows.size() == values.size()) {
+                SortedListView view = ListNumbers.sortedView(values);
+                sortedRows = view.getIndexes();
+                sortedValues = view;
+            } else {
+                // NaN can't be sorted: only the other rows are
+                SortedListView view = ListNumbers.sortedView(ListNumbers.listView(values, validRows));
+                int[] rows = new int[view.size()];
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = validRows.getInt(view.getIndexes().getInt(i));
+                }
+                sortedRows = new ArrayInt(rows);
+                sortedValues = view;
+            }
+        }
+    }
+
+    private final Map<VTable, Map<Integer, ColumnIndex>> indexes = new WeakHashMap<>();
+
+    private ColumnIndex columnIndex(VTable table, int column) {
+        synchronized (indexes) {
+            Map<Integer, ColumnIndex> tableIndexes = indexes.get(table);
+            if (tableIndexes == null) {
+                tableIndexes = new HashMap<>();
+                indexes.put(table, tableIndexes);
+            }
+            ColumnIndex index = tableIndexes.get(column);
+            if (index == null) {
+                index = new ColumnIndex(table.getColumnData(column), table.getColumnType(column).isPrimitive());
+                tableIndexes.put(column, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * The rows of the column grouped by value, as used by the join.
+     */
+    Map<Object, BufferInt> buckets(VTable table, int column) {
+        return columnIndex(table, column).buckets();
+    }
+
+    /**
+     * Whether an index was built for the column.
+     */
+    boolean isIndexed(VTable table, int column) {
+        ColumnIndex index = columnIndex(table, column);
+        synchronized (index) {
+            return index.buckets != null || index.sortedValues != null;
+        }
+    }
+
+    /**
+     * The number of tables that currently have indexes.
+     *
+     * @return the number of indexed tables
+     */
+    public int getIndexedTableCount() {
+        synchronized (indexes) {
+            return indexes.size();
+        }
+    }
+
+    /**
+     * The rows where the column is equal to the value. Same as
+     * {@link VTableFactory#valueSelection(org.diirt.vtype.VTable, java.lang.String, java.lang.Object) },
+     * using the rows grouped by value once the column is filtered again.
+     *
+     * @param table the table
+     * @param columnName the name of a numeric or string column
+     * @param value a VNumber or a VString
+     * @return the matching rows
+     */
+    public RowSelection valueSelection(VTable table, String columnName, Object value) {
+        ValueFilter filter = new ValueFilter(table, columnName, value);
+        ColumnIndex index = columnIndex(table, filter.getColumnIndex());
+        if (!index.isFilteredAgain()) {
+            return filter.select();
+        }
+        Object key;
+        if (value instanceof VNumber) {
+            key = TableJoin.numberKey(((VNumber) value).getValue().doubleValue());
+        } else {
+            key = ((VString) value).getValue();
+        }
+        RowSelection selection = new RowSelection(table.getRowCount());
+        BufferInt rows = index.buckets().get(key);
+        if (rows != null) {
+            for (int i = 0; i < rows.size(); i++) {
+                selection.set(rows.getInt(i));
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * The rows where the column is greater or equal to min and less than max.
+     * Same as
+     * {@link VTableFactory#rangeSelection(org.diirt.vtype.VTable, java.lang.String, java.lang.Object, java.lang.Object) },
+     * using the rows sorted by value for numeric columns once the column is
+     * filtered again.
+     *
+     * @param table the table
+     * @param columnName the name of a numeric or string column
+     * @param min a VNumber or a VString
+     * @param max a VNumber or a VString
+     * @return the matching rows
+     */
+    public RowSelection rangeSelection(VTable table, String columnName, Object min, Object max) {
+        RangeFilter filter = new RangeFilter(table, columnName, min, max);
+        if (!(min instanceof VNumber)) {
+            return filter.select();
+        }
+        double minValue = ((VNumber) min).getValue().doubleValue();
+        double maxValue = ((VNumber) max).getValue().doubleValue();
+        RowSelection selection = new RowSelection(table.getRowCount());
+        if (Double.isNaN(minValue) || Double.isNaN(maxValue)) {
+            return selection;
+        }
+
+        ColumnIndex index = columnIndex(table, filter.getColumnIndex());
+        if (!index.isFilteredAgain()) {
+            return filter.select();
+        }
+        index.sort();
+        int from = lowerBound(index.sortedValues, minValue);
+        int to = lowerBound(index.sortedValues, maxValue);
+        for (int i = from; i < to; i++) {
+            selection.set(index.sortedRows.getInt(i));
+        }
+        return selection;
+    }
+
+    private static int lowerBound(ListNumber sortedValues, double value) {
+        int low = 0;
+        int high = sortedValues.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedValues.getDouble(middle) < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The natural join of the tables. Same as {@link VTableFactory#join(org.diirt.vtype.VTable...) },
+     * using the rows grouped by value when the tables have only one common
+     * column.
+     *
+     * @param tables the tables to join
+     * @return the joined table
+     */
+    public VTable join(VTable... tables) {
+        return VTableFactory.join(tables, this);
+    }
+
+    /**
+     * The natural join of the tables.
+     *
+     * @param tables the tables to join
+     * @return the joined table
+     * @see #join(org.diirt.vtype.VTable...)
+     */
+    public VTable join(List<VTable> tables) {
+        return join(tables.toArray(new VTable[tables.size()]));
+    }
+}
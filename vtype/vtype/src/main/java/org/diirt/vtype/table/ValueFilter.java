@@ -6,6 +6,7 @@ package org.diirt.vtype.table;
 
 import java.util.List;
 import java.util.Objects;
+import org.diirt.util.array.CollectionNumbers;
 import org.diirt.util.array.ListNumber;
 import org.diirt.vtype.VNumber;
 import org.diirt.vtype.VString;
@@ -41,6 +42,47 @@ class ValueFilter {
         this.value = value;
     }
     
+    int getColumnIndex() {
+        return columnIndex;
+    }
+    
+    /**
+     * Evaluates the filter on all the rows. The column is scanned directly
+     * if it wraps an array.
+     * 
+     * @return the matching rows
+     */
+    RowSelection select() {
+        RowSelection selection = new RowSelection(table.getRowCount());
+        if (value instanceof VNumber) {
+            double target = ((VNumber) value).getValue().doubleValue();
+            ListNumber columnData = (ListNumber) table.getColumnData(columnIndex);
+            double[] array = CollectionNumbers.wrappedDoubleArray(columnData);
+            if (array != null) {
+                for (int i = 0; i < array.length; i++) {
+                    if (array[i] == target) {
+                        selection.set(i);
+                    }
+                }
+            } else {
+                for (int i = 0; i < columnData.size(); i++) {
+                    if (columnData.getDouble(i) == target) {
+                        selection.set(i);
+                    }
+                }
+            }
+        } else {
+            String target = ((VString) value).getValue();
+            List<?> columnData = (List<?>) table.getColumnData(columnIndex);
+            for (int i = 0; i < columnData.size(); i++) {
+                if (Objects.equals(columnData.get(i), target)) {
+                    selection.set(i);
+                }
+            }
+        }
+        return selection;
+    }
+    
     public boolean filterRow(int rowIndex) {
         if (value instanceof VNumber) {
             double columnValue = ((ListNumber) table.getColumnData(columnIndex)).getDouble(rowIndex);
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.vtype.table;
+
+import org.diirt.util.array.ArrayInt;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class RowSelectionTest {
+    
+    public RowSelectionTest() {
+    }
+    
+    private static RowSelection selection(int rowCount, int... rows) {
+        RowSelection selection = new RowSelection(rowCount);
+        for (int row : rows) {
+            selection.set(row);
+        }
+        return selection;
+    }
+
+    @Test
+    public void toIndexes1() {
+        RowSelection selection = selection(200, 0, 63, 64, 130, 199);
+        assertThat(selection.getRowCount(), equalTo(200));
+        assertThat(selection.getSelectedCount(), equalTo(5));
+        assertThat(selection.toIndexes(), equalTo((Object) new ArrayInt(0, 63, 64, 130, 199)));
+        assertThat(selection.isSelected(63), equalTo(true));
+        assertThat(selection.isSelected(62), equalTo(false));
+    }
+
+    @Test
+    public void toIndexes2() {
+        RowSelection selection = selection(0);
+        assertThat(selection.getSelectedCount(), equalTo(0));
+        assertThat(selection.toIndexes(), equalTo((Object) new ArrayInt()));
+    }
+
+    @Test
+    public void and1() {
+        RowSelection selection = selection(100, 1, 2, 70, 99).and(selection(100, 2, 3, 70));
+        assertThat(selection.toIndexes(), equalTo((Object) new ArrayInt(2, 70)));
+    }
+
+    @Test
+    public void or1() {
+        RowSelection selection = selection(100, 1, 2, 70, 99).or(selection(100, 2, 3, 70));
+        assertThat(selection.toIndexes(), equalTo((Object) new ArrayInt(1, 2, 3, 70, 99)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void and2() {
+        selection(100, 1).and(selection(101, 1));
+    }
+}
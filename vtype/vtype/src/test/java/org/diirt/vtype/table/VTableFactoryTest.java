@@ -7,8 +7,11 @@ package org.diirt.vtype.table;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import org.diirt.util.array.ArrayDouble;
 import org.diirt.util.array.ArrayInt;
+import org.diirt.util.array.BufferInt;
 import org.diirt.vtype.AlarmSeverity;
 import org.diirt.vtype.VDouble;
 import org.diirt.vtype.VString;
@@ -164,6 +167,99 @@ public class VTableFactoryTest {
         assertThat(table.getColumnData(3), equalTo((Object) new ArrayDouble()));
     }
     
+    @Test
+    public void join5() {
+        // Many to many on three tables
+        VTable table1 = newVTable(column("Key", newVDoubleArray(new ArrayDouble(2,1,2), alarmNone(), timeNow(), displayNone())),
+                                 column("A", newVDoubleArray(new ArrayDouble(10,20,30), alarmNone(), timeNow(), displayNone())));
+        VTable table2 = newVTable(column("Key", newVDoubleArray(new ArrayDouble(2,2,3), alarmNone(), timeNow(), displayNone())),
+                                 column("B", newVDoubleArray(new ArrayDouble(1,2,3), alarmNone(), timeNow(), displayNone())));
+        VTable table3 = newVTable(column("C", newVDoubleArray(new ArrayDouble(100,200), alarmNone(), timeNow(), displayNone())),
+                                 column("Key", newVDoubleArray(new ArrayDouble(1,2), alarmNone(), timeNow(), displayNone())));
+        VTable table = join(table1, table2, table3);
+        assertThat(table.getColumnCount(), equalTo(4));
+        assertThat(table.getRowCount(), equalTo(4));
+        assertThat(table.getColumnData(0), equalTo((Object) new ArrayDouble(2,2,2,2)));
+        assertThat(table.getColumnData(1), equalTo((Object) new ArrayDouble(10,10,30,30)));
+        assertThat(table.getColumnData(2), equalTo((Object) new ArrayDouble(1,2,1,2)));
+        assertThat(table.getColumnData(3), equalTo((Object) new ArrayDouble(200,200,200,200)));
+    }
+    
+    @Test
+    public void join6() {
+        // Sorted keys
+        VTable table1 = newVTable(column("Key", newVDoubleArray(new ArrayDouble(1,2,2,3), alarmNone(), timeNow(), displayNone())),
+                                 column("A", newVDoubleArray(new ArrayDouble(1,2,3,4), alarmNone(), timeNow(), displayNone())));
+        VTable table2 = newVTable(column("Key", newVDoubleArray(new ArrayDouble(0,2,2,3,5), alarmNone(), timeNow(), displayNone())),
+                                 column("B", newVDoubleArray(new ArrayDouble(5,6,7,8,9), alarmNone(), timeNow(), displayNone())));
+        VTable table = join(table1, table2);
+        assertThat(table.getColumnCount(), equalTo(3));
+        assertThat(table.getRowCount(), equalTo(5));
+        assertThat(table.getColumnData(0), equalTo((Object) new ArrayDouble(2,2,2,2,3)));
+        assertThat(table.getColumnData(1), equalTo((Object) new ArrayDouble(2,2,3,3,4)));
+        assertThat(table.getColumnData(2), equalTo((Object) new ArrayDouble(6,7,6,7,8)));
+    }
+    
+    @Test
+    public void join7() {
+        // Same result as the nested loop on all rows
+        Random random = new Random(1);
+        for (int n = 0; n < 20; n++) {
+            boolean sorted = n % 2 == 0;
+            VTable[] tables = new VTable[3];
+            for (int i = 0; i < tables.length; i++) {
+                int size = 20 + random.nextInt(20);
+                double[] keys = new double[size];
+                List<String> names = new ArrayList<>();
+                double[] values = new double[size];
+                for (int j = 0; j < size; j++) {
+                    keys[j] = random.nextInt(8);
+                    if (!sorted && random.nextInt(10) == 0) {
+                        keys[j] = Double.NaN;
+                    }
+                    names.add(random.nextBoolean() ? "A" : "B");
+                    values[j] = random.nextDouble();
+                }
+                if (sorted) {
+                    Arrays.sort(keys);
+                }
+                tables[i] = newVTable(column("Key", newVDoubleArray(new ArrayDouble(keys), alarmNone(), timeNow(), displayNone())),
+                                      column(sorted ? "Name" + i : "Name", newVStringArray(names, alarmNone(), timeNow())),
+                                      column("Value" + i, newVDoubleArray(new ArrayDouble(values), alarmNone(), timeNow(), displayNone())));
+            }
+            
+            List<EqualValueFilter> filters = new ArrayList<>();
+            filters.add(new EqualValueFilter(Arrays.asList(tables), new int[] {0, 0, 0}));
+            if (!sorted) {
+                filters.add(new EqualValueFilter(Arrays.asList(tables), new int[] {1, 1, 1}));
+            }
+            List<Integer> expected = new ArrayList<>();
+            int[] rows = new int[3];
+            for (rows[0] = 0; rows[0] < tables[0].getRowCount(); rows[0]++) {
+                for (rows[1] = 0; rows[1] < tables[1].getRowCount(); rows[1]++) {
+                    for (rows[2] = 0; rows[2] < tables[2].getRowCount(); rows[2]++) {
+                        boolean match = true;
+                        for (EqualValueFilter filter : filters) {
+                            match = match && filter.filterRow(rows);
+                        }
+                        if (match) {
+                            expected.addAll(Arrays.asList(rows[0], rows[1], rows[2]));
+                        }
+                    }
+                }
+            }
+            
+            List<BufferInt> rowIndexes = TableJoin.rowIndexes(tables, filters);
+            List<Integer> result = new ArrayList<>();
+            for (int row = 0; row < rowIndexes.get(0).size(); row++) {
+                for (int i = 0; i < tables.length; i++) {
+                    result.add(rowIndexes.get(i).getInt(row));
+                }
+            }
+            assertThat(result, equalTo(expected));
+        }
+    }
+    
     @Test
     public void union1() {
         VTable table1 = newVTable(column("A", newVDoubleArray(new ArrayDouble(1.0,2.0,3.0), alarmNone(), timeNow(), displayNone())),
@@ -435,4 +531,23 @@ public class VTableFactoryTest {
         assertThat(table.getColumnData(1), equalTo((Object) new ArrayDouble(1, 2)));
         assertThat(table.getColumnData(2), equalTo((Object) Arrays.asList("286", "286")));
     }
+    
+    @Test
+    public void selectRowSelection1() {
+        VTable table1 = newVTable(column("Rack", newVStringArray(Arrays.asList("A", "B", "C", "A"), alarmNone(), timeNow())),
+                                 column("Slot", newVDoubleArray(new ArrayDouble(1,2,3,4), alarmNone(), timeNow(), displayNone())),
+                                 column("CPU", newVStringArray(Arrays.asList("286", "286", "386", "486"), alarmNone(), timeNow())));
+        RowSelection rackA = valueSelection(table1, "Rack", ValueFactory.toVType("A"));
+        RowSelection lowSlots = rangeSelection(table1, "Slot", ValueFactory.toVType(1), ValueFactory.toVType(3));
+        RowSelection cpu386 = stringMatchSelection(table1, "CPU", "386");
+        assertThat(rackA.toIndexes(), equalTo((Object) new ArrayInt(0, 3)));
+        assertThat(lowSlots.toIndexes(), equalTo((Object) new ArrayInt(0, 1)));
+        
+        VTable table = select(table1, rackA.and(lowSlots).or(cpu386));
+        assertThat(table.getColumnCount(), equalTo(3));
+        assertThat(table.getRowCount(), equalTo(2));
+        assertThat(table.getColumnData(0), equalTo((Object) Arrays.asList("A", "C")));
+        assertThat(table.getColumnData(1), equalTo((Object) new ArrayDouble(1, 3)));
+        assertThat(table.getColumnData(2), equalTo((Object) Arrays.asList("286", "386")));
+    }
 }
\ No newline at end of file
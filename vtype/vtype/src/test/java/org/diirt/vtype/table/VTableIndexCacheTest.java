@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2010-14 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.vtype.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.diirt.util.array.ArrayDouble;
+import org.diirt.util.array.ArrayInt;
+import org.diirt.vtype.VTable;
+import org.diirt.vtype.ValueFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.diirt.vtype.table.VTableFactory.*;
+import static org.diirt.vtype.ValueFactory.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class VTableIndexCacheTest {
+
+    public VTableIndexCacheTest() {
+    }
+
+    private static VTable randomTable(Random random, int size) {
+        double[] values = new double[size];
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextInt(20);
+            if (random.nextInt(10) == 0) {
+                values[i] = Double.NaN;
+            }
+            names.add("Name" + random.nextInt(5));
+        }
+        return newVTable(column("Value", newVDoubleArray(new ArrayDouble(values), alarmNone(), timeNow(), displayNone())),
+                         column("Name", newVStringArray(names, alarmNone(), timeNow())));
+    }
+
+    @Test
+    public void valueSelection1() {
+        VTableIndexCache cache = new VTableIndexCache();
+        VTable table = randomTable(new Random(1), 1000);
+        for (int i = 0; i < 20; i++) {
+            assertThat(cache.valueSelection(table, "Value", ValueFactory.toVType(i)).toIndexes(),
+                    equalTo(valueSelection(table, "Value", ValueFactory.toVType(i)).toIndexes()));
+        }
+        assertThat(cache.valueSelection(table, "Value", ValueFactory.toVType(Double.NaN)).getSelectedCount(), equalTo(0));
+        assertThat(cache.valueSelection(table, "Name", ValueFactory.toVType("Name3")).toIndexes(),
+                equalTo(valueSelection(table, "Name", ValueFactory.toVType("Name3")).toIndexes()));
+        assertThat(cache.getIndexedTableCount(), equalTo(1));
+    }
+
+    @Test
+    public void rangeSelection1() {
+        VTableIndexCache cache = new VTableIndexCache();
+        VTable table = randomTable(new Random(2), 1000);
+        for (int min = -1; min < 21; min += 3) {
+            for (int max = min; max < 22; max += 4) {
+                assertThat(cache.rangeSelection(table, "Value", ValueFactory.toVType(min), ValueFactory.toVType(max + 0.5)).toIndexes(),
+                        equalTo(rangeSelection(table, "Value", ValueFactory.toVType(min), ValueFactory.toVType(max + 0.5)).toIndexes()));
+            }
+        }
+        assertThat(cache.rangeSelection(table, "Name", ValueFactory.toVType("Name1"), ValueFactory.toVType("Name3")).toIndexes(),
+                equalTo(rangeSelection(table, "Name", ValueFactory.toVType("Name1"), ValueFactory.toVType("Name3")).toIndexes()));
+    }
+
+    @Test
+    public void rangeSelection2() {
+        VTableIndexCache cache = new VTableIndexCache();
+        VTable table = newVTable(column("Value", newVDoubleArray(new ArrayDouble(3, 1, 2, 1, 5), alarmNone(), timeNow(), displayNone())));
+        assertThat(cache.rangeSelection(table, "Value", ValueFactory.toVType(1), ValueFactory.toVType(3)).toIndexes(),
+                equalTo((Object) new ArrayInt(1, 2, 3)));
+    }
+
+    @Test
+    public void valueSelection2() {
+        VTableIndexCache cache = new VTableIndexCache();
+        VTable table = randomTable(new Random(4), 1000);
+        // A table filtered once is scanned
+        assertThat(cache.valueSelection(table, "Value", ValueFactory.toVType(3)).toIndexes(),
+                equalTo(valueSelection(table, "Value", ValueFactory.toVType(3)).toIndexes()));
+        assertThat(cache.isIndexed(table, 0), equalTo(false));
+        assertThat(cache.valueSelection(table, "Value", ValueFactory.toVType(4)).toIndexes(),
+                equalTo(valueSelection(table, "Value", ValueFactory.toVType(4)).toIndexes()));
+        assertThat(cache.isIndexed(table, 0), equalTo(true));
+    }
+
+    @Test
+    public void rangeSelection3() {
+        VTableIndexCache cache = new VTableIndexCache();
+        VTable table = randomTable(new Random(5), 1000);
+        // A table filtered once is scanned
+        assertThat(cache.rangeSelection(table, "Value", ValueFactory.toVType(2), ValueFactory.toVType(7)).toIndexes(),
+                equalTo(rangeSelection(table, "Value", ValueFactory.toVType(2), ValueFactory.toVType(7)).toIndexes()));
+        assertThat(cache.isIndexed(table, 0), equalTo(false));
+        assertThat(cache.rangeSelection(table, "Value", ValueFactory.toVType(5), ValueFactory.toVType(9)).toIndexes(),
+                equalTo(rangeSelection(table, "Value", ValueFactory.toVType(5), ValueFactory.toVType(9)).toIndexes()));
+        assertThat(cache.isIndexed(table, 0), equalTo(true));
+    }
+
+    @Test
+    public void join1() {
+        VTableIndexCache cache = new VTableIndexCache();
+        Random random = new Random(3);
+        VTable table1 = randomTable(random, 50);
+        VTable table2 = newVTable(column("Value", newVDoubleArray(new ArrayDouble(1, 2, 2, 3, Double.NaN), alarmNone(), timeNow(), displayNone())),
+                                  column("Other", newVDoubleArray(new ArrayDouble(10, 20, 30, 40, 50), alarmNone(), timeNow(), displayNone())));
+        VTable expected = join(table1, table2);
+        for (int i = 0; i < 2; i++) {
+            VTable table = cache.join(Arrays.asList(table1, table2));
+            assertThat(table.getRowCount(), equalTo(expected.getRowCount()));
+            assertThat(table.getColumnData(0), equalTo(expected.getColumnData(0)));
+            assertThat(table.getColumnData(1), equalTo(expected.getColumnData(1)));
+            assertThat(table.getColumnData(2), equalTo(expected.getColumnData(2)));
+        }
+        assertThat(cache.getIndexedTableCount(), equalTo(1));
+    }
+}